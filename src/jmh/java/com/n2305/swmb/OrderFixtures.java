@@ -0,0 +1,48 @@
+package com.n2305.swmb;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Orders for the benchmarks based on the recorded shopware response in the test resources,
+ * the single line item is repeated with distinct numbers, names and prices.
+ */
+public final class OrderFixtures {
+    private static final String RECORDED_ORDER = "/com/n2305/swmb/shopware/order.json";
+
+    private OrderFixtures() {
+    }
+
+    /**
+     * The complete detail response, {@code {"data": {...}, "success": true}}.
+     */
+    public static String orderResponse(ObjectMapper objectMapper, int itemCount) {
+        try (InputStream in = OrderFixtures.class.getResourceAsStream(RECORDED_ORDER)) {
+            ObjectNode response = (ObjectNode) objectMapper.readTree(in);
+            ObjectNode order = (ObjectNode) response.get("data");
+            JsonNode template = order.get("details").get(0);
+
+            ArrayNode details = objectMapper.createArrayNode();
+            for (int i = 0; i < itemCount; i++) {
+                ObjectNode detail = template.deepCopy();
+                detail.put("id", i + 1)
+                    .put("articleNumber", String.valueOf(10001 + i))
+                    .put("articleName", "Article " + (i + 1))
+                    .put("price", 0.99 + i % 50)
+                    .put("quantity", 1 + i % 3);
+                details.add(detail);
+            }
+            order.set("details", details);
+
+            return objectMapper.writeValueAsString(response);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
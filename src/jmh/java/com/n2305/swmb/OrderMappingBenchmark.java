@@ -0,0 +1,64 @@
+package com.n2305.swmb;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.n2305.swmb.mailbluster.MBOrder;
+import com.n2305.swmb.mailbluster.PartnerCampaignIDMapper;
+import com.n2305.swmb.shopware.SWOrder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per order work between the shopware response and the mailbluster request: deserializing
+ * the recorded shopware order, mapping it and serializing the mailbluster order, for orders with
+ * 1 to 200 line items. Run with {@code -prof gc} to catch allocation regressions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderMappingBenchmark {
+    @Param({"1", "10", "50", "200"})
+    public int itemCount;
+
+    private byte[] orderResponse;
+    private ObjectReader orderReader;
+    private ObjectWriter mbOrderWriter;
+    private OrderMapper orderMapper;
+    private SWOrder swOrder;
+    private MBOrder mbOrder;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapperFactory().get();
+
+        orderResponse = OrderFixtures.orderResponse(objectMapper, itemCount).getBytes();
+        orderReader = objectMapper.readerFor(SWOrder.class).at("/data");
+        mbOrderWriter = new ObjectMapper().writerFor(MBOrder.class);
+        orderMapper = new OrderMapper(new PartnerCampaignIDMapper(Map.of("partner", 2), "mb-(\\d+)"));
+
+        swOrder = orderReader.readValue(orderResponse);
+        mbOrder = orderMapper.apply(swOrder);
+    }
+
+    @Benchmark
+    public SWOrder deserializeSWOrder() throws IOException {
+        return orderReader.readValue(orderResponse);
+    }
+
+    @Benchmark
+    public MBOrder mapOrder() {
+        return orderMapper.apply(swOrder);
+    }
+
+    @Benchmark
+    public byte[] serializeMBOrder() throws IOException {
+        return mbOrderWriter.writeValueAsBytes(mbOrder);
+    }
+}
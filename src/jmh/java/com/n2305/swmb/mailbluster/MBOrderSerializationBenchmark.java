@@ -0,0 +1,95 @@
+package com.n2305.swmb.mailbluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes one order the way MailBlusterAPI did before, a pretty printed string from a fresh
+ * writer that is then encoded again by the string codec, and the way it does now, a cached
+ * compact writer straight into a pooled netty buffer.
+ *
+ * Run with {@code -prof gc} for the allocations per order, the bytes counter reports the
+ * request body size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MBOrderSerializationBenchmark {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectWriter orderWriter = objectMapper.writerFor(MBOrder.class);
+    private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+    private MBOrder order;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long bytes;
+    }
+
+    @Setup
+    public void setup() {
+        order = new MBOrder.Builder()
+            .withId("20001")
+            .withCampaignId(2)
+            .withCurrency("EUR")
+            .withTotalPrice(23.7)
+            .withCustomer(new MBOrder.Customer.Builder()
+                .withFirstName("Jane")
+                .withLastName("Doe")
+                .withEmail("jane.doe@example.com")
+                .withIpAddress("78.94.0.0")
+                .withMeta(Map.of("zip", "12345", "city", "Berlin", "country", "DE", "referer", ""))
+                .build())
+            .withItems(List.of(
+                new MBOrder.Product("10001", "Coke BIO", 9.9, 2),
+                new MBOrder.Product("10002", "Lemonade", 3.9, 1),
+                MBOrder.Product.forShipping(3.9)
+            ))
+            .build();
+    }
+
+    @Benchmark
+    public int prettyString(Counters counters) throws IOException {
+        String json = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(order);
+
+        // the string codec encodes it once more into the request buffer
+        DataBuffer buffer = bufferFactory.wrap(json.getBytes(StandardCharsets.UTF_8));
+        int bytes = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+
+        counters.bytes += bytes;
+
+        return bytes;
+    }
+
+    @Benchmark
+    public int compactBuffer(Counters counters) throws IOException {
+        DataBuffer buffer = bufferFactory.allocateBuffer();
+        try (OutputStream outputStream = buffer.asOutputStream()) {
+            orderWriter.writeValue(outputStream, order);
+        }
+
+        int bytes = buffer.readableByteCount();
+        DataBufferUtils.release(buffer);
+
+        counters.bytes += bytes;
+
+        return bytes;
+    }
+}
@@ -0,0 +1,33 @@
+package com.n2305.swmb.mailbluster;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Campaign lookup for the partner ids an order can carry: a configured mapping, a pass
+ * through id, an unknown partner and the empty partner id most orders have.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PartnerCampaignIDMapperBenchmark {
+    @Param({"partner", "mb-23", "unknown", ""})
+    public String partnerId;
+
+    private PartnerCampaignIDMapper mapper;
+
+    @Setup
+    public void setup() {
+        mapper = new PartnerCampaignIDMapper(Map.of("partner", 2, "newsletter", 5), "mb-(\\d+)");
+    }
+
+    @Benchmark
+    public Integer apply() {
+        return mapper.apply(partnerId);
+    }
+}
@@ -0,0 +1,62 @@
+package com.n2305.swmb.metrics;
+
+import com.n2305.swmb.mailbluster.MailBlusterDispatcher.DispatchClass;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of the pipeline instrumentation on a synchronous publisher, compared against the
+ * bare publisher. Run with {@code -prof gc}: with metrics disabled the allocation rate per
+ * operation has to match the baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineMetricsBenchmark {
+    private static final List<Integer> PAGE = List.of(1, 2, 3);
+    private static final ResponseEntity<Void> CREATED = ResponseEntity.status(201).build();
+
+    @Param({"baseline", "disabled", "micrometer"})
+    public String metricsMode;
+
+    private PipelineMetrics metrics;
+
+    @Setup
+    public void setup() {
+        metrics = "micrometer".equals(metricsMode)
+            ? new MicrometerPipelineMetrics(new SimpleMeterRegistry())
+            : PipelineMetrics.NOOP;
+    }
+
+    @Benchmark
+    public List<Integer> shopwareList() {
+        Mono<List<Integer>> page = Mono.just(PAGE);
+
+        return "baseline".equals(metricsMode)
+            ? page.block()
+            : metrics.timeShopwareList(PipelineMetrics.ORDERS, page).block();
+    }
+
+    @Benchmark
+    public ResponseEntity<Void> mailBlusterSend() {
+        Mono<ResponseEntity<Void>> response = Mono.just(CREATED);
+
+        return "baseline".equals(metricsMode)
+            ? response.block()
+            : metrics.timeMailBlusterSend(PipelineMetrics.ORDERS, response).block();
+    }
+
+    @Benchmark
+    public void permissionWait() {
+        if (!"baseline".equals(metricsMode))
+            metrics.recordPermissionWait(DispatchClass.ORDER, 1_000);
+    }
+}
@@ -0,0 +1,65 @@
+package com.n2305.swmb.shopware;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.n2305.swmb.ObjectMapperFactory;
+import com.n2305.swmb.shopware.ShopwareAPI.Filter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the query of an order page, keyset cursor plus exported attribute, and of a bulk
+ * detail fetch, an IN filter with 50 ids. Also parses the shopware timestamp format that every
+ * list item and order carries. Run with {@code -prof gc}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterSerializationBenchmark {
+    private final FilterQueryParamSerializer serializer = new FilterQueryParamSerializer();
+    private final ObjectReader offsetDateTimeReader = new ObjectMapperFactory().get()
+        .readerFor(OffsetDateTime.class);
+
+    private List<Filter> pageFilters;
+    private List<Filter> bulkFilters;
+
+    @Setup
+    public void setup() {
+        pageFilters = List.of(
+            new Filter("orderTime", "2019-04-04T09:51:27+02:00", "="),
+            new Filter("id", "20001", ">"),
+            new Filter("orderTime", "2019-04-04T09:51:27+02:00", ">", true),
+            new Filter("attribute.mbExport", null, "="),
+            new Filter("customer.email", "%@example.com", "NOT LIKE")
+        );
+
+        List<String> ids = new ArrayList<>();
+        for (int id = 20001; id <= 20050; id++) {
+            ids.add(String.valueOf(id));
+        }
+        bulkFilters = List.of(Filter.in("id", ids));
+    }
+
+    @Benchmark
+    public Map<String, String> serializePageFilters() {
+        return serializer.serialize(pageFilters);
+    }
+
+    @Benchmark
+    public Map<String, String> serializeBulkFilter() {
+        return serializer.serialize(bulkFilters);
+    }
+
+    @Benchmark
+    public OffsetDateTime deserializeOrderTime() throws IOException {
+        return offsetDateTimeReader.readValue("\"2019-04-04T09:51:27+0200\"");
+    }
+}
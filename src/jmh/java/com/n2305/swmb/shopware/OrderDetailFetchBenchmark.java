@@ -0,0 +1,169 @@
+package com.n2305.swmb.shopware;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.n2305.swmb.ObjectMapperFactory;
+import com.n2305.swmb.metrics.PipelineMetrics;
+import com.n2305.swmb.properties.AppProperties;
+import com.n2305.swmb.properties.ShopwareProperties;
+import com.n2305.swmb.state.StateStore;
+import com.n2305.swmb.utils.RetryPolicy;
+import org.apache.commons.validator.routines.EmailValidator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.*;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+/**
+ * Syncs one page of orders from a wiremock stand-in for shopware and counts the requests it
+ * takes. The single mode needs a detail request per order, the bulk mode one request per chunk
+ * plus a single fetch for every order the bulk endpoint returned incomplete.
+ *
+ * The requests and orders counters are reported next to the score, requests / orders is the
+ * number of shopware requests per synced order.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderDetailFetchBenchmark {
+    @Param({"SINGLE", "BULK"})
+    public ShopwareProperties.DetailFetch.Mode mode;
+
+    @Param({"100"})
+    public int pageSize;
+
+    @Param({"10"})
+    public int incompletePercent;
+
+    private WireMockServer wireMockServer;
+    private ShopwareAPI api;
+    private ShopwareProperties swProps;
+    private Path stateFolder;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long requests;
+        public long orders;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        wireMockServer = new WireMockServer(wireMockConfig().dynamicPort());
+        wireMockServer.start();
+
+        StringBuilder page = new StringBuilder("{\"data\":[");
+        StringBuilder bulk = new StringBuilder("{\"data\":[");
+        for (int id = 1; id <= pageSize; id++) {
+            String separator = id > 1 ? "," : "";
+            page.append(separator).append(listItem(id));
+            bulk.append(separator).append(id % 100 < incompletePercent ? listItem(id) : order(id));
+
+            wireMockServer.stubFor(get(urlPathEqualTo("/api/orders/" + id))
+                .willReturn(okJson("{\"data\":" + order(id) + ",\"success\":true}")));
+        }
+        page.append("],\"total\":").append(pageSize).append(",\"success\":true}");
+        bulk.append("],\"total\":").append(pageSize).append(",\"success\":true}");
+
+        wireMockServer.stubFor(get(urlPathEqualTo("/api/orders"))
+            .atPriority(3)
+            .willReturn(okJson("{\"data\":[],\"total\":0,\"success\":true}")));
+        wireMockServer.stubFor(get(urlPathEqualTo("/api/orders"))
+            .atPriority(2)
+            .withQueryParam(encode("filter[0][property]"), equalTo("attribute.mbExport"))
+            .willReturn(okJson(page.toString())));
+        wireMockServer.stubFor(get(urlPathEqualTo("/api/orders"))
+            .atPriority(1)
+            .withQueryParam(encode("filter[0][expression]"), equalTo("IN"))
+            .willReturn(okJson(bulk.toString())));
+
+        ObjectMapper objectMapper = new ObjectMapperFactory().get();
+        swProps = new ShopwareProperties()
+            .setExportedAttribute("mbExport")
+            .setIntervals(new ShopwareProperties.Intervals()
+                .setOnEmptyList(Duration.ofMinutes(5))
+                .setResetLastFetchedOrderTime(Duration.ofHours(8)))
+            .setDetailFetch(new ShopwareProperties.DetailFetch()
+                .setMode(mode)
+                .setBulkPath("/api/orders")
+                .setBulkSize(pageSize));
+        swProps.getPaging().setOrderPageSize(pageSize);
+
+        api = new ShopwareAPI(
+            WebClient.builder()
+                .codecs(ccc -> ccc.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper)))
+                .baseUrl(wireMockServer.baseUrl())
+                .build(),
+            new FilterQueryParamSerializer(),
+            objectMapper,
+            swProps,
+            Clock.systemDefaultZone(),
+            PipelineMetrics.NOOP
+        );
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() throws IOException {
+        wireMockServer.resetRequests();
+        stateFolder = Files.createTempDirectory("order-detail-fetch");
+    }
+
+    @Benchmark
+    public long syncPage(Counters counters) throws IOException {
+        StateStore stateStore = new StateStore(stateFolder, Duration.ofSeconds(1));
+        OrderStreamFactory factory = new OrderStreamFactory(api, swProps, EmailValidator.getInstance(),
+            stateStore, new RetryPolicy(new AppProperties.Retry()), PipelineMetrics.NOOP, List.of());
+
+        Long synced = factory.create()
+            .take(pageSize)
+            .count()
+            .block(Duration.ofMinutes(1));
+        stateStore.close();
+
+        counters.orders += synced;
+        counters.requests += wireMockServer.getAllServeEvents().size();
+
+        return synced;
+    }
+
+    @TearDown
+    public void tearDown() {
+        wireMockServer.stop();
+    }
+
+    private static String encode(String queryParam) {
+        return URLEncoder.encode(queryParam, StandardCharsets.UTF_8);
+    }
+
+    private static String listItem(int id) {
+        return "{\"id\":" + id + ",\"number\":\"" + (20000 + id) + "\""
+            + ",\"orderTime\":\"2019-04-04T09:51:27+0200\",\"invoiceAmount\":23.7,\"currency\":\"EUR\"}";
+    }
+
+    private static String order(int id) {
+        String address = "{\"zipCode\":\"12345\",\"city\":\"Berlin\",\"country\":{\"iso\":\"DE\"}}";
+
+        return "{\"id\":" + id + ",\"number\":\"" + (20000 + id) + "\""
+            + ",\"orderTime\":\"2019-04-04T09:51:27+0200\",\"invoiceAmount\":23.7,\"invoiceShipping\":3.9"
+            + ",\"currency\":\"EUR\",\"partnerId\":\"\",\"remoteAddress\":\"78.94.0.0\",\"referer\":\"\""
+            + ",\"customer\":{\"id\":" + id + ",\"number\":\"" + id + "\",\"email\":\"customer" + id
+            + "@example.com\",\"firstname\":\"Jane\",\"lastname\":\"Doe\"}"
+            + ",\"details\":[{\"articleNumber\":\"10001\",\"articleName\":\"Coke BIO\",\"price\":9.9,\"quantity\":2}]"
+            + ",\"billing\":" + address + ",\"shipping\":" + address + "}";
+    }
+}
@@ -0,0 +1,92 @@
+package com.n2305.swmb.shopware;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.n2305.swmb.ObjectMapperFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decoding an order list page from a fully buffered string with feeding the
+ * streaming tokenizer chunk by chunk, the way reactor netty hands the body over.
+ *
+ * Run with {@code -prof gc}: the string path allocates the complete body twice (bytes and
+ * string) before the first item is read, the streaming path only ever holds one chunk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseDecodingBenchmark {
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    @Param({"100", "1000"})
+    public int pageSize;
+
+    private ObjectMapper objectMapper;
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        objectMapper = new ObjectMapperFactory().get();
+
+        StringBuilder sb = new StringBuilder("{\"data\":[");
+        for (int i = 0; i < pageSize; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"id\":").append(i)
+                .append(",\"changed\":\"2019-08-27T13:31:04+0200\"")
+                .append(",\"number\":\"").append(20000 + i).append('"')
+                .append(",\"customerId\":").append(i % 50)
+                .append(",\"invoiceAmount\":23.7,\"invoiceShipping\":3.9")
+                .append(",\"orderTime\":\"2019-04-04T09:51:27+0200\"")
+                .append(",\"comment\":\"\",\"internalComment\":\"\",\"referer\":\"https://example.com/landing\"")
+                .append(",\"customer\":{\"id\":").append(i % 50)
+                .append(",\"email\":\"customer").append(i % 50).append("@example.com\"}}");
+        }
+        sb.append("],\"total\":").append(pageSize).append(",\"success\":true}");
+
+        body = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<OrderListItem> stringPath() throws IOException {
+        String src = new String(body, StandardCharsets.UTF_8);
+
+        return objectMapper.readerForListOf(OrderListItem.class)
+            .at("/data")
+            .readValue(src);
+    }
+
+    @Benchmark
+    public void streamingPath(Blackhole blackhole) throws IOException {
+        ObjectReader objectReader = objectMapper.readerFor(OrderListItem.class);
+        DataFieldTokenizer tokenizer = new DataFieldTokenizer(objectMapper.getFactory());
+
+        for (int offset = 0; offset < body.length; offset += CHUNK_SIZE) {
+            DataBuffer chunk = DefaultDataBufferFactory.sharedInstance
+                .wrap(Arrays.copyOfRange(body, offset, Math.min(body.length, offset + CHUNK_SIZE)));
+
+            consume(tokenizer.tokenize(chunk), objectReader, blackhole);
+        }
+
+        consume(tokenizer.endOfInput(), objectReader, blackhole);
+    }
+
+    private static void consume(List<TokenBuffer> tokenBuffers, ObjectReader objectReader, Blackhole blackhole)
+        throws IOException {
+        for (TokenBuffer tokenBuffer : tokenBuffers) {
+            blackhole.consume(objectReader.<OrderListItem>readValue(tokenBuffer.asParser(objectReader)));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.n2305.swmb.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalizes remote addresses the way the shopware order mapping sees them, once with the
+ * literal parser and once with the former {@code InetAddress.getByName} path. Only literals
+ * are used, a host name would measure the resolver instead.
+ *
+ * Run with {@code -prof gc} for the allocations per address.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IpAddressesBenchmark {
+    @Param({"78.94.0.0", "2a02:810b:c940:1409:eda9::1", "::ffff:78.94.0.0"})
+    public String address;
+
+    @Benchmark
+    public Optional<String> literalParser() {
+        return IpAddresses.normalize(address);
+    }
+
+    @Benchmark
+    public String inetAddress() throws UnknownHostException {
+        return InetAddress.getByName(address).getHostAddress();
+    }
+}
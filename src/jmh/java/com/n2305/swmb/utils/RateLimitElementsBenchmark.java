@@ -0,0 +1,86 @@
+package com.n2305.swmb.utils;
+
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Streams elements through a permanently saturated rate limiter (10 permits every 20ms)
+ * and compares the event driven operator against the former 10ms polling operator.
+ *
+ * Run with {@code -prof gc} for allocations per permitted element; the aux counters
+ * report the process cpu time spent while the elements were waiting for permissions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateLimitElementsBenchmark {
+    private static final int ELEMENTS = 50;
+
+    @Param({"event", "polling"})
+    public String strategy;
+
+    private Function<Flux<Integer>, Flux<Integer>> operator;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        RateLimiter rateLimiter = RateLimiter.of("benchmark", RateLimiterConfig.custom()
+            .limitForPeriod(10)
+            .limitRefreshPeriod(Duration.ofMillis(20))
+            .timeoutDuration(Duration.ZERO)
+            .build());
+
+        operator = "event".equals(strategy)
+            ? RateLimitElements.with(rateLimiter)
+            : polling(rateLimiter, Duration.ofMillis(10));
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CpuCounters {
+        public long cpuNanos;
+        public long permittedElements;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS)
+    public long saturatedStream(CpuCounters counters) {
+        long cpuBefore = processCpuTime();
+
+        long count = Flux.range(0, ELEMENTS)
+            .transform(operator)
+            .count()
+            .block();
+
+        counters.cpuNanos += processCpuTime() - cpuBefore;
+        counters.permittedElements += count;
+
+        return count;
+    }
+
+    private static long processCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean())
+            .getProcessCpuTime();
+    }
+
+    private static <T> Function<Flux<T>, Flux<T>> polling(RateLimiter rateLimiter, Duration checkInterval) {
+        return flux -> flux.delayUntil(v -> Mono.create(sink -> {
+            Disposable disposable = Flux.interval(checkInterval)
+                .filter(n -> rateLimiter.acquirePermission())
+                .subscribe(n -> sink.success());
+
+            sink.onDispose(disposable);
+        }));
+    }
+}
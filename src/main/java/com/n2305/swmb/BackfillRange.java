@@ -0,0 +1,88 @@
+package com.n2305.swmb;
+
+import com.n2305.swmb.shopware.ShopwareAPI;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Days from the first up to the last one, exclusive, that a one-shot backfill walks through.
+ * Orders are picked by their order time, customers by their registration.
+ */
+public class BackfillRange {
+    private final LocalDate from;
+    private final LocalDate to;
+
+    public BackfillRange(LocalDate from, LocalDate to) {
+        if (!from.isBefore(to))
+            throw new IllegalArgumentException("Backfill range from " + from + " has to end after it, not " + to);
+
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Reads a range from the iso dates of the command line.
+     */
+    public static BackfillRange parse(String from, String to) {
+        if (from == null || to == null)
+            throw new IllegalArgumentException("The backfill needs --from and --to dates");
+
+        try {
+            return new BackfillRange(LocalDate.parse(from), LocalDate.parse(to));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid backfill date " + e.getParsedString(), e);
+        }
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    /**
+     * Names the state folder of the range, a backfill of the same range resumes from it.
+     */
+    public String getName() {
+        return from + "_" + to;
+    }
+
+    public List<ShopwareAPI.Filter> getOrderFilters() {
+        return filters("orderTime");
+    }
+
+    public List<ShopwareAPI.Filter> getCustomerFilters() {
+        return filters("firstLogin");
+    }
+
+    private List<ShopwareAPI.Filter> filters(String property) {
+        return List.of(
+            new ShopwareAPI.Filter(property, from.toString(), ">="),
+            new ShopwareAPI.Filter(property, to.toString(), "<")
+        );
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BackfillRange that = (BackfillRange) o;
+        return from.equals(that.from) &&
+            to.equals(that.to);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(from, to);
+    }
+
+    @Override
+    public String toString() {
+        return from + " until " + to;
+    }
+}
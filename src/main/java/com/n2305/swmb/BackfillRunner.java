@@ -0,0 +1,63 @@
+package com.n2305.swmb;
+
+import com.n2305.swmb.properties.ShopwareProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Backfills the orders and customers of every configured shop within the range given as
+ * {@code --mode=backfill --from=2019-01-01 --to=2020-01-01} and returns once all of them are
+ * through, the application exits afterwards. The shops run side by side, each as fast as the
+ * budgets allow.
+ */
+@Component
+@Profile("!test")
+@ConditionalOnProperty(name = "mode", havingValue = BackfillRunner.MODE)
+public class BackfillRunner implements ApplicationRunner {
+    private static final Logger logger = LoggerFactory.getLogger(BackfillRunner.class);
+
+    public static final String MODE = "backfill";
+
+    private final SyncFactory syncFactory;
+
+    public BackfillRunner(SyncFactory syncFactory) {
+        this.syncFactory = syncFactory;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        BackfillRange range = BackfillRange.parse(option(args, "from"), option(args, "to"));
+
+        List<ShopBackfill> backfills = new LinkedList<>();
+        for (ShopwareProperties.Shop shop : syncFactory.getShops()) {
+            backfills.add(syncFactory.createBackfill(shop, range));
+        }
+
+        logger.info("Start the backfill of {} shops from {}", backfills.size(), range);
+
+        Flux.fromIterable(backfills)
+            .flatMap(backfill -> backfill.run()
+                .doOnSuccess(v -> logger.info("Finished the backfill of shop {} with {} records",
+                    backfill.getShop(), backfill.getHandled())))
+            .then()
+            .block();
+
+        logger.info("Finished the backfill from {}", range);
+    }
+
+    private static String option(ApplicationArguments args, String name) {
+        return Optional.ofNullable(args.getOptionValues(name))
+            .flatMap(values -> values.stream().findFirst())
+            .orElse(null);
+    }
+}
@@ -0,0 +1,100 @@
+package com.n2305.swmb;
+
+import com.n2305.swmb.mailbluster.MBOrder;
+import com.n2305.swmb.mailbluster.PartnerCampaignIDMapper;
+import com.n2305.swmb.shopware.SWOrder;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Maps a complete shopware order to the mailbluster order, shipping costs become an extra item.
+ */
+public class OrderMapper implements Function<SWOrder, MBOrder> {
+    private final PartnerCampaignIDMapper partnerCampaignIDMapper;
+
+    public OrderMapper(PartnerCampaignIDMapper partnerCampaignIDMapper) {
+        this.partnerCampaignIDMapper = partnerCampaignIDMapper;
+    }
+
+    @Override
+    public MBOrder apply(SWOrder swOrder) {
+        SWOrder.Customer swCustomer = swOrder.getCustomer();
+        MBOrder.Customer mbCustomer = new MBOrder.Customer.Builder()
+            .withEmail(swCustomer.getEmail())
+            .withFirstName(swCustomer.getFirstname())
+            .withLastName(swCustomer.getLastname())
+            .withIpAddress(swOrder.getRemoteAddress())
+            .withMeta(buildCustomerMeta(swOrder))
+            .build();
+
+        List<MBOrder.Product> items = mapOrderDetails(swOrder.getDetails());
+        if (swOrder.hasInvoiceShipping())
+            items.add(MBOrder.Product.forShipping(swOrder.getInvoiceShipping()));
+
+        return new MBOrder.Builder()
+            .withId(swOrder.getNumber())
+            .withCustomer(mbCustomer)
+            .withCampaignId(partnerCampaignIDMapper.apply(swOrder.getPartnerID()))
+            .withCurrency(swOrder.getCurrency())
+            .withTotalPrice(swOrder.getInvoiceAmount())
+            .withItems(items)
+            .build();
+    }
+
+    private Map<String, String> buildCustomerMeta(SWOrder order) {
+        Map<String, String> meta = new HashMap<>();
+
+        Supplier<Stream<Optional<SWOrder.Address>>> addressStream = () ->
+            Stream.of(order.getBilling(), order.getShipping())
+                .map(Optional::ofNullable);
+
+        Map<String, Function<Optional<SWOrder.Address>, String>> props = Map.of(
+            "zip", oa -> oa.map(SWOrder.Address::getZipCode).orElse(""),
+            "city", oa -> oa.map(SWOrder.Address::getCity).orElse(""),
+            "country", oa -> oa.map(SWOrder.Address::getCountry)
+                .map(SWOrder.Address.Country::getIso).orElse("")
+        );
+
+        props.forEach((key, fetchFn) -> {
+            fetchFirstNonEmptyValueFromAddresses(addressStream.get(), fetchFn)
+                .ifPresent(v -> meta.put(key, v));
+        });
+
+        meta.put("referer", order.getReferer());
+
+        return meta;
+    }
+
+    private Optional<String> fetchFirstNonEmptyValueFromAddresses(
+        Stream<Optional<SWOrder.Address>> addressStream,
+        Function<Optional<SWOrder.Address>, String> fetchFn
+    ) {
+        return addressStream
+            .map(fetchFn)
+            .filter(s -> !s.isEmpty())
+            .findFirst();
+    }
+
+    private List<MBOrder.Product> mapOrderDetails(List<SWOrder.Article> articles) {
+        return articles.stream()
+            .filter(SWOrder.Article::hasPositivePrice)
+            .map(this::mapOrderDetail)
+            .collect(Collectors.toList());
+    }
+
+    private MBOrder.Product mapOrderDetail(SWOrder.Article article) {
+        return new MBOrder.Product(
+            article.getArticleNumber(),
+            article.getArticleName(),
+            article.getPrice(),
+            article.getQuantity()
+        );   
+    }
+}
@@ -0,0 +1,162 @@
+package com.n2305.swmb;
+
+import com.n2305.swmb.properties.AppProperties;
+import com.n2305.swmb.shopware.CustomerStreamFactory;
+import com.n2305.swmb.shopware.OrderStreamFactory;
+import com.n2305.swmb.state.StateStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One-shot backfill of a shop within a range of days. The cursors are saved every n handled
+ * records and at the latest after the progress interval, a backfill of the same range resumes
+ * from there. Reports the throughput and the time left every progress interval.
+ */
+public class ShopBackfill {
+    private static final Logger logger = LoggerFactory.getLogger(ShopBackfill.class);
+
+    private final String shop;
+    private final BackfillRange range;
+    private final ShopSync shopSync;
+    private final OrderStreamFactory orderStreamFactory;
+    private final CustomerStreamFactory customerStreamFactory;
+    private final StateStore checkpoints;
+    private final AppProperties.Backfill backfillProps;
+    private final Scheduler scheduler;
+    private final AtomicLong handled = new AtomicLong();
+    private volatile long total = -1;
+    private volatile long startNanos;
+
+    public ShopBackfill(
+        String shop,
+        BackfillRange range,
+        ShopSync shopSync,
+        OrderStreamFactory orderStreamFactory,
+        CustomerStreamFactory customerStreamFactory,
+        StateStore checkpoints,
+        AppProperties.Backfill backfillProps,
+        Scheduler scheduler
+    ) {
+        this.shop = shop;
+        this.range = range;
+        this.shopSync = shopSync;
+        this.orderStreamFactory = orderStreamFactory;
+        this.customerStreamFactory = customerStreamFactory;
+        this.checkpoints = checkpoints;
+        this.backfillProps = backfillProps;
+        this.scheduler = scheduler;
+    }
+
+    public ShopBackfill(
+        String shop,
+        BackfillRange range,
+        ShopSync shopSync,
+        OrderStreamFactory orderStreamFactory,
+        CustomerStreamFactory customerStreamFactory,
+        StateStore checkpoints,
+        AppProperties.Backfill backfillProps
+    ) {
+        this(shop, range, shopSync, orderStreamFactory, customerStreamFactory, checkpoints, backfillProps,
+            Schedulers.parallel());
+    }
+
+    public String getShop() {
+        return shop;
+    }
+
+    /**
+     * Completes once every order and customer of the range is handled.
+     */
+    public Mono<Void> run() {
+        return Mono.zip(orderStreamFactory.countPending(), customerStreamFactory.countPending(), Long::sum)
+            .doOnError(e -> logger.warn("Failed to count the records to backfill of shop {}, there is no ETA", shop))
+            .onErrorReturn(-1L)
+            .flatMap(pending -> {
+                total = pending;
+                startNanos = scheduler.now(TimeUnit.NANOSECONDS);
+                logger.info("Backfill {} records of shop {} from {}", pending < 0 ? "?" : pending, shop, range);
+
+                Duration interval = backfillProps.getProgressInterval();
+                Disposable reporter = Flux.interval(interval, interval, scheduler)
+                    .subscribe(n -> report());
+
+                return shopSync.backfill(this::onHandled)
+                    .doFinally(signal -> {
+                        reporter.dispose();
+                        checkpoint();
+                        report();
+                    });
+            });
+    }
+
+    private void onHandled() {
+        if (handled.incrementAndGet() % backfillProps.getCheckpointEvery() != 0)
+            return;
+
+        Mono.fromRunnable(this::checkpoint)
+            .subscribeOn(Schedulers.boundedElastic())
+            .subscribe();
+    }
+
+    private void checkpoint() {
+        try {
+            checkpoints.flush();
+        } catch (IOException e) {
+            logger.warn("Failed to save the backfill checkpoint of shop {}", shop, e);
+        }
+    }
+
+    private void report() {
+        double recordsPerMinute = getRecordsPerMinute();
+
+        logger.info("Backfill of shop {} from {}: {} of {} records, {} records/min, done in {}",
+            shop,
+            range,
+            handled.get(),
+            total < 0 ? "?" : total,
+            Double.isNaN(recordsPerMinute) ? "?" : String.format("%.1f", recordsPerMinute),
+            getEta().map(Duration::toString).orElse("?"));
+    }
+
+    public long getHandled() {
+        return handled.get();
+    }
+
+    /**
+     * Average since the start, NaN before any time passed.
+     */
+    public double getRecordsPerMinute() {
+        long elapsedNanos = scheduler.now(TimeUnit.NANOSECONDS) - startNanos;
+        if (elapsedNanos <= 0)
+            return Double.NaN;
+
+        return handled.get() / (elapsedNanos / (double) TimeUnit.MINUTES.toNanos(1));
+    }
+
+    /**
+     * Time until the records counted at the start are handled, empty if nothing is handled yet
+     * or the count failed.
+     */
+    public Optional<Duration> getEta() {
+        long left = Math.max(0, total - handled.get());
+        double recordsPerMinute = getRecordsPerMinute();
+
+        if (total >= 0 && left == 0)
+            return Optional.of(Duration.ZERO);
+        if (total < 0 || Double.isNaN(recordsPerMinute) || recordsPerMinute <= 0)
+            return Optional.empty();
+
+        return Optional.of(Duration.ofSeconds((long) Math.ceil(left / recordsPerMinute * 60)));
+    }
+}
@@ -0,0 +1,622 @@
+package com.n2305.swmb;
+
+import com.n2305.swmb.mailbluster.MBLead;
+import com.n2305.swmb.mailbluster.MBOrder;
+import com.n2305.swmb.mailbluster.MailBlusterAPI;
+import com.n2305.swmb.mailbluster.MailBlusterDispatcher;
+import com.n2305.swmb.mailbluster.MailBlusterDispatcher.DispatchClass;
+import com.n2305.swmb.mailbluster.PartnerCampaignIDMapper;
+import com.n2305.swmb.metrics.BacklogEstimator;
+import com.n2305.swmb.metrics.PipelineMetrics;
+import com.n2305.swmb.properties.AppProperties;
+import com.n2305.swmb.properties.MailBlusterProperties;
+import com.n2305.swmb.shopware.*;
+import com.n2305.swmb.state.DeadLetterQueue;
+import com.n2305.swmb.state.LeadIndex;
+import com.n2305.swmb.state.OrderHashIndex;
+import com.n2305.swmb.state.OrderHashIndex.Change;
+import com.n2305.swmb.state.Outbox;
+import com.n2305.swmb.utils.RetryPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Syncs the orders and customers of a single shop. The components are the shop's own, apart from
+ * the mailbluster api, dispatcher and lead index of the account the shop feeds, which are shared
+ * with the other shops of that account.
+ */
+public class ShopSync {
+    private static final Logger logger = LoggerFactory.getLogger(ShopSync.class);
+
+    private static final Duration RETRY_POLL_INTERVAL = Duration.ofSeconds(1);
+
+    private final String shop;
+    private final OrderStreamFactory orderStreamFactory;
+    private final CustomerStreamFactory customerStreamFactory;
+    private final MailBlusterProperties mbProps;
+    private final MailBlusterAPI mbAPI;
+    private final MailBlusterDispatcher mbDispatcher;
+    private final OrderExportMarker exportMarker;
+    private final OrderMapper orderMapper;
+    private final Outbox outbox;
+    private final AppProperties appProps;
+    private final RetryPolicy retryPolicy;
+    private final DeadLetterQueue deadLetterQueue;
+    private final PipelineMetrics metrics;
+    private final BacklogEstimator backlogEstimator;
+    private final LeadIndex leadIndex;
+    private final OrderHashIndex orderHashIndex;
+    private final Sinks.Many<Outbox.Record<?>> retrySink = Sinks.many().unicast().onBackpressureBuffer();
+    // scheduled retries that are not settled yet, a rescheduled one is counted again first
+    private final AtomicInteger pendingRetries = new AtomicInteger();
+    // the streams wait for the outbox backlog and skip the orders and customers it retries
+    private final Sinks.Empty<Void> backlogReplayed = Sinks.empty();
+    private final Set<Long> replayedOrders = ConcurrentHashMap.newKeySet();
+    private final Set<Long> replayedCustomers = ConcurrentHashMap.newKeySet();
+    private Disposable orderStreamDisposable;
+    private Disposable customerStreamDisposable;
+    private Disposable retryLaneDisposable;
+
+    public ShopSync(
+        String shop,
+        OrderStreamFactory orderStreamFactory,
+        CustomerStreamFactory customerStreamFactory,
+        MailBlusterProperties mbProps,
+        MailBlusterAPI mbAPI,
+        MailBlusterDispatcher mbDispatcher,
+        OrderExportMarker exportMarker,
+        PartnerCampaignIDMapper partnerCampaignIDMapper,
+        Outbox outbox,
+        AppProperties appProps,
+        RetryPolicy retryPolicy,
+        DeadLetterQueue deadLetterQueue,
+        PipelineMetrics metrics,
+        BacklogEstimator backlogEstimator,
+        LeadIndex leadIndex,
+        OrderHashIndex orderHashIndex
+    ) {
+        this.shop = shop;
+        this.orderStreamFactory = orderStreamFactory;
+        this.customerStreamFactory = customerStreamFactory;
+        this.mbProps = mbProps;
+        this.mbAPI = mbAPI;
+        this.mbDispatcher = mbDispatcher;
+        this.exportMarker = exportMarker;
+        this.orderMapper = new OrderMapper(partnerCampaignIDMapper);
+        this.outbox = outbox;
+        this.appProps = appProps;
+        this.retryPolicy = retryPolicy;
+        this.deadLetterQueue = deadLetterQueue;
+        this.metrics = metrics;
+        this.backlogEstimator = backlogEstimator;
+        this.leadIndex = leadIndex;
+        this.orderHashIndex = orderHashIndex;
+    }
+
+    public String getShop() {
+        return shop;
+    }
+
+    public void start() {
+        logger.info("Before stream start of shop {}", shop);
+
+        orderStreamDisposable = startOrderStream();
+        // the customers are left to the regular sync, every backfill node would send them all
+        customerStreamDisposable = appProps.getBackfill().isPartitioned()
+            ? Disposables.disposed()
+            : startCustomerStream();
+        retryLaneDisposable = startRetryLane();
+        replayBacklog().subscribe();
+        backlogEstimator.start();
+
+        logger.info("After stream start of shop {}", shop);
+    }
+
+    /**
+     * Sends the bounded streams of the stream factories and completes once both are through and
+     * no retry is left, the outbox backlog of an earlier run goes first. Calls the given
+     * runnable for every order or lead that was handled.
+     */
+    public Mono<Void> backfill(Runnable onHandled) {
+        return Mono.defer(() -> {
+                retryLaneDisposable = startRetryLane();
+
+                return replayBacklog();
+            })
+            .thenMany(Flux.merge(
+                orderStream().doOnNext(ose -> onHandled.run()),
+                customerStream().doOnNext(lse -> onHandled.run())
+            ))
+            .then(Flux.interval(Duration.ZERO, RETRY_POLL_INTERVAL)
+                .filter(n -> pendingRetries.get() == 0)
+                .next()
+                .then())
+            .doFinally(signal -> Optional.ofNullable(retryLaneDisposable)
+                .ifPresent(Disposable::dispose));
+    }
+
+    private Disposable startOrderStream() {
+        return orderStream()
+            .subscribe(
+                ose -> {
+                    SWOrder swOrder = ose.getSwOrder();
+                    logger.info("Finished handling order id: {} number: {} of shop {}", swOrder.getId(),
+                        swOrder.getNumber(), shop);
+                },
+                e -> logger.error("Order stream of shop {} failed", shop, e),
+                () -> logger.info("Finished the order stream of shop {}", shop)
+            );
+    }
+
+    private Flux<OrderStreamElement> orderStream() {
+        Flux<SWOrder> orderStream = orderStreamFactory.create();
+
+        return backlogReplayed.asMono()
+            .thenMany(orderStream)
+            .filter(swOrder -> {
+                if (!replayedOrders.contains((long) swOrder.getId()))
+                    return true;
+
+                logger.info("Skip order {}, it is retried from the outbox", swOrder.getId());
+                orderStreamFactory.acknowledge(swOrder);
+                return false;
+            })
+            .map(OrderStreamElement::new)
+            .flatMap(ose -> {
+                try {
+                    ose.setMbOrder(orderMapper.apply(ose.getSwOrder()));
+                    return Mono.just(ose);
+                } catch (Throwable e) {
+                    logger.warn("Failed to map order with id {}", ose.getSwOrder().getId(), e);
+                    metrics.mappingFailed(PipelineMetrics.ORDERS);
+                    orderStreamFactory.acknowledge(ose.getSwOrder());
+                    return Mono.empty();
+                }
+            })
+            // appending may start a new outbox segment, keep that file io off the event loop
+            .publishOn(Schedulers.boundedElastic(), mbProps.getDispatch().getQueueCapacity())
+            .map(ose -> ose.setChange(orderHashIndex.compare(ose.getMbOrder())))
+            .map(ose -> ose.getChange() == Change.UNCHANGED ? ose : ose.setOutboxRecord(recordInOutbox(
+                () -> outbox.append(outboxKind(ose.getChange()), ose.getSwOrder().getId(), ose.getMbOrder()))))
+            .flatMap(ose -> deliverOrder(ose.getChange(), ose.getMbOrder())
+                .thenReturn(ose)
+                .doOnNext(o -> orderStreamFactory.acknowledge(o.getSwOrder()))
+                .onErrorResume(e -> handleFailedDelivery(ose.getOutboxRecord(), e,
+                    () -> orderStreamFactory.acknowledge(ose.getSwOrder()))
+                    .then(Mono.empty())), mbProps.getDispatch().getQueueCapacity())
+            .flatMap(ose -> exportMarker.markAsExported(ose.getSwOrder())
+                .doOnSuccess(v -> acknowledgeOutboxRecord(ose.getOutboxRecord()))
+                .thenReturn(ose)
+                .onErrorResume(e -> handleFailedMark(ose.getOutboxRecord(), e)
+                    .then(Mono.empty())));
+    }
+
+    private static Outbox.Kind outboxKind(Change change) {
+        return change == Change.CHANGED ? Outbox.Kind.ORDER_UPDATE : Outbox.Kind.ORDER;
+    }
+
+    /**
+     * Orders that were sent unchanged before only have to be marked as exported, changed ones
+     * are updated.
+     */
+    private Mono<Void> deliverOrder(Change change, MBOrder mbOrder) {
+        switch (change) {
+            case UNCHANGED:
+                logger.info("Skip sending unchanged order {}", mbOrder.getId());
+                return Mono.empty();
+            case CHANGED:
+                return updateOrder(DispatchClass.ORDER, mbOrder);
+            default:
+                return sendOrder(DispatchClass.ORDER, mbOrder);
+        }
+    }
+
+    /**
+     * Updates the order if mailbluster has it already, e.g. after the order index was lost. The
+     * hash is only recorded once mailbluster took the order as it is now.
+     */
+    private Mono<Void> sendOrder(DispatchClass dispatchClass, MBOrder mbOrder) {
+        return createOrder(dispatchClass, mbOrder)
+            .onErrorResume(ShopSync::isExistingOrder, e -> {
+                logger.info("Order {} exists in mailbluster already, update it", mbOrder.getId());
+                return putOrder(dispatchClass, mbOrder);
+            })
+            .doOnSuccess(v -> orderHashIndex.add(mbOrder));
+    }
+
+    /**
+     * Falls back to creating the order if mailbluster doesn't know it anymore.
+     */
+    private Mono<Void> updateOrder(DispatchClass dispatchClass, MBOrder mbOrder) {
+        return putOrder(dispatchClass, mbOrder)
+            .onErrorResume(WebClientResponseException.NotFound.class, e -> createOrder(dispatchClass, mbOrder))
+            .doOnSuccess(v -> orderHashIndex.add(mbOrder));
+    }
+
+    private Mono<Void> createOrder(DispatchClass dispatchClass, MBOrder mbOrder) {
+        return this.mbDispatcher.dispatch(dispatchClass, () -> mbAPI.createOrder(mbOrder))
+            .then();
+    }
+
+    private Mono<Void> putOrder(DispatchClass dispatchClass, MBOrder mbOrder) {
+        return this.mbDispatcher.dispatch(dispatchClass, () -> mbAPI.updateOrder(mbOrder))
+            .then();
+    }
+
+    private static boolean isExistingOrder(Throwable e) {
+        return e instanceof WebClientResponseException.UnprocessableEntity
+            && ((WebClientResponseException.UnprocessableEntity) e).getResponseBodyAsString()
+            .contains("Order id already exists");
+    }
+
+    /**
+     * Without an outbox record the message is still sent, it just can't be retried.
+     */
+    private <T> Outbox.Record<T> recordInOutbox(Callable<Outbox.Record<T>> append) {
+        try {
+            return append.call();
+        } catch (Exception e) {
+            logger.error("Failed to record message in the outbox", e);
+            return null;
+        }
+    }
+
+    private void acknowledgeOutboxRecord(Outbox.Record<?> record) {
+        Optional.ofNullable(record)
+            .ifPresent(outbox::acknowledge);
+    }
+
+    /**
+     * Retryable failures are forced to disk and handed to the retry lane, permanent failures and
+     * exhausted retries are moved to the dead letter queue. Either way the delivery counts as
+     * settled. Without an outbox record it is settled without a retry as well, otherwise the
+     * cursor would stay in front of it for good. The order is still not exported and listed
+     * again after the next cursor reset, the lead is given up.
+     */
+    private Mono<Void> handleFailedDelivery(Outbox.Record<?> record, Throwable e, Runnable onSettled) {
+        if (record == null) {
+            logger.warn("Give up on a message that is not in the outbox, it can't be retried", e);
+            onSettled.run();
+
+            return Mono.empty();
+        }
+
+        return Mono.fromRunnable(() -> {
+                if (retryPolicy.shouldRetry(e, record.incrementAttempts())) {
+                    outbox.force();
+                    scheduleRetry(record);
+                } else {
+                    moveToDeadLetterQueue(record, e);
+                }
+            })
+            .subscribeOn(Schedulers.boundedElastic())
+            .doOnSuccess(v -> onSettled.run())
+            .then();
+    }
+
+    /**
+     * The order went out already, only the mark is retried. If the outbox can't take the mark
+     * the whole delivery is retried instead.
+     */
+    private <T> Mono<Void> handleFailedMark(Outbox.Record<T> record, Throwable e) {
+        if (record == null || record.getKind() == Outbox.Kind.EXPORT_MARK)
+            return handleFailedDelivery(record, e, () -> {});
+
+        return Mono.fromCallable(() -> Optional.ofNullable(recordInOutbox(() -> outbox.markSent(record))))
+            .subscribeOn(Schedulers.boundedElastic())
+            .flatMap(exportMark -> handleFailedDelivery(exportMark.orElse(record), e, () -> {}));
+    }
+
+    private void moveToDeadLetterQueue(Outbox.Record<?> record, Throwable e) {
+        logger.warn("Give up on {} with reference {} after {} attempts",
+            record.getKind(), record.getReference(), record.getAttempts(), e);
+
+        try {
+            deadLetterQueue.add(record, e);
+            settle(record);
+        } catch (IOException ioe) {
+            logger.error("Failed to write dead letter, it stays in the outbox", ioe);
+        }
+    }
+
+    private synchronized void scheduleRetry(Outbox.Record<?> record) {
+        pendingRetries.incrementAndGet();
+        retrySink.tryEmitNext(record);
+    }
+
+    /**
+     * Retries run apart from the streams, a retry only holds a slot in the dispatcher once its
+     * backoff is over and then competes with fresh work through the retry dispatch class. At
+     * most a dispatcher queue of retries waits at a time, a large recovered backlog queues up
+     * in the sink instead of scheduling all of its backoffs at once.
+     */
+    private Disposable startRetryLane() {
+        return retrySink.asFlux()
+            .flatMap(record -> Mono.delay(retryPolicy.backoff(record.getAttempts()))
+                .then(Mono.defer(() -> redeliver(record)))
+                .doFinally(signal -> pendingRetries.decrementAndGet()), mbProps.getDispatch().getQueueCapacity())
+            .subscribe();
+    }
+
+    private Mono<Void> redeliver(Outbox.Record<?> record) {
+        logger.info("Retry {} with reference {} from the outbox, attempt {}",
+            record.getKind(), record.getReference(), record.getAttempts() + 1);
+
+        Mono<Void> delivery;
+        switch (record.getKind()) {
+            case ORDER:
+                delivery = sendOrder(DispatchClass.RETRY, (MBOrder) record.getMessage())
+                    .then(Mono.defer(() -> markAsExported(record)));
+                break;
+            case ORDER_UPDATE:
+                delivery = updateOrder(DispatchClass.RETRY, (MBOrder) record.getMessage())
+                    .then(Mono.defer(() -> markAsExported(record)));
+                break;
+            case EXPORT_MARK:
+                delivery = markAsExported(record);
+                break;
+            case LEAD_UPDATE:
+                delivery = updateLead(DispatchClass.RETRY, (MBLead) record.getMessage())
+                    .doOnSuccess(v -> settle(record));
+                break;
+            default:
+                delivery = sendLead(DispatchClass.RETRY, (MBLead) record.getMessage())
+                    .doOnSuccess(v -> settle(record));
+        }
+
+        return delivery
+            .onErrorResume(e -> handleFailedDelivery(record, e, () -> {}));
+    }
+
+    /**
+     * Settles a failed mark on its own, so the outer retry only covers the send.
+     */
+    private Mono<Void> markAsExported(Outbox.Record<?> record) {
+        return exportMarker.markAsExported((int) record.getReference())
+            .doOnSuccess(v -> settle(record))
+            .onErrorResume(e -> handleFailedMark(record, e));
+    }
+
+    /**
+     * Acknowledges a retried record, the streams no longer skip its order or customer.
+     */
+    private void settle(Outbox.Record<?> record) {
+        outbox.acknowledge(record);
+        replayedReferences(record).remove(record.getReference());
+    }
+
+    private Set<Long> replayedReferences(Outbox.Record<?> record) {
+        switch (record.getKind()) {
+            case LEAD:
+            case LEAD_UPDATE:
+                return replayedCustomers;
+            default:
+                return replayedOrders;
+        }
+    }
+
+    /**
+     * Hands everything that was left in the outbox and, if enabled, the dead letters to the
+     * retry lane. The streams only start afterwards, they would list the same orders and
+     * customers again while they are not settled.
+     */
+    private Mono<Void> replayBacklog() {
+        return Mono.fromCallable(() -> {
+                List<Outbox.Record<?>> records = new LinkedList<>(outbox.takeRecovered());
+                if (appProps.getRetry().isReplayDeadLetters())
+                    records.addAll(deadLetterQueue.replayInto(outbox));
+
+                return records;
+            })
+            .subscribeOn(Schedulers.boundedElastic())
+            .doOnNext(records -> records.forEach(record -> {
+                replayedReferences(record).add(record.getReference());
+                scheduleRetry(record);
+            }))
+            .doOnError(e -> logger.error("Failed to replay the outbox backlog", e))
+            .onErrorResume(e -> Mono.empty())
+            .then()
+            .doFinally(signal -> backlogReplayed.tryEmitEmpty());
+    }
+
+    private Disposable startCustomerStream() {
+        return customerStream()
+            .subscribe(lse -> {
+                logger.info("Finished handling lead: {} of shop {}", lse.getMbLead().getEmail(), shop);
+            });
+    }
+
+    private Flux<LeadStreamElement> customerStream() {
+        Flux<CustomerListItem> customerStream = customerStreamFactory.create();
+
+        return backlogReplayed.asMono()
+            .thenMany(customerStream)
+            .filter(cli -> {
+                if (!replayedCustomers.contains(cli.getId()))
+                    return true;
+
+                logger.info("Skip customer {}, its lead is retried from the outbox", cli.getId());
+                customerStreamFactory.acknowledge(cli);
+                return false;
+            })
+            .flatMap(cli -> {
+                try {
+                    return Mono.just(new LeadStreamElement(cli, mapCustomerToLead(cli)));
+                } catch (Throwable e) {
+                    logger.warn("Failed to map customer with id {}", cli.getId(), e);
+                    metrics.mappingFailed(PipelineMetrics.CUSTOMERS);
+                    customerStreamFactory.acknowledge(cli);
+                    return Mono.empty();
+                }
+            })
+            .publishOn(Schedulers.boundedElastic(), mbProps.getDispatch().getQueueCapacity())
+            .map(lse -> lse.setChange(leadIndex.compare(lse.getMbLead())))
+            .filter(lse -> {
+                if (lse.getChange() != Change.UNCHANGED)
+                    return true;
+
+                logger.info("Skip lead {} of customer {}, it was sent already", lse.getMbLead().getEmail(),
+                    lse.getCustomer().getId());
+                customerStreamFactory.acknowledge(lse.getCustomer());
+                return false;
+            })
+            .map(lse -> lse.setOutboxRecord(recordInOutbox(() -> outbox.append(
+                lse.getChange() == Change.CHANGED ? Outbox.Kind.LEAD_UPDATE : Outbox.Kind.LEAD,
+                lse.getCustomer().getId(), lse.getMbLead()))))
+            .flatMap(lse -> (lse.getChange() == Change.CHANGED
+                ? updateLead(DispatchClass.LEAD, lse.getMbLead())
+                : sendLead(DispatchClass.LEAD, lse.getMbLead()))
+                .doOnSuccess(v -> {
+                    acknowledgeOutboxRecord(lse.getOutboxRecord());
+                    customerStreamFactory.acknowledge(lse.getCustomer());
+                })
+                .thenReturn(lse)
+                .onErrorResume(e -> handleFailedDelivery(lse.getOutboxRecord(), e,
+                    () -> customerStreamFactory.acknowledge(lse.getCustomer()))
+                    .then(Mono.empty())), mbProps.getDispatch().getQueueCapacity());
+    }
+
+    private Mono<Void> sendLead(DispatchClass dispatchClass, MBLead lead) {
+        return createLead(dispatchClass, lead)
+            .doOnSuccess(v -> leadIndex.add(lead));
+    }
+
+    /**
+     * Mailbluster rejects a second create of a lead whose names changed, it has to be updated.
+     * Falls back to creating the lead if mailbluster doesn't know it anymore.
+     */
+    private Mono<Void> updateLead(DispatchClass dispatchClass, MBLead lead) {
+        return this.mbDispatcher.dispatch(dispatchClass, () -> mbAPI.updateLead(lead))
+            .then()
+            .onErrorResume(WebClientResponseException.NotFound.class, e -> createLead(dispatchClass, lead))
+            .doOnSuccess(v -> leadIndex.add(lead));
+    }
+
+    private Mono<Void> createLead(DispatchClass dispatchClass, MBLead lead) {
+        return this.mbDispatcher.dispatch(dispatchClass, () -> mbAPI.createLead(lead))
+            .then();
+    }
+
+    private MBLead mapCustomerToLead(CustomerListItem customer) {
+        return new MBLead(
+            customer.getFirstName(),
+            customer.getLastName(),
+            customer.getEmail(),
+            true
+        );
+    }
+
+    public void dispose() {
+        backlogEstimator.dispose();
+        orderStreamDisposable.dispose();
+        customerStreamDisposable.dispose();
+        retryLaneDisposable.dispose();
+    }
+
+    public static class OrderStreamElement {
+        private SWOrder swOrder;
+        private MBOrder mbOrder;
+        private Outbox.Record<MBOrder> outboxRecord;
+        private Change change;
+
+        public OrderStreamElement(SWOrder swOrder, MBOrder mbOrder) {
+            this.swOrder = swOrder;
+            this.mbOrder = mbOrder;
+        }
+
+        public OrderStreamElement(SWOrder swOrder) {
+            this(swOrder, null);
+        }
+
+        public SWOrder getSwOrder() {
+            return swOrder;
+        }
+
+        public OrderStreamElement setSwOrder(SWOrder swOrder) {
+            this.swOrder = swOrder;
+            return this;
+        }
+
+        public MBOrder getMbOrder() {
+            return mbOrder;
+        }
+
+        public OrderStreamElement setMbOrder(MBOrder mbOrder) {
+            this.mbOrder = mbOrder;
+            return this;
+        }
+
+        public Outbox.Record<MBOrder> getOutboxRecord() {
+            return outboxRecord;
+        }
+
+        public OrderStreamElement setOutboxRecord(Outbox.Record<MBOrder> outboxRecord) {
+            this.outboxRecord = outboxRecord;
+            return this;
+        }
+
+        public Change getChange() {
+            return change;
+        }
+
+        public OrderStreamElement setChange(Change change) {
+            this.change = change;
+            return this;
+        }
+    }
+
+    public static class LeadStreamElement {
+        private final CustomerListItem customer;
+        private final MBLead mbLead;
+        private Outbox.Record<MBLead> outboxRecord;
+        private Change change;
+
+        public LeadStreamElement(CustomerListItem customer, MBLead mbLead) {
+            this.customer = customer;
+            this.mbLead = mbLead;
+        }
+
+        public CustomerListItem getCustomer() {
+            return customer;
+        }
+
+        public MBLead getMbLead() {
+            return mbLead;
+        }
+
+        public Outbox.Record<MBLead> getOutboxRecord() {
+            return outboxRecord;
+        }
+
+        public LeadStreamElement setOutboxRecord(Outbox.Record<MBLead> outboxRecord) {
+            this.outboxRecord = outboxRecord;
+            return this;
+        }
+
+        public Change getChange() {
+            return change;
+        }
+
+        public LeadStreamElement setChange(Change change) {
+            this.change = change;
+            return this;
+        }
+    }
+}
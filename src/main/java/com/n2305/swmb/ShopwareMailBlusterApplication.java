@@ -1,17 +1,20 @@
 package com.n2305.swmb;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.n2305.swmb.mailbluster.MailBlusterAPI;
 import com.n2305.swmb.mailbluster.PartnerCampaignIDMapper;
+import com.n2305.swmb.metrics.MicrometerPipelineMetrics;
+import com.n2305.swmb.metrics.PipelineMetrics;
+import com.n2305.swmb.properties.AppProperties;
 import com.n2305.swmb.properties.MailBlusterProperties;
-import com.n2305.swmb.properties.ShopwareProperties;
-import com.n2305.swmb.shopware.FilterQueryParamSerializer;
-import com.n2305.swmb.shopware.ShopwareAPI;
+import com.n2305.swmb.utils.RetryPolicy;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.validator.routines.EmailValidator;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
-import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
 
 import java.time.Clock;
 
@@ -19,40 +22,21 @@ import java.time.Clock;
 public class ShopwareMailBlusterApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(ShopwareMailBlusterApplication.class, args);
-	}
+		SpringApplication application = new SpringApplication(ShopwareMailBlusterApplication.class);
 
-	@Bean
-	public ShopwareAPI shopwareAPI(
-		WebClient.Builder webClientBuilder,
-		ShopwareProperties swProps,
-		ObjectMapper objectMapper,
-		Clock clock
-	) {
-		return new ShopwareAPI(
-			webClientBuilder.baseUrl(swProps.getBaseUri())
-				.defaultHeaders(headers -> headers.setBasicAuth(
-					swProps.getUsername(),
-					swProps.getPassword()
-				))
-				.build(),
-			new FilterQueryParamSerializer(),
-			objectMapper,
-			swProps,
-			clock
-		);
+		// the one-shot backfill doesn't serve http, it doesn't take the port of a sync on the same host
+		boolean backfill = BackfillRunner.MODE.equals(new SimpleCommandLinePropertySource(args).getProperty("mode"));
+		if (backfill)
+			application.setWebApplicationType(WebApplicationType.NONE);
+
+		ConfigurableApplicationContext context = application.run(args);
+		if (backfill)
+			System.exit(SpringApplication.exit(context));
 	}
 
 	@Bean
-	public MailBlusterAPI mailBlusterAPI(
-		WebClient.Builder webClientBuilder,
-		MailBlusterProperties mbProps
-	) {
-		return new MailBlusterAPI(
-			webClientBuilder.baseUrl(mbProps.getBaseUri())
-			.defaultHeaders(headers -> headers.set("Authorization", mbProps.getApiKey()))
-			.build()
-		);
+	public RetryPolicy retryPolicy(AppProperties appProps) {
+		return new RetryPolicy(appProps.getRetry());
 	}
 
 	@Bean
@@ -65,6 +49,13 @@ public class ShopwareMailBlusterApplication {
 		);
 	}
 
+	@Bean
+	public PipelineMetrics pipelineMetrics(AppProperties appProps, MeterRegistry meterRegistry) {
+		return appProps.getMetrics().isEnabled()
+			? new MicrometerPipelineMetrics(meterRegistry)
+			: PipelineMetrics.NOOP;
+	}
+
 	@Bean
 	public ObjectMapper objectMapper() {
 		return new ObjectMapperFactory().get();
@@ -0,0 +1,507 @@
+package com.n2305.swmb;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.n2305.swmb.mailbluster.MailBlusterAPI;
+import com.n2305.swmb.mailbluster.MailBlusterDispatcher;
+import com.n2305.swmb.mailbluster.PartnerCampaignIDMapper;
+import com.n2305.swmb.mailbluster.ThroughputController;
+import com.n2305.swmb.metrics.BacklogEstimator;
+import com.n2305.swmb.metrics.PipelineMetrics;
+import com.n2305.swmb.properties.AppProperties;
+import com.n2305.swmb.properties.MailBlusterProperties;
+import com.n2305.swmb.properties.ShopwareProperties;
+import com.n2305.swmb.shopware.CustomerStreamFactory;
+import com.n2305.swmb.shopware.FilterQueryParamSerializer;
+import com.n2305.swmb.shopware.OrderExportMarker;
+import com.n2305.swmb.shopware.OrderStreamFactory;
+import com.n2305.swmb.shopware.PartitionedOrderStreamFactory;
+import com.n2305.swmb.shopware.ShopwareAPI;
+import com.n2305.swmb.state.DeadLetterQueue;
+import com.n2305.swmb.state.FileNodeRegistry;
+import com.n2305.swmb.state.FilePartitionCoordinator;
+import com.n2305.swmb.state.LeadIndex;
+import com.n2305.swmb.state.OrderHashIndex;
+import com.n2305.swmb.state.Outbox;
+import com.n2305.swmb.state.SegmentLog;
+import com.n2305.swmb.state.StateStore;
+import com.n2305.swmb.utils.RetryPolicy;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import org.apache.commons.validator.routines.EmailValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Builds the sync of every configured shop. Each shop gets its own shopware api, state, outbox,
+ * dead letters and export marker in its own state folder, so a failing shop doesn't hold up the
+ * others. Shops that feed the same mailbluster account share its api, rate limiter and lead
+ * index. All of them run on the shared schedulers and the same http client event loop.
+ */
+@Component
+public class SyncFactory implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(SyncFactory.class);
+
+    private final ShopwareProperties swProps;
+    private final MailBlusterProperties mbProps;
+    private final AppProperties appProps;
+    private final WebClient.Builder webClientBuilder;
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+    private final EmailValidator emailValidator;
+    private final RetryPolicy retryPolicy;
+    private final PartnerCampaignIDMapper partnerCampaignIDMapper;
+    private final PipelineMetrics metrics;
+    private final Map<String, Account> accounts = new HashMap<>();
+    private final Deque<AutoCloseable> closeables = new ArrayDeque<>();
+    private BackfillRange backfillRange;
+
+    public SyncFactory(
+        ShopwareProperties swProps,
+        MailBlusterProperties mbProps,
+        AppProperties appProps,
+        WebClient.Builder webClientBuilder,
+        ObjectMapper objectMapper,
+        Clock clock,
+        EmailValidator emailValidator,
+        RetryPolicy retryPolicy,
+        PartnerCampaignIDMapper partnerCampaignIDMapper,
+        PipelineMetrics metrics
+    ) {
+        this.swProps = swProps;
+        this.mbProps = mbProps;
+        this.appProps = appProps;
+        this.webClientBuilder = webClientBuilder;
+        this.objectMapper = objectMapper;
+        this.clock = clock;
+        this.emailValidator = emailValidator;
+        this.retryPolicy = retryPolicy;
+        this.partnerCampaignIDMapper = partnerCampaignIDMapper;
+        this.metrics = metrics;
+    }
+
+    /**
+     * The configured shops, without any the top level settings are the shop named default.
+     */
+    public List<ShopwareProperties.Shop> getShops() {
+        ShopwareProperties.DetailFetch detailFetch = swProps.getDetailFetch();
+        if (detailFetch.getMode() == ShopwareProperties.DetailFetch.Mode.BULK
+            && (detailFetch.getBulkPath() == null || detailFetch.getBulkPath().isBlank()))
+            throw new IllegalStateException("The bulk detail fetch needs the shopware.detail-fetch.bulk-path of a "
+                + "plugin endpoint that returns complete orders, /api/orders only lists them");
+
+        if (swProps.getShops().isEmpty())
+            return List.of(new ShopwareProperties.Shop().setName(ShopwareProperties.Shop.DEFAULT_NAME));
+
+        Set<String> names = new HashSet<>();
+        for (ShopwareProperties.Shop shop : swProps.getShops()) {
+            if (shop.getName() == null || shop.getName().isBlank())
+                throw new IllegalStateException("Every shop needs a name");
+            if (!names.add(shop.getName()))
+                throw new IllegalStateException("Shop " + shop.getName() + " is configured twice");
+            if (mbProps.getAccount(shop.getMailblusterAccount()).isEmpty())
+                throw new IllegalStateException("Shop " + shop.getName() + " uses the unknown mailbluster account "
+                    + shop.getMailblusterAccount());
+        }
+
+        return swProps.getShops();
+    }
+
+    public synchronized ShopSync create(ShopwareProperties.Shop shop) throws IOException {
+        useRange(null);
+
+        ShopwareProperties shopProps = swProps.forShop(shop);
+        PipelineMetrics shopMetrics = metrics.forShop(shop.getName());
+        Path stateFolder = shopStateFolder(shop.getName());
+        Files.createDirectories(stateFolder);
+
+        ShopwareAPI shopwareAPI = createShopwareAPI(shopProps, shopMetrics);
+
+        StateStore stateStore = new StateStore(stateFolder, appProps.getStateFlushInterval());
+        closeables.push(stateStore);
+
+        Account account = account(shop.getMailblusterAccount());
+
+        return createShopSync(
+            shop,
+            stateFolder,
+            shopwareAPI,
+            shopProps,
+            shopMetrics,
+            account,
+            appProps.getBackfill().isPartitioned()
+                ? createPartitionedOrderStreamFactory(shop.getName(), shopwareAPI, shopProps, shopMetrics)
+                : new OrderStreamFactory(
+                    shopwareAPI, shopProps, emailValidator, stateStore, retryPolicy, shopMetrics, List.of()),
+            new CustomerStreamFactory(shopwareAPI, shopProps, emailValidator, stateStore, shopMetrics, List.of())
+        );
+    }
+
+    /**
+     * Builds the one-shot backfill of a shop. Its whole state, including the lead index of the
+     * account, lives in a state folder of the range, so it resumes where the last backfill of the
+     * same range stopped and leaves the cursors and files of a running sync alone. The lead index
+     * of the sync is only read, to skip the leads the sync sent before. A factory either builds
+     * syncs or backfills of a single range.
+     */
+    public synchronized ShopBackfill createBackfill(ShopwareProperties.Shop shop, BackfillRange range)
+        throws IOException {
+        useRange(range);
+
+        ShopwareProperties shopProps = swProps.forShop(shop);
+        PipelineMetrics shopMetrics = metrics.forShop(shop.getName());
+        Path stateFolder = shopStateFolder(shop.getName());
+        Files.createDirectories(stateFolder);
+
+        ShopwareAPI shopwareAPI = createShopwareAPI(shopProps, shopMetrics);
+
+        // the backfill saves its checkpoints every n records, this is only the time limit
+        StateStore checkpoints = new StateStore(stateFolder, appProps.getBackfill().getProgressInterval());
+        closeables.push(checkpoints);
+
+        OrderStreamFactory orderStreamFactory = new OrderStreamFactory(
+            shopwareAPI, shopProps, emailValidator, checkpoints, retryPolicy, shopMetrics, range.getOrderFilters());
+        CustomerStreamFactory customerStreamFactory = new CustomerStreamFactory(
+            shopwareAPI, shopProps, emailValidator, checkpoints, shopMetrics, range.getCustomerFilters());
+
+        ShopSync shopSync = createShopSync(
+            shop,
+            stateFolder,
+            shopwareAPI,
+            shopProps,
+            shopMetrics,
+            account(shop.getMailblusterAccount()),
+            orderStreamFactory,
+            customerStreamFactory
+        );
+
+        return new ShopBackfill(
+            shop.getName(),
+            range,
+            shopSync,
+            orderStreamFactory,
+            customerStreamFactory,
+            checkpoints,
+            appProps.getBackfill()
+        );
+    }
+
+    private void useRange(BackfillRange range) {
+        if (!accounts.isEmpty() && !Objects.equals(backfillRange, range))
+            throw new IllegalStateException("The sync factory was used for " + (backfillRange == null
+                ? "the sync" : "the backfill from " + backfillRange) + " already");
+
+        backfillRange = range;
+    }
+
+    private ShopwareAPI createShopwareAPI(ShopwareProperties shopProps, PipelineMetrics shopMetrics) {
+        return new ShopwareAPI(
+            webClientBuilder.clone()
+                .baseUrl(shopProps.getBaseUri())
+                .defaultHeaders(headers -> headers.setBasicAuth(
+                    shopProps.getUsername(),
+                    shopProps.getPassword()
+                ))
+                .build(),
+            new FilterQueryParamSerializer(),
+            objectMapper,
+            shopProps,
+            clock,
+            shopMetrics
+        );
+    }
+
+    private ShopSync createShopSync(
+        ShopwareProperties.Shop shop,
+        Path stateFolder,
+        ShopwareAPI shopwareAPI,
+        ShopwareProperties shopProps,
+        PipelineMetrics shopMetrics,
+        Account account,
+        OrderStreamFactory orderStreamFactory,
+        CustomerStreamFactory customerStreamFactory
+    ) throws IOException {
+        Outbox outbox = new Outbox(
+            new SegmentLog(stateFolder.resolve("outbox"), (int) appProps.getOutbox().getSegmentSize().toBytes()),
+            objectMapper,
+            appProps.getStateFlushInterval()
+        );
+        closeables.push(outbox);
+
+        OrderHashIndex orderHashIndex = new OrderHashIndex(
+            stateFolder,
+            appProps.getStateFlushInterval(),
+            appProps.getOrderIndex().getMergeThreshold()
+        );
+        closeables.push(orderHashIndex);
+
+        OrderExportMarker exportMarker = new OrderExportMarker(
+            shopwareAPI, shopProps.getExportBatch(), retryPolicy, Schedulers.parallel(), shopMetrics);
+        closeables.push(exportMarker::close);
+
+        BacklogEstimator backlogEstimator = new BacklogEstimator(
+            shopwareAPI,
+            exportMarker::getMarkedCount,
+            appProps.getBacklog(),
+            clock
+        );
+        shopMetrics.registerBacklogEstimator(backlogEstimator);
+        closeables.push(backlogEstimator::dispose);
+
+        logger.info("Created sync of shop {} with state in {}, sending to mailbluster account {}",
+            shop.getName(), stateFolder, shop.getMailblusterAccount());
+
+        return new ShopSync(
+            shop.getName(),
+            orderStreamFactory,
+            customerStreamFactory,
+            mbProps,
+            account.api,
+            account.dispatcher,
+            exportMarker,
+            partnerCampaignIDMapper,
+            outbox,
+            appProps,
+            retryPolicy,
+            new DeadLetterQueue(stateFolder, objectMapper, clock),
+            shopMetrics,
+            backlogEstimator,
+            account.leadIndex,
+            orderHashIndex
+        );
+    }
+
+    /**
+     * The backfill nodes coordinate in a folder per shop.
+     */
+    private OrderStreamFactory createPartitionedOrderStreamFactory(
+        String shop,
+        ShopwareAPI shopwareAPI,
+        ShopwareProperties shopProps,
+        PipelineMetrics shopMetrics
+    ) {
+        AppProperties.Backfill backfillProps = appProps.getBackfill();
+        Path coordinationFolder = coordinationFolder()
+            .orElseThrow(() -> new IllegalStateException("The partitioned backfill needs a coordination folder"));
+
+        PartitionedOrderStreamFactory orderStreamFactory = new PartitionedOrderStreamFactory(
+            shopwareAPI,
+            shopProps,
+            emailValidator,
+            retryPolicy,
+            shopMetrics,
+            new FilePartitionCoordinator(
+                coordinationFolder.resolve("shops").resolve(shop),
+                nodeId(),
+                backfillProps.getLeaseDuration(),
+                clock
+            ),
+            backfillProps
+        );
+        closeables.push(orderStreamFactory);
+
+        logger.info("Backfill shop {} as node {}", shop, nodeId());
+
+        return orderStreamFactory;
+    }
+
+    private Optional<Path> coordinationFolder() {
+        return Optional.ofNullable(appProps.getBackfill().getCoordinationFolderPath())
+            .filter(path -> !path.isBlank())
+            .map(Path::of);
+    }
+
+    private String nodeId() {
+        return Optional.ofNullable(appProps.getBackfill().getNodeId())
+            .filter(id -> !id.isBlank())
+            .orElseGet(() -> ManagementFactory.getRuntimeMXBean().getName());
+    }
+
+    /**
+     * The shop named default keeps the top level state folder, a single shop setup can be moved
+     * into the shop list without losing its state.
+     */
+    private Path shopStateFolder(String shop) {
+        Path root = stateRoot();
+
+        return ShopwareProperties.Shop.DEFAULT_NAME.equals(shop) ? root : root.resolve("shops").resolve(shop);
+    }
+
+    /**
+     * The configured state folder, for a backfill the folder of its range in there.
+     */
+    private Path stateRoot() {
+        Path root = Path.of(appProps.getStateFolderPath());
+
+        return backfillRange == null ? root : root.resolve("backfill").resolve(backfillRange.getName());
+    }
+
+    private Account account(String name) throws IOException {
+        Account account = accounts.get(name);
+        if (account == null) {
+            account = createAccount(mbProps.getAccount(name)
+                .orElseThrow(() -> new IllegalStateException("Unknown mailbluster account " + name)));
+            accounts.put(name, account);
+        }
+
+        return account;
+    }
+
+    private Account createAccount(MailBlusterProperties.Account accountProps) throws IOException {
+        MailBlusterAPI api = new MailBlusterAPI(
+            webClientBuilder.clone()
+                .baseUrl(mbProps.getBaseUri())
+                .defaultHeaders(headers -> headers.set("Authorization", accountProps.getApiKey()))
+                .build(),
+            metrics
+        );
+
+        int requestsPerMinute = Optional.ofNullable(accountProps.getRequestsPerMinute())
+            .orElse(mbProps.getRequestsPerMinute());
+        if (backfillRange != null)
+            requestsPerMinute = backfillRequestsPerMinute(accountProps.getName(), requestsPerMinute);
+        RateLimiterConfig rlc = RateLimiterConfig.custom()
+            .limitForPeriod(requestsPerMinute)
+            .limitRefreshPeriod(Duration.ofSeconds(65))
+            .timeoutDuration(Duration.ZERO)
+            .build();
+
+        RateLimiter rateLimiter = RateLimiter.of("mailbluster-" + accountProps.getName(), rlc);
+
+        ThroughputController throughputController = new ThroughputController(rateLimiter, mbProps.getAdaptive(), clock);
+        MailBlusterDispatcher dispatcher = new MailBlusterDispatcher(
+            rateLimiter,
+            throughputController,
+            mbProps.getDispatch(),
+            Schedulers.parallel(),
+            metrics
+        );
+        closeables.push(dispatcher::dispose);
+
+        LeadIndex leadIndex = new LeadIndex(
+            accountStateFolder(stateRoot(), accountProps.getName()),
+            backfillRange == null
+                ? null
+                : accountStateFolder(Path.of(appProps.getStateFolderPath()), accountProps.getName()),
+            appProps.getStateFlushInterval(),
+            appProps.getLeadIndex().getMergeThreshold()
+        );
+        closeables.push(leadIndex);
+
+        Account account = new Account(api, dispatcher, leadIndex, throughputController, requestsPerMinute);
+        coordinationFolder()
+            .ifPresent(folder -> shareBudget(account, folder.resolve("accounts").resolve(accountProps.getName())));
+
+        return account;
+    }
+
+    private static Path accountStateFolder(Path root, String account) {
+        return MailBlusterProperties.DEFAULT_ACCOUNT.equals(account)
+            ? root
+            : root.resolve("accounts").resolve(account);
+    }
+
+    /**
+     * The one-shot backfill keeps to its configured share of the budget, the sync on the same
+     * account has to leave that share free. With a coordination folder they split the budget
+     * among themselves, without either the sync has to be stopped.
+     */
+    private int backfillRequestsPerMinute(String account, int requestsPerMinute) {
+        Integer share = appProps.getBackfill().getRequestsPerMinute();
+        if (share != null)
+            return Math.max(1, Math.min(share, requestsPerMinute));
+
+        if (coordinationFolder().isEmpty()) {
+            logger.warn("The backfill uses the whole budget of mailbluster account {}, stop the sync of its shops "
+                + "or set app.backfill.requests-per-minute or a coordination folder", account);
+        }
+
+        return requestsPerMinute;
+    }
+
+    /**
+     * Every process with the coordination folder, the regular sync, the backfill nodes and the
+     * one-shot backfill, announces itself per account, so together they stay within the budget
+     * of the account. A process that leaves or dies frees its share for the others.
+     */
+    private void shareBudget(Account account, Path folder) {
+        AppProperties.Backfill backfillProps = appProps.getBackfill();
+        FileNodeRegistry registry = new FileNodeRegistry(folder, nodeId(), backfillProps.getLeaseDuration(), clock);
+        closeables.push(registry);
+
+        Disposable heartbeat = Flux.interval(Duration.ZERO, backfillProps.getHeartbeatInterval(), Schedulers.parallel())
+            .onBackpressureDrop()
+            .concatMap(n -> Mono.fromCallable(registry::heartbeat)
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnError(e -> logger.warn("Failed to renew the budget share in {}", folder, e))
+                .onErrorResume(e -> Mono.empty()), 1)
+            .distinctUntilChanged()
+            .subscribe(nodes -> {
+                logger.info("Share the budget of {} with {} processes", folder, nodes);
+                account.shareBudget(nodes);
+            });
+        closeables.push(heartbeat::dispose);
+    }
+
+    /**
+     * Closes everything in reverse order of creation, the syncs have to be disposed before.
+     */
+    @Override
+    public synchronized void destroy() {
+        while (!closeables.isEmpty()) {
+            try {
+                closeables.pop().close();
+            } catch (Exception e) {
+                logger.error("Failed to close sync component", e);
+            }
+        }
+    }
+
+    private static class Account {
+        private final MailBlusterAPI api;
+        private final MailBlusterDispatcher dispatcher;
+        private final LeadIndex leadIndex;
+        private final ThroughputController throughputController;
+        private final int requestsPerMinute;
+
+        private Account(
+            MailBlusterAPI api,
+            MailBlusterDispatcher dispatcher,
+            LeadIndex leadIndex,
+            ThroughputController throughputController,
+            int requestsPerMinute
+        ) {
+            this.api = api;
+            this.dispatcher = dispatcher;
+            this.leadIndex = leadIndex;
+            this.throughputController = throughputController;
+            this.requestsPerMinute = requestsPerMinute;
+        }
+
+        private void shareBudget(int nodes) {
+            throughputController.setCeiling(Math.max(1, requestsPerMinute / nodes));
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.n2305.swmb.mailbluster;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import org.springframework.util.Assert;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -10,7 +12,13 @@ public class MBLead {
     private final String email;
     private final boolean subscribed;
 
-    public MBLead(String firstName, String lastName, String email, boolean subscribed) {
+    @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
+    public MBLead(
+        @JsonProperty("firstName") String firstName,
+        @JsonProperty("lastName") String lastName,
+        @JsonProperty("email") String email,
+        @JsonProperty("subscribed") boolean subscribed
+    ) {
         Assert.notNull(email, "Got empty email");
 
         this.firstName = firstName;
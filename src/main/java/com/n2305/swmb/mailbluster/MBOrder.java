@@ -1,7 +1,11 @@
 package com.n2305.swmb.mailbluster;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 import org.apache.commons.text.WordUtils;
 
 import java.util.List;
@@ -9,6 +13,7 @@ import java.util.Map;
 import java.util.Optional;
 
 @JsonInclude(Include.NON_NULL)
+@JsonDeserialize(builder = MBOrder.Builder.class)
 public class MBOrder {
     private final String id;
     private final Customer customer;
@@ -33,6 +38,7 @@ public class MBOrder {
         this.items = items;
     }
 
+    @JsonPOJOBuilder
     public static class Builder {
         String id;
         Customer customer;
@@ -108,6 +114,7 @@ public class MBOrder {
     }
 
     @JsonInclude(Include.NON_NULL)
+    @JsonDeserialize(builder = Customer.Builder.class)
     public static class Customer {
         private final String firstName;
         private final String lastName;
@@ -138,6 +145,7 @@ public class MBOrder {
             this.tags = tags;
         }
 
+        @JsonPOJOBuilder
         public static class Builder {
             String firstName;
             String lastName;
@@ -250,7 +258,13 @@ public class MBOrder {
         private final double price;
         private final int quantity;
 
-        public Product(String id, String name, double price, int quantity) {
+        @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
+        public Product(
+            @JsonProperty("id") String id,
+            @JsonProperty("name") String name,
+            @JsonProperty("price") double price,
+            @JsonProperty("quantity") int quantity
+        ) {
             this.id = id;
             this.name = name;
             this.price = price;
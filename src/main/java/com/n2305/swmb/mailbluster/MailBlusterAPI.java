@@ -2,80 +2,141 @@ package com.n2305.swmb.mailbluster;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.n2305.swmb.metrics.PipelineMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.reactive.function.BodyInserter;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import reactor.core.publisher.Mono;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
 public class MailBlusterAPI {
     private static final Logger logger = LoggerFactory.getLogger(MailBlusterAPI.class);
 
     private final WebClient httpClient;
-    private final ObjectMapper objectMapper;
+    private final ObjectWriter orderWriter;
+    private final ObjectWriter leadWriter;
+    private final PipelineMetrics metrics;
+
+    public MailBlusterAPI(WebClient httpClient, PipelineMetrics metrics) {
+        ObjectMapper objectMapper = new ObjectMapper();
 
-    public MailBlusterAPI(WebClient httpClient) {
         this.httpClient = httpClient;
-        this.objectMapper = new ObjectMapper();
+        this.orderWriter = objectMapper.writerFor(MBOrder.class);
+        this.leadWriter = objectMapper.writerFor(MBLead.class);
+        this.metrics = metrics;
     }
 
     public Mono<ResponseEntity<Void>> createOrder(MBOrder order) {
-        try {
-            String jsonOrder = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(order);
-
-            return httpClient
-                .post()
-                .uri(uriBuilder -> uriBuilder.path("/api/orders").build())
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(BodyInserters.fromValue(jsonOrder))
-                .retrieve()
-                .toBodilessEntity()
-                .doOnError(
-                    e -> !(e instanceof WebClientResponseException),
-                    e -> logger.warn("Failed to create order", e)
-                )
-                .doOnError(WebClientResponseException.class, e -> {
-                    logger.warn(
-                        "Received WebClientResponseException for order {}:\nRequest:\n{}\nResponse:\n{}",
-                        order.getId(),
-                        jsonOrder,
-                        String.format("%s\n%s", e.getHeaders().toString(), e.getResponseBodyAsString())
-                    );
-                });
-        } catch (JsonProcessingException e) {
-            return Mono.error(e);
-        }
+        return sendOrder(httpClient
+            .post()
+            .uri(uriBuilder -> uriBuilder.path("/api/orders").build()), order);
+    }
+
+    public Mono<ResponseEntity<Void>> updateOrder(MBOrder order) {
+        return sendOrder(httpClient
+            .put()
+            .uri(uriBuilder -> uriBuilder.path("/api/orders/{id}").build(order.getId())), order);
+    }
+
+    private Mono<ResponseEntity<Void>> sendOrder(WebClient.RequestBodySpec request, MBOrder order) {
+        return metrics.timeMailBlusterSend(PipelineMetrics.ORDERS, request
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(jsonBody(orderWriter, order))
+            .retrieve()
+            .toBodilessEntity())
+            .doOnError(
+                e -> !(e instanceof WebClientResponseException),
+                e -> logger.warn("Failed to send order", e)
+            )
+            .doOnError(WebClientResponseException.class, e -> {
+                logger.warn(
+                    "Received WebClientResponseException for order {}:\nRequest:\n{}\nResponse:\n{}",
+                    order.getId(),
+                    describe(orderWriter, order),
+                    String.format("%s\n%s", e.getHeaders().toString(), e.getResponseBodyAsString())
+                );
+            });
     }
 
     public Mono<ResponseEntity<Void>> createLead(MBLead lead) {
+        return sendLead(httpClient
+            .post()
+            .uri(uriBuilder -> uriBuilder.path("/api/leads").build()), lead);
+    }
+
+    /**
+     * Mailbluster addresses a lead by the md5 hash of its lowercased email.
+     */
+    public Mono<ResponseEntity<Void>> updateLead(MBLead lead) {
+        String leadHash = DigestUtils.md5DigestAsHex(lead.getEmail().trim().toLowerCase()
+            .getBytes(StandardCharsets.UTF_8));
+
+        return sendLead(httpClient
+            .put()
+            .uri(uriBuilder -> uriBuilder.path("/api/leads/{hash}").build(leadHash)), lead);
+    }
+
+    private Mono<ResponseEntity<Void>> sendLead(WebClient.RequestBodySpec request, MBLead lead) {
+        return metrics.timeMailBlusterSend(PipelineMetrics.LEADS, request
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(jsonBody(leadWriter, lead))
+            .retrieve()
+            .toBodilessEntity())
+            .doOnError(
+                e -> !(e instanceof WebClientException),
+                e -> logger.warn("Failed to send lead", e)
+            )
+            .doOnError(WebClientResponseException.class, e -> {
+                logger.warn(
+                    "Received WebClientResponseException for lead {}:\nRequest:\n{}\nResponse:\n{}",
+                    lead.getEmail(),
+                    describe(leadWriter, lead),
+                    String.format("%s\n%s", e.getHeaders().toString(), e.getResponseBodyAsString())
+                );
+            });
+    }
+
+    /**
+     * Serializes the value straight into a buffer of the request's buffer factory, pooled for
+     * reactor netty, without an intermediate string.
+     */
+    static <T> BodyInserter<T, ClientHttpRequest> jsonBody(ObjectWriter writer, T value) {
+        return (request, context) -> request.writeWith(Mono.fromCallable(() -> {
+            DataBuffer buffer = request.bufferFactory().allocateBuffer();
+            boolean written = false;
+
+            try (OutputStream outputStream = buffer.asOutputStream()) {
+                writer.writeValue(outputStream, value);
+                written = true;
+
+                return buffer;
+            } finally {
+                if (!written)
+                    DataBufferUtils.release(buffer);
+            }
+        }).doOnDiscard(DataBuffer.class, DataBufferUtils::release));
+    }
+
+    /**
+     * Only serialized again if a failed request has to be logged.
+     */
+    private static String describe(ObjectWriter writer, Object value) {
         try {
-            String jsonLead = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(lead);
-
-            return httpClient
-                .post()
-                .uri(uriBuilder -> uriBuilder.path("/api/leads").build())
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(BodyInserters.fromValue(jsonLead))
-                .retrieve()
-                .toBodilessEntity()
-                .doOnError(
-                    e -> !(e instanceof WebClientException),
-                    e -> logger.warn("Failed to create lead", e)
-                )
-                .doOnError(WebClientResponseException.class, e -> {
-                    logger.warn(
-                        "Received WebClientResponseException for lead {}:\nRequest:\n{}\nResponse:\n{}",
-                        lead.getEmail(),
-                        jsonLead,
-                        String.format("%s\n%s", e.getHeaders().toString(), e.getResponseBodyAsString())
-                    );
-                });
+            return writer.withDefaultPrettyPrinter().writeValueAsString(value);
         } catch (JsonProcessingException e) {
-            return Mono.error(e);
+            return String.valueOf(value);
         }
     }
 }
@@ -0,0 +1,349 @@
+package com.n2305.swmb.mailbluster;
+
+import com.n2305.swmb.metrics.PipelineMetrics;
+import com.n2305.swmb.properties.MailBlusterProperties;
+import com.n2305.swmb.utils.RateLimitElements;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Central queue in front of the mailbluster api. Every call has to wait for a permission
+ * of the shared rate limiter, the queued calls are then picked by a smooth weighted round
+ * robin between the dispatch classes or strictly by priority if configured.
+ *
+ * Every response is reported to the throughput controller, throttled calls are put back
+ * at the head of their queue and sent again once the controller lifts the pause.
+ */
+public class MailBlusterDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(MailBlusterDispatcher.class);
+
+    private final RateLimiter rateLimiter;
+    private final ThroughputController throughputController;
+    private final Scheduler scheduler;
+    private final boolean strictOrderPriority;
+    private final Map<DispatchClass, ClassQueue> queues = new EnumMap<>(DispatchClass.class);
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile boolean acquiringPermission;
+    private volatile boolean permissionAvailable;
+    private volatile boolean disposed;
+    private Disposable permissionDisposable;
+
+    public MailBlusterDispatcher(
+        RateLimiter rateLimiter,
+        ThroughputController throughputController,
+        MailBlusterProperties.Dispatch dispatchProps,
+        Scheduler scheduler,
+        PipelineMetrics metrics
+    ) {
+        this.rateLimiter = rateLimiter;
+        this.throughputController = throughputController;
+        this.scheduler = scheduler;
+        this.strictOrderPriority = dispatchProps.isStrictOrderPriority();
+
+        queues.put(DispatchClass.ORDER, new ClassQueue(DispatchClass.ORDER, dispatchProps.getOrderWeight(), metrics));
+        queues.put(DispatchClass.LEAD, new ClassQueue(DispatchClass.LEAD, dispatchProps.getLeadWeight(), metrics));
+        queues.put(DispatchClass.RETRY, new ClassQueue(DispatchClass.RETRY, dispatchProps.getRetryWeight(), metrics));
+    }
+
+    public <T> Mono<T> dispatch(DispatchClass dispatchClass, Supplier<Mono<T>> call) {
+        return Mono.create(sink -> {
+            Task<T> task = new Task<>(dispatchClass, call, sink);
+            sink.onCancel(task::cancel);
+
+            queues.get(dispatchClass).offer(task);
+            drain();
+        });
+    }
+
+    public int getQueueDepth(DispatchClass dispatchClass) {
+        return queues.get(dispatchClass).depth.get();
+    }
+
+    public long getDispatchedCount(DispatchClass dispatchClass) {
+        return queues.get(dispatchClass).dispatched.get();
+    }
+
+    public Duration getAverageWaitTime(DispatchClass dispatchClass) {
+        ClassQueue queue = queues.get(dispatchClass);
+        long dispatched = queue.dispatched.get();
+
+        return dispatched == 0
+            ? Duration.ZERO
+            : Duration.ofNanos(queue.totalWaitNanos.get() / dispatched);
+    }
+
+    public Duration getLastWaitTime(DispatchClass dispatchClass) {
+        return Duration.ofNanos(queues.get(dispatchClass).lastWaitNanos);
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public ThroughputController getThroughputController() {
+        return throughputController;
+    }
+
+    public void dispose() {
+        disposed = true;
+
+        Optional.ofNullable(permissionDisposable)
+            .ifPresent(Disposable::dispose);
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0)
+            return;
+
+        int missed = 1;
+        do {
+            while (!disposed) {
+                if (permissionAvailable) {
+                    Task<?> task = pollNextTask();
+                    if (task == null)
+                        break;
+
+                    permissionAvailable = false;
+                    task.start();
+                    continue;
+                }
+
+                if (!acquiringPermission && hasQueuedTasks()) {
+                    acquiringPermission = true;
+                    permissionDisposable = acquirePermission()
+                        .subscribe(null, this::onPermissionError, this::onPermissionAcquired);
+                }
+
+                break;
+            }
+
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private Mono<Void> acquirePermission() {
+        Mono<Void> permission = RateLimitElements.acquirePermission(rateLimiter, scheduler);
+        Duration pause = throughputController.getRemainingPause();
+
+        return pause.isZero()
+            ? permission
+            : Mono.delay(pause, scheduler).then(permission);
+    }
+
+    private void requeue(Task<?> task) {
+        queues.get(task.dispatchClass).offerFirst(task);
+        drain();
+    }
+
+    private void recordResponse(Object value) {
+        if (value instanceof ResponseEntity) {
+            ResponseEntity<?> response = (ResponseEntity<?>) value;
+            throughputController.onResponse(response.getStatusCodeValue(), response.getHeaders());
+        }
+    }
+
+    private void recordError(Throwable e) {
+        if (e instanceof WebClientResponseException) {
+            WebClientResponseException wcre = (WebClientResponseException) e;
+            throughputController.onResponse(wcre.getRawStatusCode(), wcre.getHeaders());
+        }
+    }
+
+    private void onPermissionAcquired() {
+        // the controller may have been throttled while waiting for this permission
+        Duration pause = throughputController.getRemainingPause();
+        if (!pause.isZero()) {
+            permissionDisposable = Mono.delay(pause, scheduler)
+                .subscribe(n -> onPermissionAcquired());
+
+            return;
+        }
+
+        permissionAvailable = true;
+        acquiringPermission = false;
+
+        drain();
+    }
+
+    private void onPermissionError(Throwable e) {
+        logger.warn("Failed to acquire rate limiter permission", e);
+        acquiringPermission = false;
+
+        drain();
+    }
+
+    private boolean hasQueuedTasks() {
+        return queues.values().stream()
+            .anyMatch(q -> q.depth.get() > 0);
+    }
+
+    private Task<?> pollNextTask() {
+        DispatchClass dispatchClass;
+        while ((dispatchClass = selectClass()) != null) {
+            Task<?> task = queues.get(dispatchClass).poll();
+            if (task != null)
+                return task;
+        }
+
+        return null;
+    }
+
+    private DispatchClass selectClass() {
+        if (strictOrderPriority) {
+            for (DispatchClass dispatchClass : DispatchClass.values()) {
+                if (queues.get(dispatchClass).depth.get() > 0)
+                    return dispatchClass;
+            }
+
+            return null;
+        }
+
+        DispatchClass selected = null;
+        int totalWeight = 0;
+
+        for (DispatchClass dispatchClass : DispatchClass.values()) {
+            ClassQueue queue = queues.get(dispatchClass);
+            if (queue.depth.get() == 0)
+                continue;
+
+            queue.currentWeight += queue.weight;
+            totalWeight += queue.weight;
+
+            if (selected == null || queue.currentWeight > queues.get(selected).currentWeight)
+                selected = dispatchClass;
+        }
+
+        if (selected != null)
+            queues.get(selected).currentWeight -= totalWeight;
+
+        return selected;
+    }
+
+    /**
+     * Declaration order defines the priority used with strict order priority.
+     */
+    public enum DispatchClass {
+        ORDER,
+        LEAD,
+        RETRY
+    }
+
+    private static class ClassQueue {
+        private final DispatchClass dispatchClass;
+        private final int weight;
+        private final PipelineMetrics metrics;
+        private final ConcurrentLinkedDeque<Task<?>> tasks = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final AtomicLong dispatched = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+
+        // only touched while draining
+        private int currentWeight;
+        private volatile long lastWaitNanos;
+
+        ClassQueue(DispatchClass dispatchClass, int weight, PipelineMetrics metrics) {
+            this.dispatchClass = dispatchClass;
+            this.weight = Math.max(1, weight);
+            this.metrics = metrics;
+        }
+
+        void offer(Task<?> task) {
+            tasks.offer(task);
+            depth.incrementAndGet();
+        }
+
+        void offerFirst(Task<?> task) {
+            tasks.offerFirst(task);
+            depth.incrementAndGet();
+        }
+
+        Task<?> poll() {
+            Task<?> task;
+            while ((task = tasks.poll()) != null) {
+                depth.decrementAndGet();
+
+                if (task.cancelled)
+                    continue;
+
+                long waitNanos = System.nanoTime() - task.enqueuedAt;
+                task.enqueuedAt = System.nanoTime();
+                lastWaitNanos = waitNanos;
+                totalWaitNanos.addAndGet(waitNanos);
+                dispatched.incrementAndGet();
+                metrics.recordPermissionWait(dispatchClass, waitNanos);
+
+                return task;
+            }
+
+            return null;
+        }
+    }
+
+    private class Task<T> {
+        private final DispatchClass dispatchClass;
+        private final Supplier<Mono<T>> call;
+        private final MonoSink<T> sink;
+
+        private volatile long enqueuedAt = System.nanoTime();
+        private volatile int throttledAttempts;
+        private volatile boolean cancelled;
+        private volatile Disposable disposable;
+
+        Task(DispatchClass dispatchClass, Supplier<Mono<T>> call, MonoSink<T> sink) {
+            this.dispatchClass = dispatchClass;
+            this.call = call;
+            this.sink = sink;
+        }
+
+        void start() {
+            logger.debug("Dispatch {} after waiting {}ms",
+                dispatchClass, Duration.ofNanos(System.nanoTime() - enqueuedAt).toMillis());
+
+            disposable = Mono.defer(call)
+                .doOnNext(MailBlusterDispatcher.this::recordResponse)
+                .doOnError(MailBlusterDispatcher.this::recordError)
+                .subscribe(sink::success, this::onError, sink::success);
+        }
+
+        void onError(Throwable e) {
+            if (isThrottled(e) && !cancelled && throttledAttempts++ < throughputController.getMaxThrottledRetries()) {
+                logger.info("Requeue throttled {} call, attempt {}", dispatchClass, throttledAttempts);
+                requeue(this);
+
+                return;
+            }
+
+            sink.error(e);
+        }
+
+        private boolean isThrottled(Throwable e) {
+            return e instanceof WebClientResponseException
+                && ((WebClientResponseException) e).getRawStatusCode() == HttpStatus.TOO_MANY_REQUESTS.value();
+        }
+
+        void cancel() {
+            cancelled = true;
+
+            Optional.ofNullable(disposable)
+                .ifPresent(Disposable::dispose);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.n2305.swmb.mailbluster;
+
+import com.n2305.swmb.properties.MailBlusterProperties;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+
+/**
+ * AIMD controller for the mailbluster request rate. Clean responses raise the limit of the
+ * rate limiter step by step up to the configured requests per minute, a throttled response
+ * cuts it down right away and pauses sending as long as the server asks for.
+ */
+public class ThroughputController {
+    private static final Logger logger = LoggerFactory.getLogger(ThroughputController.class);
+
+    static final String RATE_LIMIT_LIMIT = "X-RateLimit-Limit";
+    static final String RATE_LIMIT_REMAINING = "X-RateLimit-Remaining";
+    static final String RATE_LIMIT_RESET = "X-RateLimit-Reset";
+
+    // reset values above are treated as epoch seconds instead of seconds from now
+    private static final long EPOCH_SECONDS_THRESHOLD = 1_000_000_000L;
+
+    private final RateLimiter rateLimiter;
+    private final MailBlusterProperties.Adaptive props;
+    private final Clock clock;
+    private int ceiling;
+
+    private int currentLimit;
+    private int cleanResponses;
+    private volatile Instant pausedUntil = Instant.EPOCH;
+
+    public ThroughputController(RateLimiter rateLimiter, MailBlusterProperties.Adaptive props, Clock clock) {
+        this.rateLimiter = rateLimiter;
+        this.props = props;
+        this.clock = clock;
+        this.ceiling = rateLimiter.getRateLimiterConfig().getLimitForPeriod();
+        this.currentLimit = ceiling;
+    }
+
+    public ThroughputController(RateLimiter rateLimiter, MailBlusterProperties.Adaptive props) {
+        this(rateLimiter, props, Clock.systemUTC());
+    }
+
+    public synchronized void onResponse(int status, HttpHeaders headers) {
+        if (status == HttpStatus.TOO_MANY_REQUESTS.value()) {
+            onThrottled(headers);
+            return;
+        }
+
+        logger.debug("Rate limit headers limit: {} remaining: {} reset: {}",
+            headers.getFirst(RATE_LIMIT_LIMIT),
+            headers.getFirst(RATE_LIMIT_REMAINING),
+            headers.getFirst(RATE_LIMIT_RESET));
+
+        if (parseLong(headers.getFirst(RATE_LIMIT_REMAINING)).filter(r -> r <= 0).isPresent()) {
+            parseReset(headers.getFirst(RATE_LIMIT_RESET))
+                .ifPresent(this::pauseUntil);
+        }
+
+        if (status >= 500)
+            return;
+
+        if (++cleanResponses >= props.getIncreaseAfter()) {
+            cleanResponses = 0;
+            changeLimit(Math.min(ceiling, currentLimit + props.getIncreaseStep()));
+        }
+    }
+
+    public Duration getRemainingPause() {
+        Duration pause = Duration.between(clock.instant(), pausedUntil);
+
+        return pause.isNegative() ? Duration.ZERO : pause;
+    }
+
+    /**
+     * Moves the highest limit, for a budget that is shared with other nodes. A lower ceiling
+     * applies right away, a higher one is approached step by step unless adaptation is off.
+     */
+    public synchronized void setCeiling(int ceiling) {
+        if (ceiling == this.ceiling)
+            return;
+
+        logger.info("Change mailbluster requests per period ceiling from {} to {}", this.ceiling, ceiling);
+
+        this.ceiling = ceiling;
+        if (currentLimit > ceiling || !props.isEnabled()) {
+            currentLimit = ceiling;
+            rateLimiter.changeLimitForPeriod(ceiling);
+        }
+    }
+
+    public synchronized int getCeiling() {
+        return ceiling;
+    }
+
+    public synchronized int getCurrentLimit() {
+        return currentLimit;
+    }
+
+    public int getMaxThrottledRetries() {
+        return props.getMaxThrottledRetries();
+    }
+
+    private void onThrottled(HttpHeaders headers) {
+        cleanResponses = 0;
+
+        Instant until = parseRetryAfter(headers.getFirst(HttpHeaders.RETRY_AFTER))
+            .or(() -> parseReset(headers.getFirst(RATE_LIMIT_RESET)))
+            .orElseGet(() -> clock.instant().plus(props.getDefaultBackoff()));
+
+        pauseUntil(until);
+        changeLimit(Math.max(
+            props.getMinRequestsPerMinute(),
+            (int) Math.floor(currentLimit * props.getDecreaseFactor())
+        ));
+
+        logger.warn("Throttled by mailbluster, pause until {} and continue with {} requests per period",
+            pausedUntil, currentLimit);
+    }
+
+    private void changeLimit(int limit) {
+        if (!props.isEnabled() || limit == currentLimit)
+            return;
+
+        logger.info("Change mailbluster requests per period from {} to {}", currentLimit, limit);
+
+        currentLimit = limit;
+        rateLimiter.changeLimitForPeriod(limit);
+    }
+
+    private void pauseUntil(Instant until) {
+        if (until.isAfter(pausedUntil))
+            pausedUntil = until;
+    }
+
+    private Optional<Instant> parseRetryAfter(String value) {
+        return Optional.ofNullable(value)
+            .flatMap(v -> parseLong(v)
+                .map(seconds -> clock.instant().plusSeconds(seconds))
+                .or(() -> parseHttpDate(v)));
+    }
+
+    private Optional<Instant> parseReset(String value) {
+        return parseLong(value)
+            .map(reset -> reset > EPOCH_SECONDS_THRESHOLD
+                ? Instant.ofEpochSecond(reset)
+                : clock.instant().plusSeconds(reset));
+    }
+
+    private static Optional<Instant> parseHttpDate(String value) {
+        try {
+            return Optional.of(ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+        } catch (DateTimeParseException e) {
+            logger.info("Failed to parse http date: {}", value);
+
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<Long> parseLong(String value) {
+        try {
+            return Optional.ofNullable(value)
+                .map(String::trim)
+                .map(Long::valueOf);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+}
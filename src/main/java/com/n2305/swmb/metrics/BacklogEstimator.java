@@ -0,0 +1,140 @@
+package com.n2305.swmb.metrics;
+
+import com.n2305.swmb.properties.AppProperties;
+import com.n2305.swmb.shopware.ShopwareAPI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Periodically asks shopware how many orders are not exported yet and compares that with the
+ * observed send throughput, a moving average of the sent orders per minute between two polls.
+ * The estimate is logged and published as gauges to size the mailbluster requests per minute.
+ */
+public class BacklogEstimator {
+    private static final Logger logger = LoggerFactory.getLogger(BacklogEstimator.class);
+
+    private final ShopwareAPI api;
+    private final LongSupplier sentOrders;
+    private final AppProperties.Backlog backlogProps;
+    private final Clock clock;
+    private final Scheduler scheduler;
+
+    private volatile long backlog = -1;
+    private volatile OffsetDateTime oldestOrderTime;
+    private volatile double ordersPerMinute = Double.NaN;
+    private long lastSentOrders = -1;
+    private long lastPollNanos;
+    private Disposable pollDisposable;
+
+    public BacklogEstimator(
+        ShopwareAPI api,
+        LongSupplier sentOrders,
+        AppProperties.Backlog backlogProps,
+        Clock clock,
+        Scheduler scheduler
+    ) {
+        this.api = api;
+        this.sentOrders = sentOrders;
+        this.backlogProps = backlogProps;
+        this.clock = clock;
+        this.scheduler = scheduler;
+    }
+
+    public BacklogEstimator(ShopwareAPI api, LongSupplier sentOrders, AppProperties.Backlog backlogProps, Clock clock) {
+        this(api, sentOrders, backlogProps, clock, Schedulers.parallel());
+    }
+
+    public synchronized void start() {
+        if (pollDisposable != null)
+            return;
+
+        pollDisposable = Flux.interval(Duration.ZERO, backlogProps.getInterval(), scheduler)
+            .onBackpressureDrop()
+            .concatMap(n -> poll(), 1)
+            .subscribe();
+    }
+
+    public synchronized void dispose() {
+        Optional.ofNullable(pollDisposable)
+            .ifPresent(Disposable::dispose);
+    }
+
+    Mono<Void> poll() {
+        return api.fetchOrderBacklog()
+            .doOnNext(this::update)
+            .doOnError(e -> logger.warn("Failed to estimate the order backlog", e))
+            .onErrorResume(e -> Mono.empty())
+            .then();
+    }
+
+    private synchronized void update(ShopwareAPI.OrderBacklog orderBacklog) {
+        long now = scheduler.now(TimeUnit.NANOSECONDS);
+        long sent = sentOrders.getAsLong();
+
+        if (lastSentOrders >= 0 && now > lastPollNanos) {
+            double minutes = (now - lastPollNanos) / (double) TimeUnit.MINUTES.toNanos(1);
+            double observed = (sent - lastSentOrders) / minutes;
+
+            ordersPerMinute = Double.isNaN(ordersPerMinute)
+                ? observed
+                : backlogProps.getSmoothing() * observed + (1 - backlogProps.getSmoothing()) * ordersPerMinute;
+        }
+
+        lastSentOrders = sent;
+        lastPollNanos = now;
+        backlog = orderBacklog.getTotal();
+        oldestOrderTime = orderBacklog.getOldestOrderTime();
+
+        logger.info("Order backlog: {} orders, oldest pending since {}, sending {} orders/min, caught up in {}",
+            backlog,
+            oldestOrderTime,
+            Double.isNaN(ordersPerMinute) ? "?" : String.format("%.1f", ordersPerMinute),
+            getEta().map(Duration::toString).orElse("?"));
+    }
+
+    /**
+     * Orders not exported yet, -1 until the first poll succeeded.
+     */
+    public long getBacklog() {
+        return backlog;
+    }
+
+    public Optional<Duration> getOldestPendingAge() {
+        return Optional.ofNullable(oldestOrderTime)
+            .map(orderTime -> Duration.between(orderTime, OffsetDateTime.now(clock)));
+    }
+
+    /**
+     * Moving average of sent orders per minute, NaN until two polls succeeded.
+     */
+    public double getOrdersPerMinute() {
+        return ordersPerMinute;
+    }
+
+    /**
+     * Time until the current backlog is sent at the current throughput, empty if nothing is sent.
+     */
+    public Optional<Duration> getEta() {
+        long backlog = this.backlog;
+        double ordersPerMinute = this.ordersPerMinute;
+
+        if (backlog == 0)
+            return Optional.of(Duration.ZERO);
+        if (backlog < 0 || Double.isNaN(ordersPerMinute) || ordersPerMinute <= 0)
+            return Optional.empty();
+
+        return Optional.of(Duration.ofSeconds((long) Math.ceil(backlog / ordersPerMinute * 60)));
+    }
+}
@@ -0,0 +1,216 @@
+package com.n2305.swmb.metrics;
+
+import com.n2305.swmb.mailbluster.MailBlusterDispatcher.DispatchClass;
+import com.n2305.swmb.properties.ShopwareProperties;
+import com.n2305.swmb.shopware.PagingPublisher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records the pipeline metrics with micrometer. All meters except the per status send timers
+ * are registered upfront, recording is a map lookup and the meter update. Every shop has its
+ * own instance, they share the meters apart from the shop tagged gauges.
+ */
+public class MicrometerPipelineMetrics implements PipelineMetrics {
+    private static final String[] RESOURCES = {ORDERS, CUSTOMERS, LEADS};
+    // index 0 collects calls that failed without a response
+    private static final int STATUS_SLOTS = 600;
+
+    private final MeterRegistry registry;
+    private final String shop;
+    private final Map<String, Outcomes> listTimers = new HashMap<>();
+    private final Map<String, Counter> pages = new HashMap<>();
+    private final Map<String, Counter> mappingFailures = new HashMap<>();
+    private final Map<String, AtomicReference<PagingPublisher<?>>> publishers = new HashMap<>();
+    private final Map<String, AtomicReferenceArray<Timer>> sendTimers = new HashMap<>();
+    private final Map<DispatchClass, Timer> permissionWaitTimers = new EnumMap<>(DispatchClass.class);
+    private final Outcomes detailTimers;
+    private final Outcomes bulkDetailTimers;
+    private final Outcomes exportMarkTimers;
+
+    public MicrometerPipelineMetrics(MeterRegistry registry, String shop) {
+        this.registry = registry;
+        this.shop = shop;
+
+        for (String resource : RESOURCES) {
+            listTimers.put(resource, new Outcomes("swmb.shopware.list", "resource", resource));
+            pages.put(resource, Counter.builder("swmb.shopware.pages")
+                .description("Pages fetched from the shopware list endpoints")
+                .tag("resource", resource)
+                .register(registry));
+            mappingFailures.put(resource, Counter.builder("swmb.mapping.failures")
+                .description("Shopware entities that could not be mapped to mailbluster messages")
+                .tag("resource", resource)
+                .register(registry));
+            sendTimers.put(resource, new AtomicReferenceArray<>(STATUS_SLOTS));
+
+            AtomicReference<PagingPublisher<?>> publisher = new AtomicReference<>();
+            publishers.put(resource, publisher);
+            Gauge.builder("swmb.publisher.queue.depth", publisher, p -> p.get() == null ? 0 : p.get().getQueueSize())
+                .description("List items fetched but not yet requested downstream")
+                .tag("resource", resource)
+                .tag("shop", shop)
+                .register(registry);
+            Gauge.builder("swmb.publisher.demand", publisher, p -> p.get() == null ? 0 : p.get().getRequested())
+                .description("Items requested downstream but not yet published")
+                .tag("resource", resource)
+                .tag("shop", shop)
+                .register(registry);
+        }
+
+        for (DispatchClass dispatchClass : DispatchClass.values()) {
+            permissionWaitTimers.put(dispatchClass, Timer.builder("swmb.mailbluster.permission.wait")
+                .description("Time mailbluster calls waited for a rate limiter permission")
+                .tag("class", dispatchClass.name().toLowerCase())
+                .register(registry));
+        }
+
+        detailTimers = new Outcomes("swmb.shopware.detail", "mode", "single");
+        bulkDetailTimers = new Outcomes("swmb.shopware.detail", "mode", "bulk");
+        exportMarkTimers = new Outcomes("swmb.shopware.export.mark", "resource", ORDERS);
+    }
+
+    public MicrometerPipelineMetrics(MeterRegistry registry) {
+        this(registry, ShopwareProperties.Shop.DEFAULT_NAME);
+    }
+
+    @Override
+    public PipelineMetrics forShop(String shop) {
+        // a second instance for the same shop would only find the gauges of this one
+        return this.shop.equals(shop) ? this : new MicrometerPipelineMetrics(registry, shop);
+    }
+
+    @Override
+    public <T> Mono<List<T>> timeShopwareList(String resource, Mono<List<T>> page) {
+        Counter pageCounter = pages.get(resource);
+
+        return time(page, listTimers.get(resource))
+            .doOnNext(items -> pageCounter.increment());
+    }
+
+    @Override
+    public <T> Mono<T> timeShopwareDetail(Mono<T> order) {
+        return time(order, detailTimers);
+    }
+
+    @Override
+    public <T> Flux<T> timeShopwareBulkDetail(Flux<T> orders) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+
+            return orders
+                .doOnComplete(() -> bulkDetailTimers.success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                .doOnError(e -> bulkDetailTimers.error.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    @Override
+    public void registerPublisher(String resource, PagingPublisher<?> publisher) {
+        publishers.get(resource).set(publisher);
+    }
+
+    @Override
+    public void mappingFailed(String resource) {
+        mappingFailures.get(resource).increment();
+    }
+
+    @Override
+    public void recordPermissionWait(DispatchClass dispatchClass, long waitNanos) {
+        permissionWaitTimers.get(dispatchClass).record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void registerBacklogEstimator(BacklogEstimator estimator) {
+        Gauge.builder("swmb.backlog.orders", estimator, BacklogEstimator::getBacklog)
+            .description("Orders not exported yet, -1 if unknown")
+            .tag("shop", shop)
+            .register(registry);
+        Gauge.builder("swmb.backlog.oldest.age", estimator, e -> e.getOldestPendingAge()
+                .map(age -> (double) age.toSeconds()).orElse(0.0))
+            .description("Age of the oldest pending order")
+            .baseUnit("seconds")
+            .tag("shop", shop)
+            .register(registry);
+        Gauge.builder("swmb.backlog.throughput", estimator, BacklogEstimator::getOrdersPerMinute)
+            .description("Moving average of sent orders per minute")
+            .tag("shop", shop)
+            .register(registry);
+        Gauge.builder("swmb.backlog.eta", estimator, e -> e.getEta()
+                .map(eta -> (double) eta.toSeconds()).orElse(Double.NaN))
+            .description("Time until the backlog is sent at the current throughput")
+            .baseUnit("seconds")
+            .tag("shop", shop)
+            .register(registry);
+    }
+
+    @Override
+    public <T> Mono<ResponseEntity<T>> timeMailBlusterSend(String resource, Mono<ResponseEntity<T>> response) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+
+            return response
+                .doOnSuccess(entity -> sendTimer(resource, entity == null ? 0 : entity.getStatusCodeValue())
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                .doOnError(e -> sendTimer(resource, e instanceof WebClientResponseException
+                    ? ((WebClientResponseException) e).getRawStatusCode()
+                    : 0).record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    @Override
+    public Mono<Void> timeExportMark(Mono<Void> mark) {
+        return time(mark, exportMarkTimers);
+    }
+
+    private Timer sendTimer(String resource, int status) {
+        int slot = status > 0 && status < STATUS_SLOTS ? status : 0;
+        AtomicReferenceArray<Timer> timers = sendTimers.get(resource);
+
+        Timer timer = timers.get(slot);
+        if (timer == null) {
+            // registering is idempotent, a lost race ends up with the same timer
+            timer = Timer.builder("swmb.mailbluster.send")
+                .description("Latency of mailbluster calls by response status")
+                .tag("resource", resource)
+                .tag("status", slot == 0 ? "none" : String.valueOf(slot))
+                .register(registry);
+            timers.set(slot, timer);
+        }
+
+        return timer;
+    }
+
+    private static <T> Mono<T> time(Mono<T> mono, Outcomes timers) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+
+            return mono
+                .doOnSuccess(v -> timers.success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                .doOnError(e -> timers.error.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private class Outcomes {
+        private final Timer success;
+        private final Timer error;
+
+        Outcomes(String name, String tag, String value) {
+            this.success = Timer.builder(name).tag(tag, value).tag("outcome", "success").register(registry);
+            this.error = Timer.builder(name).tag(tag, value).tag("outcome", "error").register(registry);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.n2305.swmb.metrics;
+
+import com.n2305.swmb.mailbluster.MailBlusterDispatcher.DispatchClass;
+import com.n2305.swmb.shopware.PagingPublisher;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Measurement points of the sync pipeline. The timing methods wrap the given publisher and
+ * return it untouched if metrics are disabled, so {@link #NOOP} adds nothing to the hot path.
+ */
+public interface PipelineMetrics {
+    String ORDERS = "orders";
+    String CUSTOMERS = "customers";
+    String LEADS = "leads";
+
+    PipelineMetrics NOOP = new PipelineMetrics() {
+    };
+
+    /**
+     * The metrics of a single shop, gauges of its publishers and backlog are tagged with the shop.
+     */
+    default PipelineMetrics forShop(String shop) {
+        return this;
+    }
+
+    /**
+     * Latency of a shopware list request, every successful one counts as a fetched page.
+     */
+    default <T> Mono<List<T>> timeShopwareList(String resource, Mono<List<T>> page) {
+        return page;
+    }
+
+    default <T> Mono<T> timeShopwareDetail(Mono<T> order) {
+        return order;
+    }
+
+    default <T> Flux<T> timeShopwareBulkDetail(Flux<T> orders) {
+        return orders;
+    }
+
+    /**
+     * Exposes the queue depth and requested demand of the most recently registered publisher.
+     */
+    default void registerPublisher(String resource, PagingPublisher<?> publisher) {
+    }
+
+    default void mappingFailed(String resource) {
+    }
+
+    /**
+     * Time a mailbluster call waited in the dispatcher for a rate limiter permission.
+     */
+    default void recordPermissionWait(DispatchClass dispatchClass, long waitNanos) {
+    }
+
+    /**
+     * Latency of a mailbluster call tagged with the response status.
+     */
+    default <T> Mono<ResponseEntity<T>> timeMailBlusterSend(String resource, Mono<ResponseEntity<T>> response) {
+        return response;
+    }
+
+    /**
+     * Exposes the latest backlog estimate.
+     */
+    default void registerBacklogEstimator(BacklogEstimator estimator) {
+    }
+
+    /**
+     * Time from queueing an order to be marked as exported until shopware confirmed it.
+     */
+    default Mono<Void> timeExportMark(Mono<Void> mark) {
+        return mark;
+    }
+}
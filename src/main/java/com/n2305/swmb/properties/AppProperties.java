@@ -3,10 +3,22 @@ package com.n2305.swmb.properties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
 @Configuration
 @ConfigurationProperties(prefix = "app")
 public class AppProperties {
     private String stateFolderPath;
+    private Duration stateFlushInterval = Duration.ofSeconds(1);
+    private Outbox outbox = new Outbox();
+    private Retry retry = new Retry();
+    private Metrics metrics = new Metrics();
+    private Backlog backlog = new Backlog();
+    private Index leadIndex = new Index();
+    private Index orderIndex = new Index();
+    private Backfill backfill = new Backfill();
 
     public String getStateFolderPath() {
         return stateFolderPath;
@@ -16,4 +28,300 @@ public class AppProperties {
         this.stateFolderPath = stateFolderPath;
         return this;
     }
+
+    public Duration getStateFlushInterval() {
+        return stateFlushInterval;
+    }
+
+    public AppProperties setStateFlushInterval(Duration stateFlushInterval) {
+        this.stateFlushInterval = stateFlushInterval;
+        return this;
+    }
+
+    public Outbox getOutbox() {
+        return outbox;
+    }
+
+    public AppProperties setOutbox(Outbox outbox) {
+        this.outbox = outbox;
+        return this;
+    }
+
+    public Retry getRetry() {
+        return retry;
+    }
+
+    public AppProperties setRetry(Retry retry) {
+        this.retry = retry;
+        return this;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public AppProperties setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public Backlog getBacklog() {
+        return backlog;
+    }
+
+    public AppProperties setBacklog(Backlog backlog) {
+        this.backlog = backlog;
+        return this;
+    }
+
+    public Index getLeadIndex() {
+        return leadIndex;
+    }
+
+    public AppProperties setLeadIndex(Index leadIndex) {
+        this.leadIndex = leadIndex;
+        return this;
+    }
+
+    public Index getOrderIndex() {
+        return orderIndex;
+    }
+
+    public AppProperties setOrderIndex(Index orderIndex) {
+        this.orderIndex = orderIndex;
+        return this;
+    }
+
+    public Backfill getBackfill() {
+        return backfill;
+    }
+
+    public AppProperties setBackfill(Backfill backfill) {
+        this.backfill = backfill;
+        return this;
+    }
+
+    public static class Outbox {
+        private DataSize segmentSize = DataSize.ofMegabytes(4);
+
+        public DataSize getSegmentSize() {
+            return segmentSize;
+        }
+
+        public Outbox setSegmentSize(DataSize segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+    }
+
+    public static class Retry {
+        private int maxAttempts = 8;
+        private int inlineAttempts = 2;
+        private Duration initialBackoff = Duration.ofSeconds(2);
+        private Duration maxBackoff = Duration.ofMinutes(10);
+        private double jitter = 0.5;
+        private boolean replayDeadLetters = false;
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public Retry setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public int getInlineAttempts() {
+            return inlineAttempts;
+        }
+
+        public Retry setInlineAttempts(int inlineAttempts) {
+            this.inlineAttempts = inlineAttempts;
+            return this;
+        }
+
+        public Duration getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        public Retry setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+            return this;
+        }
+
+        public Duration getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        public Retry setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        public double getJitter() {
+            return jitter;
+        }
+
+        public Retry setJitter(double jitter) {
+            this.jitter = jitter;
+            return this;
+        }
+
+        public boolean isReplayDeadLetters() {
+            return replayDeadLetters;
+        }
+
+        public Retry setReplayDeadLetters(boolean replayDeadLetters) {
+            this.replayDeadLetters = replayDeadLetters;
+            return this;
+        }
+    }
+
+    public static class Metrics {
+        private boolean enabled = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public Metrics setEnabled(boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+    }
+
+    public static class Backlog {
+        private Duration interval = Duration.ofMinutes(5);
+        // weight of the latest throughput observation in the moving average
+        private double smoothing = 0.3;
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public Backlog setInterval(Duration interval) {
+            this.interval = interval;
+            return this;
+        }
+
+        public double getSmoothing() {
+            return smoothing;
+        }
+
+        public Backlog setSmoothing(double smoothing) {
+            this.smoothing = smoothing;
+            return this;
+        }
+    }
+
+    public static class Index {
+        // recent entries kept on heap until they are merged into the base file
+        private int mergeThreshold = 16384;
+
+        public int getMergeThreshold() {
+            return mergeThreshold;
+        }
+
+        public Index setMergeThreshold(int mergeThreshold) {
+            this.mergeThreshold = mergeThreshold;
+            return this;
+        }
+    }
+
+    public static class Backfill {
+        private boolean partitioned = false;
+        // shared by all nodes, the state folder stays per node. Processes with it share the account budgets
+        private String coordinationFolderPath;
+        // defaults to pid@hostname
+        private String nodeId;
+        private int partitionSize = 10000;
+        private Duration leaseDuration = Duration.ofMinutes(2);
+        private Duration heartbeatInterval = Duration.ofSeconds(20);
+        // one-shot backfill, saves the cursors after this many records or the progress interval
+        private int checkpointEvery = 1000;
+        private Duration progressInterval = Duration.ofSeconds(30);
+        // one-shot backfill, at most this share of each account's requests per minute
+        private Integer requestsPerMinute;
+
+        public boolean isPartitioned() {
+            return partitioned;
+        }
+
+        public Backfill setPartitioned(boolean partitioned) {
+            this.partitioned = partitioned;
+            return this;
+        }
+
+        public String getCoordinationFolderPath() {
+            return coordinationFolderPath;
+        }
+
+        public Backfill setCoordinationFolderPath(String coordinationFolderPath) {
+            this.coordinationFolderPath = coordinationFolderPath;
+            return this;
+        }
+
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        public Backfill setNodeId(String nodeId) {
+            this.nodeId = nodeId;
+            return this;
+        }
+
+        public int getPartitionSize() {
+            return partitionSize;
+        }
+
+        public Backfill setPartitionSize(int partitionSize) {
+            this.partitionSize = partitionSize;
+            return this;
+        }
+
+        public Duration getLeaseDuration() {
+            return leaseDuration;
+        }
+
+        public Backfill setLeaseDuration(Duration leaseDuration) {
+            this.leaseDuration = leaseDuration;
+            return this;
+        }
+
+        public Duration getHeartbeatInterval() {
+            return heartbeatInterval;
+        }
+
+        public Backfill setHeartbeatInterval(Duration heartbeatInterval) {
+            this.heartbeatInterval = heartbeatInterval;
+            return this;
+        }
+
+        public int getCheckpointEvery() {
+            return checkpointEvery;
+        }
+
+        public Backfill setCheckpointEvery(int checkpointEvery) {
+            this.checkpointEvery = checkpointEvery;
+            return this;
+        }
+
+        public Duration getProgressInterval() {
+            return progressInterval;
+        }
+
+        public Backfill setProgressInterval(Duration progressInterval) {
+            this.progressInterval = progressInterval;
+            return this;
+        }
+
+        public Integer getRequestsPerMinute() {
+            return requestsPerMinute;
+        }
+
+        public Backfill setRequestsPerMinute(Integer requestsPerMinute) {
+            this.requestsPerMinute = requestsPerMinute;
+            return this;
+        }
+    }
 }
@@ -3,6 +3,8 @@ package com.n2305.swmb.properties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -11,11 +13,16 @@ import java.util.stream.Collectors;
 @Configuration
 @ConfigurationProperties(prefix = "mailbluster")
 public class MailBlusterProperties {
+    public static final String DEFAULT_ACCOUNT = "default";
+
     private String baseUri;
     private String apiKey;
     private int requestsPerMinute;
     private List<CampaignMappingEntry> campaignMappings;
     private String campaignMappingPassThroughPattern;
+    private Dispatch dispatch = new Dispatch();
+    private Adaptive adaptive = new Adaptive();
+    private List<Account> accounts = new LinkedList<>();
 
     public String getBaseUri() {
         return baseUri;
@@ -72,6 +79,83 @@ public class MailBlusterProperties {
         return this;
     }
 
+    public Dispatch getDispatch() {
+        return dispatch;
+    }
+
+    public MailBlusterProperties setDispatch(Dispatch dispatch) {
+        this.dispatch = dispatch;
+        return this;
+    }
+
+    public Adaptive getAdaptive() {
+        return adaptive;
+    }
+
+    public MailBlusterProperties setAdaptive(Adaptive adaptive) {
+        this.adaptive = adaptive;
+        return this;
+    }
+
+    public List<Account> getAccounts() {
+        return accounts;
+    }
+
+    public MailBlusterProperties setAccounts(List<Account> accounts) {
+        this.accounts = accounts;
+        return this;
+    }
+
+    /**
+     * The configured account of that name, the top level api key is the account named default.
+     */
+    public Optional<Account> getAccount(String name) {
+        Optional<Account> account = accounts.stream()
+            .filter(a -> name.equals(a.getName()))
+            .findFirst();
+
+        return account.isPresent() || !DEFAULT_ACCOUNT.equals(name)
+            ? account
+            : Optional.of(new Account().setName(DEFAULT_ACCOUNT).setApiKey(apiKey));
+    }
+
+    /**
+     * A mailbluster account with its own api key and requests per minute, unless set the top
+     * level requests per minute apply.
+     */
+    public static class Account {
+        private String name;
+        private String apiKey;
+        private Integer requestsPerMinute;
+
+        public String getName() {
+            return name;
+        }
+
+        public Account setName(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public String getApiKey() {
+            return apiKey;
+        }
+
+        public Account setApiKey(String apiKey) {
+            this.apiKey = apiKey;
+            return this;
+        }
+
+        public Integer getRequestsPerMinute() {
+            return requestsPerMinute;
+        }
+
+        public Account setRequestsPerMinute(Integer requestsPerMinute) {
+            this.requestsPerMinute = requestsPerMinute;
+            return this;
+        }
+    }
+
     static class CampaignMappingEntry {
         private String partner;
         private int campaign;
@@ -94,4 +178,130 @@ public class MailBlusterProperties {
             return this;
         }
     }
+
+    public static class Dispatch {
+        private int orderWeight = 3;
+        private int leadWeight = 1;
+        private int retryWeight = 1;
+        private boolean strictOrderPriority = false;
+        private int queueCapacity = 8;
+
+        public int getOrderWeight() {
+            return orderWeight;
+        }
+
+        public Dispatch setOrderWeight(int orderWeight) {
+            this.orderWeight = orderWeight;
+            return this;
+        }
+
+        public int getLeadWeight() {
+            return leadWeight;
+        }
+
+        public Dispatch setLeadWeight(int leadWeight) {
+            this.leadWeight = leadWeight;
+            return this;
+        }
+
+        public int getRetryWeight() {
+            return retryWeight;
+        }
+
+        public Dispatch setRetryWeight(int retryWeight) {
+            this.retryWeight = retryWeight;
+            return this;
+        }
+
+        public boolean isStrictOrderPriority() {
+            return strictOrderPriority;
+        }
+
+        public Dispatch setStrictOrderPriority(boolean strictOrderPriority) {
+            this.strictOrderPriority = strictOrderPriority;
+            return this;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public Dispatch setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+    }
+
+    public static class Adaptive {
+        private boolean enabled = true;
+        private int minRequestsPerMinute = 1;
+        private int increaseAfter = 10;
+        private int increaseStep = 1;
+        private double decreaseFactor = 0.5;
+        private Duration defaultBackoff = Duration.ofMinutes(1);
+        private int maxThrottledRetries = 3;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public Adaptive setEnabled(boolean enabled) {
+            this.enabled = enabled;
+            return this;
+        }
+
+        public int getMinRequestsPerMinute() {
+            return minRequestsPerMinute;
+        }
+
+        public Adaptive setMinRequestsPerMinute(int minRequestsPerMinute) {
+            this.minRequestsPerMinute = minRequestsPerMinute;
+            return this;
+        }
+
+        public int getIncreaseAfter() {
+            return increaseAfter;
+        }
+
+        public Adaptive setIncreaseAfter(int increaseAfter) {
+            this.increaseAfter = increaseAfter;
+            return this;
+        }
+
+        public int getIncreaseStep() {
+            return increaseStep;
+        }
+
+        public Adaptive setIncreaseStep(int increaseStep) {
+            this.increaseStep = increaseStep;
+            return this;
+        }
+
+        public double getDecreaseFactor() {
+            return decreaseFactor;
+        }
+
+        public Adaptive setDecreaseFactor(double decreaseFactor) {
+            this.decreaseFactor = decreaseFactor;
+            return this;
+        }
+
+        public Duration getDefaultBackoff() {
+            return defaultBackoff;
+        }
+
+        public Adaptive setDefaultBackoff(Duration defaultBackoff) {
+            this.defaultBackoff = defaultBackoff;
+            return this;
+        }
+
+        public int getMaxThrottledRetries() {
+            return maxThrottledRetries;
+        }
+
+        public Adaptive setMaxThrottledRetries(int maxThrottledRetries) {
+            this.maxThrottledRetries = maxThrottledRetries;
+            return this;
+        }
+    }
 }
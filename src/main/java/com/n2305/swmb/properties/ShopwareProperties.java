@@ -8,6 +8,7 @@ import org.springframework.context.annotation.Configuration;
 import java.time.Duration;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 
 @Configuration
 @ConfigurationProperties(prefix = "shopware")
@@ -17,12 +18,16 @@ public class ShopwareProperties {
     private String password;
     private String exportedAttribute;
     private Intervals intervals;
+    private DetailFetch detailFetch = new DetailFetch();
+    private Paging paging = new Paging();
+    private ExportBatch exportBatch = new ExportBatch();
 
     @NestedConfigurationProperty
     private List<ShopwareAPI.Filter> orderFilters = new LinkedList<>();
 
     @NestedConfigurationProperty
     private List<ShopwareAPI.Filter> customerFilters = new LinkedList<>();
+    private List<Shop> shops = new LinkedList<>();
 
     public String getBaseUri() {
         return baseUri;
@@ -69,6 +74,33 @@ public class ShopwareProperties {
         return this;
     }
 
+    public DetailFetch getDetailFetch() {
+        return detailFetch;
+    }
+
+    public ShopwareProperties setDetailFetch(DetailFetch detailFetch) {
+        this.detailFetch = detailFetch;
+        return this;
+    }
+
+    public Paging getPaging() {
+        return paging;
+    }
+
+    public ShopwareProperties setPaging(Paging paging) {
+        this.paging = paging;
+        return this;
+    }
+
+    public ExportBatch getExportBatch() {
+        return exportBatch;
+    }
+
+    public ShopwareProperties setExportBatch(ExportBatch exportBatch) {
+        this.exportBatch = exportBatch;
+        return this;
+    }
+
     public List<ShopwareAPI.Filter> getOrderFilters() {
         return orderFilters;
     }
@@ -87,9 +119,123 @@ public class ShopwareProperties {
         return this;
     }
 
+    public List<Shop> getShops() {
+        return shops;
+    }
+
+    public ShopwareProperties setShops(List<Shop> shops) {
+        this.shops = shops;
+        return this;
+    }
+
+    /**
+     * The settings of a single shop, everything the shop doesn't set is taken from the top level.
+     */
+    public ShopwareProperties forShop(Shop shop) {
+        return new ShopwareProperties()
+            .setBaseUri(Optional.ofNullable(shop.getBaseUri()).orElse(baseUri))
+            .setUsername(Optional.ofNullable(shop.getUsername()).orElse(username))
+            .setPassword(Optional.ofNullable(shop.getPassword()).orElse(password))
+            .setExportedAttribute(Optional.ofNullable(shop.getExportedAttribute()).orElse(exportedAttribute))
+            .setOrderFilters(Optional.ofNullable(shop.getOrderFilters()).orElse(orderFilters))
+            .setCustomerFilters(Optional.ofNullable(shop.getCustomerFilters()).orElse(customerFilters))
+            .setIntervals(intervals)
+            .setDetailFetch(detailFetch)
+            .setPaging(paging)
+            .setExportBatch(exportBatch);
+    }
+
+    public static class Shop {
+        public static final String DEFAULT_NAME = "default";
+
+        private String name;
+        private String baseUri;
+        private String username;
+        private String password;
+        private String exportedAttribute;
+        private String mailblusterAccount = MailBlusterProperties.DEFAULT_ACCOUNT;
+        @NestedConfigurationProperty
+        private List<ShopwareAPI.Filter> orderFilters;
+        @NestedConfigurationProperty
+        private List<ShopwareAPI.Filter> customerFilters;
+
+        public String getName() {
+            return name;
+        }
+
+        public Shop setName(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public String getBaseUri() {
+            return baseUri;
+        }
+
+        public Shop setBaseUri(String baseUri) {
+            this.baseUri = baseUri;
+            return this;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public Shop setUsername(String username) {
+            this.username = username;
+            return this;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public Shop setPassword(String password) {
+            this.password = password;
+            return this;
+        }
+
+        public String getExportedAttribute() {
+            return exportedAttribute;
+        }
+
+        public Shop setExportedAttribute(String exportedAttribute) {
+            this.exportedAttribute = exportedAttribute;
+            return this;
+        }
+
+        public String getMailblusterAccount() {
+            return mailblusterAccount;
+        }
+
+        public Shop setMailblusterAccount(String mailblusterAccount) {
+            this.mailblusterAccount = mailblusterAccount;
+            return this;
+        }
+
+        public List<ShopwareAPI.Filter> getOrderFilters() {
+            return orderFilters;
+        }
+
+        public Shop setOrderFilters(List<ShopwareAPI.Filter> orderFilters) {
+            this.orderFilters = orderFilters;
+            return this;
+        }
+
+        public List<ShopwareAPI.Filter> getCustomerFilters() {
+            return customerFilters;
+        }
+
+        public Shop setCustomerFilters(List<ShopwareAPI.Filter> customerFilters) {
+            this.customerFilters = customerFilters;
+            return this;
+        }
+    }
+
     public static class Intervals {
         private Duration onEmptyList;
         private Duration resetLastFetchedOrderTime;
+        private Duration onError = Duration.ofSeconds(30);
 
         public Duration getOnEmptyList() {
             return onEmptyList;
@@ -108,5 +254,179 @@ public class ShopwareProperties {
             this.resetLastFetchedOrderTime = resetLastFetchedOrderTime;
             return this;
         }
+
+        public Duration getOnError() {
+            return onError;
+        }
+
+        public Intervals setOnError(Duration onError) {
+            this.onError = onError;
+            return this;
+        }
+    }
+
+    public static class DetailFetch {
+        private int concurrency = 4;
+        private int prefetch = 8;
+        private boolean ordered = true;
+        private Mode mode = Mode.SINGLE;
+        private String bulkPath;
+        private int bulkSize = 50;
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public DetailFetch setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        public int getPrefetch() {
+            return prefetch;
+        }
+
+        public DetailFetch setPrefetch(int prefetch) {
+            this.prefetch = prefetch;
+            return this;
+        }
+
+        public boolean isOrdered() {
+            return ordered;
+        }
+
+        public DetailFetch setOrdered(boolean ordered) {
+            this.ordered = ordered;
+            return this;
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public DetailFetch setMode(Mode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * Endpoint that returns the complete orders for an id filter, provided by a plugin.
+         * Shopware's own /api/orders only lists orders, there is no default.
+         */
+        public String getBulkPath() {
+            return bulkPath;
+        }
+
+        public DetailFetch setBulkPath(String bulkPath) {
+            this.bulkPath = bulkPath;
+            return this;
+        }
+
+        public int getBulkSize() {
+            return bulkSize;
+        }
+
+        public DetailFetch setBulkSize(int bulkSize) {
+            this.bulkSize = bulkSize;
+            return this;
+        }
+
+        public enum Mode {
+            /**
+             * One request per order.
+             */
+            SINGLE,
+            /**
+             * One request per chunk of a list page, orders that come back incomplete are
+             * fetched one by one.
+             */
+            BULK
+        }
+    }
+
+    public static class Paging {
+        private int orderPageSize = 100;
+        private int customerPageSize = 100;
+        private boolean drain = true;
+        private int lowWatermark = 50;
+        private int highWatermark = 200;
+
+        public int getOrderPageSize() {
+            return orderPageSize;
+        }
+
+        public Paging setOrderPageSize(int orderPageSize) {
+            this.orderPageSize = orderPageSize;
+            return this;
+        }
+
+        public int getCustomerPageSize() {
+            return customerPageSize;
+        }
+
+        public Paging setCustomerPageSize(int customerPageSize) {
+            this.customerPageSize = customerPageSize;
+            return this;
+        }
+
+        public boolean isDrain() {
+            return drain;
+        }
+
+        public Paging setDrain(boolean drain) {
+            this.drain = drain;
+            return this;
+        }
+
+        public int getLowWatermark() {
+            return lowWatermark;
+        }
+
+        public Paging setLowWatermark(int lowWatermark) {
+            this.lowWatermark = lowWatermark;
+            return this;
+        }
+
+        public int getHighWatermark() {
+            return highWatermark;
+        }
+
+        public Paging setHighWatermark(int highWatermark) {
+            this.highWatermark = highWatermark;
+            return this;
+        }
+    }
+
+    public static class ExportBatch {
+        private int size = 50;
+        private Duration window = Duration.ofSeconds(1);
+        private int concurrency = 2;
+
+        public int getSize() {
+            return size;
+        }
+
+        public ExportBatch setSize(int size) {
+            this.size = size;
+            return this;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public ExportBatch setWindow(Duration window) {
+            this.window = window;
+            return this;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public ExportBatch setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
     }
 }
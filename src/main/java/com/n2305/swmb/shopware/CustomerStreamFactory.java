@@ -1,40 +1,101 @@
 package com.n2305.swmb.shopware;
 
-import com.n2305.swmb.properties.AppProperties;
+import com.n2305.swmb.metrics.PipelineMetrics;
 import com.n2305.swmb.properties.ShopwareProperties;
+import com.n2305.swmb.state.CursorTracker;
+import com.n2305.swmb.state.StateStore;
 import org.apache.commons.validator.routines.EmailValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
-import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
 
-@Service
 public class CustomerStreamFactory {
     private static final Logger logger = LoggerFactory.getLogger(CustomerStreamFactory.class);
 
+    static final String CURSOR_KEY = "customers.cursor";
+    static final String LEGACY_CURSOR_FILE = "last-fetched-id.txt";
+
     private final ShopwareAPI shopwareAPI;
     private final ShopwareProperties swProps;
-    private final AppProperties appProps;
     private final EmailValidator emailValidator;
+    private final PipelineMetrics metrics;
+    private final List<ShopwareAPI.Filter> rangeFilters;
+    private final CursorTracker<Long> cursorTracker;
 
+    /**
+     * With range filters the stream only lists the matching customers and completes afterwards.
+     */
     public CustomerStreamFactory(
         ShopwareAPI shopwareAPI,
         ShopwareProperties swProps,
         EmailValidator emailValidator,
-        AppProperties appProps
+        StateStore stateStore,
+        PipelineMetrics metrics,
+        List<ShopwareAPI.Filter> rangeFilters
     ) {
         this.shopwareAPI = shopwareAPI;
         this.swProps = swProps;
-        this.appProps = appProps;
         this.emailValidator = emailValidator;
+        this.metrics = metrics;
+        this.rangeFilters = rangeFilters;
+        this.cursorTracker = new CursorTracker<>(
+            stateStore.importLegacyFile(CURSOR_KEY, LEGACY_CURSOR_FILE)
+                .flatMap(CustomerStreamFactory::parseCursor)
+                .orElse(0L),
+            id -> stateStore.put(CURSOR_KEY, String.valueOf(id))
+        );
+    }
+
+    private static Optional<Long> parseCursor(String value) {
+        try {
+            return Optional.of(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            logger.warn("Failed to read last fetched id; start with 0", e);
+
+            return Optional.empty();
+        }
     }
 
-    public Flux<CustomerListItem> create() throws IOException {
-        CustomerPublisher customerPublisher = new CustomerPublisher(shopwareAPI, swProps, appProps);
+    public Flux<CustomerListItem> create() {
+        CustomerPublisher customerPublisher = new CustomerPublisher(
+            shopwareAPI, swProps, cursorTracker.getCommitted().orElse(0L), rangeFilters, Schedulers.parallel());
+        metrics.registerPublisher(PipelineMetrics.CUSTOMERS, customerPublisher);
 
         return Flux.create(customerPublisher)
-            .filter(cli -> emailValidator.isValid(cli.getEmail()));
+            .doOnNext(cli -> cursorTracker.track(cli.getId()))
+            .filter(this::hasValidEmail);
+    }
+
+    /**
+     * Counts the customers after the committed cursor, within the range if there is one.
+     */
+    public Mono<Long> countPending() {
+        List<ShopwareAPI.Filter> filters = new LinkedList<>();
+        filters.add(new ShopwareAPI.Filter("id", String.valueOf(cursorTracker.getCommitted().orElse(0L)), ">"));
+        filters.addAll(rangeFilters);
+
+        return shopwareAPI.countCustomers(filters);
+    }
+
+    /**
+     * Marks the customer as done, the persisted cursor follows once every customer before it
+     * is done as well. Customers that are never acknowledged are sent again after a restart.
+     */
+    public void acknowledge(CustomerListItem customer) {
+        cursorTracker.acknowledge(customer.getId());
+    }
+
+    private boolean hasValidEmail(CustomerListItem customer) {
+        boolean valid = emailValidator.isValid(customer.getEmail());
+        if (!valid)
+            acknowledge(customer);
+
+        return valid;
     }
 }
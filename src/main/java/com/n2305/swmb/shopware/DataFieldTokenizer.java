@@ -0,0 +1,111 @@
+package com.n2305.swmb.shopware;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.Exceptions;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Splits a shopware api response into token buffers while it arrives, without ever holding the
+ * whole body in memory. If the data field of the root object is an array every element results
+ * in its own token buffer, otherwise the data value itself is returned as a single one.
+ */
+class DataFieldTokenizer {
+    private static final String DATA_FIELD = "data";
+
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    private int depth;
+    private boolean inDataField;
+    private boolean inDataArray;
+    private TokenBuffer tokenBuffer;
+    private int valueDepth;
+
+    DataFieldTokenizer(JsonFactory jsonFactory) {
+        try {
+            this.parser = jsonFactory.createNonBlockingByteArrayParser();
+            this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    List<TokenBuffer> tokenize(DataBuffer dataBuffer) {
+        try {
+            byte[] bytes = new byte[dataBuffer.readableByteCount()];
+            dataBuffer.read(bytes);
+            feeder.feedInput(bytes, 0, bytes.length);
+
+            return parseTokens();
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        } finally {
+            DataBufferUtils.release(dataBuffer);
+        }
+    }
+
+    List<TokenBuffer> endOfInput() {
+        feeder.endOfInput();
+
+        try {
+            return parseTokens();
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    private List<TokenBuffer> parseTokens() throws IOException {
+        List<TokenBuffer> result = new LinkedList<>();
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.NOT_AVAILABLE && token != null) {
+            handleToken(token, result);
+        }
+
+        return result;
+    }
+
+    private void handleToken(JsonToken token, List<TokenBuffer> result) throws IOException {
+        if (tokenBuffer == null) {
+            if (depth == 1 && token == JsonToken.FIELD_NAME) {
+                inDataField = DATA_FIELD.equals(parser.getCurrentName());
+            } else if (depth == 1 && inDataField && token == JsonToken.START_ARRAY) {
+                inDataArray = true;
+                depth++;
+                return;
+            } else if (depth == 2 && inDataArray && token == JsonToken.END_ARRAY) {
+                inDataArray = false;
+                inDataField = false;
+                depth--;
+                return;
+            } else if ((depth == 1 && inDataField) || (depth == 2 && inDataArray)) {
+                tokenBuffer = new TokenBuffer(parser);
+                valueDepth = depth;
+                inDataField = inDataArray;
+            }
+        }
+
+        if (tokenBuffer != null)
+            tokenBuffer.copyCurrentEvent(parser);
+
+        if (token.isStructStart()) {
+            depth++;
+        } else if (token.isStructEnd()) {
+            depth--;
+        }
+
+        if (tokenBuffer != null && depth == valueDepth) {
+            result.add(tokenBuffer);
+            tokenBuffer = null;
+        }
+    }
+}
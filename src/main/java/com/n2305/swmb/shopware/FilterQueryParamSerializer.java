@@ -1,6 +1,7 @@
 package com.n2305.swmb.shopware;
 
 import com.n2305.swmb.shopware.ShopwareAPI.Filter;
+import com.n2305.swmb.shopware.ShopwareAPI.Sort;
 
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -20,9 +21,27 @@ public class FilterQueryParamSerializer {
         return params;
     }
 
+    public Map<String, String> serializeSort(List<Sort> sorts) {
+        HashMap<String, String> params = new LinkedHashMap<>();
+
+        for (int i = 0; i < sorts.size(); i++) {
+            Sort sort = sorts.get(i);
+
+            params.put(formatKey("sort", i, "property"), sort.getProperty());
+            params.put(formatKey("sort", i, "direction"), sort.getDirection());
+        }
+
+        return params;
+    }
+
     private void addFilterToParams(HashMap<String, String> params, int idx, Filter filter) {
         params.put(formatKey(idx, "property"), filter.getProperty());
         if (filter.getValue() != null) params.put(formatKey(idx, "value"), filter.getValue());
+        if (filter.getValues() != null) {
+            for (int i = 0; i < filter.getValues().size(); i++) {
+                params.put(String.format("%s[%d]", formatKey(idx, "value"), i), filter.getValues().get(i));
+            }
+        }
         params.put(formatKey(idx, "expression"), filter.getExpression());
 
         if (filter.getOperator()) {
@@ -31,6 +50,10 @@ public class FilterQueryParamSerializer {
     }
 
     private String formatKey(int index, String key) {
-        return String.format("filter[%d][%s]", index, key);
+        return formatKey("filter", index, key);
+    }
+
+    private String formatKey(String prefix, int index, String key) {
+        return String.format("%s[%d][%s]", prefix, index, key);
     }
 }
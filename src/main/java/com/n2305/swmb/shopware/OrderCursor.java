@@ -0,0 +1,72 @@
+package com.n2305.swmb.shopware;
+
+import java.time.OffsetDateTime;
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * Keyset position in the order list, orders are sorted by order time and then by id.
+ */
+public class OrderCursor implements Comparable<OrderCursor> {
+    private static final Comparator<OrderCursor> COMPARATOR = Comparator
+        .comparing(OrderCursor::getOrderTime, OffsetDateTime.timeLineOrder())
+        .thenComparingInt(OrderCursor::getId);
+
+    private final OffsetDateTime orderTime;
+    private final int id;
+
+    public OrderCursor(OffsetDateTime orderTime, int id) {
+        this.orderTime = orderTime;
+        this.id = id;
+    }
+
+    public static OrderCursor of(OrderListItem oli) {
+        return new OrderCursor(oli.getOrderTime(), oli.getId());
+    }
+
+    /**
+     * Reads a cursor in the format of {@link #toString()}.
+     */
+    public static OrderCursor parse(String value) {
+        int separator = value.lastIndexOf('#');
+        if (separator < 0)
+            throw new IllegalArgumentException("Invalid order cursor " + value);
+
+        return new OrderCursor(
+            OffsetDateTime.parse(value.substring(0, separator)),
+            Integer.parseInt(value.substring(separator + 1))
+        );
+    }
+
+    public OffsetDateTime getOrderTime() {
+        return orderTime;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public int compareTo(OrderCursor o) {
+        return COMPARATOR.compare(this, o);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        OrderCursor that = (OrderCursor) o;
+        return id == that.id &&
+            orderTime.isEqual(that.orderTime);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(orderTime.toInstant(), id);
+    }
+
+    @Override
+    public String toString() {
+        return orderTime + "#" + id;
+    }
+}
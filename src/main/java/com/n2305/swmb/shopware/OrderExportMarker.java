@@ -0,0 +1,176 @@
+package com.n2305.swmb.shopware;
+
+import com.n2305.swmb.metrics.PipelineMetrics;
+import com.n2305.swmb.properties.ShopwareProperties;
+import com.n2305.swmb.utils.RetryPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.util.concurrent.Queues;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Collects the orders to mark as exported until the batch is full or the batch window is over and
+ * marks them with a single batch update. Every order still gets its own result, a failed batch
+ * request fails all of its orders, a failed order only itself.
+ */
+public class OrderExportMarker {
+    private static final Logger logger = LoggerFactory.getLogger(OrderExportMarker.class);
+
+    private final ShopwareAPI api;
+    private final ShopwareProperties.ExportBatch batchProps;
+    private final RetryPolicy retryPolicy;
+    private final Scheduler scheduler;
+    private final PipelineMetrics metrics;
+    // doesn't complete once the batching unsubscribes, so it can subscribe again after a failure
+    private final Sinks.Many<Request> requests = Sinks.many().multicast()
+        .onBackpressureBuffer(Queues.SMALL_BUFFER_SIZE, false);
+    // requests that are queued or in a batch, failed if the batching has to restart
+    private final Set<Request> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicLong markedCount = new AtomicLong();
+
+    public OrderExportMarker(
+        ShopwareAPI api,
+        ShopwareProperties.ExportBatch batchProps,
+        RetryPolicy retryPolicy,
+        Scheduler scheduler,
+        PipelineMetrics metrics
+    ) {
+        this.api = api;
+        this.batchProps = batchProps;
+        this.retryPolicy = retryPolicy;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+
+        startBatching();
+    }
+
+    /**
+     * The batch window closes a batch regardless of demand, without the buffer a window that
+     * ends while every batch slot is busy would fail the whole batching. A failed batch only
+     * fails its own orders, if the batching fails nonetheless the requests it dropped are failed
+     * before it restarts, their callers would wait for good otherwise.
+     */
+    private void startBatching() {
+        requests.asFlux()
+            .bufferTimeout(batchProps.getSize(), batchProps.getWindow(), scheduler)
+            .onBackpressureBuffer()
+            .flatMap(this::markBatch, batchProps.getConcurrency())
+            .subscribe(v -> {}, e -> {
+                logger.error("Export marker batching failed, fail its {} pending orders and restart it",
+                    pending.size(), e);
+                failPending(e);
+                startBatching();
+            });
+    }
+
+    private void failPending(Throwable e) {
+        pending.forEach(request -> {
+            if (pending.remove(request))
+                request.sink.error(e);
+        });
+    }
+
+    public Mono<Void> markAsExported(SWOrder order) {
+        logger.info("Mark order with id {} as exported, lt: {} t: {}",
+            order.getId(), order.getListFetchTime(), order.getFetchTime());
+
+        return markAsExported(order.getId());
+    }
+
+    public Mono<Void> markAsExported(int orderId) {
+        return metrics.timeExportMark(Mono.create(sink -> {
+            Request request = new Request(orderId, sink);
+            pending.add(request);
+            sink.onDispose(() -> pending.remove(request));
+
+            enqueue(request);
+        }));
+    }
+
+    private synchronized void enqueue(Request request) {
+        if (requests.tryEmitNext(request).isFailure()) {
+            request.sink.error(new IllegalStateException("Export marker is closed"));
+        }
+    }
+
+    private Mono<Void> markBatch(List<Request> batch) {
+        List<Integer> orderIds = batch.stream()
+            .map(request -> request.orderId)
+            .collect(Collectors.toList());
+
+        return Mono.defer(() -> api.markOrdersAsExported(orderIds))
+            .retryWhen(retryPolicy.inline())
+            .doOnNext(results -> {
+                Iterator<ShopwareAPI.BatchResult> resultIterator = results.iterator();
+                batch.forEach(request -> {
+                    ShopwareAPI.BatchResult result = resultIterator.next();
+                    if (result.isSuccess())
+                        markedCount.incrementAndGet();
+
+                    request.complete(result);
+                });
+            })
+            .doOnError(e -> batch.forEach(request -> request.sink.error(e)))
+            .onErrorResume(e -> Mono.empty())
+            .then();
+    }
+
+    /**
+     * Orders shopware confirmed as exported so far.
+     */
+    public long getMarkedCount() {
+        return markedCount.get();
+    }
+
+    /**
+     * Marks the orders that are already queued and stops accepting new ones.
+     */
+    public synchronized void close() {
+        requests.tryEmitComplete();
+    }
+
+    private static class Request {
+        private final int orderId;
+        private final MonoSink<Void> sink;
+
+        Request(int orderId, MonoSink<Void> sink) {
+            this.orderId = orderId;
+            this.sink = sink;
+        }
+
+        void complete(ShopwareAPI.BatchResult result) {
+            if (result.isSuccess()) {
+                sink.success();
+            } else {
+                logger.warn("Failed to mark order with id {} as exported: {}", orderId, result.getMessage());
+                sink.error(new MarkFailedException(orderId, result.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Shopware rejected the update of a single order, this is not retried.
+     */
+    public static class MarkFailedException extends RuntimeException {
+        private final int orderId;
+
+        public MarkFailedException(int orderId, String message) {
+            super("Failed to mark order " + orderId + " as exported: " + message);
+            this.orderId = orderId;
+        }
+
+        public int getOrderId() {
+            return orderId;
+        }
+    }
+}
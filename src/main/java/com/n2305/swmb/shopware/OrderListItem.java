@@ -11,6 +11,7 @@ public class OrderListItem {
     private final String number;
     private final OffsetDateTime orderTime;
     private OffsetDateTime fetchTime;
+    private SWOrder order;
 
     @JsonCreator(mode = JsonCreator.Mode.PROPERTIES)
     public OrderListItem(
@@ -56,4 +57,16 @@ public class OrderListItem {
     public OffsetDateTime getFetchTime() {
         return fetchTime;
     }
+
+    /**
+     * The complete order if it was fetched together with the page.
+     */
+    public SWOrder getOrder() {
+        return order;
+    }
+
+    public OrderListItem setOrder(SWOrder order) {
+        this.order = order;
+        return this;
+    }
 }
@@ -3,153 +3,143 @@ package com.n2305.swmb.shopware;
 import com.n2305.swmb.properties.ShopwareProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.FluxSink;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
-import java.time.Duration;
-import java.time.OffsetDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Consumer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
-public class OrderPublisher implements Consumer<FluxSink<OrderListItem>> {
+public class OrderPublisher extends PagingPublisher<OrderListItem> {
     private static final Logger logger = LoggerFactory.getLogger(OrderPublisher.class);
 
     private final ShopwareAPI api;
     private final ShopwareProperties swProps;
-    private final ConcurrentLinkedQueue<OrderListItem> oliQueue = new ConcurrentLinkedQueue<>();
-    private final AtomicBoolean fetchOrdersInFlight = new AtomicBoolean(false);
+    private final List<ShopwareAPI.Filter> rangeFilters;
+
+    private OrderCursor cursor;
+    private long lastCursorReset;
+
+    /**
+     * With range filters it publishes only the matching orders and completes once they are listed.
+     */
+    public OrderPublisher(
+        ShopwareAPI api,
+        ShopwareProperties swProps,
+        OrderCursor cursor,
+        List<ShopwareAPI.Filter> rangeFilters,
+        Scheduler scheduler
+    ) {
+        super(swProps, swProps.getPaging().getOrderPageSize(), !rangeFilters.isEmpty(), scheduler);
 
-    private FluxSink<OrderListItem> sink;
-    private OffsetDateTime lastFetchedOrderTime;
-    private Disposable checkIntervalDisposable;
-    private Disposable resetLastFetchedOrderTimeDisposable;
-
-    public OrderPublisher(ShopwareAPI api, ShopwareProperties swProps) {
         this.api = api;
         this.swProps = swProps;
+        this.rangeFilters = rangeFilters;
+        this.cursor = cursor;
+        this.lastCursorReset = scheduler.now(TimeUnit.MILLISECONDS);
     }
 
     @Override
-    public void accept(FluxSink<OrderListItem> sink) {
-        this.sink = sink;
-
-        sink.onRequest(this::onRequest);
-        sink.onDispose(() -> {
-            Optional.ofNullable(checkIntervalDisposable)
-                .ifPresent(Disposable::dispose);
+    protected Mono<List<OrderListItem>> fetchPage() {
+        resetCursorIfDue();
 
-            Optional.ofNullable(resetLastFetchedOrderTimeDisposable)
-                .ifPresent(Disposable::dispose);
-        });
+        Mono<List<OrderListItem>> page = api.fetchOrders(buildFilters());
 
-        setupCheckInterval(Duration.ofMillis(1));
-        resetLastFetchedOrderTimeDisposable = Flux.interval(swProps.getIntervals().getResetLastFetchedOrderTime())
-            .subscribe(n -> this.updateLastFetchOrderTime(null));
+        return swProps.getDetailFetch().getMode() == ShopwareProperties.DetailFetch.Mode.BULK
+            ? page.flatMap(this::prefetchOrders)
+            : page;
     }
 
-    private void setupCheckInterval(Duration checkInterval) {
-        Optional.ofNullable(checkIntervalDisposable)
-            .filter(checkIntervalDisposable -> !checkIntervalDisposable.isDisposed())
-            .ifPresent(Disposable::dispose);
-
-        checkIntervalDisposable = Flux.interval(checkInterval)
-            .subscribe(n -> this.updateQueue());
-    }
-
-    private void setupCheckInterval() {
-        setupCheckInterval(Duration.ofMillis(1));
-    }
-
-    private void onRequest(long n) {
-        logger.debug("Got request for {} items, queue size {}", n, oliQueue.size());
-
-        updateQueue();
+    /**
+     * Attaches the complete orders to the page, fetched in chunks of the bulk size. Orders that
+     * are missing afterwards are fetched one by one by the stream factory. A bulk endpoint that
+     * keeps returning incomplete orders costs a request per chunk for nothing, that is logged.
+     */
+    private Mono<List<OrderListItem>> prefetchOrders(List<OrderListItem> items) {
+        Map<Integer, OrderListItem> itemsById = items.stream()
+            .collect(Collectors.toMap(OrderListItem::getId, Function.identity(), (a, b) -> a, LinkedHashMap::new));
+
+        return Flux.fromIterable(itemsById.keySet())
+            .buffer(swProps.getDetailFetch().getBulkSize())
+            .concatMap(ids -> api.fetchOrdersById(ids)
+                .filter(SWOrder::isComplete)
+                .collectList()
+                .doOnNext(orders -> {
+                    if (orders.size() < ids.size())
+                        logger.warn("Only {} of {} orders came back complete from {}, fetch the others one by one",
+                            orders.size(), ids.size(), swProps.getDetailFetch().getBulkPath());
+                })
+                .onErrorResume(e -> {
+                    logger.warn("Failed to fetch orders in bulk, fall back to single fetch", e);
+                    return Mono.just(List.of());
+                }))
+            .flatMapIterable(Function.identity())
+            .doOnNext(order -> Optional.ofNullable(itemsById.get(order.getId()))
+                .ifPresent(oli -> oli.setOrder(order)))
+            .then(Mono.just(items));
     }
 
-    private void fillSinkFromQueue(long n) {
-        int i;
-        for (i = 0; i < n; i++) {
-            if (oliQueue.isEmpty())
-                break;
-
-            OrderListItem oli = oliQueue.poll();
-            if (oli != null) {
-                logger.info("Publish OLI into sink id: {} number: {} lt: {}",
-                    oli.getId(), oli.getNumber(), oli.getFetchTime());
-                sink.next(oli);
-            }
-        }
-
-        if (i > 0) {
-            logger.info("Published {} items into sink", i);
-        }
-    }
+    private List<ShopwareAPI.Filter> buildFilters() {
+        List<ShopwareAPI.Filter> filters = new LinkedList<>();
 
-    private void updateQueue() {
-        logger.debug(
-            "Updating order queue, queue size {} requested {} inflight {}",
-            oliQueue.size(), sink.requestedFromDownstream(), fetchOrdersInFlight.get()
-        );
+        // shopware chains the filters in order, so the keyset condition has to come first
+        // to end up as ((orderTime = t AND id > i) OR orderTime > t) AND ...
+        Optional.ofNullable(getCursor()).ifPresent(position -> {
+            String orderTime = DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(position.getOrderTime());
 
-        if (oliQueue.isEmpty()
-            && sink.requestedFromDownstream() > 0
-            && fetchOrdersInFlight.compareAndSet(false, true)
-        ) {
-            api.fetchOrders(buildFilters())
-                .doFinally(signalType -> fetchOrdersInFlight.set(false))
-                .onErrorResume(e -> Mono.empty())
-                .subscribe(this::handleOrderListItems);
-        } else {
-            fillSinkFromQueue(sink.requestedFromDownstream());
-        }
-    }
-
-    private List<ShopwareAPI.Filter> buildFilters() {
-        DateTimeFormatter formatter = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+            filters.add(new ShopwareAPI.Filter("orderTime", orderTime, "="));
+            filters.add(new ShopwareAPI.Filter("id", String.valueOf(position.getId()), ">"));
+            filters.add(new ShopwareAPI.Filter("orderTime", orderTime, ">", true));
+        });
 
-        List<ShopwareAPI.Filter> filters = new LinkedList<>();
         filters.add(new ShopwareAPI.Filter(
             "attribute." + swProps.getExportedAttribute(),
             null, "="
         ));
 
-        if (lastFetchedOrderTime != null) {
-            filters.add(new ShopwareAPI.Filter(
-                "orderTime", formatter.format(lastFetchedOrderTime), ">"
-            ));
-        }
-
+        filters.addAll(rangeFilters);
         filters.addAll(swProps.getOrderFilters());
 
         return filters;
     }
 
-    private void handleOrderListItems(List<OrderListItem> orderListItems) {
-        if (orderListItems.isEmpty()) {
-            setupCheckInterval(swProps.getIntervals().getOnEmptyList());
-        } else {
-            setupCheckInterval();
-        }
+    @Override
+    protected void advanceCursor(OrderListItem oli) {
+        advanceCursor(OrderCursor.of(oli));
+    }
 
-        orderListItems.forEach(oli -> {
-            oliQueue.add(oli);
+    private synchronized OrderCursor getCursor() {
+        return cursor;
+    }
 
-            updateLastFetchOrderTime(oli.getOrderTime());
-        });
+    private synchronized void advanceCursor(OrderCursor next) {
+        if (cursor == null || cursor.compareTo(next) < 0) {
+            cursor = next;
+        }
     }
 
-    private synchronized void updateLastFetchOrderTime(OffsetDateTime orderTime) {
-        if (this.lastFetchedOrderTime == null || orderTime == null) {
-            this.lastFetchedOrderTime = orderTime;
-        } else if (lastFetchedOrderTime.isBefore(orderTime)) {
-            this.lastFetchedOrderTime = orderTime;
+    /**
+     * Orders that failed to export are behind the cursor, every now and then we start over
+     * to pick them up again. Waits until the queue is drained, otherwise the queued orders
+     * would be fetched a second time.
+     */
+    private synchronized void resetCursorIfDue() {
+        long now = getScheduler().now(TimeUnit.MILLISECONDS);
+
+        if (isQueueEmpty()
+            && now - lastCursorReset >= swProps.getIntervals().getResetLastFetchedOrderTime().toMillis()
+        ) {
+            logger.info("Reset order cursor {}", cursor);
+
+            cursor = null;
+            lastCursorReset = now;
         }
     }
 }
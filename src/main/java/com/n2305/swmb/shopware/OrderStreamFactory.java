@@ -1,38 +1,146 @@
 package com.n2305.swmb.shopware;
 
+import com.n2305.swmb.metrics.PipelineMetrics;
 import com.n2305.swmb.properties.ShopwareProperties;
+import com.n2305.swmb.state.CursorTracker;
+import com.n2305.swmb.state.StateStore;
+import com.n2305.swmb.utils.RetryPolicy;
 import org.apache.commons.validator.routines.EmailValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.Optional;
 
-@Service
 public class OrderStreamFactory {
     private static final Logger logger = LoggerFactory.getLogger(OrderStreamFactory.class);
 
+    static final String CURSOR_KEY = "orders.cursor";
+
     private final ShopwareAPI shopwareAPI;
     private final ShopwareProperties swProps;
     private final EmailValidator emailValidator;
+    private final RetryPolicy retryPolicy;
+    private final PipelineMetrics metrics;
+    private final List<ShopwareAPI.Filter> rangeFilters;
+    private final CursorTracker<OrderCursor> cursorTracker;
 
-    public OrderStreamFactory(ShopwareAPI shopwareAPI, ShopwareProperties swProps, EmailValidator emailValidator) {
+    /**
+     * The cursor tracker may be null for subclasses that list and acknowledge the orders
+     * themselves.
+     */
+    protected OrderStreamFactory(
+        ShopwareAPI shopwareAPI,
+        ShopwareProperties swProps,
+        EmailValidator emailValidator,
+        CursorTracker<OrderCursor> cursorTracker,
+        List<ShopwareAPI.Filter> rangeFilters,
+        RetryPolicy retryPolicy,
+        PipelineMetrics metrics
+    ) {
         this.shopwareAPI = shopwareAPI;
         this.swProps = swProps;
         this.emailValidator = emailValidator;
+        this.retryPolicy = retryPolicy;
+        this.metrics = metrics;
+        this.rangeFilters = rangeFilters;
+        this.cursorTracker = cursorTracker;
+    }
+
+    /**
+     * With range filters the stream only lists the matching orders and completes afterwards.
+     */
+    public OrderStreamFactory(
+        ShopwareAPI shopwareAPI,
+        ShopwareProperties swProps,
+        EmailValidator emailValidator,
+        StateStore stateStore,
+        RetryPolicy retryPolicy,
+        PipelineMetrics metrics,
+        List<ShopwareAPI.Filter> rangeFilters
+    ) {
+        this(
+            shopwareAPI,
+            swProps,
+            emailValidator,
+            new CursorTracker<>(
+                stateStore.get(CURSOR_KEY).map(OrderCursor::parse).orElse(null),
+                cursor -> stateStore.put(CURSOR_KEY, cursor.toString())
+            ),
+            rangeFilters,
+            retryPolicy,
+            metrics
+        );
     }
 
     public Flux<SWOrder> create() {
-        OrderPublisher orderPublisher = new OrderPublisher(shopwareAPI, swProps);
+        return listOrders()
+            .transform(this::fetchOrders)
+            .filter(this::hasValidEmail);
+    }
+
+    protected Flux<OrderListItem> listOrders() {
+        OrderPublisher orderPublisher = new OrderPublisher(
+            shopwareAPI, swProps, cursorTracker.getCommitted().orElse(null), rangeFilters, Schedulers.parallel());
+        metrics.registerPublisher(PipelineMetrics.ORDERS, orderPublisher);
 
         return Flux.create(orderPublisher)
-            .flatMap(this::fetchOrder)
-            .filter(swo -> emailValidator.isValid(swo.getCustomer().getEmail()));
+            .doOnNext(oli -> cursorTracker.track(OrderCursor.of(oli)));
+    }
+
+    /**
+     * Counts the orders that are not exported yet, within the range if there is one.
+     */
+    public Mono<Long> countPending() {
+        return shopwareAPI.countPendingOrders(rangeFilters);
+    }
+
+    /**
+     * Marks the order as done, the persisted cursor follows once every order before it is done
+     * as well. Orders that are never acknowledged are fetched again after a restart.
+     */
+    public void acknowledge(SWOrder order) {
+        Optional.ofNullable(order.getListCursor())
+            .ifPresent(cursor -> acknowledge(order.getId(), cursor));
+    }
+
+    protected void acknowledge(int orderId, OrderCursor cursor) {
+        cursorTracker.acknowledge(cursor);
+    }
+
+    private boolean hasValidEmail(SWOrder order) {
+        boolean valid = emailValidator.isValid(order.getCustomer().getEmail());
+        if (!valid)
+            acknowledge(order);
+
+        return valid;
+    }
+
+    /**
+     * Only the configured number of detail requests is in flight at once, independent of the
+     * mailbluster budget. Upstream demand is driven by the send pipeline so fetched orders don't
+     * pile up in memory while waiting for the rate limiter.
+     */
+    private Flux<SWOrder> fetchOrders(Flux<OrderListItem> orderListItems) {
+        ShopwareProperties.DetailFetch detailFetch = swProps.getDetailFetch();
+
+        return detailFetch.isOrdered()
+            ? orderListItems.flatMapSequential(this::fetchOrder, detailFetch.getConcurrency(), detailFetch.getPrefetch())
+            : orderListItems.flatMap(this::fetchOrder, detailFetch.getConcurrency(), detailFetch.getPrefetch());
     }
 
     private Mono<SWOrder> fetchOrder(OrderListItem oli) {
-        return shopwareAPI.fetchOrder(oli.getId())
-            .map(o -> o.setListFetchTime(oli.getFetchTime()))
+        OrderCursor cursor = OrderCursor.of(oli);
+
+        // orders that can't be fetched are not exported yet, the next cursor reset picks them up
+        return Mono.justOrEmpty(oli.getOrder())
+            .switchIfEmpty(Mono.defer(() -> shopwareAPI.fetchOrder(oli.getId())
+                .retryWhen(retryPolicy.inline())))
+            .map(o -> o.setListFetchTime(oli.getFetchTime()).setListCursor(cursor))
+            .doOnError(e -> acknowledge(oli.getId(), cursor))
             .onErrorResume(e -> Mono.empty());
     }
 }
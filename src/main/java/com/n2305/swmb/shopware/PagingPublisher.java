@@ -0,0 +1,211 @@
+package com.n2305.swmb.shopware;
+
+import com.n2305.swmb.properties.ShopwareProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Publishes the items of a paged shopware list. The next page is fetched as soon as the queue
+ * drops to the low watermark, so downstream doesn't stall for a round trip at every page boundary,
+ * but only if the page still fits below the high watermark. There is never more than one fetch in
+ * flight and the cursor is advanced for a whole page before the next fetch is started.
+ * Nothing is scheduled unless the last page showed that we are caught up, in that case a single
+ * timer ends the idle wait. A bounded publisher completes instead, once the queue is drained.
+ */
+public abstract class PagingPublisher<T> implements Consumer<FluxSink<T>> {
+    private static final Logger logger = LoggerFactory.getLogger(PagingPublisher.class);
+
+    private final ShopwareProperties swProps;
+    private final int pageSize;
+    private final boolean bounded;
+    private final Scheduler scheduler;
+    private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicBoolean fetchInFlight = new AtomicBoolean(false);
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private FluxSink<T> sink;
+    private volatile boolean idle;
+    private volatile boolean exhausted;
+    private boolean completed;
+    private Disposable idleDisposable;
+
+    protected PagingPublisher(ShopwareProperties swProps, int pageSize, boolean bounded, Scheduler scheduler) {
+        this.swProps = swProps;
+        this.pageSize = pageSize;
+        this.bounded = bounded;
+        this.scheduler = scheduler;
+    }
+
+    protected PagingPublisher(ShopwareProperties swProps, int pageSize, Scheduler scheduler) {
+        this(swProps, pageSize, false, scheduler);
+    }
+
+    /**
+     * Fetches the page following the current cursor.
+     */
+    protected abstract Mono<List<T>> fetchPage();
+
+    /**
+     * Moves the cursor past the given item, called for every item of a page before it is queued.
+     */
+    protected abstract void advanceCursor(T item);
+
+    protected void onPage(List<T> page) {
+    }
+
+    protected void onDispose() {
+    }
+
+    protected Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    protected boolean isQueueEmpty() {
+        return queueSize.get() == 0;
+    }
+
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+    public long getRequested() {
+        FluxSink<T> sink = this.sink;
+
+        return sink == null ? 0 : sink.requestedFromDownstream();
+    }
+
+    @Override
+    public void accept(FluxSink<T> sink) {
+        this.sink = sink;
+
+        sink.onRequest(this::onRequest);
+        sink.onDispose(this::onSinkDispose);
+    }
+
+    private void onRequest(long n) {
+        logger.debug("Got request for {} items, queue size {}", n, queueSize.get());
+
+        drain();
+    }
+
+    private void onSinkDispose() {
+        Optional.ofNullable(idleDisposable)
+            .ifPresent(Disposable::dispose);
+
+        onDispose();
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0)
+            return;
+
+        int missed = 1;
+        do {
+            fillSinkFromQueue(sink.requestedFromDownstream());
+
+            if (exhausted && queueSize.get() == 0 && !completed) {
+                completed = true;
+                sink.complete();
+            }
+
+            if (shouldFetch() && fetchInFlight.compareAndSet(false, true)) {
+                fetch();
+            }
+
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private boolean shouldFetch() {
+        if (idle || exhausted)
+            return false;
+
+        int queued = queueSize.get();
+        if (queued == 0)
+            return sink.requestedFromDownstream() > 0;
+
+        ShopwareProperties.Paging paging = swProps.getPaging();
+
+        return queued <= paging.getLowWatermark()
+            && queued + pageSize <= paging.getHighWatermark();
+    }
+
+    private void fillSinkFromQueue(long n) {
+        int i;
+        for (i = 0; i < n; i++) {
+            T item = queue.poll();
+            if (item == null)
+                break;
+
+            queueSize.decrementAndGet();
+            logger.debug("Publish into sink: {}", item);
+            sink.next(item);
+        }
+
+        if (i > 0) {
+            logger.info("Published {} items into sink", i);
+        }
+    }
+
+    private void fetch() {
+        Mono.defer(this::fetchPage)
+            .doOnError(e -> enterIdle(swProps.getIntervals().getOnError()))
+            .onErrorResume(e -> Mono.empty())
+            .doFinally(signalType -> {
+                fetchInFlight.set(false);
+                drain();
+            })
+            .subscribe(this::handlePage);
+    }
+
+    private void handlePage(List<T> page) {
+        page.forEach(item -> {
+            advanceCursor(item);
+
+            queue.add(item);
+            queueSize.incrementAndGet();
+        });
+
+        onPage(page);
+
+        if (isCaughtUp(page)) {
+            if (bounded)
+                exhausted = true;
+            else
+                enterIdle(swProps.getIntervals().getOnEmptyList());
+        }
+    }
+
+    /**
+     * In drain mode a page that isn't full means there is no backlog left, so we wait for the
+     * idle interval instead of immediately asking for the next, most likely empty, page.
+     */
+    private boolean isCaughtUp(List<T> page) {
+        return page.isEmpty()
+            || (swProps.getPaging().isDrain() && page.size() < pageSize);
+    }
+
+    private void enterIdle(Duration duration) {
+        logger.debug("No backlog left, next fetch in {}", duration);
+
+        idle = true;
+        idleDisposable = Mono.delay(duration, scheduler)
+            .subscribe(n -> {
+                idle = false;
+                drain();
+            });
+    }
+}
@@ -0,0 +1,220 @@
+package com.n2305.swmb.shopware;
+
+import com.n2305.swmb.metrics.PipelineMetrics;
+import com.n2305.swmb.properties.AppProperties;
+import com.n2305.swmb.properties.ShopwareProperties;
+import com.n2305.swmb.state.CursorTracker;
+import com.n2305.swmb.state.PartitionCoordinator;
+import com.n2305.swmb.utils.RetryPolicy;
+import org.apache.commons.validator.routines.EmailValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lists the unexported orders partition by partition, so several nodes can backfill a shop side
+ * by side. A partition is a range of order ids claimed through the coordinator. Its checkpoint
+ * is the committed cursor of its orders, it is done once all of them are acknowledged. The
+ * stream completes when every partition of the plan is done, the orders of a node that died are
+ * picked up by the others once its leases expired. A node that notices on a heartbeat that
+ * another one took over its partition stops listing it and moves on.
+ */
+public class PartitionedOrderStreamFactory extends OrderStreamFactory implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedOrderStreamFactory.class);
+
+    private final ShopwareAPI shopwareAPI;
+    private final ShopwareProperties swProps;
+    private final RetryPolicy retryPolicy;
+    private final PipelineMetrics metrics;
+    private final PartitionCoordinator coordinator;
+    private final AppProperties.Backfill backfillProps;
+    private final Map<Integer, Partition> partitions = new ConcurrentHashMap<>();
+    private volatile int partitionSize;
+    private volatile boolean finished;
+    private Disposable heartbeatDisposable;
+
+    public PartitionedOrderStreamFactory(
+        ShopwareAPI shopwareAPI,
+        ShopwareProperties swProps,
+        EmailValidator emailValidator,
+        RetryPolicy retryPolicy,
+        PipelineMetrics metrics,
+        PartitionCoordinator coordinator,
+        AppProperties.Backfill backfillProps
+    ) {
+        super(shopwareAPI, swProps, emailValidator, null, List.of(), retryPolicy, metrics);
+
+        this.shopwareAPI = shopwareAPI;
+        this.swProps = swProps;
+        this.retryPolicy = retryPolicy;
+        this.metrics = metrics;
+        this.coordinator = coordinator;
+        this.backfillProps = backfillProps;
+    }
+
+    @Override
+    protected Flux<OrderListItem> listOrders() {
+        return plan()
+            .doOnNext(plan -> {
+                partitionSize = plan.getPartitionSize();
+                startHeartbeat();
+            })
+            .thenMany(Flux.defer(this::listNextPartition).repeat(() -> !finished))
+            .doFinally(signal -> io(() -> {
+                close();
+                return signal;
+            }).subscribe(s -> {}, e -> logger.warn("Failed to leave the backfill", e)));
+    }
+
+    /**
+     * Every node proposes a plan up to the current highest order id, the first one wins. Orders
+     * created later are left to the regular sync.
+     */
+    private Mono<PartitionCoordinator.Plan> plan() {
+        int size = backfillProps.getPartitionSize();
+
+        return shopwareAPI.fetchMaxOrderId()
+            .retryWhen(retryPolicy.inline())
+            .flatMap(maxId -> io(() -> coordinator.plan(new PartitionCoordinator.Plan(maxId / size + 1, size))))
+            .doOnNext(plan -> logger.info("Backfill orders in {}", plan));
+    }
+
+    /**
+     * Without a free partition waits for the partitions of other nodes, they are either
+     * completed or expire and can be claimed.
+     */
+    private Flux<OrderListItem> listNextPartition() {
+        return io(coordinator::claim)
+            .flatMapMany(lease -> lease.map(this::listPartition)
+                .orElseGet(() -> io(coordinator::isFinished)
+                    .doOnNext(f -> finished = f)
+                    .filter(f -> !f)
+                    .flatMap(f -> Mono.delay(backfillProps.getHeartbeatInterval()))
+                    .thenMany(Flux.empty())));
+    }
+
+    private Flux<OrderListItem> listPartition(PartitionCoordinator.Lease lease) {
+        int fromId = lease.getPartition() * partitionSize;
+        OrderCursor checkpoint = Optional.ofNullable(lease.getCheckpoint())
+            .map(OrderCursor::parse)
+            .orElse(null);
+        Partition partition = new Partition(lease, new CursorTracker<>(
+            checkpoint,
+            cursor -> coordinator.checkpoint(lease, cursor.toString())
+        ));
+        partitions.put(lease.getPartition(), partition);
+
+        logger.info("List orders with ids from {} below {} of partition {} after {}",
+            fromId, fromId + partitionSize, lease.getPartition(), checkpoint);
+
+        OrderPublisher orderPublisher = new OrderPublisher(shopwareAPI, swProps, checkpoint, List.of(
+            new ShopwareAPI.Filter("id", String.valueOf(fromId), ">="),
+            new ShopwareAPI.Filter("id", String.valueOf(fromId + partitionSize), "<")
+        ), Schedulers.parallel());
+        metrics.registerPublisher(PipelineMetrics.ORDERS, orderPublisher);
+
+        return Flux.create(orderPublisher)
+            .takeUntilOther(partition.lost.asMono())
+            .doOnNext(oli -> partition.tracker.track(OrderCursor.of(oli)))
+            .doOnComplete(() -> {
+                partition.listed = true;
+                completeIfDone(partition);
+            });
+    }
+
+    @Override
+    protected void acknowledge(int orderId, OrderCursor cursor) {
+        Optional.ofNullable(partitions.get(orderId / partitionSize))
+            .ifPresent(partition -> {
+                partition.tracker.acknowledge(cursor);
+                completeIfDone(partition);
+            });
+    }
+
+    private void completeIfDone(Partition partition) {
+        if (!partition.listed
+            || partition.tracker.getPendingCount() > 0
+            || !partitions.remove(partition.lease.getPartition(), partition))
+            return;
+
+        io(() -> coordinator.complete(partition.lease))
+            .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, backfillProps.getHeartbeatInterval())
+                .doBeforeRetry(signal -> logger.warn("Failed to complete partition {}, retry in {}",
+                    partition.lease.getPartition(), backfillProps.getHeartbeatInterval(), signal.failure())))
+            .filter(completed -> completed)
+            .subscribe(completed -> logger.info("Completed partition {}", partition.lease.getPartition()));
+    }
+
+    /**
+     * Stops listing the partitions the last heartbeat lost, their orders that are in flight
+     * still go out but their checkpoints are dropped.
+     */
+    private void dropLostPartitions() {
+        partitions.values().forEach(partition -> {
+            if (coordinator.isHeld(partition.lease) || !partitions.remove(partition.lease.getPartition(), partition))
+                return;
+
+            logger.warn("Stop listing partition {}, another node took it over", partition.lease.getPartition());
+            partition.lost.tryEmitEmpty();
+        });
+    }
+
+    private synchronized void startHeartbeat() {
+        if (heartbeatDisposable != null)
+            return;
+
+        heartbeatDisposable = Flux.interval(Duration.ZERO, backfillProps.getHeartbeatInterval(), Schedulers.parallel())
+            .onBackpressureDrop()
+            .concatMap(n -> io(() -> {
+                coordinator.heartbeat();
+                return n;
+            })
+                .doOnError(e -> logger.warn("Failed to renew the backfill leases", e))
+                .onErrorResume(e -> Mono.empty()), 1)
+            .subscribe(n -> dropLostPartitions());
+    }
+
+    private static <T> Mono<T> io(Callable<T> callable) {
+        return Mono.fromCallable(callable)
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Stops the heartbeats and releases the partitions that are still held.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            Optional.ofNullable(heartbeatDisposable)
+                .ifPresent(Disposable::dispose);
+        }
+
+        coordinator.close();
+    }
+
+    private static class Partition {
+        private final PartitionCoordinator.Lease lease;
+        private final CursorTracker<OrderCursor> tracker;
+        private final Sinks.Empty<Void> lost = Sinks.empty();
+        private volatile boolean listed;
+
+        private Partition(PartitionCoordinator.Lease lease, CursorTracker<OrderCursor> tracker) {
+            this.lease = lease;
+            this.tracker = tracker;
+        }
+    }
+}
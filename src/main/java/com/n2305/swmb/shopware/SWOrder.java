@@ -4,11 +4,10 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+import com.n2305.swmb.utils.IpAddresses;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.time.OffsetDateTime;
 import java.util.Date;
 import java.util.List;
@@ -32,6 +31,7 @@ public class SWOrder {
 
     private OffsetDateTime fetchTime;
     private OffsetDateTime listFetchTime;
+    private OrderCursor listCursor;
 
     private SWOrder(
         int id,
@@ -83,6 +83,16 @@ public class SWOrder {
         return listFetchTime;
     }
 
+    public SWOrder setListCursor(OrderCursor listCursor) {
+        this.listCursor = listCursor;
+
+        return this;
+    }
+
+    public OrderCursor getListCursor() {
+        return listCursor;
+    }
+
     @JsonPOJOBuilder
     static class Builder {
         private static final Logger logger = LoggerFactory.getLogger(Builder.class);
@@ -131,20 +141,18 @@ public class SWOrder {
             return this;
         }
 
+        /**
+         * Only keeps ip literals, this runs during deserialization on the event loop and must
+         * not end up in a dns lookup.
+         */
         Builder withRemoteAddress(String remoteAddress) {
             Optional.ofNullable(remoteAddress)
-                .map(s -> s.replaceAll("(?<=::):$", ""))
-                .map(s -> {
-                    try {
-                        return InetAddress.getByName(s);
-                    } catch (UnknownHostException e) {
+                .map(s -> s.endsWith(":::") ? s.substring(0, s.length() - 1) : s)
+                .ifPresent(s -> {
+                    this.remoteAddress = IpAddresses.normalize(s).orElse(null);
+                    if (this.remoteAddress == null)
                         logger.info("Failed to sanitize remote address: {}", s);
-
-                        return null;
-                    }
-                })
-                .map(InetAddress::getHostAddress)
-                .ifPresent(s -> this.remoteAddress = s);
+                });
 
             return this;
         }
@@ -250,6 +258,14 @@ public class SWOrder {
         return shipping;
     }
 
+    /**
+     * Whether the order carries the associations the mapping needs, the plain list endpoint
+     * only returns the order fields.
+     */
+    public boolean isComplete() {
+        return customer != null && details != null && billing != null && shipping != null;
+    }
+
     public boolean hasInvoiceShipping() {
         return invoiceShipping > 0;
     }
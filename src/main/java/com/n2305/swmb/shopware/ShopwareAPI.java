@@ -1,48 +1,72 @@
 package com.n2305.swmb.shopware;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.n2305.swmb.metrics.PipelineMetrics;
 import com.n2305.swmb.properties.ShopwareProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.context.properties.ConstructorBinding;
 import org.springframework.http.MediaType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.io.IOException;
 import java.net.URI;
 import java.time.Clock;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 public class ShopwareAPI {
     private static final Logger logger = LoggerFactory.getLogger(ShopwareAPI.class);
-    private static final int LIST_LIMIT = 100;
+
+    // keyset order, has to match the cursor filters built by the publishers
+    private static final List<Sort> ORDER_SORT = List.of(
+        new Sort("orderTime", Sort.ASC),
+        new Sort("id", Sort.ASC)
+    );
+
+    private static final List<Sort> CUSTOMER_SORT = List.of(
+        new Sort("id", Sort.ASC)
+    );
+
+    private static final List<Sort> LAST_ID_SORT = List.of(
+        new Sort("id", Sort.DESC)
+    );
 
     private final WebClient httpClient;
     private final FilterQueryParamSerializer filterQueryParamSerializer;
     private final ObjectMapper objectMapper;
     private final ShopwareProperties swProps;
     private final Clock clock;
+    private final PipelineMetrics metrics;
 
     public ShopwareAPI(
         WebClient httpClient,
         FilterQueryParamSerializer filterParamSerializer,
         ObjectMapper objectMapper,
         ShopwareProperties swProps,
-        Clock clock
+        Clock clock,
+        PipelineMetrics metrics
     ) {
         this.httpClient = httpClient;
         this.filterQueryParamSerializer = filterParamSerializer;
         this.objectMapper = objectMapper;
         this.swProps = swProps;
         this.clock = clock;
+        this.metrics = metrics;
     }
 
     public Mono<List<CustomerListItem>> fetchCustomers() {
@@ -50,9 +74,16 @@ public class ShopwareAPI {
     }
 
     public Mono<List<CustomerListItem>> fetchCustomers(List<Filter> filters) {
-        ObjectReader objectReader = objectMapper
-            .readerForListOf(CustomerListItem.class)
-            .at("/data");
+        return metrics.timeShopwareList(PipelineMetrics.CUSTOMERS, streamCustomers(filters)
+            .collectList()
+            .doOnNext(result -> logger.info("Fetched customers with ids: {}", result.stream()
+                .map(CustomerListItem::getId)
+                .map(String::valueOf)
+                .collect(Collectors.joining(", ")))));
+    }
+
+    public Flux<CustomerListItem> streamCustomers(List<Filter> filters) {
+        ObjectReader objectReader = objectMapper.readerFor(CustomerListItem.class);
 
         return httpClient.get()
             .uri(uriBuilder -> {
@@ -60,11 +91,13 @@ public class ShopwareAPI {
                     .serialize(filters)
                     .forEach(uriBuilder::queryParam);
 
+                filterQueryParamSerializer
+                    .serializeSort(CUSTOMER_SORT)
+                    .forEach(uriBuilder::queryParam);
+
                 URI uri = uriBuilder
                     .path("/api/customers")
-                    .queryParam("limit", LIST_LIMIT)
-                    .queryParam("sort[0][property]", "id")
-                    .queryParam("sort[0][direction]", "ASC")
+                    .queryParam("limit", swProps.getPaging().getCustomerPageSize())
                     .build();
 
                 logger.info("Fetch customers with uri: {}", uri.toString());
@@ -72,25 +105,10 @@ public class ShopwareAPI {
                 return uri;
             })
             .retrieve()
-            .bodyToMono(String.class)
+            .bodyToFlux(DataBuffer.class)
+            .transform(body -> this.<CustomerListItem>decodeData(body, objectReader))
             .doOnError(e -> logger.warn("Failed to fetch customers {}", e.getMessage()))
-            .<List<CustomerListItem>>flatMap(src -> {
-                try {
-                    List<CustomerListItem> result = objectReader.readValue(src);
-                    logger.info("Fetched customers with ids: {}", result.stream()
-                        .map(CustomerListItem::getId)
-                        .map(String::valueOf)
-                        .collect(Collectors.joining(", ")));
-
-                    OffsetDateTime now = OffsetDateTime.now(clock);
-                    result.forEach(oli -> oli.setFetchTime(now));
-
-                    return Mono.just(result);
-                } catch (JsonProcessingException e) {
-                    logger.warn("Failed to deserialize customers", e);
-                    return Mono.error(e);
-                }
-            });
+            .transform(items -> withFetchTime(items, CustomerListItem::setFetchTime));
     }
 
     public Mono<List<OrderListItem>> fetchOrders() {
@@ -98,9 +116,16 @@ public class ShopwareAPI {
     }
 
     public Mono<List<OrderListItem>> fetchOrders(List<Filter> filters) {
-        ObjectReader objectReader = objectMapper
-            .readerForListOf(OrderListItem.class)
-            .at("/data");
+        return metrics.timeShopwareList(PipelineMetrics.ORDERS, streamOrders(filters)
+            .collectList()
+            .doOnNext(result -> logger.info("Fetched orders with ids: {}", result.stream()
+                .map(OrderListItem::getId)
+                .map(String::valueOf)
+                .collect(Collectors.joining(", ")))));
+    }
+
+    public Flux<OrderListItem> streamOrders(List<Filter> filters) {
+        ObjectReader objectReader = objectMapper.readerFor(OrderListItem.class);
 
         logger.info("Fetch orders");
 
@@ -110,11 +135,13 @@ public class ShopwareAPI {
                     .serialize(filters)
                     .forEach(uriBuilder::queryParam);
 
+                filterQueryParamSerializer
+                    .serializeSort(ORDER_SORT)
+                    .forEach(uriBuilder::queryParam);
+
                 URI uri = uriBuilder
                     .path("/api/orders")
-                    .queryParam("limit", LIST_LIMIT)
-                    .queryParam("sort[0][property]", "orderTime")
-                    .queryParam("sort[0][direction]", "ASC")
+                    .queryParam("limit", swProps.getPaging().getOrderPageSize())
                     .build();
 
                 logger.info("Fetch orders with uri: {}", uri.toString());
@@ -122,35 +149,18 @@ public class ShopwareAPI {
                 return uri;
             })
             .retrieve()
-            .bodyToMono(String.class)
+            .bodyToFlux(DataBuffer.class)
+            .transform(body -> this.<OrderListItem>decodeData(body, objectReader))
             .doOnError(e -> logger.warn("Failed to fetch orders {}", e.getMessage()))
-            .<List<OrderListItem>>flatMap(src -> {
-                try {
-                    List<OrderListItem> result = objectReader.readValue(src);
-                    logger.info("Fetched orders with ids: {}", result.stream()
-                        .map(OrderListItem::getId)
-                        .map(String::valueOf)
-                        .collect(Collectors.joining(", ")));
-
-                    OffsetDateTime now = OffsetDateTime.now(clock);
-                    result.forEach(oli -> oli.setFetchTime(now));
-
-                    return Mono.just(result);
-                } catch (JsonProcessingException e) {
-                    logger.warn("Failed to deserialize orders", e);
-                    return Mono.error(e);
-                }
-            });
+            .transform(items -> withFetchTime(items, OrderListItem::setFetchTime));
     }
 
     public Mono<SWOrder> fetchOrder(int id) {
-        ObjectReader objectReader = objectMapper
-            .readerFor(SWOrder.class)
-            .at("/data");
+        ObjectReader objectReader = objectMapper.readerFor(SWOrder.class);
 
         logger.info("Fetch order with id {}", id);
 
-        return httpClient.get()
+        return metrics.timeShopwareDetail(httpClient.get()
             .uri(uriBuilder -> {
                 return uriBuilder
                     .path("/api/orders")
@@ -158,25 +168,85 @@ public class ShopwareAPI {
                     .build(id);
             })
             .retrieve()
-            .bodyToMono(String.class)
-            .doOnError(e -> logger.warn("Failed to fetch order with id {}", id))
-            .<SWOrder>flatMap(src -> {
-                try {
-                    SWOrder data = objectReader.readValue(src);
-                    data.setFetchTime(OffsetDateTime.now(clock));
+            .bodyToFlux(DataBuffer.class)
+            .transform(body -> this.<SWOrder>decodeData(body, objectReader))
+            .singleOrEmpty()
+            .doOnError(e -> logger.warn("Failed to fetch order with id {}", id)))
+            .map(data -> data.setFetchTime(OffsetDateTime.now(clock)));
+    }
+
+    /**
+     * Fetches the given orders with a single request to the bulk endpoint. Depending on the
+     * endpoint the orders may come without their associations, see {@link SWOrder#isComplete()}.
+     */
+    public Flux<SWOrder> fetchOrdersById(List<Integer> ids) {
+        ObjectReader objectReader = objectMapper.readerFor(SWOrder.class);
+        List<Filter> filters = List.of(Filter.in("id", ids.stream()
+            .map(String::valueOf)
+            .collect(Collectors.toList())));
+
+        return metrics.timeShopwareBulkDetail(httpClient.get()
+            .uri(uriBuilder -> {
+                filterQueryParamSerializer
+                    .serialize(filters)
+                    .forEach(uriBuilder::queryParam);
+
+                URI uri = uriBuilder
+                    .path(swProps.getDetailFetch().getBulkPath())
+                    .queryParam("limit", ids.size())
+                    .build();
+
+                logger.info("Fetch orders in bulk with uri: {}", uri.toString());
+
+                return uri;
+            })
+            .retrieve()
+            .bodyToFlux(DataBuffer.class)
+            .transform(body -> this.<SWOrder>decodeData(body, objectReader))
+            .doOnError(e -> logger.warn("Failed to fetch orders with ids {}", ids)))
+            .transform(orders -> withFetchTime(orders, SWOrder::setFetchTime));
+    }
+
+    /**
+     * Deserializes the value of the data field, or every element of it if it's an array,
+     * while the response body is still streaming in.
+     */
+    private <T> Flux<T> decodeData(Flux<DataBuffer> body, ObjectReader objectReader) {
+        return Flux.defer(() -> {
+            DataFieldTokenizer tokenizer = new DataFieldTokenizer(objectMapper.getFactory());
+
+            return body
+                .concatMapIterable(tokenizer::tokenize)
+                .concatWith(Flux.defer(() -> Flux.fromIterable(tokenizer.endOfInput())))
+                .<T>handle((tokenBuffer, sink) -> {
+                    try {
+                        T value = objectReader.readValue(tokenBuffer.asParser(objectReader));
+                        if (value != null)
+                            sink.next(value);
+                    } catch (IOException e) {
+                        logger.warn("Failed to deserialize {}", objectReader.getValueType(), e);
+                        sink.error(e);
+                    }
+                });
+        }).doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    private <T> Flux<T> withFetchTime(Flux<T> items, BiConsumer<T, OffsetDateTime> setFetchTime) {
+        return Flux.defer(() -> {
+            OffsetDateTime now = OffsetDateTime.now(clock);
 
-                    return Mono.just(data);
-                } catch (JsonProcessingException e) {
-                    logger.warn("Failed to deserialize order", e);
-                    return Mono.error(e);
-                }
-            });
+            return items.doOnNext(item -> setFetchTime.accept(item, now));
+        });
     }
 
     public Mono<ResponseEntity<Void>> markOrderAsExported(SWOrder order) {
         logger.info("Mark order with id {} as exported, lt: {} t: {}",
             order.getId(), order.getListFetchTime(), order.getFetchTime());
 
+        return markOrderAsExported(order.getId());
+    }
+
+    public Mono<ResponseEntity<Void>> markOrderAsExported(int orderId) {
         ObjectNode rootNode = objectMapper.createObjectNode()
             .set("attribute", objectMapper.createObjectNode()
                 .putPOJO(swProps.getExportedAttribute(), OffsetDateTime.now(clock)));
@@ -185,7 +255,7 @@ public class ShopwareAPI {
             .uri(uriBuilder -> uriBuilder
                 .path("/api/orders")
                 .pathSegment("{id}")
-                .build(order.getId()))
+                .build(orderId))
             .contentType(MediaType.APPLICATION_JSON)
             .body(BodyInserters.fromValue(rootNode))
             .retrieve()
@@ -193,16 +263,219 @@ public class ShopwareAPI {
             .doOnError(e -> logger.warn("Failed to mark order as exported", e));
     }
 
+    /**
+     * Marks all given orders as exported with one batch update. Shopware answers with a result
+     * per order in the same order, one failed order doesn't fail the others.
+     */
+    public Mono<List<BatchResult>> markOrdersAsExported(List<Integer> orderIds) {
+        logger.info("Mark orders with ids {} as exported", orderIds);
+
+        OffsetDateTime now = OffsetDateTime.now(clock);
+        ArrayNode rootNode = objectMapper.createArrayNode();
+        orderIds.forEach(orderId -> rootNode.addObject()
+            .put("id", orderId)
+            .set("attribute", objectMapper.createObjectNode()
+                .putPOJO(swProps.getExportedAttribute(), now)));
+
+        return httpClient.put()
+            .uri(uriBuilder -> uriBuilder
+                .path("/api/orders")
+                .build())
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(BodyInserters.fromValue(rootNode))
+            .retrieve()
+            .bodyToMono(JsonNode.class)
+            .flatMap(body -> readBatchResults(body, orderIds.size()))
+            .doOnError(e -> logger.warn("Failed to mark orders as exported", e));
+    }
+
+    private Mono<List<BatchResult>> readBatchResults(JsonNode body, int expected) {
+        JsonNode data = body.path("data");
+        if (!data.isArray() || data.size() != expected) {
+            return Mono.error(new IllegalStateException(
+                "Expected " + expected + " batch results but got " + data));
+        }
+
+        List<BatchResult> results = new ArrayList<>(expected);
+        data.forEach(result -> results.add(new BatchResult(
+            result.path("success").asBoolean(false),
+            result.path("message").asText(null)
+        )));
+
+        return Mono.just(results);
+    }
+
+    /**
+     * Counts the orders that are not exported yet with a single item page, the list endpoint
+     * reports the number of all matching orders as total. Uses the same conditions and sort as
+     * the order publisher, so the item is the oldest pending order.
+     */
+    public Mono<OrderBacklog> fetchOrderBacklog() {
+        List<Filter> filters = new ArrayList<>();
+        filters.add(new Filter("attribute." + swProps.getExportedAttribute(), null, "="));
+        filters.addAll(swProps.getOrderFilters());
+
+        return httpClient.get()
+            .uri(uriBuilder -> {
+                filterQueryParamSerializer
+                    .serialize(filters)
+                    .forEach(uriBuilder::queryParam);
+
+                filterQueryParamSerializer
+                    .serializeSort(ORDER_SORT)
+                    .forEach(uriBuilder::queryParam);
+
+                return uriBuilder
+                    .path("/api/orders")
+                    .queryParam("limit", 1)
+                    .build();
+            })
+            .retrieve()
+            .bodyToMono(JsonNode.class)
+            .flatMap(this::readOrderBacklog)
+            .doOnError(e -> logger.warn("Failed to fetch the order backlog {}", e.getMessage()));
+    }
+
+    /**
+     * The highest order id, exported or not, 0 without any orders.
+     */
+    public Mono<Integer> fetchMaxOrderId() {
+        return httpClient.get()
+            .uri(uriBuilder -> {
+                filterQueryParamSerializer
+                    .serializeSort(LAST_ID_SORT)
+                    .forEach(uriBuilder::queryParam);
+
+                return uriBuilder
+                    .path("/api/orders")
+                    .queryParam("limit", 1)
+                    .build();
+            })
+            .retrieve()
+            .bodyToMono(JsonNode.class)
+            .map(body -> body.path("data").path(0).path("id").asInt(0))
+            .doOnError(e -> logger.warn("Failed to fetch the highest order id {}", e.getMessage()));
+    }
+
+    /**
+     * Counts the orders that are not exported yet and match the given and the configured filters.
+     */
+    public Mono<Long> countPendingOrders(List<Filter> filters) {
+        List<Filter> pendingFilters = new ArrayList<>();
+        pendingFilters.add(new Filter("attribute." + swProps.getExportedAttribute(), null, "="));
+        pendingFilters.addAll(filters);
+        pendingFilters.addAll(swProps.getOrderFilters());
+
+        return count("/api/orders", pendingFilters);
+    }
+
+    /**
+     * Counts the customers that match the given and the configured filters.
+     */
+    public Mono<Long> countCustomers(List<Filter> filters) {
+        List<Filter> customerFilters = new ArrayList<>(filters);
+        customerFilters.addAll(swProps.getCustomerFilters());
+
+        return count("/api/customers", customerFilters);
+    }
+
+    private Mono<Long> count(String path, List<Filter> filters) {
+        return httpClient.get()
+            .uri(uriBuilder -> {
+                filterQueryParamSerializer
+                    .serialize(filters)
+                    .forEach(uriBuilder::queryParam);
+
+                return uriBuilder
+                    .path(path)
+                    .queryParam("limit", 1)
+                    .build();
+            })
+            .retrieve()
+            .bodyToMono(JsonNode.class)
+            .flatMap(body -> {
+                JsonNode total = body.get("total");
+
+                return total == null || !total.canConvertToLong()
+                    ? Mono.<Long>error(new IllegalStateException("List without total: " + body))
+                    : Mono.just(total.asLong());
+            })
+            .doOnError(e -> logger.warn("Failed to count {} {}", path, e.getMessage()));
+    }
+
+    private Mono<OrderBacklog> readOrderBacklog(JsonNode body) {
+        JsonNode total = body.get("total");
+        if (total == null || !total.canConvertToLong()) {
+            return Mono.error(new IllegalStateException("Order list without total: " + body));
+        }
+
+        JsonNode oldest = body.path("data").path(0);
+        try {
+            OffsetDateTime oldestOrderTime = oldest.isObject()
+                ? objectMapper.treeToValue(oldest, OrderListItem.class).getOrderTime()
+                : null;
+
+            return Mono.just(new OrderBacklog(total.asLong(), oldestOrderTime));
+        } catch (IOException e) {
+            return Mono.error(e);
+        }
+    }
+
+    public static class OrderBacklog {
+        private final long total;
+        private final OffsetDateTime oldestOrderTime;
+
+        public OrderBacklog(long total, OffsetDateTime oldestOrderTime) {
+            this.total = total;
+            this.oldestOrderTime = oldestOrderTime;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        /**
+         * Null if there is no pending order.
+         */
+        public OffsetDateTime getOldestOrderTime() {
+            return oldestOrderTime;
+        }
+    }
+
+    public static class BatchResult {
+        private final boolean success;
+        private final String message;
+
+        public BatchResult(boolean success, String message) {
+            this.success = success;
+            this.message = message;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
     public static class Filter {
         private final String property;
         private final String expression;
         private final String value;
+        private final List<String> values;
         private final boolean operator;
 
         @ConstructorBinding
         public Filter(String property, String value, String expression, Boolean operator) {
+            this(property, value, null, expression, operator);
+        }
+
+        private Filter(String property, String value, List<String> values, String expression, Boolean operator) {
             this.property = property;
             this.value = value;
+            this.values = values;
             this.expression = expression == null ? "LIKE" : expression;
             this.operator = operator == null ? false : operator.booleanValue();
         }
@@ -215,6 +488,10 @@ public class ShopwareAPI {
             this(property, value, expression, null);
         }
 
+        public static Filter in(String property, List<String> values) {
+            return new Filter(property, null, values, "IN", null);
+        }
+
         public String getProperty() {
             return property;
         }
@@ -227,8 +504,33 @@ public class ShopwareAPI {
             return value;
         }
 
+        public List<String> getValues() {
+            return values;
+        }
+
         public boolean getOperator() {
             return operator;
         }
     }
+
+    public static class Sort {
+        public static final String ASC = "ASC";
+        public static final String DESC = "DESC";
+
+        private final String property;
+        private final String direction;
+
+        public Sort(String property, String direction) {
+            this.property = property;
+            this.direction = direction;
+        }
+
+        public String getProperty() {
+            return property;
+        }
+
+        public String getDirection() {
+            return direction;
+        }
+    }
 }
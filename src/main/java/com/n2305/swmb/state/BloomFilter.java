@@ -0,0 +1,44 @@
+package com.n2305.swmb.state;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Bloom filter over already hashed 64 bit keys, the bits live off heap. The probe positions
+ * are derived from the key by double hashing, so the key has to be well mixed.
+ */
+class BloomFilter {
+    private final LongBuffer words;
+    private final long bitCount;
+    private final int hashCount;
+
+    BloomFilter(long expectedEntries, int bitsPerEntry) {
+        long wordCount = Math.max(1, (Math.max(1, expectedEntries) * bitsPerEntry + 63) / 64);
+
+        this.words = ByteBuffer.allocateDirect(Math.toIntExact(wordCount * 8)).asLongBuffer();
+        this.bitCount = wordCount * 64;
+        this.hashCount = Math.max(1, (int) Math.round(bitsPerEntry * Math.log(2)));
+    }
+
+    void add(long key) {
+        long step = Long.rotateLeft(key, 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((key + i * step) & Long.MAX_VALUE) % bitCount;
+            int word = (int) (bit >>> 6);
+
+            words.put(word, words.get(word) | (1L << bit));
+        }
+    }
+
+    boolean mightContain(long key) {
+        long step = Long.rotateLeft(key, 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((key + i * step) & Long.MAX_VALUE) % bitCount;
+
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+
+        return true;
+    }
+}
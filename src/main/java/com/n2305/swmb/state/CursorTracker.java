@@ -0,0 +1,54 @@
+package com.n2305.swmb.state;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps track of the stream positions that are still being processed. The committed cursor only
+ * moves forward to a position once it and every position before it have been acknowledged,
+ * so after a restart nothing behind the committed cursor is lost.
+ */
+public class CursorTracker<C extends Comparable<? super C>> {
+    private final NavigableMap<C, Boolean> pending = new TreeMap<>();
+    private final Consumer<C> onCommit;
+
+    private C committed;
+
+    public CursorTracker(C committed, Consumer<C> onCommit) {
+        this.committed = committed;
+        this.onCommit = onCommit;
+    }
+
+    public synchronized void track(C position) {
+        pending.putIfAbsent(position, false);
+    }
+
+    public synchronized void acknowledge(C position) {
+        if (!pending.containsKey(position))
+            return;
+
+        pending.put(position, true);
+
+        C head = null;
+        Map.Entry<C, Boolean> first;
+        while ((first = pending.firstEntry()) != null && first.getValue()) {
+            head = pending.pollFirstEntry().getKey();
+        }
+
+        if (head != null && (committed == null || committed.compareTo(head) < 0)) {
+            committed = head;
+            onCommit.accept(head);
+        }
+    }
+
+    public synchronized Optional<C> getCommitted() {
+        return Optional.ofNullable(committed);
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,122 @@
+package com.n2305.swmb.state;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.OffsetDateTime;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Messages that could not be delivered, one json object per line together with the last error.
+ * The file can be inspected by hand and replayed into the outbox once the cause is fixed.
+ */
+public class DeadLetterQueue {
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterQueue.class);
+
+    static final String FILE_NAME = "dead-letter.jsonl";
+
+    private final Path file;
+    private final Path replayFile;
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+
+    public DeadLetterQueue(Path folder, ObjectMapper objectMapper, Clock clock) {
+        this.file = folder.resolve(FILE_NAME);
+        this.replayFile = folder.resolve(FILE_NAME + ".replay");
+        this.objectMapper = objectMapper;
+        this.clock = clock;
+    }
+
+    public synchronized void add(Outbox.Record<?> record, Throwable error) throws IOException {
+        ObjectNode line = objectMapper.createObjectNode()
+            .put("kind", record.getKind().name())
+            .put("reference", record.getReference())
+            .put("attempts", record.getAttempts())
+            .put("failedAt", OffsetDateTime.now(clock).toString())
+            .put("error", describe(error));
+        line.set("message", objectMapper.valueToTree(record.getMessage()));
+
+        append(List.of(objectMapper.writeValueAsString(line)));
+    }
+
+    private static String describe(Throwable error) {
+        String description = error.toString();
+        if (error instanceof WebClientResponseException) {
+            description += " " + ((WebClientResponseException) error).getResponseBodyAsString();
+        }
+
+        return description;
+    }
+
+    private void append(List<String> lines) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (String line : lines) {
+                channel.write(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8)));
+            }
+
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Moves every dead letter back into the outbox and returns the new outbox records. Lines
+     * that can't be read stay in the dead letter file. The file is only removed once the outbox
+     * is forced, a replay that was interrupted is picked up by the next one.
+     */
+    public synchronized List<Outbox.Record<?>> replayInto(Outbox outbox) throws IOException {
+        if (Files.exists(file)) {
+            if (Files.exists(replayFile)) {
+                append(Files.readAllLines(replayFile, StandardCharsets.UTF_8));
+            }
+
+            Files.move(file, replayFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } else if (!Files.exists(replayFile)) {
+            return List.of();
+        }
+
+        List<Outbox.Record<?>> records = new LinkedList<>();
+        List<String> unreadable = new LinkedList<>();
+
+        for (String line : Files.readAllLines(replayFile, StandardCharsets.UTF_8)) {
+            if (line.isBlank())
+                continue;
+
+            try {
+                JsonNode node = objectMapper.readTree(line);
+                Outbox.Kind kind = Outbox.Kind.valueOf(node.get("kind").asText());
+                Object message = objectMapper.treeToValue(node.get("message"), kind.getMessageClass());
+
+                records.add(outbox.append(kind, node.get("reference").asLong(), message));
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Failed to replay dead letter {}", line, e);
+                unreadable.add(line);
+            }
+        }
+
+        outbox.force();
+        if (!unreadable.isEmpty()) {
+            append(unreadable);
+        }
+        Files.delete(replayFile);
+
+        logger.info("Replayed {} dead letters into the outbox", records.size());
+
+        return records;
+    }
+}
@@ -0,0 +1,109 @@
+package com.n2305.swmb.state;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Counts the processes that share something, e.g. the budget of a mailbluster account, through a
+ * heartbeat file per node in a folder they share. A node that stopped renewing its heartbeat for
+ * the time to live doesn't count anymore. The node clocks have to be in sync.
+ */
+public class FileNodeRegistry implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(FileNodeRegistry.class);
+
+    private final Path folder;
+    private final String nodeId;
+    private final Duration timeToLive;
+    private final Clock clock;
+
+    public FileNodeRegistry(Path folder, String nodeId, Duration timeToLive, Clock clock) {
+        this.folder = folder;
+        this.nodeId = nodeId;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+    }
+
+    public FileNodeRegistry(Path folder, String nodeId, Duration timeToLive) {
+        this(folder, nodeId, timeToLive, Clock.systemUTC());
+    }
+
+    /**
+     * Renews this node, returns the number of live nodes including this one.
+     */
+    public synchronized int heartbeat() throws IOException {
+        long now = clock.millis();
+        Files.createDirectories(folder);
+
+        Properties heartbeat = new Properties();
+        heartbeat.setProperty("expires", String.valueOf(now + timeToLive.toMillis()));
+        write(heartbeatFile(), heartbeat);
+
+        int live = 0;
+        try (DirectoryStream<Path> heartbeats = Files.newDirectoryStream(folder, "node-*.heartbeat")) {
+            for (Path file : heartbeats) {
+                if (isLive(file, now))
+                    live++;
+            }
+        }
+
+        return Math.max(1, live);
+    }
+
+    /**
+     * Leaves right away instead of once the heartbeat expired.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        Files.deleteIfExists(heartbeatFile());
+    }
+
+    private static boolean isLive(Path file, long now) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream is = Files.newInputStream(file)) {
+            properties.load(is);
+        } catch (NoSuchFileException e) {
+            // left in the meantime
+            return false;
+        }
+
+        try {
+            return Long.parseLong(properties.getProperty("expires", "0")) > now;
+        } catch (NumberFormatException e) {
+            logger.warn("Ignore unreadable heartbeat {}", file);
+            return false;
+        }
+    }
+
+    private Path heartbeatFile() {
+        return folder.resolve("node-" + nodeId.replaceAll("[^A-Za-z0-9._-]", "_") + ".heartbeat");
+    }
+
+    private static void write(Path file, Properties properties) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream os = Channels.newOutputStream(channel)) {
+            properties.store(os, null);
+            channel.force(true);
+        }
+
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
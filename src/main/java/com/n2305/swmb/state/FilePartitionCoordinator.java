@@ -0,0 +1,272 @@
+package com.n2305.swmb.state;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Coordinates the nodes through files in a folder they share. Every change happens under an
+ * exclusive lock on a lock file, so the folder needs a file system with working locks, a local
+ * one or e.g. NFSv4. Lease expiry is compared across nodes, their clocks have to be in sync.
+ *
+ * The folder holds the plan, a lease file per partition that was claimed at least once with the
+ * node, expiry and checkpoint and a done file per finished partition.
+ */
+public class FilePartitionCoordinator implements PartitionCoordinator {
+    private static final Logger logger = LoggerFactory.getLogger(FilePartitionCoordinator.class);
+
+    static final String PLAN_FILE = "plan.properties";
+    static final String LOCK_FILE = "coordinator.lock";
+
+    // file locks are held by the jvm, coordinators of the same folder in one jvm take turns here
+    private static final ConcurrentMap<Path, Object> MONITORS = new ConcurrentHashMap<>();
+
+    private final Path folder;
+    private final String nodeId;
+    private final Duration leaseDuration;
+    private final Clock clock;
+    private final Object monitor;
+    private final Map<Integer, String> held = new HashMap<>();
+    private Plan plan;
+
+    public FilePartitionCoordinator(Path folder, String nodeId, Duration leaseDuration, Clock clock) {
+        this.folder = folder;
+        this.nodeId = nodeId;
+        this.leaseDuration = leaseDuration;
+        this.clock = clock;
+        this.monitor = MONITORS.computeIfAbsent(folder.toAbsolutePath().normalize(), f -> new Object());
+    }
+
+    public FilePartitionCoordinator(Path folder, String nodeId, Duration leaseDuration) {
+        this(folder, nodeId, leaseDuration, Clock.systemUTC());
+    }
+
+    @Override
+    public synchronized Plan plan(Plan proposed) throws IOException {
+        plan = locked(() -> {
+            Properties stored = read(folder.resolve(PLAN_FILE));
+            if (stored != null) {
+                return new Plan(
+                    Integer.parseInt(stored.getProperty("partitions")),
+                    Integer.parseInt(stored.getProperty("partition-size"))
+                );
+            }
+
+            Properties properties = new Properties();
+            properties.setProperty("partitions", String.valueOf(proposed.getPartitions()));
+            properties.setProperty("partition-size", String.valueOf(proposed.getPartitionSize()));
+            write(folder.resolve(PLAN_FILE), properties);
+
+            logger.info("Planned backfill in {} with {}", folder, proposed);
+
+            return proposed;
+        });
+
+        return plan;
+    }
+
+    @Override
+    public synchronized Optional<Lease> claim() throws IOException {
+        Plan plan = requirePlan();
+
+        return locked(() -> {
+            long now = clock.millis();
+
+            for (int partition = 0; partition < plan.getPartitions(); partition++) {
+                if (held.containsKey(partition) || Files.exists(doneFile(partition)))
+                    continue;
+
+                Properties lease = read(leaseFile(partition));
+                if (lease != null && isLive(lease, now) && !nodeId.equals(lease.getProperty("node")))
+                    continue;
+
+                String checkpoint = lease == null ? null : lease.getProperty("checkpoint");
+                if (lease != null && !nodeId.equals(lease.getProperty("node"))) {
+                    logger.info("Take over partition {} from node {} at checkpoint {}",
+                        partition, lease.getProperty("node"), checkpoint);
+                }
+
+                writeLease(partition, checkpoint, now + leaseDuration.toMillis());
+                held.put(partition, checkpoint);
+
+                return Optional.of(new Lease(partition, checkpoint));
+            }
+
+            return Optional.empty();
+        });
+    }
+
+    @Override
+    public synchronized void checkpoint(Lease lease, String checkpoint) {
+        // checkpoints of partitions that were given up in the meantime are dropped
+        if (held.containsKey(lease.getPartition()))
+            held.put(lease.getPartition(), checkpoint);
+    }
+
+    @Override
+    public synchronized boolean complete(Lease lease) throws IOException {
+        if (!held.containsKey(lease.getPartition()))
+            return false;
+
+        return locked(() -> {
+            if (!isOwn(read(leaseFile(lease.getPartition())))) {
+                logger.warn("Lost partition {} to another node before it was completed", lease.getPartition());
+                held.remove(lease.getPartition());
+                return false;
+            }
+
+            write(doneFile(lease.getPartition()), new Properties());
+            Files.deleteIfExists(leaseFile(lease.getPartition()));
+            held.remove(lease.getPartition());
+
+            return true;
+        });
+    }
+
+    @Override
+    public synchronized boolean isHeld(Lease lease) {
+        return held.containsKey(lease.getPartition());
+    }
+
+    @Override
+    public synchronized boolean isFinished() throws IOException {
+        Plan plan = requirePlan();
+
+        for (int partition = 0; partition < plan.getPartitions(); partition++) {
+            if (!Files.exists(doneFile(partition)))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * A partition that another node took over in the meantime, because this one missed its
+     * heartbeats, is given up. The lease file of a held partition is only gone once the other
+     * node completed it.
+     */
+    @Override
+    public synchronized void heartbeat() throws IOException {
+        locked(() -> {
+            long now = clock.millis();
+
+            for (Map.Entry<Integer, String> entry : new HashMap<>(held).entrySet()) {
+                if (!isOwn(read(leaseFile(entry.getKey())))) {
+                    logger.warn("Lost partition {} to another node", entry.getKey());
+                    held.remove(entry.getKey());
+                    continue;
+                }
+
+                writeLease(entry.getKey(), entry.getValue(), now + leaseDuration.toMillis());
+            }
+
+            return null;
+        });
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        locked(() -> {
+            for (Map.Entry<Integer, String> entry : held.entrySet()) {
+                Properties lease = read(leaseFile(entry.getKey()));
+                if (lease == null || nodeId.equals(lease.getProperty("node")))
+                    writeLease(entry.getKey(), entry.getValue(), 0);
+            }
+            held.clear();
+
+            return null;
+        });
+    }
+
+    private Plan requirePlan() {
+        if (plan == null)
+            throw new IllegalStateException("No backfill plan yet");
+
+        return plan;
+    }
+
+    private boolean isOwn(Properties lease) {
+        return lease != null && nodeId.equals(lease.getProperty("node"));
+    }
+
+    private static boolean isLive(Properties properties, long now) {
+        return Long.parseLong(properties.getProperty("expires", "0")) > now;
+    }
+
+    private void writeLease(int partition, String checkpoint, long expires) throws IOException {
+        Properties lease = new Properties();
+        lease.setProperty("node", nodeId);
+        lease.setProperty("expires", String.valueOf(expires));
+        Optional.ofNullable(checkpoint)
+            .ifPresent(c -> lease.setProperty("checkpoint", c));
+
+        write(leaseFile(partition), lease);
+    }
+
+    private Path leaseFile(int partition) {
+        return folder.resolve("partition-" + partition + ".lease");
+    }
+
+    private Path doneFile(int partition) {
+        return folder.resolve("partition-" + partition + ".done");
+    }
+
+    private static Properties read(Path file) throws IOException {
+        if (!Files.exists(file))
+            return null;
+
+        Properties properties = new Properties();
+        try (InputStream is = Files.newInputStream(file)) {
+            properties.load(is);
+        }
+
+        return properties;
+    }
+
+    private static void write(Path file, Properties properties) throws IOException {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream os = Channels.newOutputStream(channel)) {
+            properties.store(os, null);
+            channel.force(true);
+        }
+
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private <T> T locked(LockedAction<T> action) throws IOException {
+        synchronized (monitor) {
+            Files.createDirectories(folder);
+
+            try (FileChannel channel = FileChannel.open(folder.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+                 FileLock lock = channel.lock()) {
+                return action.run();
+            }
+        }
+    }
+
+    private interface LockedAction<T> {
+        T run() throws IOException;
+    }
+}
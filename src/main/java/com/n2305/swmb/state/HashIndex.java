@@ -0,0 +1,438 @@
+package com.n2305.swmb.state;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persistent map from 64 bit key hashes to a fixed number of longs, meant for millions of entries
+ * with little heap.
+ *
+ * The base file holds the keys sorted, followed by the values in the same order, and is memory
+ * mapped, lookups are a binary search off heap. Entries put since the base file was written are
+ * kept on heap and appended to a journal with the flush interval. Once there are more of them
+ * than the merge threshold, they are merged into a new base file that atomically replaces the
+ * old one. A bloom filter in front answers most lookups of unknown keys without touching the
+ * base file.
+ *
+ * Base file and journal start with a header of the format version and value size. Files of an
+ * older format, like the lead index that kept 32 bit content hashes, are moved aside and the
+ * index starts over.
+ *
+ * A read only index is a snapshot of the files as they were when it was opened, it never writes,
+ * even if another process keeps writing to them.
+ */
+class HashIndex implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(HashIndex.class);
+
+    private static final int MAGIC = 0x4c494458;
+    // the first lead index had version 1 with 4 byte values and no journal header
+    private static final int FORMAT_VERSION = 2;
+    static final int HEADER_SIZE = 4 + 4 + 4 + 4;
+    static final int JOURNAL_HEADER_SIZE = 4 + 4 + 4;
+    private static final int BITS_PER_ENTRY = 10;
+
+    private final String name;
+    private final Path folder;
+    private final Path baseFile;
+    private final Path tempFile;
+    private final Path journalFile;
+    private final int valueLongs;
+    private final Duration flushInterval;
+    private final int mergeThreshold;
+    private final Scheduler scheduler;
+    private final boolean readOnly;
+    private final Object flushLock = new Object();
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private final Map<Long, long[]> recent = new HashMap<>();
+    private List<Long> unjournaled = new ArrayList<>();
+    private MappedByteBuffer base;
+    private int baseCount;
+    private BloomFilter bloomFilter;
+
+    HashIndex(
+        Path folder,
+        String name,
+        int valueLongs,
+        Duration flushInterval,
+        int mergeThreshold,
+        Scheduler scheduler,
+        boolean readOnly
+    ) throws IOException {
+        this.name = name;
+        this.folder = folder;
+        this.baseFile = folder.resolve(baseFileName(name));
+        this.tempFile = folder.resolve(baseFileName(name) + ".tmp");
+        this.journalFile = folder.resolve(journalFileName(name));
+        this.valueLongs = valueLongs;
+        this.flushInterval = flushInterval;
+        this.mergeThreshold = mergeThreshold;
+        this.scheduler = scheduler;
+        this.readOnly = readOnly;
+
+        load();
+    }
+
+    HashIndex(
+        Path folder,
+        String name,
+        int valueLongs,
+        Duration flushInterval,
+        int mergeThreshold,
+        Scheduler scheduler
+    ) throws IOException {
+        this(folder, name, valueLongs, flushInterval, mergeThreshold, scheduler, false);
+    }
+
+    static String baseFileName(String name) {
+        return name + ".bin";
+    }
+
+    static String journalFileName(String name) {
+        return name + ".journal";
+    }
+
+    private void load() throws IOException {
+        base = mapBase();
+        baseCount = count(base);
+        readJournal();
+
+        bloomFilter = new BloomFilter((long) baseCount + Math.max(mergeThreshold, recent.size()), BITS_PER_ENTRY);
+        for (int i = 0; i < baseCount; i++) {
+            bloomFilter.add(baseKey(base, i));
+        }
+        recent.keySet().forEach(bloomFilter::add);
+
+        logger.info("Loaded {} with {} entries and {} journaled entries", name, baseCount, recent.size());
+    }
+
+    private MappedByteBuffer mapBase() throws IOException {
+        if (!Files.exists(baseFile) || !hasHeader(baseFile, HEADER_SIZE))
+            return null;
+
+        try (FileChannel channel = FileChannel.open(baseFile, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Moves a file of another format aside, it can't be read. A file of this format with another
+     * value size belongs to another index.
+     */
+    private boolean hasHeader(Path file, int headerSize) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerSize);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0)
+                    break;
+            }
+        }
+
+        if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION) {
+            if (readOnly) {
+                logger.warn("Ignore {} of an unknown format", file);
+                return false;
+            }
+
+            Path discarded = file.resolveSibling(file.getFileName() + ".discarded");
+            logger.warn("Discard {} of an unknown format, moved to {}", file, discarded);
+            Files.move(file, discarded, StandardCopyOption.REPLACE_EXISTING);
+
+            return false;
+        }
+
+        if (header.getInt(8) != valueLongs)
+            throw new IOException("Not a " + name + " file: " + file);
+
+        return true;
+    }
+
+    private static int count(MappedByteBuffer base) {
+        return base == null ? 0 : base.getInt(12);
+    }
+
+    private int entrySize() {
+        return 8 + valueLongs * 8;
+    }
+
+    /**
+     * A journal entry torn by a crash ends the journal.
+     */
+    private void readJournal() throws IOException {
+        if (!Files.exists(journalFile) || !hasHeader(journalFile, JOURNAL_HEADER_SIZE))
+            return;
+
+        ByteBuffer journal = ByteBuffer.wrap(Files.readAllBytes(journalFile));
+        journal.position(JOURNAL_HEADER_SIZE);
+        while (journal.remaining() >= entrySize()) {
+            long key = journal.getLong();
+            long[] value = new long[valueLongs];
+            for (int i = 0; i < valueLongs; i++) {
+                value[i] = journal.getLong();
+            }
+
+            recent.put(key, value);
+        }
+    }
+
+    /**
+     * Returns the value of the key or null.
+     */
+    synchronized long[] get(long key) {
+        if (!bloomFilter.mightContain(key))
+            return null;
+
+        long[] value = recent.get(key);
+        if (value != null)
+            return value.clone();
+
+        int index = search(base, baseCount, key);
+        if (index < 0)
+            return null;
+
+        value = new long[valueLongs];
+        for (int i = 0; i < valueLongs; i++) {
+            value[i] = base.getLong(valueOffset(baseCount, index) + i * 8);
+        }
+
+        return value;
+    }
+
+    synchronized void put(long key, long[] value) {
+        if (readOnly)
+            throw new IllegalStateException(name + " in " + folder + " is read only");
+
+        long[] previous = recent.put(key, value.clone());
+        if (previous != null && Arrays.equals(previous, value))
+            return;
+
+        bloomFilter.add(key);
+        unjournaled.add(key);
+
+        if (dirty.compareAndSet(false, true)) {
+            scheduler.schedule(this::flushQuietly, flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void flush() throws IOException {
+        if (readOnly)
+            return;
+
+        synchronized (flushLock) {
+            dirty.set(false);
+
+            Map<Long, long[]> entries = new HashMap<>();
+            boolean merge;
+            synchronized (this) {
+                for (Long key : unjournaled) {
+                    // gone if a merge already wrote it to the base file
+                    long[] value = recent.get(key);
+                    if (value != null)
+                        entries.put(key, value);
+                }
+                unjournaled = new ArrayList<>();
+                merge = recent.size() >= mergeThreshold;
+            }
+
+            try {
+                appendToJournal(entries);
+            } catch (IOException e) {
+                synchronized (this) {
+                    unjournaled.addAll(entries.keySet());
+                }
+                dirty.set(true);
+                throw e;
+            }
+
+            if (merge)
+                merge();
+        }
+    }
+
+    private void appendToJournal(Map<Long, long[]> entries) throws IOException {
+        if (entries.isEmpty())
+            return;
+
+        Files.createDirectories(folder);
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            boolean created = channel.size() == 0;
+            ByteBuffer buffer = ByteBuffer.allocate((created ? JOURNAL_HEADER_SIZE : 0) + entries.size() * entrySize());
+            if (created)
+                buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(valueLongs);
+
+            entries.forEach((key, value) -> {
+                buffer.putLong(key);
+                for (long v : value) {
+                    buffer.putLong(v);
+                }
+            });
+            buffer.flip();
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Writes the base file merged with a snapshot of the recent entries, without holding the lock
+     * lookups need. Recent entries that changed in the meantime stay recent.
+     */
+    private void merge() throws IOException {
+        long[] keys;
+        long[][] values;
+        synchronized (this) {
+            keys = recent.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+            values = new long[keys.length][];
+            for (int i = 0; i < keys.length; i++) {
+                values[i] = recent.get(keys[i]);
+            }
+        }
+
+        // only merges replace the base file and they hold the flush lock
+        MappedByteBuffer current = base;
+        int currentCount = baseCount;
+        int mergedCount = 0;
+        for (int i = 0, j = 0; i < currentCount || j < keys.length; mergedCount++) {
+            int cmp = compareNext(current, currentCount, i, keys, j);
+            if (cmp <= 0)
+                j++;
+            if (cmp >= 0)
+                i++;
+        }
+
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer merged = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + (long) mergedCount * entrySize());
+            merged.putInt(0, MAGIC).putInt(4, FORMAT_VERSION).putInt(8, valueLongs).putInt(12, mergedCount);
+
+            for (int i = 0, j = 0, k = 0; k < mergedCount; k++) {
+                int cmp = compareNext(current, currentCount, i, keys, j);
+                for (int v = 0; v < valueLongs; v++) {
+                    merged.putLong(valueOffset(mergedCount, k) + v * 8, cmp <= 0
+                        ? values[j][v]
+                        : current.getLong(valueOffset(currentCount, i) + v * 8));
+                }
+                merged.putLong(HEADER_SIZE + k * 8, cmp <= 0 ? keys[j] : baseKey(current, i));
+
+                if (cmp <= 0)
+                    j++;
+                if (cmp >= 0)
+                    i++;
+            }
+
+            merged.force();
+            channel.force(true);
+        }
+
+        Files.move(tempFile, baseFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceFolder();
+
+        MappedByteBuffer mergedBase = mapBase();
+        BloomFilter mergedBloomFilter = new BloomFilter((long) mergedCount + mergeThreshold, BITS_PER_ENTRY);
+        for (int i = 0; i < mergedCount; i++) {
+            mergedBloomFilter.add(baseKey(mergedBase, i));
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < keys.length; i++) {
+                // put replaces the array, the same instance means unchanged since the snapshot
+                recent.remove(keys[i], values[i]);
+            }
+            recent.keySet().forEach(mergedBloomFilter::add);
+            base = mergedBase;
+            baseCount = mergedCount;
+            bloomFilter = mergedBloomFilter;
+        }
+
+        // every journaled entry is in the new base file now
+        Files.deleteIfExists(journalFile);
+
+        logger.info("Merged {} recent entries into {}, {} entries before, {} after",
+            keys.length, name, currentCount, mergedCount);
+    }
+
+    /**
+     * Compares the next snapshot key with the next base key, missing keys sort last.
+     */
+    private static int compareNext(MappedByteBuffer base, int baseCount, int i, long[] keys, int j) {
+        if (i >= baseCount)
+            return -1;
+        if (j >= keys.length)
+            return 1;
+
+        return Long.compare(keys[j], baseKey(base, i));
+    }
+
+    private static long baseKey(MappedByteBuffer base, int index) {
+        return base.getLong(HEADER_SIZE + index * 8);
+    }
+
+    private int valueOffset(int count, int index) {
+        return HEADER_SIZE + count * 8 + index * valueLongs * 8;
+    }
+
+    private static int search(MappedByteBuffer base, int baseCount, long key) {
+        int low = 0;
+        int high = baseCount - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = baseKey(base, mid);
+
+            if (midKey < key)
+                low = mid + 1;
+            else if (midKey > key)
+                high = mid - 1;
+            else
+                return mid;
+        }
+
+        return -1;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            logger.warn("Failed to save {}, retry in {}", name, flushInterval, e);
+
+            scheduler.schedule(this::flushQuietly, flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void forceFolder() {
+        try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("Failed to force {} folder", name, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
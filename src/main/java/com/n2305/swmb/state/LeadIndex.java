@@ -0,0 +1,98 @@
+package com.n2305.swmb.state;
+
+import com.n2305.swmb.mailbluster.MBLead;
+import com.n2305.swmb.state.OrderHashIndex.Change;
+import com.n2305.swmb.utils.MurmurHash3;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Leads that were sent to mailbluster, to skip customers that would create the same lead again.
+ *
+ * A lead is kept as the 64 bit hash of its email and a 64 bit hash of its names and subscription,
+ * a lead with the same email but other names is updated. Two emails with the same hash count
+ * as the same lead, with 64 bits that is unlikely even for millions of customers.
+ */
+public class LeadIndex implements Closeable {
+    static final String NAME = "lead-index";
+
+    private final HashIndex index;
+    private final HashIndex sentBefore;
+
+    /**
+     * Also skips the leads in the lead index of the other folder as they are now, that index is
+     * only read. The one-shot backfill uses it for the leads the sync sent before.
+     */
+    public LeadIndex(
+        Path folder,
+        Path sentBeforeFolder,
+        Duration flushInterval,
+        int mergeThreshold,
+        Scheduler scheduler
+    ) throws IOException {
+        this.index = new HashIndex(folder, NAME, 1, flushInterval, mergeThreshold, scheduler);
+        this.sentBefore = sentBeforeFolder == null
+            ? null
+            : new HashIndex(sentBeforeFolder, NAME, 1, flushInterval, mergeThreshold, scheduler, true);
+    }
+
+    public LeadIndex(Path folder, Path sentBeforeFolder, Duration flushInterval, int mergeThreshold)
+        throws IOException {
+        this(folder, sentBeforeFolder, flushInterval, mergeThreshold, Schedulers.boundedElastic());
+    }
+
+    public LeadIndex(Path folder, Duration flushInterval, int mergeThreshold, Scheduler scheduler) throws IOException {
+        this(folder, null, flushInterval, mergeThreshold, scheduler);
+    }
+
+    public LeadIndex(Path folder, Duration flushInterval, int mergeThreshold) throws IOException {
+        this(folder, flushInterval, mergeThreshold, Schedulers.boundedElastic());
+    }
+
+    /**
+     * A lead sent since takes precedence over the one sent before, its names may have changed.
+     */
+    public Change compare(MBLead lead) {
+        long emailHash = emailHash(lead);
+        long[] contentHash = index.get(emailHash);
+        if (contentHash == null && sentBefore != null)
+            contentHash = sentBefore.get(emailHash);
+        if (contentHash == null)
+            return Change.NEW;
+
+        return contentHash[0] == contentHash(lead) ? Change.UNCHANGED : Change.CHANGED;
+    }
+
+    public boolean contains(MBLead lead) {
+        return compare(lead) == Change.UNCHANGED;
+    }
+
+    public void add(MBLead lead) {
+        index.put(emailHash(lead), new long[]{contentHash(lead)});
+    }
+
+    static long emailHash(MBLead lead) {
+        return MurmurHash3.hash64(lead.getEmail().trim().toLowerCase().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static long contentHash(MBLead lead) {
+        String content = lead.getFirstName() + "\n" + lead.getLastName() + "\n" + lead.isSubscribed();
+
+        return MurmurHash3.hash64(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void flush() throws IOException {
+        index.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        index.close();
+    }
+}
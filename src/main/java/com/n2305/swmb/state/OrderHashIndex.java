@@ -0,0 +1,82 @@
+package com.n2305.swmb.state;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.n2305.swmb.mailbluster.MBOrder;
+import com.n2305.swmb.utils.MurmurHash3;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Orders that were sent to mailbluster, as the 128 bit hash of the serialized order by order
+ * number, so a replayed order is only sent again if it changed.
+ */
+public class OrderHashIndex implements Closeable {
+    static final String NAME = "order-index";
+
+    private final HashIndex index;
+    private final ObjectWriter orderWriter = new ObjectMapper()
+        .writerFor(MBOrder.class)
+        .with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+    public enum Change {
+        NEW,
+        CHANGED,
+        UNCHANGED
+    }
+
+    public OrderHashIndex(Path folder, Duration flushInterval, int mergeThreshold, Scheduler scheduler) throws IOException {
+        this.index = new HashIndex(folder, NAME, 2, flushInterval, mergeThreshold, scheduler);
+    }
+
+    public OrderHashIndex(Path folder, Duration flushInterval, int mergeThreshold) throws IOException {
+        this(folder, flushInterval, mergeThreshold, Schedulers.boundedElastic());
+    }
+
+    public Change compare(MBOrder order) {
+        long[] sent = index.get(numberHash(order));
+        if (sent == null)
+            return Change.NEW;
+
+        return Arrays.equals(sent, contentHash(order)) ? Change.UNCHANGED : Change.CHANGED;
+    }
+
+    public void add(MBOrder order) {
+        index.put(numberHash(order), contentHash(order));
+    }
+
+    static long numberHash(MBOrder order) {
+        return MurmurHash3.hash64(order.getId().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Hashes the order as it is sent, every field mailbluster gets is covered. Map entries are
+     * sorted to not depend on the map's iteration order.
+     */
+    long[] contentHash(MBOrder order) {
+        try {
+            return MurmurHash3.hash128(orderWriter.writeValueAsBytes(order));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void flush() throws IOException {
+        index.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        index.close();
+    }
+}
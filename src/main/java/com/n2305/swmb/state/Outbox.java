@@ -0,0 +1,203 @@
+package com.n2305.swmb.state;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.n2305.swmb.mailbluster.MBLead;
+import com.n2305.swmb.mailbluster.MBOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records every mapped mailbluster message before it is sent and keeps it until it is
+ * acknowledged. Appends and acknowledgements only touch the mapped segments, like the state store
+ * they are forced to disk together after the force interval. Unacknowledged messages from a
+ * previous run are recovered on startup.
+ */
+public class Outbox implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(Outbox.class);
+
+    private final SegmentLog log;
+    private final ObjectMapper objectMapper;
+    private final Duration forceInterval;
+    private final Scheduler scheduler;
+    private final AtomicBoolean forceScheduled = new AtomicBoolean(false);
+    private final ConcurrentLinkedQueue<Record<?>> recovered = new ConcurrentLinkedQueue<>();
+
+    public Outbox(SegmentLog log, ObjectMapper objectMapper, Duration forceInterval, Scheduler scheduler) {
+        this.log = log;
+        this.objectMapper = objectMapper;
+        this.forceInterval = forceInterval;
+        this.scheduler = scheduler;
+
+        log.readUnacknowledged().forEach(this::recover);
+        if (!recovered.isEmpty()) {
+            logger.info("Found {} unacknowledged messages in the outbox", recovered.size());
+        }
+    }
+
+    public Outbox(SegmentLog log, ObjectMapper objectMapper, Duration forceInterval) {
+        this(log, objectMapper, forceInterval, Schedulers.boundedElastic());
+    }
+
+    private void recover(SegmentLog.Entry entry) {
+        try {
+            Kind kind = Kind.of(entry.getKind());
+            Object message = objectMapper.readValue(entry.getPayload(), kind.getMessageClass());
+
+            recovered.add(new Record<>(kind, entry.getReference(), message, entry));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Drop unreadable outbox entry with reference {}", entry.getReference(), e);
+
+            log.acknowledge(entry);
+        }
+    }
+
+    public Record<MBOrder> append(MBOrder order, int swOrderId) throws IOException {
+        return append(Kind.ORDER, swOrderId, order);
+    }
+
+    public Record<MBLead> append(MBLead lead, long customerId) throws IOException {
+        return append(Kind.LEAD, customerId, lead);
+    }
+
+    public <T> Record<T> append(Kind kind, long reference, T message) throws IOException {
+        SegmentLog.Entry entry = log.append(kind.getId(), reference, objectMapper.writeValueAsBytes(message));
+        scheduleForce();
+
+        return new Record<>(kind, reference, message, entry);
+    }
+
+    public void acknowledge(Record<?> record) {
+        log.acknowledge(record.entry);
+        scheduleForce();
+    }
+
+    /**
+     * Replaces the record of an order that went out by one that only marks it as exported, so a
+     * retry doesn't send it again.
+     */
+    public <T> Record<T> markSent(Record<T> record) throws IOException {
+        Record<T> exportMark = append(Kind.EXPORT_MARK, record.reference, record.message);
+        acknowledge(record);
+
+        return exportMark;
+    }
+
+    /**
+     * Blocks until every record appended so far is on disk.
+     */
+    public void force() {
+        log.force();
+    }
+
+    /**
+     * Returns the unacknowledged messages of the previous run, only once.
+     */
+    public List<Record<?>> takeRecovered() {
+        List<Record<?>> records = new LinkedList<>();
+
+        Record<?> record;
+        while ((record = recovered.poll()) != null) {
+            records.add(record);
+        }
+
+        return records;
+    }
+
+    private void scheduleForce() {
+        if (forceScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(() -> {
+                forceScheduled.set(false);
+                log.force();
+            }, forceInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void close() {
+        log.close();
+    }
+
+    public enum Kind {
+        ORDER((byte) 1, MBOrder.class),
+        LEAD((byte) 2, MBLead.class),
+        ORDER_UPDATE((byte) 3, MBOrder.class),
+        LEAD_UPDATE((byte) 4, MBLead.class),
+        // an order that went out and is only left to be marked as exported
+        EXPORT_MARK((byte) 5, MBOrder.class);
+
+        private final byte id;
+        private final Class<?> messageClass;
+
+        Kind(byte id, Class<?> messageClass) {
+            this.id = id;
+            this.messageClass = messageClass;
+        }
+
+        static Kind of(byte id) {
+            for (Kind kind : values()) {
+                if (kind.id == id)
+                    return kind;
+            }
+
+            throw new IllegalArgumentException("Unknown outbox entry kind " + id);
+        }
+
+        byte getId() {
+            return id;
+        }
+
+        Class<?> getMessageClass() {
+            return messageClass;
+        }
+    }
+
+    public static class Record<T> {
+        private final Kind kind;
+        private final long reference;
+        private final T message;
+        private final SegmentLog.Entry entry;
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        Record(Kind kind, long reference, T message, SegmentLog.Entry entry) {
+            this.kind = kind;
+            this.reference = reference;
+            this.message = message;
+            this.entry = entry;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public long getReference() {
+            return reference;
+        }
+
+        public T getMessage() {
+            return message;
+        }
+
+        /**
+         * Failed delivery attempts within this run.
+         */
+        public int getAttempts() {
+            return attempts.get();
+        }
+
+        public int incrementAttempts() {
+            return attempts.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.n2305.swmb.state;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Hands out the partitions of a backfill to the nodes running it. A node holds a partition
+ * through a lease that its heartbeats renew, the partitions of a node that stopped renewing are
+ * handed to the next node that asks and continue from their last checkpoint.
+ */
+public interface PartitionCoordinator extends Closeable {
+    /**
+     * Stores the proposed plan unless another node did so before, returns the plan every node
+     * works on.
+     */
+    Plan plan(Plan proposed) throws IOException;
+
+    /**
+     * Claims the next partition that is neither done nor leased by a live node.
+     */
+    Optional<Lease> claim() throws IOException;
+
+    /**
+     * Remembers the progress in a held partition, it is saved with the next heartbeat.
+     */
+    void checkpoint(Lease lease, String checkpoint);
+
+    /**
+     * Marks a held partition as done, returns false if it was lost to another node before.
+     */
+    boolean complete(Lease lease) throws IOException;
+
+    /**
+     * False once the partition was completed or lost to another node, noticed by a heartbeat.
+     */
+    boolean isHeld(Lease lease);
+
+    /**
+     * True once every partition of the plan is done.
+     */
+    boolean isFinished() throws IOException;
+
+    /**
+     * Renews the leases this node holds.
+     */
+    void heartbeat() throws IOException;
+
+    /**
+     * Leaves the backfill, held partitions are released with their checkpoints.
+     */
+    @Override
+    void close() throws IOException;
+
+    class Plan {
+        private final int partitions;
+        private final int partitionSize;
+
+        public Plan(int partitions, int partitionSize) {
+            this.partitions = partitions;
+            this.partitionSize = partitionSize;
+        }
+
+        public int getPartitions() {
+            return partitions;
+        }
+
+        public int getPartitionSize() {
+            return partitionSize;
+        }
+
+        @Override
+        public String toString() {
+            return partitions + " partitions of " + partitionSize;
+        }
+    }
+
+    class Lease {
+        private final int partition;
+        private final String checkpoint;
+
+        public Lease(int partition, String checkpoint) {
+            this.partition = partition;
+            this.checkpoint = checkpoint;
+        }
+
+        public int getPartition() {
+            return partition;
+        }
+
+        /**
+         * The last saved checkpoint, null if the partition was never started.
+         */
+        public String getCheckpoint() {
+            return checkpoint;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.n2305.swmb.state;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of memory mapped segment files.
+ *
+ * Every record starts with its payload length, a crc32 over kind, reference and payload, the
+ * kind, the acknowledged flag and the reference. Records are written into the page cache only,
+ * {@link #force()} has to be called to get them on disk, a record that was torn by a crash fails
+ * the checksum and ends the segment. A segment is deleted by the next force once it is full and
+ * every record in it is acknowledged, appends and acknowledgements never touch the file system
+ * apart from starting a new segment.
+ */
+public class SegmentLog implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentLog.class);
+
+    private static final Pattern SEGMENT_FILE = Pattern.compile("segment-(\\d+)\\.log");
+    static final int HEADER_SIZE = 4 + 4 + 1 + 1 + 8;
+    private static final int ACKNOWLEDGED_OFFSET = 9;
+
+    private final Path folder;
+    private final int segmentSize;
+    private final NavigableMap<Long, Segment> segments = new TreeMap<>();
+
+    public SegmentLog(Path folder, int segmentSize) throws IOException {
+        this.folder = folder;
+        this.segmentSize = segmentSize;
+
+        openSegments();
+    }
+
+    private void openSegments() throws IOException {
+        if (!Files.isDirectory(folder))
+            return;
+
+        try (Stream<Path> files = Files.list(folder)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher matcher = SEGMENT_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    long id = Long.parseLong(matcher.group(1));
+                    segments.put(id, Segment.open(id, file));
+                }
+            }
+        }
+
+        deleteDoneSegments();
+    }
+
+    /**
+     * Only the last segment is appended to, the older ones are done as soon as they are acknowledged.
+     */
+    private void deleteDoneSegments() {
+        if (segments.isEmpty())
+            return;
+
+        for (Segment segment : new ArrayList<>(segments.headMap(segments.lastKey(), false).values())) {
+            deleteIfDone(segment);
+        }
+    }
+
+    public synchronized Entry append(byte kind, long reference, byte[] payload) throws IOException {
+        int recordSize = HEADER_SIZE + payload.length;
+
+        Segment segment = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (segment == null || segment.remaining() < recordSize) {
+            long id = segment == null ? 0 : segment.id + 1;
+            Files.createDirectories(folder);
+            segment = Segment.create(id, folder.resolve(segmentFileName(id)), Math.max(segmentSize, recordSize));
+            segments.put(id, segment);
+        }
+
+        return segment.append(kind, reference, payload);
+    }
+
+    public synchronized void acknowledge(Entry entry) {
+        Segment segment = segments.get(entry.segmentId);
+        if (segment == null)
+            return;
+
+        segment.acknowledge(entry.offset);
+    }
+
+    public synchronized List<Entry> readUnacknowledged() {
+        List<Entry> entries = new LinkedList<>();
+        segments.values().forEach(segment -> segment.readUnacknowledged(entries));
+
+        return entries;
+    }
+
+    public synchronized void force() {
+        segments.values().forEach(Segment::force);
+        deleteDoneSegments();
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    private void deleteIfDone(Segment segment) {
+        if (segment.acknowledged < segment.records)
+            return;
+
+        segments.remove(segment.id);
+        segment.close();
+
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete segment {}", segment.file, e);
+        }
+    }
+
+    private static String segmentFileName(long id) {
+        return String.format("segment-%020d.log", id);
+    }
+
+    @Override
+    public synchronized void close() {
+        force();
+        segments.values().forEach(Segment::close);
+        segments.clear();
+    }
+
+    public static class Entry {
+        private final long segmentId;
+        private final int offset;
+        private final byte kind;
+        private final long reference;
+        private final byte[] payload;
+
+        Entry(long segmentId, int offset, byte kind, long reference, byte[] payload) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.kind = kind;
+            this.reference = reference;
+            this.payload = payload;
+        }
+
+        public byte getKind() {
+            return kind;
+        }
+
+        public long getReference() {
+            return reference;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    private static class Segment {
+        private final long id;
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private int position;
+        private int records;
+        private int acknowledged;
+        private boolean dirty;
+
+        private Segment(long id, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        static Segment create(long id, Path file, int size) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            return new Segment(id, file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+
+        static Segment open(long id, Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(id, file, channel,
+                channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+            segment.recover();
+
+            return segment;
+        }
+
+        /**
+         * Counts the intact records and moves the append position behind the last one,
+         * a torn record at the end is overwritten by the next append.
+         */
+        private void recover() {
+            Map.Entry<Integer, Boolean> record;
+            while ((record = readHeader(position)) != null) {
+                records++;
+                if (record.getValue())
+                    acknowledged++;
+
+                position += HEADER_SIZE + record.getKey();
+            }
+        }
+
+        /**
+         * Returns the payload length and the acknowledged flag of the record at the given
+         * position, or null if there is no intact record.
+         */
+        private Map.Entry<Integer, Boolean> readHeader(int offset) {
+            if (offset + HEADER_SIZE > buffer.capacity())
+                return null;
+
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_SIZE + length > buffer.capacity())
+                return null;
+
+            ByteBuffer checked = buffer.duplicate();
+            checked.limit(offset + HEADER_SIZE + length).position(offset + ACKNOWLEDGED_OFFSET + 1);
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.get(offset + 8));
+            crc.update(checked);
+
+            if ((int) crc.getValue() != buffer.getInt(offset + 4))
+                return null;
+
+            return Map.entry(length, buffer.get(offset + ACKNOWLEDGED_OFFSET) != 0);
+        }
+
+        int remaining() {
+            return buffer.capacity() - position;
+        }
+
+        Entry append(byte kind, long reference, byte[] payload) {
+            int offset = position;
+
+            CRC32 crc = new CRC32();
+            crc.update(kind);
+            crc.update(longToBytes(reference));
+            crc.update(payload);
+
+            buffer.putInt(offset + 4, (int) crc.getValue());
+            buffer.put(offset + 8, kind);
+            buffer.put(offset + ACKNOWLEDGED_OFFSET, (byte) 0);
+            buffer.putLong(offset + ACKNOWLEDGED_OFFSET + 1, reference);
+            buffer.put(offset + HEADER_SIZE, payload);
+            buffer.putInt(offset, payload.length);
+
+            position += HEADER_SIZE + payload.length;
+            records++;
+            dirty = true;
+
+            return new Entry(id, offset, kind, reference, payload);
+        }
+
+        void acknowledge(int offset) {
+            if (buffer.get(offset + ACKNOWLEDGED_OFFSET) != 0)
+                return;
+
+            buffer.put(offset + ACKNOWLEDGED_OFFSET, (byte) 1);
+            acknowledged++;
+            dirty = true;
+        }
+
+        void readUnacknowledged(List<Entry> entries) {
+            int offset = 0;
+            while (offset < position) {
+                int length = buffer.getInt(offset);
+
+                if (buffer.get(offset + ACKNOWLEDGED_OFFSET) == 0) {
+                    byte[] payload = new byte[length];
+                    buffer.get(offset + HEADER_SIZE, payload);
+
+                    entries.add(new Entry(id, offset, buffer.get(offset + 8),
+                        buffer.getLong(offset + ACKNOWLEDGED_OFFSET + 1), payload));
+                }
+
+                offset += HEADER_SIZE + length;
+            }
+        }
+
+        void force() {
+            if (!dirty)
+                return;
+
+            dirty = false;
+            buffer.force();
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close segment {}", file, e);
+            }
+        }
+
+        private static byte[] longToBytes(long value) {
+            byte[] bytes = new byte[Long.BYTES];
+            for (int i = Long.BYTES - 1; i >= 0; i--) {
+                bytes[i] = (byte) value;
+                value >>>= 8;
+            }
+
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.n2305.swmb.state;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Small key value store for the sync state inside the state folder.
+ *
+ * Every flush writes a complete snapshot into a temporary file, forces it to disk and renames
+ * it atomically over the state file, so a crash leaves either the old or the new snapshot behind.
+ * Changes are grouped, the first change after a flush schedules the next one after the flush
+ * interval and all changes up to that point share a single fsync.
+ */
+public class StateStore implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(StateStore.class);
+
+    static final String STATE_FILE = "sync-state.properties";
+
+    private final Path folder;
+    private final Path stateFile;
+    private final Path tempFile;
+    private final Duration flushInterval;
+    private final Scheduler scheduler;
+    private final Properties properties = new Properties();
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+    public StateStore(Path folder, Duration flushInterval, Scheduler scheduler) throws IOException {
+        this.folder = folder;
+        this.stateFile = folder.resolve(STATE_FILE);
+        this.tempFile = folder.resolve(STATE_FILE + ".tmp");
+        this.flushInterval = flushInterval;
+        this.scheduler = scheduler;
+
+        load();
+    }
+
+    public StateStore(Path folder, Duration flushInterval) throws IOException {
+        this(folder, flushInterval, Schedulers.boundedElastic());
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(stateFile))
+            return;
+
+        try (InputStream is = Files.newInputStream(stateFile)) {
+            properties.load(is);
+        }
+
+        logger.info("Loaded sync state {}", properties);
+    }
+
+    public Optional<String> get(String key) {
+        return Optional.ofNullable(properties.getProperty(key));
+    }
+
+    public void put(String key, String value) {
+        Object previous = properties.setProperty(key, value);
+        if (value.equals(previous))
+            return;
+
+        if (dirty.compareAndSet(false, true)) {
+            scheduler.schedule(this::flushQuietly, flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Imports the value of a state file from before the state store existed, as long as the key
+     * has no value yet. Unreadable files are ignored.
+     */
+    public Optional<String> importLegacyFile(String key, String fileName) {
+        Path legacyFile = folder.resolve(fileName);
+        if (get(key).isPresent() || !Files.exists(legacyFile))
+            return get(key);
+
+        try {
+            String value = Files.readString(legacyFile).trim();
+            if (!value.isEmpty()) {
+                logger.info("Import {} from {}", key, legacyFile);
+
+                put(key, value);
+                flush();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to import legacy state file {}", legacyFile, e);
+        }
+
+        return get(key);
+    }
+
+    public synchronized void flush() throws IOException {
+        if (!dirty.getAndSet(false))
+            return;
+
+        Properties snapshot = new Properties();
+        snapshot.putAll(properties);
+
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 OutputStream os = Channels.newOutputStream(channel)) {
+                snapshot.store(os, null);
+                channel.force(true);
+            }
+
+            Files.move(tempFile, stateFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            forceFolder();
+        } catch (IOException e) {
+            dirty.set(true);
+            throw e;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            logger.warn("Failed to save state, retry in {}", flushInterval, e);
+
+            scheduler.schedule(this::flushQuietly, flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * The rename is only durable once the directory entry is on disk, not every platform
+     * allows to open a directory for that though.
+     */
+    private void forceFolder() {
+        try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            logger.debug("Failed to force state folder", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
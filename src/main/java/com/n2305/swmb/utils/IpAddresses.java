@@ -0,0 +1,203 @@
+package com.n2305.swmb.utils;
+
+import java.util.Optional;
+
+/**
+ * Parses IPv4 and IPv6 literals without ever resolving a host name, the result is formatted
+ * like {@link java.net.InetAddress#getHostAddress()}: IPv4 as dotted quad, IPv6 as eight
+ * uncompressed lowercase groups and IPv4 mapped IPv6 addresses as their IPv4 address.
+ * Anything else, host names, zone ids and legacy forms like {@code 127.1} included, is rejected.
+ */
+public final class IpAddresses {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private IpAddresses() {
+    }
+
+    public static Optional<String> normalize(String address) {
+        if (address == null || address.isEmpty())
+            return Optional.empty();
+
+        if (address.length() > 2 && address.charAt(0) == '[' && address.charAt(address.length() - 1) == ']')
+            address = address.substring(1, address.length() - 1);
+
+        if (address.indexOf(':') < 0) {
+            long ipv4 = parseIPv4(address, 0, address.length());
+
+            return ipv4 < 0 ? Optional.empty() : Optional.of(formatIPv4((int) ipv4));
+        }
+
+        int[] groups = parseIPv6(address);
+        if (groups == null)
+            return Optional.empty();
+
+        return Optional.of(isIPv4Mapped(groups)
+            ? formatIPv4((groups[6] << 16) | groups[7])
+            : formatIPv6(groups));
+    }
+
+    /**
+     * Returns the unsigned address of the dotted quad between from and to, or -1.
+     */
+    private static long parseIPv4(String s, int from, int to) {
+        long address = 0;
+        int octets = 0;
+        int value = 0;
+        int digits = 0;
+
+        for (int i = from; i <= to; i++) {
+            if (i == to || s.charAt(i) == '.') {
+                if (digits == 0 || octets == 4)
+                    return -1;
+
+                address = (address << 8) | value;
+                octets++;
+                value = 0;
+                digits = 0;
+                continue;
+            }
+
+            char c = s.charAt(i);
+            if (c < '0' || c > '9' || digits == 3)
+                return -1;
+
+            value = value * 10 + (c - '0');
+            digits++;
+            if (value > 255)
+                return -1;
+        }
+
+        return octets == 4 ? address : -1;
+    }
+
+    /**
+     * Parses into eight 16 bit groups, an IPv4 literal at the end counts as the last two.
+     */
+    private static int[] parseIPv6(String s) {
+        int length = s.length();
+        int[] groups = new int[8];
+        int count = 0;
+        int compressAt = -1;
+        int i = 0;
+
+        if (s.startsWith("::")) {
+            compressAt = 0;
+            i = 2;
+            if (i == length)
+                return groups;
+        } else if (s.charAt(0) == ':') {
+            return null;
+        }
+
+        while (i < length) {
+            int end = i;
+            int value = 0;
+            while (end < length && end - i < 5 && hexDigit(s.charAt(end)) >= 0) {
+                value = (value << 4) | hexDigit(s.charAt(end));
+                end++;
+            }
+
+            if (end < length && s.charAt(end) == '.') {
+                // trailing IPv4 literal, takes up the last two groups
+                long ipv4 = count <= 6 ? parseIPv4(s, i, length) : -1;
+                if (ipv4 < 0)
+                    return null;
+
+                groups[count++] = (int) (ipv4 >>> 16);
+                groups[count++] = (int) (ipv4 & 0xffff);
+                break;
+            }
+
+            if (end == i || end - i > 4 || count == 8)
+                return null;
+
+            groups[count++] = value;
+            i = end;
+
+            if (i == length)
+                break;
+            if (s.charAt(i) != ':')
+                return null;
+
+            i++;
+            if (i < length && s.charAt(i) == ':') {
+                if (compressAt != -1)
+                    return null;
+
+                compressAt = count;
+                i++;
+            } else if (i == length) {
+                return null;
+            }
+        }
+
+        if (compressAt == -1) {
+            return count == 8 ? groups : null;
+        }
+
+        if (count == 8)
+            return null;
+
+        // move the groups after :: to the end
+        int tail = count - compressAt;
+        System.arraycopy(groups, compressAt, groups, 8 - tail, tail);
+        for (int g = compressAt; g < 8 - tail; g++) {
+            groups[g] = 0;
+        }
+
+        return groups;
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9')
+            return c - '0';
+        if (c >= 'a' && c <= 'f')
+            return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F')
+            return c - 'A' + 10;
+
+        return -1;
+    }
+
+    private static boolean isIPv4Mapped(int[] groups) {
+        for (int g = 0; g < 5; g++) {
+            if (groups[g] != 0)
+                return false;
+        }
+
+        return groups[5] == 0xffff;
+    }
+
+    private static String formatIPv4(int address) {
+        StringBuilder sb = new StringBuilder(15);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            if (shift < 24)
+                sb.append('.');
+
+            sb.append((address >>> shift) & 0xff);
+        }
+
+        return sb.toString();
+    }
+
+    private static String formatIPv6(int[] groups) {
+        StringBuilder sb = new StringBuilder(39);
+        for (int g = 0; g < 8; g++) {
+            if (g > 0)
+                sb.append(':');
+
+            int value = groups[g];
+            boolean leading = true;
+            for (int shift = 12; shift >= 0; shift -= 4) {
+                int digit = (value >>> shift) & 0xf;
+                if (leading && digit == 0 && shift > 0)
+                    continue;
+
+                leading = false;
+                sb.append(HEX_DIGITS[digit]);
+            }
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,67 @@
+package com.n2305.swmb.utils;
+
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.internal.AtomicRateLimiter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Delays every element until a permission of the given rate limiter could be acquired.
+ *
+ * Instead of polling the limiter, a waiting element arms a single timer for the moment
+ * the next permission becomes available. The limiter has to be configured with a zero
+ * timeout duration, otherwise acquiring a permission would park the calling thread.
+ */
+public class RateLimitElements<T> implements Function<Flux<T>, Flux<T>> {
+    private static final long MIN_WAIT_NANOS = Duration.ofMillis(1).toNanos();
+
+    private final RateLimiter rateLimiter;
+    private final Scheduler scheduler;
+
+    public RateLimitElements(RateLimiter rateLimiter, Scheduler scheduler) {
+        this.rateLimiter = rateLimiter;
+        this.scheduler = scheduler;
+    }
+
+    public RateLimitElements(RateLimiter rateLimiter) {
+        this(rateLimiter, Schedulers.parallel());
+    }
+
+    public static <T> RateLimitElements<T> with(RateLimiter rateLimiter) {
+        return new RateLimitElements<>(rateLimiter);
+    }
+
+    public static <T> RateLimitElements<T> with(RateLimiter rateLimiter, Scheduler scheduler) {
+        return new RateLimitElements<>(rateLimiter, scheduler);
+    }
+
+    @Override
+    public Flux<T> apply(Flux<T> flux) {
+        return flux.delayUntil(v -> acquirePermission(rateLimiter, scheduler));
+    }
+
+    public static Mono<Void> acquirePermission(RateLimiter rateLimiter, Scheduler scheduler) {
+        return Mono.defer(() -> {
+            if (rateLimiter.acquirePermission())
+                return Mono.empty();
+
+            // another subscriber of a shared limiter may win the race for the next
+            // permission, in that case we simply park again until the following one
+            return Mono.delay(nextPermissionDelay(rateLimiter), scheduler)
+                .then(acquirePermission(rateLimiter, scheduler));
+        });
+    }
+
+    static Duration nextPermissionDelay(RateLimiter rateLimiter) {
+        long nanosToWait = rateLimiter instanceof AtomicRateLimiter
+            ? ((AtomicRateLimiter) rateLimiter).getDetailedMetrics().getNanosToWait()
+            : rateLimiter.getRateLimiterConfig().getLimitRefreshPeriod().toNanos();
+
+        return Duration.ofNanos(Math.max(nanosToWait, MIN_WAIT_NANOS));
+    }
+}
@@ -0,0 +1,78 @@
+package com.n2305.swmb.utils;
+
+import com.n2305.swmb.properties.AppProperties;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Decides which failures are worth another attempt and how long to wait before it. Server
+ * errors, throttling, timeouts and connection problems are retryable, any other client error or
+ * failure to process the data is permanent.
+ */
+public class RetryPolicy {
+    private final AppProperties.Retry retryProps;
+    private final DoubleSupplier random;
+
+    public RetryPolicy(AppProperties.Retry retryProps, DoubleSupplier random) {
+        this.retryProps = retryProps;
+        this.random = random;
+    }
+
+    public RetryPolicy(AppProperties.Retry retryProps) {
+        this(retryProps, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    public static boolean isRetryable(Throwable e) {
+        if (e instanceof WebClientResponseException) {
+            int status = ((WebClientResponseException) e).getRawStatusCode();
+
+            return status >= 500 || status == 408 || status == 429;
+        }
+
+        return e instanceof WebClientRequestException
+            || e instanceof TimeoutException
+            || e instanceof IOException;
+    }
+
+    public boolean shouldRetry(Throwable e, int attempts) {
+        return isRetryable(e) && attempts < retryProps.getMaxAttempts();
+    }
+
+    /**
+     * Delay before the given retry, counting from 1. It doubles with every retry up to the max
+     * backoff and is then reduced by a random share of up to the jitter factor, so failures of
+     * the same outage don't come back all at once.
+     */
+    public Duration backoff(int retry) {
+        long initial = retryProps.getInitialBackoff().toMillis();
+        long max = retryProps.getMaxBackoff().toMillis();
+
+        int shift = Math.max(0, retry - 1);
+        long base = shift >= Long.numberOfLeadingZeros(initial) - 1
+            ? max
+            : Math.min(max, initial << shift);
+
+        long jitter = (long) (base * retryProps.getJitter() * random.getAsDouble());
+
+        return Duration.ofMillis(base - jitter);
+    }
+
+    /**
+     * Retries in place, for calls that are cheap to repeat like the shopware requests.
+     * Once exhausted the last failure is passed on as is.
+     */
+    public Retry inline() {
+        return Retry.backoff(retryProps.getInlineAttempts(), retryProps.getInitialBackoff())
+            .maxBackoff(retryProps.getMaxBackoff())
+            .jitter(retryProps.getJitter())
+            .filter(RetryPolicy::isRetryable)
+            .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+}
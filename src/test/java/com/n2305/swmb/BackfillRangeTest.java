@@ -0,0 +1,44 @@
+package com.n2305.swmb;
+
+import com.n2305.swmb.shopware.ShopwareAPI;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BackfillRangeTest {
+    @Test
+    void testRangeIsParsedFromIsoDates() {
+        BackfillRange range = BackfillRange.parse("2019-01-01", "2020-01-01");
+
+        assertEquals(LocalDate.of(2019, 1, 1), range.getFrom());
+        assertEquals(LocalDate.of(2020, 1, 1), range.getTo());
+        assertEquals("2019-01-01_2020-01-01", range.getName());
+    }
+
+    @Test
+    void testInvalidRangesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> BackfillRange.parse("2019-01-01", null));
+        assertThrows(IllegalArgumentException.class, () -> BackfillRange.parse("2019-01", "2020-01-01"));
+        assertThrows(IllegalArgumentException.class, () -> BackfillRange.parse("2020-01-01", "2020-01-01"));
+        assertThrows(IllegalArgumentException.class, () -> BackfillRange.parse("2020-01-01", "2019-01-01"));
+    }
+
+    @Test
+    void testFiltersIncludeTheFirstAndExcludeTheLastDay() {
+        List<ShopwareAPI.Filter> filters = BackfillRange.parse("2019-01-01", "2020-01-01").getOrderFilters();
+
+        assertEquals(2, filters.size());
+        assertEquals("orderTime", filters.get(0).getProperty());
+        assertEquals(">=", filters.get(0).getExpression());
+        assertEquals("2019-01-01", filters.get(0).getValue());
+        assertEquals("<", filters.get(1).getExpression());
+        assertEquals("2020-01-01", filters.get(1).getValue());
+
+        assertEquals("firstLogin", BackfillRange.parse("2019-01-01", "2020-01-01")
+            .getCustomerFilters().get(0).getProperty());
+    }
+}
@@ -0,0 +1,47 @@
+package com.n2305.swmb;
+
+import reactor.blockhound.BlockHound;
+import reactor.blockhound.BlockingOperationError;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Installs BlockHound once per jvm. Besides the default blocking methods it flags host name
+ * lookups, those end up in a native call BlockHound doesn't know about.
+ *
+ * Writing log events to the console is allowed. The application logs synchronously on purpose,
+ * an async appender either drops events or blocks just the same once its queue is full, and the
+ * tests log through the same console appender.
+ *
+ * Every detected call is recorded as well, a reactive pipeline that resumes on errors would
+ * otherwise swallow the {@link BlockingOperationError}.
+ */
+public final class BlockHoundSupport {
+    private static final List<String> blockingCalls = new CopyOnWriteArrayList<>();
+
+    private BlockHoundSupport() {
+    }
+
+    public static synchronized void install() {
+        BlockHound.builder()
+            .markAsBlocking(InetAddress.class, "getByName", "(Ljava/lang/String;)Ljava/net/InetAddress;")
+            .markAsBlocking(InetAddress.class, "getAllByName", "(Ljava/lang/String;)[Ljava/net/InetAddress;")
+            .allowBlockingCallsInside("ch.qos.logback.core.OutputStreamAppender", "subAppend")
+            .blockingMethodCallback(method -> {
+                blockingCalls.add(method + " on " + Thread.currentThread().getName());
+
+                throw new BlockingOperationError(method);
+            })
+            .install();
+    }
+
+    public static List<String> getBlockingCalls() {
+        return List.copyOf(blockingCalls);
+    }
+
+    public static void clearBlockingCalls() {
+        blockingCalls.clear();
+    }
+}
@@ -0,0 +1,44 @@
+package com.n2305.swmb;
+
+import com.n2305.swmb.mailbluster.MBOrder;
+import com.n2305.swmb.mailbluster.PartnerCampaignIDMapper;
+import com.n2305.swmb.shopware.SWOrder;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class OrderMapperTest {
+    private static SWOrder recordedOrder() throws IOException {
+        try (InputStream in = OrderMapperTest.class.getResourceAsStream("shopware/order.json")) {
+            return new ObjectMapperFactory().get()
+                .readerFor(SWOrder.class)
+                .at("/data")
+                .readValue(in);
+        }
+    }
+
+    @Test
+    void testMapsRecordedOrder() throws IOException {
+        OrderMapper orderMapper = new OrderMapper(new PartnerCampaignIDMapper(Map.of(), "mb-(\\d+)"));
+
+        MBOrder order = orderMapper.apply(recordedOrder());
+
+        assertEquals("20001", order.getId());
+        assertNull(order.getCampaignId());
+        assertEquals(23.7, order.getTotalPrice(), 0.001);
+        assertEquals("78.94.0.0", order.getCustomer().getIpAddress());
+        assertEquals(Map.of("zip", "33322", "city", "Main City", "country", "DE", "referer", ""),
+            order.getCustomer().getMeta());
+
+        // the article and the shipping costs
+        assertEquals(2, order.getItems().size());
+        assertEquals("10001", order.getItems().get(0).getId());
+        assertEquals(2, order.getItems().get(0).getQuantity());
+        assertEquals(3.9, order.getItems().get(1).getPrice(), 0.001);
+    }
+}
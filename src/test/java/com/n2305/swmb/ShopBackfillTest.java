@@ -0,0 +1,114 @@
+package com.n2305.swmb;
+
+import com.n2305.swmb.properties.AppProperties;
+import com.n2305.swmb.shopware.CustomerStreamFactory;
+import com.n2305.swmb.shopware.OrderStreamFactory;
+import com.n2305.swmb.state.StateStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ShopBackfillTest {
+    private ShopSync shopSync;
+    private OrderStreamFactory orderStreamFactory;
+    private CustomerStreamFactory customerStreamFactory;
+    private StateStore checkpoints;
+    private VirtualTimeScheduler scheduler;
+    private Sinks.Empty<Void> done;
+    private AtomicReference<Runnable> onHandled;
+    private ShopBackfill backfill;
+
+    @BeforeEach
+    void setUp() {
+        shopSync = mock(ShopSync.class);
+        orderStreamFactory = mock(OrderStreamFactory.class);
+        customerStreamFactory = mock(CustomerStreamFactory.class);
+        checkpoints = mock(StateStore.class);
+        scheduler = VirtualTimeScheduler.create();
+        done = Sinks.empty();
+        onHandled = new AtomicReference<>();
+
+        when(orderStreamFactory.countPending()).thenReturn(Mono.just(20L));
+        when(customerStreamFactory.countPending()).thenReturn(Mono.just(10L));
+        when(shopSync.backfill(any())).thenAnswer(invocation -> {
+            onHandled.set(invocation.getArgument(0));
+            return done.asMono();
+        });
+
+        backfill = new ShopBackfill(
+            "default",
+            BackfillRange.parse("2019-01-01", "2020-01-01"),
+            shopSync,
+            orderStreamFactory,
+            customerStreamFactory,
+            checkpoints,
+            new AppProperties.Backfill().setCheckpointEvery(5),
+            scheduler
+        );
+    }
+
+    private void handle(int records) {
+        for (int i = 0; i < records; i++)
+            onHandled.get().run();
+    }
+
+    @Test
+    void testEtaFollowsTheAverageThroughput() {
+        Disposable disposable = backfill.run().subscribe();
+        assertEquals(Optional.empty(), backfill.getEta());
+
+        handle(10);
+        scheduler.advanceTimeBy(Duration.ofMinutes(2));
+
+        assertEquals(5.0, backfill.getRecordsPerMinute(), 0.001);
+        assertEquals(Optional.of(Duration.ofMinutes(4)), backfill.getEta());
+
+        handle(20);
+        assertEquals(Optional.of(Duration.ZERO), backfill.getEta());
+        disposable.dispose();
+    }
+
+    @Test
+    void testWithoutCountThereIsNoEta() {
+        when(customerStreamFactory.countPending()).thenReturn(Mono.error(new IllegalStateException("down")));
+
+        Disposable disposable = backfill.run().subscribe();
+        handle(10);
+        scheduler.advanceTimeBy(Duration.ofMinutes(2));
+
+        assertEquals(Optional.empty(), backfill.getEta());
+        disposable.dispose();
+    }
+
+    @Test
+    void testCheckpointEveryNRecordsAndAtTheEnd() throws IOException {
+        backfill.run().subscribe();
+
+        handle(4);
+        verify(checkpoints, never()).flush();
+
+        handle(6);
+        verify(checkpoints, timeout(1000).times(2)).flush();
+
+        done.tryEmitEmpty();
+        verify(checkpoints, timeout(1000).times(3)).flush();
+        assertEquals(10, backfill.getHandled());
+    }
+}
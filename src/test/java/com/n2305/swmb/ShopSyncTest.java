@@ -0,0 +1,235 @@
+package com.n2305.swmb;
+
+import com.n2305.swmb.mailbluster.MBLead;
+import com.n2305.swmb.mailbluster.MBOrder;
+import com.n2305.swmb.mailbluster.MailBlusterAPI;
+import com.n2305.swmb.mailbluster.MailBlusterDispatcher;
+import com.n2305.swmb.mailbluster.PartnerCampaignIDMapper;
+import com.n2305.swmb.metrics.BacklogEstimator;
+import com.n2305.swmb.metrics.PipelineMetrics;
+import com.n2305.swmb.properties.AppProperties;
+import com.n2305.swmb.properties.MailBlusterProperties;
+import com.n2305.swmb.shopware.CustomerListItem;
+import com.n2305.swmb.shopware.CustomerStreamFactory;
+import com.n2305.swmb.shopware.OrderExportMarker;
+import com.n2305.swmb.shopware.OrderStreamFactory;
+import com.n2305.swmb.shopware.SWOrder;
+import com.n2305.swmb.state.DeadLetterQueue;
+import com.n2305.swmb.state.LeadIndex;
+import com.n2305.swmb.state.OrderHashIndex;
+import com.n2305.swmb.state.OrderHashIndex.Change;
+import com.n2305.swmb.state.Outbox;
+import com.n2305.swmb.utils.RetryPolicy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ShopSyncTest {
+    private final OrderStreamFactory orderStreamFactory = mock(OrderStreamFactory.class);
+    private final CustomerStreamFactory customerStreamFactory = mock(CustomerStreamFactory.class);
+    private final MailBlusterDispatcher dispatcher = mock(MailBlusterDispatcher.class);
+    private final Outbox outbox = mock(Outbox.class);
+    private final DeadLetterQueue deadLetterQueue = mock(DeadLetterQueue.class);
+    private final MailBlusterAPI mbAPI = mock(MailBlusterAPI.class);
+    private final OrderExportMarker exportMarker = mock(OrderExportMarker.class);
+    private final OrderHashIndex orderHashIndex = mock(OrderHashIndex.class);
+    private final LeadIndex leadIndex = mock(LeadIndex.class);
+    private ShopSync shopSync;
+
+    private ShopSync createShopSync() {
+        return new ShopSync(
+            "default",
+            orderStreamFactory,
+            customerStreamFactory,
+            new MailBlusterProperties(),
+            mbAPI,
+            dispatcher,
+            exportMarker,
+            new PartnerCampaignIDMapper(Map.of(), "mb-(\\d+)"),
+            outbox,
+            new AppProperties(),
+            new RetryPolicy(new AppProperties.Retry().setInitialBackoff(Duration.ofMillis(10))),
+            deadLetterQueue,
+            PipelineMetrics.NOOP,
+            mock(BacklogEstimator.class),
+            leadIndex,
+            orderHashIndex
+        );
+    }
+
+    private static SWOrder recordedOrder() throws IOException {
+        try (InputStream in = ShopSyncTest.class.getResourceAsStream("shopware/order.json")) {
+            return new ObjectMapperFactory().get()
+                .readerFor(SWOrder.class)
+                .at("/data")
+                .readValue(in);
+        }
+    }
+
+    private void syncOrder(SWOrder order) {
+        when(orderStreamFactory.create()).thenReturn(Flux.just(order));
+        when(customerStreamFactory.create()).thenReturn(Flux.never());
+        when(orderHashIndex.compare(any())).thenReturn(Change.NEW);
+        when(dispatcher.dispatch(any(), any()))
+            .thenAnswer(invocation -> invocation.<Supplier<Mono<?>>>getArgument(1).get());
+
+        shopSync = createShopSync();
+        shopSync.start();
+    }
+
+    private void rejectCreateAsExisting() {
+        when(mbAPI.createOrder(any())).thenReturn(Mono.error(WebClientResponseException.create(422,
+            "Unprocessable Entity", HttpHeaders.EMPTY,
+            "{\"message\":\"Order id already exists\"}".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        shopSync.dispose();
+    }
+
+    @Test
+    void testRetryableFailureWithoutOutboxRecordIsSettled() throws IOException {
+        CustomerListItem customer = mock(CustomerListItem.class);
+        when(customer.getId()).thenReturn(23L);
+        when(customer.getEmail()).thenReturn("foo@example.com");
+
+        when(orderStreamFactory.create()).thenReturn(Flux.never());
+        when(customerStreamFactory.create()).thenReturn(Flux.just(customer));
+        when(leadIndex.compare(any())).thenReturn(Change.NEW);
+        when(outbox.append(any(), anyLong(), any(MBLead.class))).thenThrow(new IOException("disk full"));
+        when(dispatcher.dispatch(any(), any())).thenReturn(Mono.error(new IOException("connection reset")));
+
+        shopSync = createShopSync();
+        shopSync.start();
+
+        // otherwise the customer cursor never moves past this customer again
+        verify(customerStreamFactory, timeout(5000)).acknowledge(customer);
+        verify(deadLetterQueue, never()).add(any(), any());
+    }
+
+    @Test
+    void testExistingOrderIsUpdated() throws IOException {
+        SWOrder order = recordedOrder();
+        rejectCreateAsExisting();
+        when(mbAPI.updateOrder(any())).thenReturn(Mono.just(ResponseEntity.ok().build()));
+        when(exportMarker.markAsExported(any(SWOrder.class))).thenReturn(Mono.empty());
+
+        syncOrder(order);
+
+        verify(exportMarker, timeout(5000)).markAsExported(order);
+        verify(mbAPI).updateOrder(any());
+        verify(orderHashIndex).add(any(MBOrder.class));
+    }
+
+    @Test
+    void testExistingOrderIsNotRecordedIfTheUpdateFails() throws IOException {
+        SWOrder order = recordedOrder();
+        rejectCreateAsExisting();
+        when(mbAPI.updateOrder(any())).thenReturn(Mono.error(WebClientResponseException.create(400,
+            "Bad Request", HttpHeaders.EMPTY, new byte[0], StandardCharsets.UTF_8)));
+
+        syncOrder(order);
+
+        verify(orderStreamFactory, timeout(5000)).acknowledge(order);
+        verify(orderHashIndex, never()).add(any(MBOrder.class));
+        verify(exportMarker, never()).markAsExported(any(SWOrder.class));
+    }
+
+    @Test
+    void testChangedLeadIsUpdated() {
+        CustomerListItem customer = mock(CustomerListItem.class);
+        when(customer.getId()).thenReturn(23L);
+        when(customer.getFirstName()).thenReturn("Jane");
+        when(customer.getLastName()).thenReturn("Roe");
+        when(customer.getEmail()).thenReturn("jane@example.com");
+
+        when(orderStreamFactory.create()).thenReturn(Flux.never());
+        when(customerStreamFactory.create()).thenReturn(Flux.just(customer));
+        when(leadIndex.compare(any())).thenReturn(Change.CHANGED);
+        when(dispatcher.dispatch(any(), any()))
+            .thenAnswer(invocation -> invocation.<Supplier<Mono<?>>>getArgument(1).get());
+        when(mbAPI.updateLead(any())).thenReturn(Mono.just(ResponseEntity.ok().build()));
+
+        shopSync = createShopSync();
+        shopSync.start();
+
+        verify(customerStreamFactory, timeout(5000)).acknowledge(customer);
+        verify(mbAPI, never()).createLead(any());
+        verify(leadIndex).add(any(MBLead.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFailedMarkIsRetriedWithoutSendingTheOrderAgain() throws IOException {
+        SWOrder order = recordedOrder();
+        Outbox.Record<MBOrder> sent = mock(Outbox.Record.class);
+        when(sent.getKind()).thenReturn(Outbox.Kind.ORDER);
+        Outbox.Record<MBOrder> exportMark = mock(Outbox.Record.class);
+        when(exportMark.getKind()).thenReturn(Outbox.Kind.EXPORT_MARK);
+        when(exportMark.getReference()).thenReturn((long) order.getId());
+        when(exportMark.incrementAttempts()).thenReturn(1);
+
+        when(outbox.append(any(), anyLong(), any(MBOrder.class))).thenReturn(sent);
+        when(outbox.markSent(sent)).thenReturn(exportMark);
+        when(mbAPI.createOrder(any())).thenReturn(Mono.just(ResponseEntity.ok().build()));
+        when(exportMarker.markAsExported(any(SWOrder.class))).thenReturn(Mono.error(new IOException("connection reset")));
+        when(exportMarker.markAsExported(anyInt())).thenReturn(Mono.empty());
+
+        syncOrder(order);
+
+        verify(outbox, timeout(5000)).acknowledge(exportMark);
+        verify(exportMarker).markAsExported(order.getId());
+        verify(mbAPI).createOrder(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCustomerOfARecoveredLeadIsNotSentTwice() {
+        MBLead lead = new MBLead("Jane", "Doe", "jane@example.com", true);
+        Outbox.Record<MBLead> recovered = mock(Outbox.Record.class);
+        when(recovered.getKind()).thenReturn(Outbox.Kind.LEAD);
+        when(recovered.getReference()).thenReturn(23L);
+        when(recovered.getMessage()).thenReturn(lead);
+        when(outbox.takeRecovered()).thenReturn(List.of(recovered));
+
+        CustomerListItem customer = mock(CustomerListItem.class);
+        when(customer.getId()).thenReturn(23L);
+        when(customer.getEmail()).thenReturn("jane@example.com");
+
+        when(orderStreamFactory.create()).thenReturn(Flux.never());
+        when(customerStreamFactory.create()).thenReturn(Flux.just(customer));
+        when(leadIndex.compare(any())).thenReturn(Change.NEW);
+        when(dispatcher.dispatch(any(), any()))
+            .thenAnswer(invocation -> invocation.<Supplier<Mono<?>>>getArgument(1).get());
+        when(mbAPI.createLead(any())).thenReturn(Mono.just(ResponseEntity.ok().build()));
+
+        shopSync = createShopSync();
+        shopSync.start();
+
+        verify(outbox, timeout(5000)).acknowledge(recovered);
+        verify(customerStreamFactory, timeout(5000)).acknowledge(customer);
+        verify(mbAPI).createLead(lead);
+    }
+}
@@ -0,0 +1,143 @@
+package com.n2305.swmb;
+
+import com.n2305.swmb.mailbluster.PartnerCampaignIDMapper;
+import com.n2305.swmb.metrics.PipelineMetrics;
+import com.n2305.swmb.properties.AppProperties;
+import com.n2305.swmb.properties.MailBlusterProperties;
+import com.n2305.swmb.properties.ShopwareProperties;
+import com.n2305.swmb.utils.RetryPolicy;
+import org.apache.commons.validator.routines.EmailValidator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SyncFactoryTest {
+    @TempDir
+    Path stateFolder;
+
+    private ShopwareProperties swProps;
+    private MailBlusterProperties mbProps;
+    private SyncFactory syncFactory;
+
+    @BeforeEach
+    void setUp() {
+        swProps = new ShopwareProperties()
+            .setBaseUri("http://127.0.0.1:1")
+            .setUsername("api")
+            .setPassword("secret");
+        mbProps = new MailBlusterProperties()
+            .setBaseUri("http://127.0.0.1:2")
+            .setApiKey("secret")
+            .setRequestsPerMinute(55);
+        AppProperties appProps = new AppProperties()
+            .setStateFolderPath(stateFolder.toString());
+
+        syncFactory = new SyncFactory(
+            swProps,
+            mbProps,
+            appProps,
+            WebClient.builder(),
+            new ObjectMapperFactory().get(),
+            Clock.systemUTC(),
+            EmailValidator.getInstance(),
+            new RetryPolicy(appProps.getRetry()),
+            new PartnerCampaignIDMapper(Map.of(), "mb-(\\d+)"),
+            PipelineMetrics.NOOP
+        );
+    }
+
+    @AfterEach
+    void tearDown() {
+        syncFactory.destroy();
+    }
+
+    @Test
+    void testWithoutShopsTheTopLevelSettingsAreTheDefaultShop() {
+        List<ShopwareProperties.Shop> shops = syncFactory.getShops();
+
+        assertEquals(1, shops.size());
+        assertEquals(ShopwareProperties.Shop.DEFAULT_NAME, shops.get(0).getName());
+        assertEquals(MailBlusterProperties.DEFAULT_ACCOUNT, shops.get(0).getMailblusterAccount());
+    }
+
+    @Test
+    void testShopsNeedUniqueNamesAndKnownAccounts() {
+        swProps.setShops(List.of(new ShopwareProperties.Shop()));
+        assertThrows(IllegalStateException.class, syncFactory::getShops);
+
+        swProps.setShops(List.of(new ShopwareProperties.Shop().setName("a"), new ShopwareProperties.Shop().setName("a")));
+        assertThrows(IllegalStateException.class, syncFactory::getShops);
+
+        swProps.setShops(List.of(new ShopwareProperties.Shop().setName("a").setMailblusterAccount("other")));
+        assertThrows(IllegalStateException.class, syncFactory::getShops);
+
+        mbProps.setAccounts(List.of(new MailBlusterProperties.Account().setName("other").setApiKey("other-secret")));
+        assertEquals(1, syncFactory.getShops().size());
+    }
+
+    @Test
+    void testBulkDetailFetchNeedsItsPath() {
+        swProps.getDetailFetch().setMode(ShopwareProperties.DetailFetch.Mode.BULK);
+        assertThrows(IllegalStateException.class, syncFactory::getShops);
+
+        swProps.getDetailFetch().setBulkPath("/api/swmbOrders");
+        assertEquals(1, syncFactory.getShops().size());
+    }
+
+    @Test
+    void testEveryShopHasItsOwnStateFolder() throws IOException {
+        mbProps.setAccounts(List.of(new MailBlusterProperties.Account().setName("other").setApiKey("other-secret")));
+        swProps.setShops(List.of(
+            new ShopwareProperties.Shop().setName(ShopwareProperties.Shop.DEFAULT_NAME),
+            new ShopwareProperties.Shop().setName("second").setMailblusterAccount("other")
+        ));
+
+        for (ShopwareProperties.Shop shop : syncFactory.getShops()) {
+            assertEquals(shop.getName(), syncFactory.create(shop).getShop());
+        }
+
+        assertTrue(Files.isDirectory(stateFolder.resolve("shops").resolve("second")));
+        assertEquals(List.of("second"), List.of(stateFolder.resolve("shops").toFile().list()));
+    }
+
+    @Test
+    void testBackfillKeepsItsStateInTheFolderOfTheRange() throws IOException {
+        BackfillRange range = BackfillRange.parse("2019-01-01", "2020-01-01");
+        ShopwareProperties.Shop shop = syncFactory.getShops().get(0);
+
+        assertEquals(shop.getName(), syncFactory.createBackfill(shop, range).getShop());
+
+        assertTrue(Files.isDirectory(stateFolder.resolve("backfill").resolve("2019-01-01_2020-01-01")));
+        assertEquals(List.of("backfill"), List.of(stateFolder.toFile().list()));
+        assertThrows(IllegalStateException.class, () -> syncFactory.create(shop));
+        assertThrows(IllegalStateException.class,
+            () -> syncFactory.createBackfill(shop, BackfillRange.parse("2020-01-01", "2021-01-01")));
+    }
+
+    @Test
+    void testShopSettingsOverlayTheTopLevel() {
+        ShopwareProperties shopProps = swProps.forShop(new ShopwareProperties.Shop()
+            .setName("second")
+            .setBaseUri("http://127.0.0.1:3")
+            .setExportedAttribute("mbExport"));
+
+        assertEquals("http://127.0.0.1:3", shopProps.getBaseUri());
+        assertEquals("api", shopProps.getUsername());
+        assertEquals("mbExport", shopProps.getExportedAttribute());
+        assertEquals(swProps.getPaging(), shopProps.getPaging());
+        assertEquals("secret", mbProps.getAccount(MailBlusterProperties.DEFAULT_ACCOUNT).orElseThrow().getApiKey());
+    }
+}
@@ -0,0 +1,68 @@
+package com.n2305.swmb;
+
+import com.n2305.swmb.simulator.MailBlusterSimulator;
+import com.n2305.swmb.simulator.ShopwareSimulator;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the whole sync against simulated shopware and mailbluster apis with BlockHound installed.
+ * The base uris use ip literals, reactor netty would resolve localhost with a blocking lookup.
+ */
+@Tag("blockhound")
+@SpringBootTest
+@ActiveProfiles("blockhound")
+class SyncServiceBlockingTest {
+    private static final int ORDERS = 25;
+    private static final int CUSTOMERS = 25;
+
+    private static final ShopwareSimulator shopware = new ShopwareSimulator(ORDERS, CUSTOMERS);
+    private static final MailBlusterSimulator mailBluster = new MailBlusterSimulator(ORDERS, CUSTOMERS);
+    private static final MockWebServer shopwareServer = new MockWebServer();
+    private static final MockWebServer mailBlusterServer = new MockWebServer();
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) throws IOException {
+        BlockHoundSupport.install();
+
+        shopwareServer.setDispatcher(shopware);
+        shopwareServer.start();
+        mailBlusterServer.setDispatcher(mailBluster);
+        mailBlusterServer.start();
+
+        String stateFolder = Files.createTempDirectory("sync-service-blocking").toString();
+
+        registry.add("shopware.base-uri", () -> "http://127.0.0.1:" + shopwareServer.getPort());
+        registry.add("mailbluster.base-uri", () -> "http://127.0.0.1:" + mailBlusterServer.getPort());
+        registry.add("app.state-folder-path", () -> stateFolder);
+    }
+
+    @AfterAll
+    static void shutdown() throws IOException {
+        shopwareServer.shutdown();
+        mailBlusterServer.shutdown();
+    }
+
+    @Test
+    void testSyncDoesNotBlock() throws InterruptedException {
+        assertTrue(mailBluster.getOrders().await(30, TimeUnit.SECONDS), "all orders sent");
+        assertTrue(shopware.getAllExported().await(30, TimeUnit.SECONDS), "all orders exported");
+        assertTrue(mailBluster.getLeads().await(30, TimeUnit.SECONDS), "all leads sent");
+
+        assertEquals(0, BlockHoundSupport.getBlockingCalls().size(),
+            () -> "blocking calls: " + BlockHoundSupport.getBlockingCalls());
+    }
+}
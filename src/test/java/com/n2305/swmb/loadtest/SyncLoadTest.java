@@ -0,0 +1,158 @@
+package com.n2305.swmb.loadtest;
+
+import com.n2305.swmb.simulator.MailBlusterSimulator;
+import com.n2305.swmb.simulator.ShopwareSimulator;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Boots the application against simulated shopware and mailbluster apis and reports the sync
+ * throughput, the latency from order arrival until mailbluster accepted it, heap and threads.
+ * Only runs with the {@code loadtest} maven profile, the scenario is set with {@code loadtest.*}
+ * system properties.
+ */
+@Tag("loadtest")
+@SpringBootTest
+@ActiveProfiles("loadtest")
+class SyncLoadTest {
+    private static final Logger logger = LoggerFactory.getLogger(SyncLoadTest.class);
+
+    private static final int ORDERS = Integer.getInteger("loadtest.orders", 2000);
+    private static final int CUSTOMERS = Integer.getInteger("loadtest.customers", 500);
+    private static final double ORDERS_PER_SECOND = doubleProperty("loadtest.orders-per-second", 0);
+    private static final Duration SHOPWARE_LATENCY = durationProperty("loadtest.shopware.latency", "PT0.05S");
+    private static final double SHOPWARE_ERROR_RATE = doubleProperty("loadtest.shopware.error-rate", 0.01);
+    private static final Duration MAILBLUSTER_LATENCY = durationProperty("loadtest.mailbluster.latency", "PT0.1S");
+    private static final int MAILBLUSTER_QUOTA = Integer.getInteger("loadtest.mailbluster.quota", 6000);
+    private static final int REQUESTS_PER_MINUTE = Integer.getInteger("loadtest.requests-per-minute", MAILBLUSTER_QUOTA);
+    private static final Duration TIMEOUT = durationProperty("loadtest.timeout", "PT10M");
+
+    private static final ShopwareSimulator shopware = new ShopwareSimulator(ORDERS, CUSTOMERS)
+        .setOrdersPerSecond(ORDERS_PER_SECOND)
+        .setLatency(SHOPWARE_LATENCY)
+        .setErrorRate(SHOPWARE_ERROR_RATE);
+    private static final MailBlusterSimulator mailBluster = new MailBlusterSimulator(ORDERS, CUSTOMERS)
+        .setLatency(MAILBLUSTER_LATENCY)
+        .setRequestsPerMinute(MAILBLUSTER_QUOTA);
+    private static final MockWebServer shopwareServer = new MockWebServer();
+    private static final MockWebServer mailBlusterServer = new MockWebServer();
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) throws IOException {
+        shopwareServer.setDispatcher(shopware);
+        shopwareServer.start();
+        mailBlusterServer.setDispatcher(mailBluster);
+        mailBlusterServer.start();
+
+        String stateFolder = Files.createTempDirectory("sync-load-test").toString();
+
+        registry.add("shopware.base-uri", () -> "http://127.0.0.1:" + shopwareServer.getPort());
+        registry.add("mailbluster.base-uri", () -> "http://127.0.0.1:" + mailBlusterServer.getPort());
+        registry.add("mailbluster.requests-per-minute", () -> REQUESTS_PER_MINUTE);
+        registry.add("app.state-folder-path", () -> stateFolder);
+    }
+
+    @AfterAll
+    static void shutdown() throws IOException {
+        shopwareServer.shutdown();
+        mailBlusterServer.shutdown();
+    }
+
+    @Test
+    void testSyncThroughput() throws InterruptedException, IOException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        AtomicLong maxHeap = new AtomicLong();
+
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+        sampler.scheduleAtFixedRate(
+            () -> maxHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max),
+            0, 1, TimeUnit.SECONDS
+        );
+
+        // the application started sending while the context was refreshed, orders before
+        // the first arrival can't be sent anyway
+        Instant start = shopware.getArrival(1);
+        boolean completed;
+        try {
+            completed = mailBluster.getOrders().await(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } finally {
+            sampler.shutdownNow();
+        }
+        Instant end = Instant.now();
+
+        String report = report(Duration.between(start, end), maxHeap.get(), threads);
+        logger.info("Load test report:\n{}", report);
+        Files.writeString(Path.of("target", "loadtest-report.txt"), report);
+
+        assertTrue(completed, "all orders sent within " + TIMEOUT);
+    }
+
+    private static String report(Duration elapsed, long maxHeap, ThreadMXBean threads) {
+        Map<String, Instant> accepted = mailBluster.getAcceptedOrders();
+
+        long[] latencies = new long[accepted.size()];
+        int i = 0;
+        for (int id = 1; id <= ORDERS; id++) {
+            Instant acceptedAt = accepted.get(ShopwareSimulator.orderNumber(id));
+            if (acceptedAt != null)
+                latencies[i++] = Duration.between(shopware.getArrival(id), acceptedAt).toMillis();
+        }
+        Arrays.sort(latencies, 0, i);
+
+        double seconds = Math.max(elapsed.toMillis(), 1) / 1000.0;
+
+        return String.join("\n",
+            String.format("orders: %d of %d in %.1fs", i, ORDERS, seconds),
+            String.format("throughput: %.1f orders/s", i / seconds),
+            String.format("latency p50: %dms, p99: %dms", percentile(latencies, i, 0.5), percentile(latencies, i, 0.99)),
+            String.format("max heap used: %d MiB", maxHeap / (1024 * 1024)),
+            String.format("threads: %d live, %d peak", threads.getThreadCount(), threads.getPeakThreadCount()),
+            String.format("mailbluster throttled: %d, shopware injected errors: %d",
+                mailBluster.getThrottled(), shopware.getInjectedErrors()),
+            ""
+        );
+    }
+
+    private static long percentile(long[] sorted, int count, double percentile) {
+        if (count == 0)
+            return -1;
+
+        return sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+    }
+
+    private static double doubleProperty(String key, double defaultValue) {
+        String value = System.getProperty(key);
+
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    private static Duration durationProperty(String key, String defaultValue) {
+        return Duration.parse(System.getProperty(key, defaultValue));
+    }
+}
@@ -1,16 +1,22 @@
 package com.n2305.swmb.mailbluster;
 
 import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import com.n2305.swmb.metrics.PipelineMetrics;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.test.StepVerifier;
 
 import java.io.IOException;
 import java.util.List;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 
 class MailBlusterAPITest {
     WireMockServer wireMockServer;
@@ -46,7 +52,7 @@ class MailBlusterAPITest {
             .build();
 
         MailBlusterAPI mbAPI = new MailBlusterAPI(WebClient.builder()
-            .baseUrl(wireMockServer.baseUrl()).build());
+            .baseUrl(wireMockServer.baseUrl()).build(), PipelineMetrics.NOOP);
 
         wireMockServer.stubFor(post("/api/orders").willReturn(aResponse().withStatus(200)));
 
@@ -68,7 +74,7 @@ class MailBlusterAPITest {
         );
 
         MailBlusterAPI mbAPI = new MailBlusterAPI(WebClient.builder()
-            .baseUrl(wireMockServer.baseUrl()).build());
+            .baseUrl(wireMockServer.baseUrl()).build(), PipelineMetrics.NOOP);
 
         wireMockServer.stubFor(post("/api/leads").willReturn(aResponse().withStatus(201)));
 
@@ -79,6 +85,76 @@ class MailBlusterAPITest {
             .withRequestBody(equalToJson(stringFromResource("create-lead.json"))));
     }
 
+    @Test
+    void testRequestBodyIsCompact() {
+        MailBlusterAPI mbAPI = new MailBlusterAPI(WebClient.builder()
+            .baseUrl(wireMockServer.baseUrl()).build(), PipelineMetrics.NOOP);
+
+        wireMockServer.stubFor(post("/api/leads").willReturn(aResponse().withStatus(201)));
+
+        mbAPI.createLead(new MBLead("first name", "last name", "Email", false))
+            .block();
+
+        List<LoggedRequest> requests = wireMockServer.findAll(postRequestedFor(urlMatching("/api/leads")));
+        assertEquals(1, requests.size());
+        assertFalse(requests.get(0).getBodyAsString().contains("\n"));
+        assertFalse(requests.get(0).getBodyAsString().contains(": "));
+    }
+
+    @Test
+    void testErrorResponseIsPropagated() {
+        MailBlusterAPI mbAPI = new MailBlusterAPI(WebClient.builder()
+            .baseUrl(wireMockServer.baseUrl()).build(), PipelineMetrics.NOOP);
+
+        wireMockServer.stubFor(post("/api/leads").willReturn(aResponse().withStatus(422)
+            .withBody("{\"message\":\"invalid email\"}")));
+
+        StepVerifier.create(mbAPI.createLead(new MBLead("first name", "last name", "Email", false)))
+            .expectErrorMatches(e -> e instanceof WebClientResponseException
+                && ((WebClientResponseException) e).getRawStatusCode() == 422)
+            .verify();
+    }
+
+    @Test
+    void testUpdateOrder() throws IOException {
+        MBOrder order = new MBOrder.Builder()
+            .withId("order_id_0001")
+            .withCurrency("USD")
+            .withTotalPrice(10.43)
+            .withCustomer(new MBOrder.Customer.Builder()
+                .withEmail("richard@example.com")
+                .build())
+            .withItems(List.of(new MBOrder.Product("101", "Reign Html Template", 2.13, 1)))
+            .build();
+
+        MailBlusterAPI mbAPI = new MailBlusterAPI(WebClient.builder()
+            .baseUrl(wireMockServer.baseUrl()).build(), PipelineMetrics.NOOP);
+
+        wireMockServer.stubFor(put("/api/orders/order_id_0001").willReturn(aResponse().withStatus(200)));
+
+        mbAPI.updateOrder(order)
+            .block();
+
+        wireMockServer.verify(putRequestedFor(urlMatching("/api/orders/order_id_0001"))
+            .withRequestBody(matchingJsonPath("$.id", equalTo("order_id_0001")))
+            .withRequestBody(matchingJsonPath("$.totalPrice", equalTo("10.43"))));
+    }
+
+    @Test
+    void testUpdateLeadAddressesItByEmailHash() {
+        MailBlusterAPI mbAPI = new MailBlusterAPI(WebClient.builder()
+            .baseUrl(wireMockServer.baseUrl()).build(), PipelineMetrics.NOOP);
+
+        wireMockServer.stubFor(put("/api/leads/9e26471d35a78862c17e467d87cddedf")
+            .willReturn(aResponse().withStatus(200)));
+
+        mbAPI.updateLead(new MBLead("Jane", "Roe", "Jane@Example.com", true))
+            .block();
+
+        wireMockServer.verify(putRequestedFor(urlMatching("/api/leads/9e26471d35a78862c17e467d87cddedf"))
+            .withRequestBody(matchingJsonPath("$.lastName", equalTo("Roe"))));
+    }
+
     private String stringFromResource(String path) throws IOException {
         return new String(getClass().getResourceAsStream(path).readAllBytes());
     }
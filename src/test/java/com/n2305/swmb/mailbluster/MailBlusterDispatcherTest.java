@@ -0,0 +1,125 @@
+package com.n2305.swmb.mailbluster;
+
+import com.n2305.swmb.mailbluster.MailBlusterDispatcher.DispatchClass;
+import com.n2305.swmb.metrics.PipelineMetrics;
+import com.n2305.swmb.properties.MailBlusterProperties;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailBlusterDispatcherTest {
+    private static RateLimiter createExhaustedRateLimiter() {
+        RateLimiter rateLimiter = RateLimiter.of("test", RateLimiterConfig.custom()
+            .limitForPeriod(1)
+            .limitRefreshPeriod(Duration.ofMillis(20))
+            .timeoutDuration(Duration.ZERO)
+            .build());
+
+        // make sure every dispatched call gets queued before the first one is sent
+        while (rateLimiter.acquirePermission()) ;
+
+        return rateLimiter;
+    }
+
+    private static MailBlusterDispatcher createDispatcher(MailBlusterProperties.Dispatch dispatchProps) {
+        RateLimiter rateLimiter = createExhaustedRateLimiter();
+
+        return new MailBlusterDispatcher(
+            rateLimiter,
+            new ThroughputController(rateLimiter, new MailBlusterProperties.Adaptive().setEnabled(false)),
+            dispatchProps,
+            Schedulers.parallel(),
+            PipelineMetrics.NOOP
+        );
+    }
+
+    private static List<DispatchClass> dispatchAll(MailBlusterDispatcher dispatcher, int orders, int leads) {
+        List<DispatchClass> sent = Collections.synchronizedList(new LinkedList<>());
+
+        Flux.concat(
+            Flux.range(0, orders).map(n -> dispatch(dispatcher, DispatchClass.ORDER, sent)),
+            Flux.range(0, leads).map(n -> dispatch(dispatcher, DispatchClass.LEAD, sent))
+        ).flatMap(call -> call, orders + leads).blockLast(Duration.ofSeconds(5));
+
+        return sent;
+    }
+
+    private static Mono<DispatchClass> dispatch(
+        MailBlusterDispatcher dispatcher,
+        DispatchClass dispatchClass,
+        List<DispatchClass> sent
+    ) {
+        return dispatcher.dispatch(dispatchClass, () -> Mono.fromCallable(() -> {
+            sent.add(dispatchClass);
+            return dispatchClass;
+        }));
+    }
+
+    @Test
+    void testWeightedFairness() {
+        MailBlusterDispatcher dispatcher = createDispatcher(
+            new MailBlusterProperties.Dispatch().setOrderWeight(3).setLeadWeight(1));
+
+        List<DispatchClass> sent = dispatchAll(dispatcher, 8, 8);
+
+        assertEquals(16, sent.size());
+        assertEquals(6, sent.subList(0, 8).stream()
+            .filter(DispatchClass.ORDER::equals)
+            .count());
+    }
+
+    @Test
+    void testStrictOrderPriority() {
+        MailBlusterDispatcher dispatcher = createDispatcher(
+            new MailBlusterProperties.Dispatch().setStrictOrderPriority(true));
+
+        List<DispatchClass> sent = dispatchAll(dispatcher, 4, 4);
+
+        List<DispatchClass> expected = IntStream.range(0, 8)
+            .mapToObj(i -> i < 4 ? DispatchClass.ORDER : DispatchClass.LEAD)
+            .collect(Collectors.toList());
+
+        assertEquals(expected, sent);
+    }
+
+    @Test
+    void testQueueStatistics() {
+        MailBlusterDispatcher dispatcher = createDispatcher(new MailBlusterProperties.Dispatch());
+
+        Flux.range(0, 3)
+            .flatMap(n -> dispatcher.dispatch(DispatchClass.LEAD, () -> Mono.just(n)))
+            .blockLast(Duration.ofSeconds(5));
+
+        assertEquals(3, dispatcher.getDispatchedCount(DispatchClass.LEAD));
+        assertEquals(0, dispatcher.getDispatchedCount(DispatchClass.ORDER));
+        assertEquals(0, dispatcher.getQueueDepth(DispatchClass.LEAD));
+        assertTrue(dispatcher.getAverageWaitTime(DispatchClass.LEAD).compareTo(Duration.ZERO) > 0);
+    }
+
+    @Test
+    void testCallErrorIsPropagated() {
+        MailBlusterDispatcher dispatcher = createDispatcher(new MailBlusterProperties.Dispatch());
+
+        Mono<Object> call = dispatcher.dispatch(
+            DispatchClass.ORDER,
+            () -> Mono.error(new IllegalStateException("failed"))
+        );
+
+        assertEquals("failed", call
+            .onErrorResume(e -> Mono.just(e.getMessage()))
+            .block(Duration.ofSeconds(5)));
+    }
+}
@@ -0,0 +1,204 @@
+package com.n2305.swmb.mailbluster;
+
+import com.n2305.swmb.mailbluster.MailBlusterDispatcher.DispatchClass;
+import com.n2305.swmb.metrics.PipelineMetrics;
+import com.n2305.swmb.properties.MailBlusterProperties;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThroughputControllerTest {
+    private static final Clock clock = Clock.fixed(Instant.ofEpochSecond(23232323), ZoneId.of("UTC"));
+
+    MockWebServer server;
+
+    @BeforeEach
+    void startMockServer() throws IOException {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    void stopMockServer() throws IOException {
+        server.shutdown();
+    }
+
+    private static RateLimiter createRateLimiter(int limitForPeriod, Duration refreshPeriod) {
+        return RateLimiter.of("test", RateLimiterConfig.custom()
+            .limitForPeriod(limitForPeriod)
+            .limitRefreshPeriod(refreshPeriod)
+            .timeoutDuration(Duration.ZERO)
+            .build());
+    }
+
+    private static HttpHeaders headers(String name, String value) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(name, value);
+
+        return headers;
+    }
+
+    @Test
+    void testThrottledResponseDecreasesLimitAndPauses() {
+        RateLimiter rateLimiter = createRateLimiter(20, Duration.ofSeconds(65));
+        ThroughputController controller = new ThroughputController(
+            rateLimiter, new MailBlusterProperties.Adaptive(), clock);
+
+        controller.onResponse(429, headers(HttpHeaders.RETRY_AFTER, "30"));
+
+        assertEquals(10, controller.getCurrentLimit());
+        assertEquals(10, rateLimiter.getRateLimiterConfig().getLimitForPeriod());
+        assertEquals(Duration.ofSeconds(30), controller.getRemainingPause());
+    }
+
+    @Test
+    void testCleanResponsesIncreaseLimitUpToCeiling() {
+        RateLimiter rateLimiter = createRateLimiter(20, Duration.ofSeconds(65));
+        ThroughputController controller = new ThroughputController(
+            rateLimiter, new MailBlusterProperties.Adaptive().setIncreaseAfter(2).setIncreaseStep(3), clock);
+
+        controller.onResponse(429, new HttpHeaders());
+        assertEquals(10, controller.getCurrentLimit());
+
+        for (int i = 0; i < 4; i++)
+            controller.onResponse(201, new HttpHeaders());
+        assertEquals(16, controller.getCurrentLimit());
+
+        for (int i = 0; i < 10; i++)
+            controller.onResponse(201, new HttpHeaders());
+        assertEquals(20, controller.getCurrentLimit());
+        assertEquals(20, rateLimiter.getRateLimiterConfig().getLimitForPeriod());
+    }
+
+    @Test
+    void testSharedCeilingLimitsRightAwayAndIsApproachedWhenRaised() {
+        RateLimiter rateLimiter = createRateLimiter(20, Duration.ofSeconds(65));
+        ThroughputController controller = new ThroughputController(
+            rateLimiter, new MailBlusterProperties.Adaptive().setIncreaseAfter(1).setIncreaseStep(4), clock);
+
+        controller.setCeiling(10);
+        assertEquals(10, controller.getCurrentLimit());
+        assertEquals(10, rateLimiter.getRateLimiterConfig().getLimitForPeriod());
+
+        controller.setCeiling(20);
+        assertEquals(10, controller.getCurrentLimit());
+
+        for (int i = 0; i < 5; i++)
+            controller.onResponse(201, new HttpHeaders());
+        assertEquals(20, controller.getCurrentLimit());
+    }
+
+    @Test
+    void testExhaustedRateLimitHeadersPause() {
+        ThroughputController controller = new ThroughputController(
+            createRateLimiter(20, Duration.ofSeconds(65)), new MailBlusterProperties.Adaptive(), clock);
+
+        HttpHeaders headers = headers(ThroughputController.RATE_LIMIT_REMAINING, "0");
+        headers.set(ThroughputController.RATE_LIMIT_RESET, String.valueOf(clock.instant().getEpochSecond() + 12));
+        controller.onResponse(200, headers);
+
+        assertEquals(20, controller.getCurrentLimit());
+        assertEquals(Duration.ofSeconds(12), controller.getRemainingPause());
+    }
+
+    @Test
+    void testHiddenQuotaIsRespected() {
+        QuotaDispatcher quotaDispatcher = new QuotaDispatcher(4, Duration.ofSeconds(1));
+        server.setDispatcher(quotaDispatcher);
+
+        RateLimiter rateLimiter = createRateLimiter(20, Duration.ofMillis(200));
+        ThroughputController controller = new ThroughputController(
+            rateLimiter, new MailBlusterProperties.Adaptive().setMaxThrottledRetries(5));
+        MailBlusterDispatcher dispatcher = new MailBlusterDispatcher(
+            rateLimiter, controller, new MailBlusterProperties.Dispatch(), Schedulers.parallel(), PipelineMetrics.NOOP);
+        MailBlusterAPI mbAPI = new MailBlusterAPI(WebClient.builder()
+            .baseUrl(server.url("/").toString()).build(), PipelineMetrics.NOOP);
+
+        Long created = Flux.range(0, 10)
+            .flatMap(n -> dispatcher.dispatch(DispatchClass.ORDER, () -> mbAPI.createOrder(createOrder(n))))
+            .count()
+            .block(Duration.ofSeconds(30));
+
+        assertEquals(10, created);
+        assertEquals(10, quotaDispatcher.accepted.get());
+        assertTrue(quotaDispatcher.throttled.get() > 0);
+        assertTrue(controller.getCurrentLimit() < 20);
+    }
+
+    private static MBOrder createOrder(int n) {
+        return new MBOrder.Builder()
+            .withId("order_" + n)
+            .withCurrency("EUR")
+            .withTotalPrice(10)
+            .withCustomer(new MBOrder.Customer.Builder()
+                .withEmail("customer" + n + "@example.com")
+                .build())
+            .withItems(List.of(new MBOrder.Product("101", "Product", 10, 1)))
+            .build();
+    }
+
+    /**
+     * Mailbluster stand in that accepts a fixed number of requests per window
+     * and answers with 429 and a retry after header beyond that.
+     */
+    static class QuotaDispatcher extends Dispatcher {
+        private final int quota;
+        private final long windowNanos;
+        private final AtomicInteger accepted = new AtomicInteger();
+        private final AtomicInteger throttled = new AtomicInteger();
+
+        private long windowStart = System.nanoTime();
+        private int windowCount;
+
+        QuotaDispatcher(int quota, Duration window) {
+            this.quota = quota;
+            this.windowNanos = window.toNanos();
+        }
+
+        @Override
+        public synchronized MockResponse dispatch(RecordedRequest request) {
+            long now = System.nanoTime();
+            if (now - windowStart >= windowNanos) {
+                windowStart = now;
+                windowCount = 0;
+            }
+
+            if (++windowCount > quota) {
+                throttled.incrementAndGet();
+                long retryAfterSeconds = TimeUnit.NANOSECONDS.toSeconds(windowStart + windowNanos - now) + 1;
+
+                return new MockResponse()
+                    .setResponseCode(429)
+                    .setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+            }
+
+            accepted.incrementAndGet();
+
+            return new MockResponse()
+                .setResponseCode(201)
+                .setHeader(ThroughputController.RATE_LIMIT_REMAINING, quota - windowCount);
+        }
+    }
+}
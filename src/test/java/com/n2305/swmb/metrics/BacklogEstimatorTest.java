@@ -0,0 +1,105 @@
+package com.n2305.swmb.metrics;
+
+import com.n2305.swmb.properties.AppProperties;
+import com.n2305.swmb.shopware.ShopwareAPI;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BacklogEstimatorTest {
+    private static final Instant NOW = Instant.parse("2019-04-04T12:00:00Z");
+
+    private VirtualTimeScheduler scheduler;
+    private ShopwareAPI api;
+    private AtomicLong sentOrders;
+    private BacklogEstimator estimator;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = VirtualTimeScheduler.create();
+        api = mock(ShopwareAPI.class);
+        sentOrders = new AtomicLong();
+        estimator = new BacklogEstimator(
+            api,
+            sentOrders::get,
+            new AppProperties.Backlog().setInterval(Duration.ofMinutes(5)).setSmoothing(0.5),
+            Clock.fixed(NOW, ZoneOffset.UTC),
+            scheduler
+        );
+    }
+
+    @AfterEach
+    void tearDown() {
+        estimator.dispose();
+        scheduler.dispose();
+    }
+
+    private void respondWith(long total, OffsetDateTime oldestOrderTime) {
+        when(api.fetchOrderBacklog()).thenReturn(Mono.just(new ShopwareAPI.OrderBacklog(total, oldestOrderTime)));
+    }
+
+    @Test
+    void testUnknownUntilFirstPoll() {
+        assertEquals(-1, estimator.getBacklog());
+        assertTrue(Double.isNaN(estimator.getOrdersPerMinute()));
+        assertEquals(Optional.empty(), estimator.getEta());
+        assertEquals(Optional.empty(), estimator.getOldestPendingAge());
+    }
+
+    @Test
+    void testEstimatesEtaFromObservedThroughput() {
+        respondWith(1000, OffsetDateTime.ofInstant(NOW.minus(Duration.ofHours(2)), ZoneOffset.UTC));
+        estimator.start();
+
+        assertEquals(1000, estimator.getBacklog());
+        assertEquals(Optional.of(Duration.ofHours(2)), estimator.getOldestPendingAge());
+        assertEquals(Optional.empty(), estimator.getEta());
+
+        respondWith(900, OffsetDateTime.ofInstant(NOW.minus(Duration.ofHours(1)), ZoneOffset.UTC));
+        sentOrders.set(100);
+        scheduler.advanceTimeBy(Duration.ofMinutes(5));
+
+        assertEquals(20, estimator.getOrdersPerMinute(), 0.001);
+        assertEquals(Optional.of(Duration.ofMinutes(45)), estimator.getEta());
+        assertEquals(Optional.of(Duration.ofHours(1)), estimator.getOldestPendingAge());
+
+        respondWith(800, null);
+        sentOrders.set(300);
+        scheduler.advanceTimeBy(Duration.ofMinutes(5));
+
+        // moving average of 20 and 40 orders per minute
+        assertEquals(30, estimator.getOrdersPerMinute(), 0.001);
+        assertEquals(Optional.empty(), estimator.getOldestPendingAge());
+    }
+
+    @Test
+    void testKeepsTheLastEstimateOnErrors() {
+        respondWith(10, null);
+        estimator.start();
+
+        when(api.fetchOrderBacklog()).thenReturn(Mono.error(new IllegalStateException()));
+        scheduler.advanceTimeBy(Duration.ofMinutes(5));
+
+        assertEquals(10, estimator.getBacklog());
+
+        respondWith(0, null);
+        scheduler.advanceTimeBy(Duration.ofMinutes(5));
+
+        assertEquals(Optional.of(Duration.ZERO), estimator.getEta());
+    }
+}
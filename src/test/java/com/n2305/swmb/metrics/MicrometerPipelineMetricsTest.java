@@ -0,0 +1,136 @@
+package com.n2305.swmb.metrics;
+
+import com.n2305.swmb.mailbluster.MailBlusterDispatcher.DispatchClass;
+import com.n2305.swmb.shopware.PagingPublisher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MicrometerPipelineMetricsTest {
+    private SimpleMeterRegistry registry;
+    private MicrometerPipelineMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        metrics = new MicrometerPipelineMetrics(registry);
+    }
+
+    @Test
+    void testNoopReturnsThePublisherUntouched() {
+        Mono<List<Integer>> page = Mono.just(List.of(1));
+        Mono<ResponseEntity<Void>> response = Mono.empty();
+
+        assertSame(page, PipelineMetrics.NOOP.timeShopwareList(PipelineMetrics.ORDERS, page));
+        assertSame(response, PipelineMetrics.NOOP.timeMailBlusterSend(PipelineMetrics.LEADS, response));
+    }
+
+    @Test
+    void testShopwareListCountsPages() {
+        StepVerifier.create(metrics.timeShopwareList(PipelineMetrics.ORDERS, Mono.just(List.of(1, 2))))
+            .expectNextCount(1)
+            .verifyComplete();
+        StepVerifier.create(metrics.timeShopwareList(PipelineMetrics.ORDERS, Mono.<List<Integer>>error(new IllegalStateException())))
+            .verifyError(IllegalStateException.class);
+
+        assertEquals(1, registry.get("swmb.shopware.pages").tag("resource", "orders").counter().count());
+        assertEquals(1, registry.get("swmb.shopware.list").tags("resource", "orders", "outcome", "success").timer().count());
+        assertEquals(1, registry.get("swmb.shopware.list").tags("resource", "orders", "outcome", "error").timer().count());
+        assertEquals(0, registry.get("swmb.shopware.pages").tag("resource", "customers").counter().count());
+    }
+
+    @Test
+    void testDetailFetchesAreTaggedByMode() {
+        StepVerifier.create(metrics.timeShopwareDetail(Mono.just(1)))
+            .expectNext(1)
+            .verifyComplete();
+        StepVerifier.create(metrics.timeShopwareBulkDetail(Flux.just(1, 2, 3)))
+            .expectNextCount(3)
+            .verifyComplete();
+
+        assertEquals(1, registry.get("swmb.shopware.detail").tags("mode", "single", "outcome", "success").timer().count());
+        assertEquals(1, registry.get("swmb.shopware.detail").tags("mode", "bulk", "outcome", "success").timer().count());
+    }
+
+    @Test
+    void testMailBlusterSendIsTaggedByStatus() {
+        WebClientResponseException badRequest = WebClientResponseException.create(400, "Bad Request",
+            HttpHeaders.EMPTY, new byte[0], StandardCharsets.UTF_8);
+
+        StepVerifier.create(metrics.timeMailBlusterSend(PipelineMetrics.ORDERS, Mono.just(ResponseEntity.status(201).<Void>build())))
+            .expectNextCount(1)
+            .verifyComplete();
+        StepVerifier.create(metrics.timeMailBlusterSend(PipelineMetrics.ORDERS, Mono.just(ResponseEntity.status(201).<Void>build())))
+            .expectNextCount(1)
+            .verifyComplete();
+        StepVerifier.create(metrics.timeMailBlusterSend(PipelineMetrics.ORDERS, Mono.<ResponseEntity<Void>>error(badRequest)))
+            .verifyError(WebClientResponseException.class);
+        StepVerifier.create(metrics.timeMailBlusterSend(PipelineMetrics.LEADS, Mono.<ResponseEntity<Void>>error(new IllegalStateException())))
+            .verifyError(IllegalStateException.class);
+
+        assertEquals(2, registry.get("swmb.mailbluster.send").tags("resource", "orders", "status", "201").timer().count());
+        assertEquals(1, registry.get("swmb.mailbluster.send").tags("resource", "orders", "status", "400").timer().count());
+        assertEquals(1, registry.get("swmb.mailbluster.send").tags("resource", "leads", "status", "none").timer().count());
+    }
+
+    @Test
+    void testPermissionWaitAndMappingFailures() {
+        metrics.recordPermissionWait(DispatchClass.LEAD, TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.mappingFailed(PipelineMetrics.CUSTOMERS);
+
+        assertEquals(20, registry.get("swmb.mailbluster.permission.wait").tag("class", "lead").timer()
+            .totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(0, registry.get("swmb.mailbluster.permission.wait").tag("class", "order").timer().count());
+        assertEquals(1, registry.get("swmb.mapping.failures").tag("resource", "customers").counter().count());
+    }
+
+    @Test
+    void testPublisherGaugesFollowTheRegisteredPublisher() {
+        assertEquals(0, registry.get("swmb.publisher.queue.depth").tag("resource", "customers").gauge().value());
+
+        PagingPublisher<?> first = mock(PagingPublisher.class);
+        when(first.getQueueSize()).thenReturn(3);
+        when(first.getRequested()).thenReturn(5L);
+        metrics.registerPublisher(PipelineMetrics.CUSTOMERS, first);
+
+        assertEquals(3, registry.get("swmb.publisher.queue.depth").tag("resource", "customers").gauge().value());
+        assertEquals(5, registry.get("swmb.publisher.demand").tag("resource", "customers").gauge().value());
+
+        PagingPublisher<?> second = mock(PagingPublisher.class);
+        when(second.getQueueSize()).thenReturn(7);
+        metrics.registerPublisher(PipelineMetrics.CUSTOMERS, second);
+
+        assertEquals(7, registry.get("swmb.publisher.queue.depth").tag("resource", "customers").gauge().value());
+        assertEquals(0, registry.get("swmb.publisher.queue.depth").tag("resource", "orders").gauge().value());
+    }
+
+    @Test
+    void testEveryShopHasItsOwnPublisherGauges() {
+        PipelineMetrics second = metrics.forShop("second");
+        assertSame(metrics, metrics.forShop("default"));
+
+        PagingPublisher<?> publisher = mock(PagingPublisher.class);
+        when(publisher.getQueueSize()).thenReturn(3);
+        second.registerPublisher(PipelineMetrics.ORDERS, publisher);
+
+        assertEquals(3, registry.get("swmb.publisher.queue.depth").tag("resource", "orders").tag("shop", "second")
+            .gauge().value());
+        assertEquals(0, registry.get("swmb.publisher.queue.depth").tag("resource", "orders").tag("shop", "default")
+            .gauge().value());
+    }
+}
@@ -0,0 +1,83 @@
+package com.n2305.swmb.shopware;
+
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Virtual time scheduler that counts every task scheduled on it, which equals the number of
+ * wakeups the same code would cause on a real scheduler.
+ */
+class CountingScheduler implements Scheduler {
+    private final VirtualTimeScheduler delegate = VirtualTimeScheduler.create();
+    private final AtomicInteger scheduledTasks = new AtomicInteger();
+
+    int getScheduledTasks() {
+        return scheduledTasks.get();
+    }
+
+    void advanceTimeBy(Duration duration) {
+        delegate.advanceTimeBy(duration);
+    }
+
+    @Override
+    public Disposable schedule(Runnable task) {
+        scheduledTasks.incrementAndGet();
+        return delegate.schedule(task);
+    }
+
+    @Override
+    public Disposable schedule(Runnable task, long delay, TimeUnit unit) {
+        scheduledTasks.incrementAndGet();
+        return delegate.schedule(task, delay, unit);
+    }
+
+    @Override
+    public Disposable schedulePeriodically(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        scheduledTasks.incrementAndGet();
+        return delegate.schedulePeriodically(task, initialDelay, period, unit);
+    }
+
+    @Override
+    public long now(TimeUnit unit) {
+        return delegate.now(unit);
+    }
+
+    @Override
+    public Worker createWorker() {
+        Worker worker = delegate.createWorker();
+
+        return new Worker() {
+            @Override
+            public Disposable schedule(Runnable task) {
+                scheduledTasks.incrementAndGet();
+                return worker.schedule(task);
+            }
+
+            @Override
+            public Disposable schedule(Runnable task, long delay, TimeUnit unit) {
+                scheduledTasks.incrementAndGet();
+                return worker.schedule(task, delay, unit);
+            }
+
+            @Override
+            public void dispose() {
+                worker.dispose();
+            }
+
+            @Override
+            public boolean isDisposed() {
+                return worker.isDisposed();
+            }
+        };
+    }
+
+    @Override
+    public void dispose() {
+        delegate.dispose();
+    }
+}
@@ -0,0 +1,57 @@
+package com.n2305.swmb.shopware;
+
+import com.n2305.swmb.properties.ShopwareProperties;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CustomerPublisherTest {
+    @Test
+    void testIdleWaitIsTheOnlyTimer() {
+        ShopwareAPI api = mock(ShopwareAPI.class);
+        when(api.fetchCustomers(any())).thenReturn(Mono.just(List.of()));
+
+        ShopwareProperties swProps = new ShopwareProperties()
+            .setIntervals(new ShopwareProperties.Intervals()
+                .setOnEmptyList(Duration.ofMinutes(5)));
+        CountingScheduler scheduler = new CountingScheduler();
+
+        Disposable disposable = Flux.create(new CustomerPublisher(api, swProps, 0, scheduler))
+            .subscribe();
+        scheduler.advanceTimeBy(Duration.ofHours(1));
+        disposable.dispose();
+
+        verify(api, times(13)).fetchCustomers(any());
+        assertEquals(13, scheduler.getScheduledTasks());
+    }
+
+    @Test
+    void testRangeOfCustomersCompletesOnceCaughtUp() {
+        ShopwareAPI api = mock(ShopwareAPI.class);
+        when(api.fetchCustomers(any())).thenReturn(Mono.just(List.of(
+            new CustomerListItem.Builder().withId(1).withEmail("a@example.com").build()
+        )));
+
+        CountingScheduler scheduler = new CountingScheduler();
+        List<ShopwareAPI.Filter> rangeFilters = List.of(new ShopwareAPI.Filter("firstLogin", "2019-01-01", ">="));
+        List<CustomerListItem> received = Flux.create(
+                new CustomerPublisher(api, new ShopwareProperties(), 0, rangeFilters, scheduler))
+            .collectList()
+            .block(Duration.ofSeconds(5));
+
+        assertEquals(1, received.size());
+        verify(api, times(1)).fetchCustomers(any());
+        assertEquals(0, scheduler.getScheduledTasks());
+    }
+}
@@ -0,0 +1,70 @@
+package com.n2305.swmb.shopware;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.n2305.swmb.ObjectMapperFactory;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DataFieldTokenizerTest {
+    private static final ObjectMapper objectMapper = new ObjectMapperFactory().get();
+
+    @ParameterizedTest(name = "chunk size {0}")
+    @ValueSource(ints = {1, 7, 64, 1 << 20})
+    void testListIsSplitIntoElements(int chunkSize) throws IOException {
+        ObjectReader objectReader = objectMapper.readerFor(OrderListItem.class);
+        List<TokenBuffer> tokenBuffers = tokenize(bytesFromResource("orders.json"), chunkSize);
+
+        List<Integer> ids = new LinkedList<>();
+        for (TokenBuffer tokenBuffer : tokenBuffers) {
+            OrderListItem oli = objectReader.readValue(tokenBuffer.asParser(objectReader));
+            ids.add(oli.getId());
+        }
+
+        List<OrderListItem> expected = objectMapper.readerForListOf(OrderListItem.class)
+            .at("/data")
+            .readValue(bytesFromResource("orders.json"));
+
+        assertEquals(expected.stream().map(OrderListItem::getId).collect(Collectors.toList()), ids);
+    }
+
+    @ParameterizedTest(name = "chunk size {0}")
+    @ValueSource(ints = {1, 13, 1 << 20})
+    void testObjectIsReturnedAsSingleValue(int chunkSize) throws IOException {
+        ObjectReader objectReader = objectMapper.readerFor(SWOrder.class);
+        List<TokenBuffer> tokenBuffers = tokenize(bytesFromResource("order.json"), chunkSize);
+
+        assertEquals(1, tokenBuffers.size());
+
+        SWOrder order = objectReader.readValue(tokenBuffers.get(0).asParser(objectReader));
+        assertEquals(2, order.getId());
+    }
+
+    private List<TokenBuffer> tokenize(byte[] bytes, int chunkSize) {
+        DataFieldTokenizer tokenizer = new DataFieldTokenizer(objectMapper.getFactory());
+        List<TokenBuffer> result = new LinkedList<>();
+
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            byte[] chunk = Arrays.copyOfRange(bytes, offset, Math.min(bytes.length, offset + chunkSize));
+            result.addAll(tokenizer.tokenize(DefaultDataBufferFactory.sharedInstance.wrap(chunk)));
+        }
+
+        result.addAll(tokenizer.endOfInput());
+
+        return result;
+    }
+
+    private byte[] bytesFromResource(String path) throws IOException {
+        return getClass().getResourceAsStream(path).readAllBytes();
+    }
+}
@@ -1,10 +1,13 @@
 package com.n2305.swmb.shopware;
 
 import com.n2305.swmb.shopware.ShopwareAPI.Filter;
+import com.n2305.swmb.shopware.ShopwareAPI.Sort;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
@@ -53,6 +56,18 @@ class FilterQueryParamSerializerTest {
                     "filter[0][property]", "gamma",
                     "filter[0][expression]", "="
                 )
+            ),
+            arguments(
+                "multiple values",
+                List.of(
+                    Filter.in("id", List.of("23", "42"))
+                ),
+                Map.of(
+                    "filter[0][property]", "id",
+                    "filter[0][value][0]", "23",
+                    "filter[0][value][1]", "42",
+                    "filter[0][expression]", "IN"
+                )
             )
         );
     }
@@ -62,4 +77,18 @@ class FilterQueryParamSerializerTest {
     void testSerialization(String testName, List<Filter> filters, Map<String, String> expected) {
         assertEquals(expected, serializer.serialize(filters));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSortSerialization() {
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("sort[0][property]", "orderTime");
+        expected.put("sort[0][direction]", "ASC");
+        expected.put("sort[1][property]", "id");
+        expected.put("sort[1][direction]", "DESC");
+
+        assertEquals(expected, serializer.serializeSort(List.of(
+            new Sort("orderTime", Sort.ASC),
+            new Sort("id", Sort.DESC)
+        )));
+    }
+}
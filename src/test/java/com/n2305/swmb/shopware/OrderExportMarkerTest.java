@@ -0,0 +1,137 @@
+package com.n2305.swmb.shopware;
+
+import com.n2305.swmb.metrics.PipelineMetrics;
+import com.n2305.swmb.properties.AppProperties;
+import com.n2305.swmb.properties.ShopwareProperties;
+import com.n2305.swmb.utils.RetryPolicy;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderExportMarkerTest {
+    ShopwareAPI api = mock(ShopwareAPI.class);
+
+    private OrderExportMarker createMarker(int batchSize) {
+        return new OrderExportMarker(
+            api,
+            new ShopwareProperties.ExportBatch().setSize(batchSize).setWindow(Duration.ofMillis(50)),
+            new RetryPolicy(new AppProperties.Retry().setInlineAttempts(0)),
+            Schedulers.parallel(),
+            PipelineMetrics.NOOP
+        );
+    }
+
+    private static List<ShopwareAPI.BatchResult> successes(List<Integer> orderIds) {
+        return orderIds.stream()
+            .map(id -> new ShopwareAPI.BatchResult(true, null))
+            .collect(Collectors.toList());
+    }
+
+    @Test
+    void testOrdersAreMarkedInBatches() {
+        when(api.markOrdersAsExported(anyList()))
+            .thenAnswer(invocation -> Mono.just(successes(invocation.getArgument(0))));
+
+        OrderExportMarker marker = createMarker(2);
+
+        StepVerifier.create(Flux.range(1, 5).flatMap(marker::markAsExported))
+            .verifyComplete();
+
+        verify(api).markOrdersAsExported(List.of(1, 2));
+        verify(api).markOrdersAsExported(List.of(3, 4));
+        verify(api).markOrdersAsExported(List.of(5));
+    }
+
+    @Test
+    void testEveryOrderGetsItsOwnResult() {
+        when(api.markOrdersAsExported(List.of(1, 2))).thenReturn(Mono.just(List.of(
+            new ShopwareAPI.BatchResult(true, null),
+            new ShopwareAPI.BatchResult(false, "Order by id 2 not found")
+        )));
+
+        OrderExportMarker marker = createMarker(2);
+        Mono<Void> first = marker.markAsExported(1).cache();
+        Mono<Void> second = marker.markAsExported(2).cache();
+        first.subscribe(v -> {}, e -> {});
+        second.subscribe(v -> {}, e -> {});
+
+        StepVerifier.create(first).verifyComplete();
+        StepVerifier.create(second)
+            .expectError(OrderExportMarker.MarkFailedException.class)
+            .verify();
+    }
+
+    @Test
+    void testFailedBatchFailsEveryOrder() {
+        WebClientResponseException error = WebClientResponseException.create(400, "Bad Request",
+            HttpHeaders.EMPTY, new byte[0], StandardCharsets.UTF_8);
+        when(api.markOrdersAsExported(anyList())).thenReturn(Mono.error(error));
+
+        OrderExportMarker marker = createMarker(3);
+
+        StepVerifier.create(Flux.range(1, 3)
+                .flatMap(id -> marker.markAsExported(id)
+                    .thenReturn(false)
+                    .onErrorReturn(WebClientResponseException.BadRequest.class, true)))
+            .expectNext(true, true, true)
+            .verifyComplete();
+
+        verify(api, times(1)).markOrdersAsExported(List.of(1, 2, 3));
+    }
+
+    @Test
+    void testBatchesSlowerThanTheWindow() {
+        when(api.markOrdersAsExported(anyList()))
+            .thenAnswer(invocation -> Mono.delay(Duration.ofMillis(100))
+                .thenReturn(successes(invocation.getArgument(0))));
+
+        OrderExportMarker marker = new OrderExportMarker(
+            api,
+            new ShopwareProperties.ExportBatch().setSize(2).setWindow(Duration.ofMillis(10)).setConcurrency(1),
+            new RetryPolicy(new AppProperties.Retry().setInlineAttempts(0)),
+            Schedulers.parallel(),
+            PipelineMetrics.NOOP
+        );
+
+        // every window closes a batch of one while the previous batch is still marked
+        StepVerifier.create(Flux.interval(Duration.ofMillis(30))
+                .take(8)
+                .flatMap(id -> marker.markAsExported(id.intValue())))
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+
+        assertEquals(8, marker.getMarkedCount());
+    }
+
+    @Test
+    void testBatchThatThrowsOnlyFailsItsOrders() {
+        when(api.markOrdersAsExported(anyList()))
+            .thenThrow(new IllegalStateException("no connection"))
+            .thenAnswer(invocation -> Mono.just(successes(invocation.getArgument(0))));
+
+        OrderExportMarker marker = createMarker(2);
+
+        StepVerifier.create(Flux.range(1, 2).flatMap(marker::markAsExported))
+            .expectError(IllegalStateException.class)
+            .verify(Duration.ofSeconds(5));
+        StepVerifier.create(marker.markAsExported(3))
+            .expectComplete()
+            .verify(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,107 @@
+package com.n2305.swmb.shopware;
+
+import com.n2305.swmb.properties.ShopwareProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderPublisherTest {
+    ShopwareAPI api;
+    ShopwareProperties swProps;
+    CountingScheduler scheduler;
+
+    @BeforeEach
+    void beforeEach() {
+        api = mock(ShopwareAPI.class);
+        scheduler = new CountingScheduler();
+        swProps = new ShopwareProperties()
+            .setExportedAttribute("mbExport")
+            .setIntervals(new ShopwareProperties.Intervals()
+                .setOnEmptyList(Duration.ofMinutes(5))
+                .setResetLastFetchedOrderTime(Duration.ofHours(8)));
+    }
+
+    private Disposable subscribe(List<OrderListItem> received, long initialRequest) {
+        return Flux.create(new OrderPublisher(api, swProps, null, List.of(), scheduler))
+            .subscribeWith(new BaseSubscriber<OrderListItem>() {
+                @Override
+                protected void hookOnSubscribe(Subscription subscription) {
+                    request(initialRequest);
+                }
+
+                @Override
+                protected void hookOnNext(OrderListItem value) {
+                    received.add(value);
+                }
+            });
+    }
+
+    @Test
+    void testIdleWaitIsTheOnlyTimer() {
+        when(api.fetchOrders(any())).thenReturn(Mono.just(List.of()));
+
+        Disposable disposable = subscribe(new LinkedList<>(), Long.MAX_VALUE);
+        scheduler.advanceTimeBy(Duration.ofHours(1));
+        disposable.dispose();
+
+        // one fetch on subscribe and one after every idle wait of 5 minutes
+        verify(api, times(13)).fetchOrders(any());
+        assertEquals(13, scheduler.getScheduledTasks());
+    }
+
+    @Test
+    void testNoWakeupsWhileDownstreamIsBlocked() {
+        List<OrderListItem> fullPage = IntStream.range(0, swProps.getPaging().getOrderPageSize())
+            .mapToObj(id -> new OrderListItem(id, String.valueOf(id), OffsetDateTime.now()))
+            .collect(Collectors.toList());
+        when(api.fetchOrders(any())).thenReturn(Mono.just(fullPage));
+
+        List<OrderListItem> received = new LinkedList<>();
+        Disposable disposable = subscribe(received, 1);
+        scheduler.advanceTimeBy(Duration.ofHours(1));
+        disposable.dispose();
+
+        // the former 1ms check interval woke up 3.6 million times in this hour
+        assertEquals(1, received.size());
+        verify(api, times(1)).fetchOrders(any());
+        assertEquals(0, scheduler.getScheduledTasks());
+    }
+
+    @Test
+    void testRangeOfOrdersCompletesOnceCaughtUp() {
+        when(api.fetchOrders(any())).thenReturn(Mono.just(List.of(
+            new OrderListItem(10, "10", OffsetDateTime.now()),
+            new OrderListItem(11, "11", OffsetDateTime.now())
+        )));
+
+        OrderPublisher orderPublisher = new OrderPublisher(api, swProps, null, List.of(
+            new ShopwareAPI.Filter("id", "10", ">="),
+            new ShopwareAPI.Filter("id", "20", "<")
+        ), scheduler);
+        List<OrderListItem> received = Flux.create(orderPublisher)
+            .collectList()
+            .block(Duration.ofSeconds(5));
+
+        assertEquals(2, received.size());
+        verify(api, times(1)).fetchOrders(any());
+        assertEquals(0, scheduler.getScheduledTasks());
+    }
+}
@@ -0,0 +1,138 @@
+package com.n2305.swmb.shopware;
+
+import com.n2305.swmb.metrics.PipelineMetrics;
+import com.n2305.swmb.properties.AppProperties;
+import com.n2305.swmb.properties.ShopwareProperties;
+import com.n2305.swmb.state.StateStore;
+import com.n2305.swmb.utils.RetryPolicy;
+import org.apache.commons.validator.routines.EmailValidator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderStreamFactoryTest {
+    @TempDir
+    Path stateFolder;
+
+    ShopwareAPI api;
+    ShopwareProperties swProps;
+    AtomicInteger inFlight;
+    AtomicInteger maxInFlight;
+
+    @BeforeEach
+    void beforeEach() {
+        swProps = new ShopwareProperties()
+            .setExportedAttribute("mbExport")
+            .setIntervals(new ShopwareProperties.Intervals()
+                .setOnEmptyList(Duration.ofMinutes(5))
+                .setResetLastFetchedOrderTime(Duration.ofHours(8)));
+
+        inFlight = new AtomicInteger();
+        maxInFlight = new AtomicInteger();
+
+        List<OrderListItem> orderListItems = IntStream.range(1, 21)
+            .mapToObj(id -> new OrderListItem(id, String.valueOf(id), OffsetDateTime.now().plusSeconds(id)))
+            .collect(Collectors.toList());
+
+        api = mock(ShopwareAPI.class);
+        when(api.fetchOrders(any())).thenReturn(Mono.just(orderListItems), Mono.just(List.of()));
+        when(api.fetchOrder(anyInt())).thenAnswer(invocation -> fetchOrder(invocation.getArgument(0)));
+    }
+
+    private Mono<SWOrder> fetchOrder(int id) {
+        return Mono.fromCallable(() -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+
+                return new SWOrder.Builder()
+                    .withId(id)
+                    .withCustomer(new SWOrder.Customer(id, null, "customer" + id + "@example.com", null, null))
+                    .build();
+            })
+            .delayElement(Duration.ofMillis(ThreadLocalRandom.current().nextInt(5, 30)))
+            .doFinally(signalType -> inFlight.decrementAndGet());
+    }
+
+    private List<Integer> fetchOrderIds() throws IOException {
+        OrderStreamFactory factory = new OrderStreamFactory(
+            api, swProps, EmailValidator.getInstance(), new StateStore(stateFolder, Duration.ofSeconds(1)),
+            new RetryPolicy(new AppProperties.Retry()), PipelineMetrics.NOOP, List.of());
+
+        return factory.create()
+            .take(20)
+            .map(SWOrder::getId)
+            .collectList()
+            .block(Duration.ofSeconds(10));
+    }
+
+    @Test
+    void testDetailFetchConcurrencyIsBounded() throws IOException {
+        swProps.setDetailFetch(new ShopwareProperties.DetailFetch().setConcurrency(3).setOrdered(false));
+
+        List<Integer> ids = fetchOrderIds();
+
+        assertEquals(20, ids.size());
+        assertTrue(maxInFlight.get() <= 3, "max in flight " + maxInFlight.get());
+    }
+
+    @Test
+    void testOrderedEmission() throws IOException {
+        swProps.setDetailFetch(new ShopwareProperties.DetailFetch().setConcurrency(4).setOrdered(true));
+
+        List<Integer> ids = fetchOrderIds();
+
+        assertEquals(IntStream.range(1, 21).boxed().collect(Collectors.toList()), ids);
+        assertTrue(maxInFlight.get() <= 4, "max in flight " + maxInFlight.get());
+    }
+
+    @Test
+    void testBulkDetailFetchFallsBackToSingleFetch() throws IOException {
+        swProps.setDetailFetch(new ShopwareProperties.DetailFetch()
+            .setMode(ShopwareProperties.DetailFetch.Mode.BULK)
+            .setBulkSize(8));
+
+        // every fifth order comes back without its associations
+        when(api.fetchOrdersById(anyList())).thenAnswer(invocation -> Flux
+            .fromIterable(invocation.<List<Integer>>getArgument(0))
+            .map(id -> id % 5 == 0 ? new SWOrder.Builder().withId(id).build() : completeOrder(id)));
+
+        List<Integer> ids = fetchOrderIds();
+
+        assertEquals(IntStream.range(1, 21).boxed().collect(Collectors.toList()), ids);
+        verify(api, times(3)).fetchOrdersById(anyList());
+        verify(api, times(4)).fetchOrder(anyInt());
+    }
+
+    private static SWOrder completeOrder(int id) {
+        SWOrder.Address address = new SWOrder.Address("12345", "Berlin", new SWOrder.Address.Country("DE"));
+
+        return new SWOrder.Builder()
+            .withId(id)
+            .withCustomer(new SWOrder.Customer(id, null, "customer" + id + "@example.com", null, null))
+            .withDetails(List.of(new SWOrder.Article("10001", "Coke BIO", 9.9, 2)))
+            .withBilling(address)
+            .withShipping(address)
+            .build();
+    }
+}
@@ -0,0 +1,152 @@
+package com.n2305.swmb.shopware;
+
+import com.n2305.swmb.properties.ShopwareProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PagingPublisherTest {
+    ShopwareProperties swProps;
+
+    @BeforeEach
+    void beforeEach() {
+        swProps = new ShopwareProperties()
+            .setIntervals(new ShopwareProperties.Intervals()
+                .setOnEmptyList(Duration.ofMinutes(5)))
+            .setPaging(new ShopwareProperties.Paging()
+                .setLowWatermark(5)
+                .setHighWatermark(20));
+    }
+
+    private static Disposable subscribe(RangePublisher publisher, List<Integer> received, long initialRequest) {
+        return Flux.create(publisher)
+            .subscribeWith(new BaseSubscriber<Integer>() {
+                @Override
+                protected void hookOnSubscribe(Subscription subscription) {
+                    request(initialRequest);
+                }
+
+                @Override
+                protected void hookOnNext(Integer value) {
+                    received.add(value);
+                }
+            });
+    }
+
+    @Test
+    void testNoFetchAboveLowWatermark() {
+        RangePublisher publisher = new RangePublisher(swProps, 10, 100, VirtualTimeScheduler.create());
+
+        Disposable disposable = subscribe(publisher, new LinkedList<>(), 4);
+        disposable.dispose();
+
+        assertEquals(1, publisher.fetches.get());
+    }
+
+    @Test
+    void testNextPageIsFetchedAtLowWatermark() {
+        RangePublisher publisher = new RangePublisher(swProps, 10, 100, VirtualTimeScheduler.create());
+        List<Integer> received = new LinkedList<>();
+
+        Disposable disposable = subscribe(publisher, received, 5);
+        disposable.dispose();
+
+        // the second page is already queued while five items of the first one are left
+        assertEquals(IntStream.range(0, 5).boxed().collect(Collectors.toList()), received);
+        assertEquals(2, publisher.fetches.get());
+    }
+
+    @Test
+    void testHighWatermarkBoundsTheQueue() {
+        swProps.getPaging().setLowWatermark(15);
+        RangePublisher publisher = new RangePublisher(swProps, 10, 100, VirtualTimeScheduler.create());
+
+        Disposable disposable = subscribe(publisher, new LinkedList<>(), 1);
+        disposable.dispose();
+
+        // 9 queued items plus a page of 10 fit below 20, another page wouldn't
+        assertEquals(2, publisher.fetches.get());
+    }
+
+    @Test
+    void testFetchesNeverOverlapAndFollowTheCursor() {
+        RangePublisher publisher = new RangePublisher(swProps, 10, 100, Schedulers.parallel())
+            .withLatency(Duration.ofMillis(20));
+
+        List<Integer> items = Flux.create(publisher)
+            .limitRate(3)
+            .delayElements(Duration.ofMillis(1))
+            .take(100)
+            .collectList()
+            .block(Duration.ofSeconds(10));
+
+        assertEquals(IntStream.range(0, 100).boxed().collect(Collectors.toList()), items);
+        assertEquals(1, publisher.maxInFlight.get());
+    }
+
+    /**
+     * Pages through the numbers from 0 to total, the cursor is the next number to fetch.
+     */
+    static class RangePublisher extends PagingPublisher<Integer> {
+        private final int pageSize;
+        private final int total;
+        private final AtomicInteger fetches = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        private volatile int cursor;
+        private Duration latency = Duration.ZERO;
+
+        RangePublisher(ShopwareProperties swProps, int pageSize, int total, Scheduler scheduler) {
+            super(swProps, pageSize, scheduler);
+
+            this.pageSize = pageSize;
+            this.total = total;
+        }
+
+        RangePublisher withLatency(Duration latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        @Override
+        protected Mono<List<Integer>> fetchPage() {
+            int from = cursor;
+            fetches.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+
+            Mono<List<Integer>> page = Mono.fromCallable(() -> IntStream.range(from, Math.min(from + pageSize, total))
+                .boxed()
+                .collect(Collectors.toList()));
+
+            if (!latency.isZero()) {
+                long jitter = ThreadLocalRandom.current().nextLong(latency.toMillis());
+                page = page.delayElement(latency.plusMillis(jitter));
+            }
+
+            return page.doOnSuccess(p -> inFlight.decrementAndGet());
+        }
+
+        @Override
+        protected void advanceCursor(Integer item) {
+            cursor = Math.max(cursor, item + 1);
+        }
+    }
+}
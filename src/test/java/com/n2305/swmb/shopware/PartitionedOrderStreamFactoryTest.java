@@ -0,0 +1,164 @@
+package com.n2305.swmb.shopware;
+
+import com.n2305.swmb.metrics.PipelineMetrics;
+import com.n2305.swmb.properties.AppProperties;
+import com.n2305.swmb.properties.ShopwareProperties;
+import com.n2305.swmb.state.FilePartitionCoordinator;
+import com.n2305.swmb.state.PartitionCoordinator;
+import com.n2305.swmb.utils.RetryPolicy;
+import org.apache.commons.validator.routines.EmailValidator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PartitionedOrderStreamFactoryTest {
+    private static final Duration LEASE_DURATION = Duration.ofMinutes(2);
+    private static final Instant NOW = Instant.parse("2020-05-01T12:00:00Z");
+    private static final OffsetDateTime ORDER_TIME = OffsetDateTime.parse("2020-04-01T12:00:00+02:00");
+
+    @TempDir
+    Path folder;
+
+    private ShopwareAPI api;
+    private AppProperties.Backfill backfillProps;
+
+    @BeforeEach
+    void setUp() {
+        backfillProps = new AppProperties.Backfill()
+            .setPartitionSize(10)
+            .setLeaseDuration(LEASE_DURATION)
+            .setHeartbeatInterval(Duration.ofMillis(50));
+
+        api = mock(ShopwareAPI.class);
+        when(api.fetchMaxOrderId()).thenReturn(Mono.just(19));
+        when(api.fetchOrders(any())).thenAnswer(invocation -> Mono.just(listOrders(invocation.getArgument(0))));
+        when(api.fetchOrder(anyInt())).thenAnswer(invocation -> Mono.just(new SWOrder.Builder()
+            .withId(invocation.getArgument(0))
+            .withCustomer(new SWOrder.Customer(1, null, "customer@example.com", null, null))
+            .build()));
+    }
+
+    /**
+     * The orders 1 to 19 within the id filters of a partition, after the cursor if there is one.
+     */
+    private static List<OrderListItem> listOrders(List<ShopwareAPI.Filter> filters) {
+        int from = filter(filters, ">=", 0);
+        int to = filter(filters, "<", 20);
+        int after = filter(filters, ">", 0);
+
+        return IntStream.range(Math.max(Math.max(from, after + 1), 1), to)
+            .mapToObj(PartitionedOrderStreamFactoryTest::order)
+            .collect(Collectors.toList());
+    }
+
+    private static int filter(List<ShopwareAPI.Filter> filters, String expression, int defaultValue) {
+        return filters.stream()
+            .filter(filter -> "id".equals(filter.getProperty()) && expression.equals(filter.getExpression()))
+            .map(filter -> Integer.parseInt(filter.getValue()))
+            .findFirst()
+            .orElse(defaultValue);
+    }
+
+    private static OrderListItem order(int id) {
+        return new OrderListItem(id, String.valueOf(id), ORDER_TIME);
+    }
+
+    private FilePartitionCoordinator node(String nodeId, Instant now) {
+        return new FilePartitionCoordinator(folder, nodeId, LEASE_DURATION, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private List<Integer> backfill(PartitionCoordinator coordinator) {
+        PartitionedOrderStreamFactory factory = new PartitionedOrderStreamFactory(
+            api,
+            new ShopwareProperties().setExportedAttribute("mbExport"),
+            EmailValidator.getInstance(),
+            new RetryPolicy(new AppProperties.Retry()),
+            PipelineMetrics.NOOP,
+            coordinator,
+            backfillProps
+        );
+
+        return factory.create()
+            .doOnNext(factory::acknowledge)
+            .map(SWOrder::getId)
+            .sort()
+            .collectList()
+            .block(Duration.ofSeconds(10));
+    }
+
+    private static List<Integer> ids(int from, int to) {
+        return IntStream.range(from, to).boxed().collect(Collectors.toList());
+    }
+
+    @Test
+    void testPartitionsAreCompletedAndTheStreamFinishes() throws IOException {
+        assertEquals(ids(1, 20), backfill(node("a", NOW)));
+
+        FilePartitionCoordinator b = node("b", NOW);
+        b.plan(new PartitionCoordinator.Plan(5, 10));
+        assertTrue(b.isFinished());
+    }
+
+    @Test
+    void testExpiredPartitionIsTakenOverAtItsCheckpoint() throws IOException {
+        FilePartitionCoordinator a = node("a", NOW);
+        a.plan(new PartitionCoordinator.Plan(2, 10));
+        PartitionCoordinator.Lease lease = a.claim().orElseThrow();
+        a.checkpoint(lease, OrderCursor.of(order(4)).toString());
+        a.heartbeat();
+
+        // the first node died, the second one continues after its checkpoint
+        assertEquals(ids(5, 20), backfill(node("b", NOW.plus(LEASE_DURATION))));
+    }
+
+    @Test
+    void testLostPartitionIsNoLongerListed() throws Exception {
+        CountDownLatch listing = new CountDownLatch(1);
+        when(api.fetchOrders(any())).thenAnswer(invocation -> {
+            List<ShopwareAPI.Filter> filters = invocation.getArgument(0);
+            if (filter(filters, ">=", 0) > 0)
+                return Mono.just(listOrders(filters));
+
+            // the first partition hangs until the node notices it lost it
+            listing.countDown();
+            return Mono.never();
+        });
+
+        Thread takeover = new Thread(() -> {
+            try {
+                listing.await(10, TimeUnit.SECONDS);
+
+                FilePartitionCoordinator b = node("b", NOW.plus(LEASE_DURATION));
+                b.plan(new PartitionCoordinator.Plan(2, 10));
+                b.complete(b.claim().orElseThrow());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        takeover.start();
+
+        assertEquals(ids(10, 20), backfill(node("a", NOW)));
+        takeover.join();
+    }
+}
@@ -0,0 +1,48 @@
+package com.n2305.swmb.shopware;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.n2305.swmb.BlockHoundSupport;
+import com.n2305.swmb.ObjectMapperFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import reactor.blockhound.BlockingOperationError;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.net.InetAddress;
+
+@Tag("blockhound")
+class SWOrderBlockingTest {
+    @BeforeAll
+    static void installBlockHound() {
+        BlockHoundSupport.install();
+    }
+
+    @Test
+    void testHostNameLookupIsDetected() {
+        try {
+            StepVerifier.create(Mono.fromCallable(() -> InetAddress.getByName("shop.example.com"))
+                    .subscribeOn(Schedulers.parallel()))
+                .expectError(BlockingOperationError.class)
+                .verify();
+        } finally {
+            BlockHoundSupport.clearBlockingCalls();
+        }
+    }
+
+    @ParameterizedTest(name = "remote address {0}")
+    @ValueSource(strings = {"23.5.23.5", "2a02:810b:c940:1409:eda9:::", "::ffff:23.5.23.5", "shop.example.com", "not an address"})
+    void testDeserializationDoesNotBlock(String remoteAddress) {
+        ObjectReader objectReader = new ObjectMapperFactory().get().readerFor(SWOrder.class);
+        String json = "{\"id\":2,\"number\":\"20001\",\"remoteAddress\":\"" + remoteAddress + "\"}";
+
+        StepVerifier.create(Mono.fromCallable(() -> objectReader.<SWOrder>readValue(json))
+                .subscribeOn(Schedulers.parallel()))
+            .expectNextMatches(order -> order.getId() == 2)
+            .verifyComplete();
+    }
+}
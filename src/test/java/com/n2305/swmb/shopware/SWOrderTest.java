@@ -23,6 +23,14 @@ class SWOrderTest {
             arguments(
                 "23.5.23.5",
                 "23.5.23.5"
+            ),
+            arguments(
+                "::ffff:23.5.23.5",
+                "23.5.23.5"
+            ),
+            arguments(
+                "shop.example.com",
+                null
             )
         );
     }
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.matching.RequestPatternBuilder;
 import com.n2305.swmb.ObjectMapperFactory;
+import com.n2305.swmb.metrics.PipelineMetrics;
 import com.n2305.swmb.properties.ShopwareProperties;
 import okhttp3.mockwebserver.MockWebServer;
 import org.junit.jupiter.api.AfterEach;
@@ -36,6 +37,8 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.in;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -73,7 +76,8 @@ class ShopwareAPITest {
             new FilterQueryParamSerializer(),
             objectMapper,
             swProps,
-            clock
+            clock,
+            PipelineMetrics.NOOP
         );
     }
 
@@ -137,6 +141,11 @@ class ShopwareAPITest {
         expectedQueryParams.put("filter[1][property]", "newsletter");
         expectedQueryParams.put("filter[1][value]", "1");
         expectedQueryParams.put("filter[1][expression]", "=");
+        expectedQueryParams.put("sort[0][property]", "orderTime");
+        expectedQueryParams.put("sort[0][direction]", "ASC");
+        expectedQueryParams.put("sort[1][property]", "id");
+        expectedQueryParams.put("sort[1][direction]", "ASC");
+        expectedQueryParams.put("limit", String.valueOf(swProps.getPaging().getOrderPageSize()));
 
         RequestPatternBuilder reqPatternBuilder = getRequestedFor(urlPathMatching("/api/orders"));
         addQueryParams(reqPatternBuilder, expectedQueryParams);
@@ -156,6 +165,54 @@ class ShopwareAPITest {
         assertEquals(2, order.getId());
     }
 
+    @Test
+    void testFetchOrdersById() throws IOException {
+        wireMockServer.stubFor(get(urlPathEqualTo("/api/orders"))
+            .willReturn(okJson(stringFromResource("order.json"))));
+
+        List<SWOrder> orders = api.fetchOrdersById(List.of(2, 3)).collectList().block();
+
+        Map<String, String> expectedQueryParams = new LinkedHashMap<>();
+        expectedQueryParams.put("filter[0][property]", "id");
+        expectedQueryParams.put("filter[0][value][0]", "2");
+        expectedQueryParams.put("filter[0][value][1]", "3");
+        expectedQueryParams.put("filter[0][expression]", "IN");
+        expectedQueryParams.put("limit", "2");
+
+        RequestPatternBuilder reqPatternBuilder = getRequestedFor(urlPathEqualTo("/api/orders"));
+        addQueryParams(reqPatternBuilder, expectedQueryParams);
+
+        wireMockServer.verify(1, reqPatternBuilder);
+
+        assertEquals(1, orders.size());
+        assertTrue(orders.get(0).isComplete());
+        assertEquals(OffsetDateTime.now(clock), orders.get(0).getFetchTime());
+    }
+
+    @Test
+    void testFetchOrderBacklog() {
+        wireMockServer.stubFor(get(urlPathEqualTo("/api/orders"))
+            .willReturn(okJson("{\"data\":[{\"id\":2,\"number\":\"20001\","
+                + "\"orderTime\":\"2019-04-04T09:51:27+0200\"}],\"total\":16609,\"success\":true}")));
+
+        ShopwareAPI.OrderBacklog backlog = api.fetchOrderBacklog().block();
+
+        Map<String, String> expectedQueryParams = new LinkedHashMap<>();
+        expectedQueryParams.put("filter[0][property]", "attribute.mbExport");
+        expectedQueryParams.put("sort[0][property]", "orderTime");
+        expectedQueryParams.put("sort[0][direction]", "ASC");
+        expectedQueryParams.put("limit", "1");
+
+        RequestPatternBuilder reqPatternBuilder = getRequestedFor(urlPathEqualTo("/api/orders"));
+        addQueryParams(reqPatternBuilder, expectedQueryParams);
+
+        wireMockServer.verify(1, reqPatternBuilder);
+
+        assertEquals(16609, backlog.getTotal());
+        assertEquals(OffsetDateTime.parse("2019-04-04T09:51:27+02:00").toInstant(),
+            backlog.getOldestOrderTime().toInstant());
+    }
+
     @Test
     void testMarkOrderAsExported() throws InterruptedException, JsonProcessingException {
         wireMockServer.stubFor(put(urlPathMatching("/api/orders/23"))
@@ -173,6 +230,28 @@ class ShopwareAPITest {
             )));
     }
 
+    @Test
+    void testMarkOrdersAsExported() {
+        wireMockServer.stubFor(put(urlPathEqualTo("/api/orders"))
+            .willReturn(okJson("{\"success\":true,\"data\":["
+                + "{\"success\":true,\"operation\":\"update\",\"data\":{\"id\":23}},"
+                + "{\"success\":false,\"message\":\"Order by id 24 not found\",\"data\":{\"id\":24}}"
+                + "]}")));
+
+        List<ShopwareAPI.BatchResult> results = api.markOrdersAsExported(List.of(23, 24)).block();
+
+        String exportedAt = DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(OffsetDateTime.now(clock));
+        wireMockServer.verify(1, putRequestedFor(urlPathEqualTo("/api/orders"))
+            .withRequestBody(matchingJsonPath("$[0].id", equalTo("23")))
+            .withRequestBody(matchingJsonPath("$[1].id", equalTo("24")))
+            .withRequestBody(matchingJsonPath("$[1].attribute." + swProps.getExportedAttribute(), equalTo(exportedAt))));
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("Order by id 24 not found", results.get(1).getMessage());
+    }
+
     private String stringFromResource(String path) throws IOException {
         return new String(getClass().getResourceAsStream(path).readAllBytes());
     }
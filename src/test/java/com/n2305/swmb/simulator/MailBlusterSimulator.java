@@ -0,0 +1,144 @@
+package com.n2305.swmb.simulator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the mailbluster api that accepts every order and lead, optionally delayed and
+ * limited to a quota of requests per minute. Requests over the quota are answered with a 429
+ * and the rate limit headers mailbluster sends. The acceptance time of every order is recorded
+ * by order number.
+ */
+public class MailBlusterSimulator extends Dispatcher {
+    private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CountDownLatch orders;
+    private final CountDownLatch leads;
+    private final Map<String, Instant> acceptedOrders = new ConcurrentHashMap<>();
+    private final AtomicLong throttled = new AtomicLong();
+
+    private Duration latency = Duration.ZERO;
+    private int requestsPerMinute;
+    private long windowStart;
+    private int windowRequests;
+
+    public MailBlusterSimulator(int expectedOrders, int expectedLeads) {
+        this.orders = new CountDownLatch(expectedOrders);
+        this.leads = new CountDownLatch(expectedLeads);
+    }
+
+    public MailBlusterSimulator setLatency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * 0 accepts every request.
+     */
+    public MailBlusterSimulator setRequestsPerMinute(int requestsPerMinute) {
+        this.requestsPerMinute = requestsPerMinute;
+        return this;
+    }
+
+    public CountDownLatch getOrders() {
+        return orders;
+    }
+
+    public CountDownLatch getLeads() {
+        return leads;
+    }
+
+    public Map<String, Instant> getAcceptedOrders() {
+        return Map.copyOf(acceptedOrders);
+    }
+
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+        if (!"POST".equals(request.getMethod()))
+            return new MockResponse().setResponseCode(404);
+
+        String path = request.getRequestUrl().encodedPath();
+        if (!path.equals("/api/orders") && !path.equals("/api/leads"))
+            return new MockResponse().setResponseCode(404);
+
+        MockResponse quota = checkQuota();
+        if (quota != null) {
+            throttled.incrementAndGet();
+
+            return delayed(quota);
+        }
+
+        if (path.equals("/api/orders")) {
+            // redelivered orders only count once
+            if (recordOrder(request))
+                orders.countDown();
+        } else {
+            leads.countDown();
+        }
+
+        return delayed(new MockResponse()
+            .setResponseCode(201)
+            .setHeader("Content-Type", "application/json")
+            .setBody("{\"message\":\"created\"}"));
+    }
+
+    private boolean recordOrder(RecordedRequest request) {
+        try {
+            String number = objectMapper.readTree(request.getBody().readUtf8()).path("id").asText();
+
+            return acceptedOrders.putIfAbsent(number, Instant.now()) == null;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unreadable order request", e);
+        }
+    }
+
+    /**
+     * Returns the throttled response if the request exceeds the quota of the current window.
+     */
+    private synchronized MockResponse checkQuota() {
+        if (requestsPerMinute <= 0)
+            return null;
+
+        long now = System.currentTimeMillis();
+        if (now - windowStart >= WINDOW_MILLIS) {
+            windowStart = now;
+            windowRequests = 0;
+        }
+
+        long resetSeconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(windowStart + WINDOW_MILLIS - now));
+        if (windowRequests >= requestsPerMinute) {
+            return new MockResponse()
+                .setResponseCode(429)
+                .setHeader("Retry-After", resetSeconds)
+                .setHeader("X-RateLimit-Limit", requestsPerMinute)
+                .setHeader("X-RateLimit-Remaining", 0)
+                .setHeader("X-RateLimit-Reset", resetSeconds);
+        }
+
+        windowRequests++;
+
+        return null;
+    }
+
+    private MockResponse delayed(MockResponse response) {
+        return latency.isZero()
+            ? response
+            : response.setHeadersDelay(latency.toMillis(), TimeUnit.MILLISECONDS);
+    }
+}
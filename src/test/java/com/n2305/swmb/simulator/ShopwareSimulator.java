@@ -0,0 +1,299 @@
+package com.n2305.swmb.simulator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.n2305.swmb.ObjectMapperFactory;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for the shopware 5 rest api with a fixed number of orders and customers. Orders that
+ * were marked as exported drop out of the order list, both lists honour the id cursor filter.
+ *
+ * Orders either all exist from the start or arrive one after the other at the configured rate,
+ * with the arrival as order time. Every response can be delayed and fail with a 503 at random.
+ */
+public class ShopwareSimulator extends Dispatcher {
+    private static final Pattern ORDER_PATH = Pattern.compile("/api/orders/(\\d+)");
+    private static final DateTimeFormatter ORDER_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
+
+    private final ObjectMapper objectMapper = new ObjectMapperFactory().get();
+    private final int orderCount;
+    private final int customerCount;
+    private final Set<Integer> exportedOrders = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch allExported;
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    private Instant start = Instant.now();
+    private double ordersPerSecond;
+    private Duration latency = Duration.ZERO;
+    private double errorRate;
+
+    public ShopwareSimulator(int orderCount, int customerCount) {
+        this.orderCount = orderCount;
+        this.customerCount = customerCount;
+        this.allExported = new CountDownLatch(orderCount);
+    }
+
+    /**
+     * Orders arrive at this rate from the start on, 0 lets all of them exist right away.
+     */
+    public ShopwareSimulator setOrdersPerSecond(double ordersPerSecond) {
+        this.ordersPerSecond = ordersPerSecond;
+        return this;
+    }
+
+    public ShopwareSimulator setStart(Instant start) {
+        this.start = start;
+        return this;
+    }
+
+    public ShopwareSimulator setLatency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    public ShopwareSimulator setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    public CountDownLatch getAllExported() {
+        return allExported;
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public static String orderNumber(int id) {
+        return String.valueOf(20000 + id);
+    }
+
+    /**
+     * The moment the order appeared in the list, the order time is this truncated to seconds.
+     */
+    public Instant getArrival(int id) {
+        return ordersPerSecond <= 0
+            ? start
+            : start.plusNanos((long) ((id - 1) / ordersPerSecond * 1_000_000_000L));
+    }
+
+    private String orderTime(int id) {
+        return ORDER_TIME_FORMAT.format(getArrival(id).atOffset(ZoneOffset.UTC));
+    }
+
+    private boolean hasArrived(int id) {
+        return !getArrival(id).isAfter(Instant.now());
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            injectedErrors.incrementAndGet();
+
+            return delayed(new MockResponse().setResponseCode(503));
+        }
+
+        return delayed(respond(request));
+    }
+
+    private MockResponse delayed(MockResponse response) {
+        return latency.isZero()
+            ? response
+            : response.setHeadersDelay(latency.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private MockResponse respond(RecordedRequest request) {
+        HttpUrl url = request.getRequestUrl();
+        String path = url.encodedPath();
+        boolean get = "GET".equals(request.getMethod());
+        boolean put = "PUT".equals(request.getMethod());
+
+        try {
+            if (get && path.equals("/api/orders"))
+                return json(listOrders(url));
+            if (put && path.equals("/api/orders"))
+                return json(markExported(objectMapper.readTree(request.getBody().readUtf8())));
+            if (get && path.equals("/api/customers"))
+                return json(listCustomers(url));
+
+            Matcher matcher = ORDER_PATH.matcher(path);
+            if (matcher.matches()) {
+                int id = Integer.parseInt(matcher.group(1));
+                if (get)
+                    return json(objectMapper.createObjectNode().put("success", true).set("data", order(id)));
+                if (put) {
+                    markExported(id);
+                    return json(objectMapper.createObjectNode().put("success", true));
+                }
+            }
+        } catch (IOException e) {
+            return new MockResponse().setResponseCode(400);
+        }
+
+        return new MockResponse().setResponseCode(404);
+    }
+
+    private ObjectNode listOrders(HttpUrl url) {
+        Set<Integer> requestedIds = new HashSet<>();
+        int minId = 1;
+
+        for (int i = 0; url.queryParameter(filterKey(i, "property")) != null; i++) {
+            String property = url.queryParameter(filterKey(i, "property"));
+            if ("id".equals(property) && "IN".equals(url.queryParameter(filterKey(i, "expression")))) {
+                for (int v = 0; url.queryParameter(filterKey(i, "value") + "[" + v + "]") != null; v++) {
+                    requestedIds.add(Integer.parseInt(url.queryParameter(filterKey(i, "value") + "[" + v + "]")));
+                }
+            } else if ("id".equals(property)) {
+                minId = Integer.parseInt(url.queryParameter(filterKey(i, "value"))) + 1;
+            }
+        }
+
+        int limit = limit(url);
+        int total = 0;
+        ArrayNode data = objectMapper.createArrayNode();
+        for (int id = minId; id <= orderCount && hasArrived(id); id++) {
+            boolean matches = requestedIds.isEmpty()
+                ? !exportedOrders.contains(id)
+                : requestedIds.contains(id);
+            if (!matches)
+                continue;
+
+            total++;
+            if (data.size() >= limit)
+                continue;
+
+            if (requestedIds.isEmpty()) {
+                data.addObject()
+                    .put("id", id)
+                    .put("number", orderNumber(id))
+                    .put("orderTime", orderTime(id));
+            } else {
+                data.add(order(id));
+            }
+        }
+
+        return page(data, total);
+    }
+
+    private ObjectNode listCustomers(HttpUrl url) {
+        int minId = 1;
+        for (int i = 0; url.queryParameter(filterKey(i, "property")) != null; i++) {
+            if ("id".equals(url.queryParameter(filterKey(i, "property"))))
+                minId = Integer.parseInt(url.queryParameter(filterKey(i, "value"))) + 1;
+        }
+
+        int limit = limit(url);
+        ArrayNode data = objectMapper.createArrayNode();
+        for (int id = minId; id <= customerCount && data.size() < limit; id++) {
+            data.addObject()
+                .put("id", id)
+                .put("email", "customer" + id + "@example.com")
+                .put("firstname", "Jane")
+                .put("lastname", "Doe")
+                .put("newsletter", true);
+        }
+
+        return page(data, customerCount - minId + 1);
+    }
+
+    private ObjectNode order(int id) {
+        ObjectNode order = objectMapper.createObjectNode()
+            .put("id", id)
+            .put("number", orderNumber(id))
+            .put("orderTime", orderTime(id))
+            .put("invoiceAmount", 23.7)
+            .put("invoiceShipping", 3.9)
+            .put("currency", "EUR")
+            .put("partnerId", "")
+            .put("referer", "")
+            .put("remoteAddress", id % 2 == 0 ? "78.94.0.0" : "shop.example.com");
+
+        order.putObject("customer")
+            .put("id", id)
+            .put("number", String.valueOf(id))
+            .put("email", "customer" + id + "@example.com")
+            .put("firstname", "Jane")
+            .put("lastname", "Doe");
+        order.putArray("details").addObject()
+            .put("articleNumber", "10001")
+            .put("articleName", "Coke BIO")
+            .put("price", 9.9)
+            .put("quantity", 2);
+
+        for (String address : new String[]{"billing", "shipping"}) {
+            order.putObject(address)
+                .put("zipCode", "12345")
+                .put("city", "Berlin")
+                .putObject("country").put("iso", "DE");
+        }
+
+        return order;
+    }
+
+    private ObjectNode markExported(JsonNode updates) {
+        ArrayNode results = objectMapper.createArrayNode();
+        updates.forEach(update -> {
+            markExported(update.path("id").asInt());
+            results.addObject()
+                .put("success", true)
+                .put("operation", "update")
+                .putObject("data").put("id", update.path("id").asInt());
+        });
+
+        ObjectNode response = objectMapper.createObjectNode().put("success", true);
+        response.set("data", results);
+
+        return response;
+    }
+
+    private void markExported(int id) {
+        if (exportedOrders.add(id))
+            allExported.countDown();
+    }
+
+    private ObjectNode page(ArrayNode data, int total) {
+        ObjectNode page = objectMapper.createObjectNode()
+            .put("total", Math.max(0, total))
+            .put("success", true);
+        page.set("data", data);
+
+        return page;
+    }
+
+    private static int limit(HttpUrl url) {
+        String limit = url.queryParameter("limit");
+
+        return limit == null ? 1000 : Integer.parseInt(limit);
+    }
+
+    private static String filterKey(int index, String key) {
+        return String.format("filter[%d][%s]", index, key);
+    }
+
+    private static MockResponse json(JsonNode body) {
+        return new MockResponse()
+            .setHeader("Content-Type", "application/json")
+            .setBody(body.toString());
+    }
+}
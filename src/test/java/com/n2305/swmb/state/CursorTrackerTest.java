@@ -0,0 +1,49 @@
+package com.n2305.swmb.state;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CursorTrackerTest {
+    @Test
+    void testCommitsOnlyAcknowledgedPrefix() {
+        List<Long> commits = new LinkedList<>();
+        CursorTracker<Long> tracker = new CursorTracker<>(0L, commits::add);
+
+        for (long id = 1; id <= 5; id++)
+            tracker.track(id);
+
+        tracker.acknowledge(2L);
+        tracker.acknowledge(3L);
+        assertEquals(Optional.of(0L), tracker.getCommitted());
+
+        tracker.acknowledge(1L);
+        assertEquals(Optional.of(3L), tracker.getCommitted());
+
+        tracker.acknowledge(5L);
+        assertEquals(Optional.of(3L), tracker.getCommitted());
+        assertEquals(2, tracker.getPendingCount());
+
+        tracker.acknowledge(4L);
+        assertEquals(Optional.of(5L), tracker.getCommitted());
+        assertEquals(List.of(3L, 5L), commits);
+    }
+
+    @Test
+    void testCommittedCursorNeverMovesBackwards() {
+        List<Long> commits = new LinkedList<>();
+        CursorTracker<Long> tracker = new CursorTracker<>(10L, commits::add);
+
+        tracker.track(4L);
+        tracker.acknowledge(4L);
+        tracker.acknowledge(11L);
+
+        assertEquals(Optional.of(10L), tracker.getCommitted());
+        assertEquals(List.of(), commits);
+        assertEquals(0, tracker.getPendingCount());
+    }
+}
@@ -0,0 +1,88 @@
+package com.n2305.swmb.state;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.n2305.swmb.ObjectMapperFactory;
+import com.n2305.swmb.mailbluster.MBLead;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeadLetterQueueTest {
+    @TempDir
+    Path folder;
+
+    ObjectMapper objectMapper = new ObjectMapperFactory().get();
+
+    private DeadLetterQueue createQueue() {
+        return new DeadLetterQueue(folder, objectMapper,
+            Clock.fixed(Instant.parse("2021-12-01T10:00:00Z"), ZoneOffset.UTC));
+    }
+
+    private Outbox openOutbox() throws IOException {
+        return new Outbox(new SegmentLog(folder.resolve("outbox"), 4096), objectMapper, Duration.ofSeconds(1),
+            VirtualTimeScheduler.create());
+    }
+
+    @Test
+    void testDeadLettersAreReplayedIntoTheOutbox() throws IOException {
+        Outbox outbox = openOutbox();
+        DeadLetterQueue queue = createQueue();
+
+        Outbox.Record<MBLead> record = outbox.append(new MBLead("Jane", "Doe", "jane@example.com", true), 42);
+        record.incrementAttempts();
+        queue.add(record, new IllegalStateException("rejected"));
+        outbox.acknowledge(record);
+
+        Path file = folder.resolve(DeadLetterQueue.FILE_NAME);
+        String line = Files.readString(file);
+        assertTrue(line.contains("\"kind\":\"LEAD\""), line);
+        assertTrue(line.contains("\"attempts\":1"), line);
+        assertTrue(line.contains("rejected"), line);
+
+        List<Outbox.Record<?>> replayed = queue.replayInto(outbox);
+        assertEquals(1, replayed.size());
+        assertEquals(Outbox.Kind.LEAD, replayed.get(0).getKind());
+        assertEquals(42, replayed.get(0).getReference());
+        assertEquals("jane@example.com", ((MBLead) replayed.get(0).getMessage()).getEmail());
+        assertFalse(Files.exists(file));
+
+        outbox.close();
+        assertEquals(1, openOutbox().takeRecovered().size());
+    }
+
+    @Test
+    void testUnreadableLinesStayInTheFile() throws IOException {
+        Outbox outbox = openOutbox();
+        DeadLetterQueue queue = createQueue();
+
+        Outbox.Record<MBLead> record = outbox.append(new MBLead("Jane", "Doe", "jane@example.com", true), 42);
+        queue.add(record, new IllegalStateException("rejected"));
+
+        Path file = folder.resolve(DeadLetterQueue.FILE_NAME);
+        Files.writeString(file, "{\"kind\":\"UNKNOWN\"}\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        assertEquals(1, queue.replayInto(outbox).size());
+        assertEquals(List.of("{\"kind\":\"UNKNOWN\"}"), Files.readAllLines(file));
+        assertTrue(queue.replayInto(outbox).isEmpty());
+    }
+
+    @Test
+    void testReplayWithoutDeadLetters() throws IOException {
+        assertTrue(createQueue().replayInto(openOutbox()).isEmpty());
+    }
+}
@@ -0,0 +1,42 @@
+package com.n2305.swmb.state;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FileNodeRegistryTest {
+    private static final Duration TIME_TO_LIVE = Duration.ofMinutes(2);
+    private static final Instant NOW = Instant.parse("2020-05-01T12:00:00Z");
+
+    @TempDir
+    Path folder;
+
+    private FileNodeRegistry node(String nodeId, Instant now) {
+        return new FileNodeRegistry(folder, nodeId, TIME_TO_LIVE, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    @Test
+    void testLiveNodesAreCounted() throws IOException {
+        assertEquals(1, node("sync", NOW).heartbeat());
+        assertEquals(2, node("backfill", NOW).heartbeat());
+        assertEquals(2, node("sync", NOW).heartbeat());
+    }
+
+    @Test
+    void testExpiredAndClosedNodesAreNotCounted() throws IOException {
+        node("a", NOW).heartbeat();
+        FileNodeRegistry b = node("b", NOW);
+        b.heartbeat();
+        b.close();
+
+        assertEquals(1, node("c", NOW.plus(TIME_TO_LIVE)).heartbeat());
+    }
+}
@@ -0,0 +1,145 @@
+package com.n2305.swmb.state;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FilePartitionCoordinatorTest {
+    private static final Duration LEASE_DURATION = Duration.ofMinutes(2);
+
+    @TempDir
+    Path folder;
+
+    private final MutableClock clock = new MutableClock();
+
+    private FilePartitionCoordinator node(String nodeId) throws IOException {
+        FilePartitionCoordinator coordinator = new FilePartitionCoordinator(folder, nodeId, LEASE_DURATION, clock);
+        coordinator.plan(new PartitionCoordinator.Plan(3, 100));
+
+        return coordinator;
+    }
+
+    @Test
+    void testTheFirstPlanIsSharedAndClaimsAreDisjoint() throws IOException {
+        FilePartitionCoordinator a = node("a");
+        FilePartitionCoordinator b = new FilePartitionCoordinator(folder, "b", LEASE_DURATION, clock);
+
+        PartitionCoordinator.Plan plan = b.plan(new PartitionCoordinator.Plan(5, 50));
+        assertEquals(3, plan.getPartitions());
+        assertEquals(100, plan.getPartitionSize());
+
+        assertEquals(0, a.claim().orElseThrow().getPartition());
+        assertEquals(1, b.claim().orElseThrow().getPartition());
+        assertEquals(2, a.claim().orElseThrow().getPartition());
+        assertEquals(Optional.empty(), b.claim());
+    }
+
+    @Test
+    void testExpiredLeasesAreTakenOverAtTheirCheckpoint() throws IOException {
+        FilePartitionCoordinator a = node("a");
+        FilePartitionCoordinator b = node("b");
+
+        PartitionCoordinator.Lease lease = a.claim().orElseThrow();
+        a.checkpoint(lease, "2020-05-01T12:00+02:00#42");
+        a.heartbeat();
+
+        clock.advance(LEASE_DURATION.minusSeconds(1));
+        b.claim();
+        b.claim();
+        assertEquals(Optional.empty(), b.claim());
+
+        clock.advance(Duration.ofSeconds(1));
+        PartitionCoordinator.Lease takenOver = b.claim().orElseThrow();
+        assertEquals(lease.getPartition(), takenOver.getPartition());
+        assertEquals("2020-05-01T12:00+02:00#42", takenOver.getCheckpoint());
+
+        // the first node notices on its next heartbeat and drops its checkpoints
+        a.heartbeat();
+        assertFalse(a.isHeld(lease));
+        a.checkpoint(lease, "2020-05-01T12:00+02:00#43");
+        assertFalse(a.complete(lease));
+        b.close();
+        assertEquals("2020-05-01T12:00+02:00#42", node("c").claim().orElseThrow().getCheckpoint());
+    }
+
+    @Test
+    void testFinishedOnceEveryPartitionIsComplete() throws IOException {
+        FilePartitionCoordinator a = node("a");
+        FilePartitionCoordinator b = node("b");
+
+        PartitionCoordinator.Lease first = a.claim().orElseThrow();
+        PartitionCoordinator.Lease second = b.claim().orElseThrow();
+        a.complete(first);
+        assertFalse(b.isFinished());
+
+        PartitionCoordinator.Lease third = a.claim().orElseThrow();
+        assertEquals(2, third.getPartition());
+        a.complete(third);
+        b.complete(second);
+
+        assertTrue(a.isFinished());
+        assertEquals(Optional.empty(), b.claim());
+    }
+
+    @Test
+    void testPartitionsLostBeforeTheHeartbeatAreNotCompleted() throws IOException {
+        FilePartitionCoordinator a = node("a");
+        PartitionCoordinator.Lease lease = a.claim().orElseThrow();
+
+        clock.advance(LEASE_DURATION);
+        FilePartitionCoordinator b = node("b");
+        assertEquals(lease.getPartition(), b.claim().orElseThrow().getPartition());
+
+        assertFalse(a.complete(lease));
+        assertFalse(a.isHeld(lease));
+        assertFalse(Files.exists(folder.resolve("partition-0.done")));
+    }
+
+    @Test
+    void testCloseReleasesHeldPartitionsWithTheirCheckpoints() throws IOException {
+        FilePartitionCoordinator a = node("a");
+        PartitionCoordinator.Lease lease = a.claim().orElseThrow();
+        a.checkpoint(lease, "2020-05-01T12:00+02:00#42");
+        a.close();
+
+        PartitionCoordinator.Lease released = node("b").claim().orElseThrow();
+        assertEquals(lease.getPartition(), released.getPartition());
+        assertEquals("2020-05-01T12:00+02:00#42", released.getCheckpoint());
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant instant = Instant.parse("2020-05-01T12:00:00Z");
+
+        void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.n2305.swmb.state;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HashIndexTest {
+    private static final String NAME = "test-index";
+
+    @TempDir
+    Path stateFolder;
+
+    private HashIndex reopen(int mergeThreshold) throws IOException {
+        return new HashIndex(stateFolder, NAME, 2, Duration.ofSeconds(1), mergeThreshold, VirtualTimeScheduler.create());
+    }
+
+    private static long key(int i) {
+        // spread the keys to not insert them in order
+        return i * 0x9e3779b97f4a7c15L;
+    }
+
+    private Path baseFile() {
+        return stateFolder.resolve(HashIndex.baseFileName(NAME));
+    }
+
+    private Path journalFile() {
+        return stateFolder.resolve(HashIndex.journalFileName(NAME));
+    }
+
+    @Test
+    void testEntriesAreJournaledAfterInterval() throws IOException {
+        VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+        HashIndex index = new HashIndex(stateFolder, NAME, 2, Duration.ofSeconds(1), 100, scheduler);
+
+        index.put(key(1), new long[]{1, 2});
+        index.put(key(2), new long[]{3, 4});
+        scheduler.advanceTimeBy(Duration.ofMillis(999));
+        assertFalse(Files.exists(journalFile()));
+
+        scheduler.advanceTimeBy(Duration.ofMillis(1));
+        HashIndex reopened = reopen(100);
+        assertArrayEquals(new long[]{1, 2}, reopened.get(key(1)));
+        assertArrayEquals(new long[]{3, 4}, reopened.get(key(2)));
+        assertNull(reopened.get(key(3)));
+    }
+
+    @Test
+    void testEntriesAreMergedIntoBaseFile() throws IOException {
+        HashIndex index = reopen(10);
+        for (int i = 0; i < 25; i++) {
+            index.put(key(i), new long[]{i, -i});
+            if (i % 10 == 9)
+                index.flush();
+        }
+        index.put(key(3), new long[]{23, 42});
+        index.close();
+
+        assertEquals(HashIndex.HEADER_SIZE + 20 * 24, Files.size(baseFile()));
+        assertEquals(HashIndex.JOURNAL_HEADER_SIZE + 6 * 24, Files.size(journalFile()));
+
+        HashIndex reopened = reopen(10);
+        for (int i = 0; i < 25; i++) {
+            assertArrayEquals(i == 3 ? new long[]{23, 42} : new long[]{i, -i}, reopened.get(key(i)), "key " + i);
+        }
+        assertNull(reopened.get(key(25)));
+
+        // the journaled entries exceed a lower threshold
+        reopen(5).flush();
+        assertFalse(Files.exists(journalFile()));
+        assertEquals(HashIndex.HEADER_SIZE + 25 * 24, Files.size(baseFile()));
+
+        HashIndex merged = reopen(10);
+        for (int i = 0; i < 25; i++) {
+            assertArrayEquals(i == 3 ? new long[]{23, 42} : new long[]{i, -i}, merged.get(key(i)), "key " + i);
+        }
+    }
+
+    @Test
+    void testTornJournalEntryIsIgnored() throws IOException {
+        HashIndex index = reopen(100);
+        index.put(key(1), new long[]{1, 2});
+        index.close();
+
+        // a crash in the middle of the next append
+        Files.write(journalFile(), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        HashIndex reopened = reopen(100);
+        assertArrayEquals(new long[]{1, 2}, reopened.get(key(1)));
+        assertNull(reopened.get(key(2)));
+    }
+
+    @Test
+    void testBaseFileWithOtherValueSizeIsRejected() throws IOException {
+        HashIndex index = reopen(1);
+        index.put(key(1), new long[]{1, 2});
+        index.flush();
+
+        assertThrows(IOException.class, () -> new HashIndex(stateFolder, NAME, 1, Duration.ofSeconds(1), 1,
+            VirtualTimeScheduler.create()));
+    }
+}
@@ -0,0 +1,106 @@
+package com.n2305.swmb.state;
+
+import com.n2305.swmb.mailbluster.MBLead;
+import com.n2305.swmb.state.OrderHashIndex.Change;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeadIndexTest {
+    @TempDir
+    Path stateFolder;
+
+    private LeadIndex reopen() throws IOException {
+        return new LeadIndex(stateFolder, Duration.ofSeconds(1), 100, VirtualTimeScheduler.create());
+    }
+
+    @Test
+    void testSameEmailWithOtherNamesIsSentAgain() throws IOException {
+        LeadIndex index = reopen();
+        index.add(new MBLead("Jane", "Doe", "jane@example.com", true));
+
+        assertTrue(index.contains(new MBLead("Jane", "Doe", "Jane@Example.com", true)));
+        assertFalse(index.contains(new MBLead("Jane", "Roe", "jane@example.com", true)));
+        assertFalse(index.contains(new MBLead("Jane", "Doe", "jane@example.org", true)));
+    }
+
+    @Test
+    void testLeadWithOtherNamesIsChanged() throws IOException {
+        LeadIndex index = reopen();
+        index.add(new MBLead("Jane", "Doe", "jane@example.com", true));
+
+        assertEquals(Change.UNCHANGED, index.compare(new MBLead("Jane", "Doe", "jane@example.com", true)));
+        assertEquals(Change.CHANGED, index.compare(new MBLead("Jane", "Roe", "jane@example.com", true)));
+        assertEquals(Change.NEW, index.compare(new MBLead("Jane", "Doe", "jane@example.org", true)));
+    }
+
+    @Test
+    void testLeadsSurviveRestart() throws IOException {
+        LeadIndex index = reopen();
+        index.add(new MBLead("Jane", "Doe", "jane@example.com", true));
+        index.add(new MBLead(null, null, "guest@example.com", true));
+        index.close();
+
+        LeadIndex reopened = reopen();
+        assertTrue(reopened.contains(new MBLead("Jane", "Doe", "jane@example.com", true)));
+        assertTrue(reopened.contains(new MBLead(null, null, "guest@example.com", true)));
+        assertFalse(reopened.contains(new MBLead("John", null, "guest@example.com", true)));
+    }
+
+    @Test
+    void testIndexOfTheFirstFormatIsDiscarded() throws IOException {
+        MBLead lead = new MBLead("Jane", "Doe", "jane@example.com", true);
+
+        // version 1 with 32 bit content hashes and a journal without header
+        ByteBuffer base = ByteBuffer.allocate(16 + 12)
+            .putInt(0x4c494458).putInt(1).putLong(1)
+            .putLong(LeadIndex.emailHash(lead)).putInt(23);
+        Files.write(stateFolder.resolve(HashIndex.baseFileName(LeadIndex.NAME)), base.array());
+        ByteBuffer journal = ByteBuffer.allocate(2 * 12)
+            .putLong(LeadIndex.emailHash(lead)).putInt(42)
+            .putLong(LeadIndex.emailHash(new MBLead(null, null, "guest@example.com", true))).putInt(5);
+        Files.write(stateFolder.resolve(HashIndex.journalFileName(LeadIndex.NAME)), journal.array());
+
+        LeadIndex index = reopen();
+        assertFalse(index.contains(lead));
+        assertTrue(Files.exists(stateFolder.resolve(HashIndex.baseFileName(LeadIndex.NAME) + ".discarded")));
+        assertTrue(Files.exists(stateFolder.resolve(HashIndex.journalFileName(LeadIndex.NAME) + ".discarded")));
+
+        index.add(lead);
+        index.close();
+        assertTrue(reopen().contains(lead));
+    }
+
+    @Test
+    void testLeadsSentBeforeAreSkippedWithoutWritingToTheirIndex() throws IOException {
+        Path syncFolder = stateFolder.resolve("sync");
+        LeadIndex sync = new LeadIndex(syncFolder, Duration.ofSeconds(1), 100, VirtualTimeScheduler.create());
+        sync.add(new MBLead("Jane", "Doe", "jane@example.com", true));
+        sync.close();
+        byte[] journal = Files.readAllBytes(syncFolder.resolve(HashIndex.journalFileName(LeadIndex.NAME)));
+
+        LeadIndex backfill = new LeadIndex(stateFolder.resolve("backfill"), syncFolder, Duration.ofSeconds(1), 100,
+            VirtualTimeScheduler.create());
+        assertTrue(backfill.contains(new MBLead("Jane", "Doe", "jane@example.com", true)));
+
+        // the lead sent by the backfill counts, not the one sent before
+        backfill.add(new MBLead("Jane", "Roe", "jane@example.com", true));
+        backfill.add(new MBLead(null, null, "guest@example.com", true));
+        backfill.close();
+        assertFalse(backfill.contains(new MBLead("Jane", "Doe", "jane@example.com", true)));
+        assertTrue(backfill.contains(new MBLead("Jane", "Roe", "jane@example.com", true)));
+
+        assertArrayEquals(journal, Files.readAllBytes(syncFolder.resolve(HashIndex.journalFileName(LeadIndex.NAME))));
+    }
+}
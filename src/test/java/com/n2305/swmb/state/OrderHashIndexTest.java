@@ -0,0 +1,67 @@
+package com.n2305.swmb.state;
+
+import com.n2305.swmb.mailbluster.MBOrder;
+import com.n2305.swmb.state.OrderHashIndex.Change;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrderHashIndexTest {
+    @TempDir
+    Path stateFolder;
+
+    private OrderHashIndex reopen() throws IOException {
+        return new OrderHashIndex(stateFolder, Duration.ofSeconds(1), 100, VirtualTimeScheduler.create());
+    }
+
+    private static MBOrder order(String number, double totalPrice, Map<String, String> meta) {
+        return new MBOrder.Builder()
+            .withId(number)
+            .withCurrency("EUR")
+            .withTotalPrice(totalPrice)
+            .withCustomer(new MBOrder.Customer.Builder()
+                .withFirstName("Jane")
+                .withLastName("Doe")
+                .withEmail("jane@example.com")
+                .withMeta(meta)
+                .build())
+            .withItems(List.of(new MBOrder.Product("10001", "Coke BIO", 9.9, 2)))
+            .build();
+    }
+
+    @Test
+    void testOnlyChangedOrdersAreSentAgain() throws IOException {
+        OrderHashIndex index = reopen();
+        assertEquals(Change.NEW, index.compare(order("20001", 19.8, Map.of())));
+
+        index.add(order("20001", 19.8, Map.of()));
+        index.close();
+
+        OrderHashIndex reopened = reopen();
+        assertEquals(Change.UNCHANGED, reopened.compare(order("20001", 19.8, Map.of())));
+        assertEquals(Change.CHANGED, reopened.compare(order("20001", 29.7, Map.of())));
+        assertEquals(Change.NEW, reopened.compare(order("20002", 19.8, Map.of())));
+    }
+
+    @Test
+    void testMetaOrderDoesNotMatter() throws IOException {
+        Map<String, String> meta = new LinkedHashMap<>();
+        meta.put("b", "2");
+        meta.put("a", "1");
+
+        OrderHashIndex index = reopen();
+        index.add(order("20001", 19.8, meta));
+
+        assertEquals(Change.UNCHANGED, index.compare(order("20001", 19.8, new TreeMap<>(meta))));
+    }
+}
@@ -0,0 +1,81 @@
+package com.n2305.swmb.state;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.n2305.swmb.ObjectMapperFactory;
+import com.n2305.swmb.mailbluster.MBLead;
+import com.n2305.swmb.mailbluster.MBOrder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboxTest {
+    @TempDir
+    Path folder;
+
+    ObjectMapper objectMapper = new ObjectMapperFactory().get();
+
+    private Outbox open() throws IOException {
+        return new Outbox(new SegmentLog(folder, 4096), objectMapper, Duration.ofSeconds(1),
+            VirtualTimeScheduler.create());
+    }
+
+    private static MBOrder createOrder() {
+        return new MBOrder.Builder()
+            .withId("10023")
+            .withCurrency("EUR")
+            .withTotalPrice(49.9)
+            .withCampaignId(7)
+            .withCustomer(new MBOrder.Customer.Builder()
+                .withEmail("customer@example.com")
+                .withFirstName("Jane")
+                .withMeta(Map.of("zip", "12345"))
+                .build())
+            .withItems(List.of(new MBOrder.Product("101", "Product", 44.9, 1), MBOrder.Product.forShipping(5)))
+            .build();
+    }
+
+    @Test
+    void testUnacknowledgedMessagesAreReplayedAfterRestart() throws IOException {
+        Outbox outbox = open();
+        assertTrue(outbox.takeRecovered().isEmpty());
+
+        Outbox.Record<MBOrder> order = outbox.append(createOrder(), 23);
+        Outbox.Record<MBLead> lead = outbox.append(new MBLead("Jane", "Doe", "jane@example.com", true), 42);
+        outbox.append(new MBLead("John", "Doe", "john@example.com", true), 43);
+        outbox.acknowledge(lead);
+        outbox.close();
+
+        List<Outbox.Record<?>> records = open().takeRecovered();
+        assertEquals(2, records.size());
+
+        Outbox.Record<?> replayedOrder = records.get(0);
+        assertEquals(Outbox.Kind.ORDER, replayedOrder.getKind());
+        assertEquals(23, replayedOrder.getReference());
+        assertEquals(objectMapper.writeValueAsString(order.getMessage()),
+            objectMapper.writeValueAsString(replayedOrder.getMessage()));
+
+        Outbox.Record<?> replayedLead = records.get(1);
+        assertEquals(Outbox.Kind.LEAD, replayedLead.getKind());
+        assertEquals("john@example.com", ((MBLead) replayedLead.getMessage()).getEmail());
+    }
+
+    @Test
+    void testRecoveredMessagesAreTakenOnce() throws IOException {
+        Outbox outbox = open();
+        outbox.append(createOrder(), 23);
+        outbox.close();
+
+        Outbox reopened = open();
+        assertEquals(1, reopened.takeRecovered().size());
+        assertTrue(reopened.takeRecovered().isEmpty());
+    }
+}
@@ -0,0 +1,101 @@
+package com.n2305.swmb.state;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SegmentLogTest {
+    @TempDir
+    Path folder;
+
+    private static byte[] payload(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> payloads(List<SegmentLog.Entry> entries) {
+        return entries.stream()
+            .map(entry -> new String(entry.getPayload(), StandardCharsets.UTF_8))
+            .collect(Collectors.toList());
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(folder)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void testUnacknowledgedEntriesSurviveReopen() throws IOException {
+        SegmentLog log = new SegmentLog(folder, 1024);
+        SegmentLog.Entry first = log.append((byte) 1, 23, payload("first"));
+        log.append((byte) 2, 42, payload("second"));
+        log.acknowledge(first);
+        log.close();
+
+        SegmentLog reopened = new SegmentLog(folder, 1024);
+        List<SegmentLog.Entry> entries = reopened.readUnacknowledged();
+
+        assertEquals(List.of("second"), payloads(entries));
+        assertEquals(2, entries.get(0).getKind());
+        assertEquals(42, entries.get(0).getReference());
+
+        // appends continue behind the recovered records
+        reopened.append((byte) 1, 43, payload("third"));
+        reopened.close();
+        assertEquals(List.of("second", "third"), payloads(new SegmentLog(folder, 1024).readUnacknowledged()));
+    }
+
+    @Test
+    void testTornRecordEndsTheSegment() throws IOException {
+        SegmentLog log = new SegmentLog(folder, 1024);
+        log.append((byte) 1, 1, payload("intact"));
+        log.append((byte) 1, 2, payload("torn"));
+        log.close();
+
+        // flip a payload byte of the second record
+        try (RandomAccessFile file = new RandomAccessFile(segmentFiles().get(0).toFile(), "rw")) {
+            long position = 2L * SegmentLog.HEADER_SIZE + "intact".length();
+            file.seek(position);
+            file.write('x');
+        }
+
+        SegmentLog reopened = new SegmentLog(folder, 1024);
+        assertEquals(List.of("intact"), payloads(reopened.readUnacknowledged()));
+
+        reopened.append((byte) 1, 3, payload("next"));
+        reopened.close();
+        assertEquals(List.of("intact", "next"), payloads(new SegmentLog(folder, 1024).readUnacknowledged()));
+    }
+
+    @Test
+    void testAcknowledgedSegmentsAreDeleted() throws IOException {
+        SegmentLog log = new SegmentLog(folder, 64);
+
+        // every record fills a segment on its own
+        SegmentLog.Entry first = log.append((byte) 1, 1, payload("a".repeat(40)));
+        SegmentLog.Entry second = log.append((byte) 1, 2, payload("b".repeat(40)));
+        log.append((byte) 1, 3, payload("c".repeat(40)));
+        assertEquals(3, log.getSegmentCount());
+
+        log.acknowledge(second);
+        assertEquals(3, log.getSegmentCount());
+        log.force();
+        assertEquals(2, log.getSegmentCount());
+
+        log.acknowledge(first);
+        log.force();
+        assertEquals(1, log.getSegmentCount());
+        assertEquals(1, segmentFiles().size());
+        log.close();
+    }
+}
@@ -0,0 +1,87 @@
+package com.n2305.swmb.state;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StateStoreTest {
+    @TempDir
+    Path stateFolder;
+
+    private StateStore reopen() throws IOException {
+        return new StateStore(stateFolder, Duration.ofSeconds(1), VirtualTimeScheduler.create());
+    }
+
+    @Test
+    void testChangesAreFlushedTogetherAfterInterval() throws IOException {
+        VirtualTimeScheduler scheduler = VirtualTimeScheduler.create();
+        StateStore store = new StateStore(stateFolder, Duration.ofSeconds(1), scheduler);
+
+        store.put("customers.cursor", "23");
+        store.put("orders.cursor", "2020-05-01T12:00+02:00#42");
+        scheduler.advanceTimeBy(Duration.ofMillis(999));
+        assertFalse(Files.exists(stateFolder.resolve(StateStore.STATE_FILE)));
+
+        scheduler.advanceTimeBy(Duration.ofMillis(1));
+        StateStore reopened = reopen();
+        assertEquals(Optional.of("23"), reopened.get("customers.cursor"));
+        assertEquals(Optional.of("2020-05-01T12:00+02:00#42"), reopened.get("orders.cursor"));
+        assertFalse(Files.exists(stateFolder.resolve(StateStore.STATE_FILE + ".tmp")));
+    }
+
+    @Test
+    void testCloseFlushes() throws IOException {
+        StateStore store = reopen();
+        store.put("customers.cursor", "23");
+        store.close();
+
+        assertEquals(Optional.of("23"), reopen().get("customers.cursor"));
+    }
+
+    @Test
+    void testLeftoverTempFileIsIgnored() throws IOException {
+        StateStore store = reopen();
+        store.put("customers.cursor", "23");
+        store.flush();
+
+        // a crash in the middle of the next flush
+        Files.writeString(stateFolder.resolve(StateStore.STATE_FILE + ".tmp"), "customers.cur");
+
+        StateStore reopened = reopen();
+        assertEquals(Optional.of("23"), reopened.get("customers.cursor"));
+
+        reopened.put("customers.cursor", "24");
+        reopened.flush();
+        assertEquals(Optional.of("24"), reopen().get("customers.cursor"));
+    }
+
+    @Test
+    void testImportLegacyFile() throws IOException {
+        Files.writeString(stateFolder.resolve("last-fetched-id.txt"), "1234\n");
+
+        StateStore store = reopen();
+        assertEquals(Optional.of("1234"), store.importLegacyFile("customers.cursor", "last-fetched-id.txt"));
+        assertTrue(Files.exists(stateFolder.resolve(StateStore.STATE_FILE)));
+
+        // the state store wins once it has a value
+        Files.writeString(stateFolder.resolve("last-fetched-id.txt"), "1");
+        assertEquals(Optional.of("1234"), reopen().importLegacyFile("customers.cursor", "last-fetched-id.txt"));
+    }
+
+    @Test
+    void testEmptyLegacyFileIsIgnored() throws IOException {
+        Files.writeString(stateFolder.resolve("last-fetched-id.txt"), "");
+
+        assertEquals(Optional.empty(), reopen().importLegacyFile("customers.cursor", "last-fetched-id.txt"));
+    }
+}
@@ -0,0 +1,61 @@
+package com.n2305.swmb.utils;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IpAddressesTest {
+    @ParameterizedTest(name = "literal {0}")
+    @ValueSource(strings = {
+        "0.0.0.0",
+        "23.5.23.5",
+        "255.255.255.255",
+        "::",
+        "::1",
+        "1::",
+        "2a02:810b:c940:1409:eda9::1",
+        "2A02:810B:C940:1409:EDA9:0:0:1",
+        "2001:0db8:0000:0000:0000:ff00:0042:8329",
+        "fe80::1:2",
+        "1:2:3:4:5:6:7:8",
+        "::ffff:23.5.23.5",
+        "::ffff:1705:1705",
+        "::23.5.23.5",
+        "64:ff9b::23.5.23.5",
+        "[::1]"
+    })
+    void testLiteralsAreNormalizedLikeInetAddress(String literal) throws UnknownHostException {
+        assertEquals(Optional.of(InetAddress.getByName(literal).getHostAddress()), IpAddresses.normalize(literal));
+    }
+
+    @ParameterizedTest(name = "invalid {0}")
+    @ValueSource(strings = {
+        "",
+        "localhost",
+        "shop.example.com",
+        "127.1",
+        "1.2.3.4.5",
+        "256.1.1.1",
+        "1.2.3.",
+        "1.2.3.4 ",
+        "1:2:3:4:5:6:7",
+        "1:2:3:4:5:6:7:8:9",
+        "1:2:3:4::5:6:7:8",
+        "1::2::3",
+        ":1::",
+        "1:",
+        "12345::",
+        "1:2:3:4:5:6:7:1.2.3.4",
+        "fe80::1%eth0",
+        "::g",
+        "١.2.3.4"
+    })
+    void testEverythingElseIsRejected(String address) {
+        assertEquals(Optional.empty(), IpAddresses.normalize(address));
+    }
+}
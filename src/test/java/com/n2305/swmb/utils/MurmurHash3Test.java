@@ -0,0 +1,24 @@
+package com.n2305.swmb.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MurmurHash3Test {
+    @Test
+    void testReferenceValues() {
+        assertEquals(0xe271865701f54561L, MurmurHash3.hash64("foo".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0xe34bbc7bbc071b6cL, MurmurHash3.hash64(
+            "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0L, MurmurHash3.hash64(new byte[0]));
+    }
+
+    @Test
+    void testHash128() {
+        assertArrayEquals(new long[]{0xe271865701f54561L, 0x7eaf87e42bba7d87L},
+            MurmurHash3.hash128("foo".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,68 @@
+package com.n2305.swmb.utils;
+
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+class RateLimitElementsTest {
+    private static RateLimiter createRateLimiter() {
+        return RateLimiter.of("test", RateLimiterConfig.custom()
+            .limitForPeriod(2)
+            .limitRefreshPeriod(Duration.ofMillis(100))
+            .timeoutDuration(Duration.ZERO)
+            .build());
+    }
+
+    @Test
+    void testElementsAreLimitedPerPeriod() {
+        RateLimiter rateLimiter = createRateLimiter();
+
+        long start = System.nanoTime();
+        List<Integer> result = Flux.range(0, 6)
+            .transform(RateLimitElements.with(rateLimiter))
+            .collectList()
+            .block();
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), result);
+        assertTrue(elapsed.compareTo(Duration.ofMillis(150)) >= 0, "elapsed " + elapsed);
+    }
+
+    @Test
+    void testLimiterIsSharedBetweenStreams() {
+        RateLimiter rateLimiter = createRateLimiter();
+
+        long start = System.nanoTime();
+        Long count = Flux.merge(
+            Flux.range(0, 3).transform(RateLimitElements.with(rateLimiter)),
+            Flux.range(0, 3).transform(RateLimitElements.with(rateLimiter))
+        ).count().block();
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        assertEquals(6, count);
+        assertTrue(elapsed.compareTo(Duration.ofMillis(150)) >= 0, "elapsed " + elapsed);
+    }
+
+    @Test
+    void testWaitingElementsDoNotPollTheLimiter() {
+        RateLimiter rateLimiter = spy(createRateLimiter());
+
+        Flux.range(0, 6)
+            .transform(RateLimitElements.with(rateLimiter))
+            .blockLast();
+
+        // 6 successful acquisitions plus one failed attempt per refresh period,
+        // polling every 10ms would have needed around 20 more
+        verify(rateLimiter, atMost(10)).acquirePermission();
+    }
+}
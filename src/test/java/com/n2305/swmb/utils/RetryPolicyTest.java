@@ -0,0 +1,104 @@
+package com.n2305.swmb.utils;
+
+import com.n2305.swmb.properties.AppProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryPolicyTest {
+    private static WebClientResponseException responseException(int status) {
+        return WebClientResponseException.create(status, "status " + status, HttpHeaders.EMPTY,
+            new byte[0], StandardCharsets.UTF_8);
+    }
+
+    private static AppProperties.Retry retryProps() {
+        return new AppProperties.Retry()
+            .setMaxAttempts(4)
+            .setInlineAttempts(2)
+            .setInitialBackoff(Duration.ofMillis(10))
+            .setMaxBackoff(Duration.ofMillis(50))
+            .setJitter(0.5);
+    }
+
+    @Test
+    void testErrorsAreClassified() {
+        assertTrue(RetryPolicy.isRetryable(responseException(503)));
+        assertTrue(RetryPolicy.isRetryable(responseException(429)));
+        assertTrue(RetryPolicy.isRetryable(responseException(408)));
+        assertTrue(RetryPolicy.isRetryable(new TimeoutException()));
+        assertTrue(RetryPolicy.isRetryable(new IOException()));
+
+        assertFalse(RetryPolicy.isRetryable(responseException(400)));
+        assertFalse(RetryPolicy.isRetryable(responseException(422)));
+        assertFalse(RetryPolicy.isRetryable(new IllegalArgumentException()));
+    }
+
+    @Test
+    void testRetriesAreLimited() {
+        RetryPolicy retryPolicy = new RetryPolicy(retryProps());
+
+        assertTrue(retryPolicy.shouldRetry(responseException(503), 3));
+        assertFalse(retryPolicy.shouldRetry(responseException(503), 4));
+        assertFalse(retryPolicy.shouldRetry(responseException(400), 1));
+    }
+
+    @Test
+    void testBackoffDoublesUpToTheMax() {
+        RetryPolicy retryPolicy = new RetryPolicy(retryProps(), () -> 0);
+
+        assertEquals(Duration.ofMillis(10), retryPolicy.backoff(1));
+        assertEquals(Duration.ofMillis(20), retryPolicy.backoff(2));
+        assertEquals(Duration.ofMillis(40), retryPolicy.backoff(3));
+        assertEquals(Duration.ofMillis(50), retryPolicy.backoff(4));
+        assertEquals(Duration.ofMillis(50), retryPolicy.backoff(100));
+    }
+
+    @Test
+    void testBackoffIsReducedByJitter() {
+        RetryPolicy retryPolicy = new RetryPolicy(retryProps(), () -> 1);
+
+        assertEquals(Duration.ofMillis(5), retryPolicy.backoff(1));
+        assertEquals(Duration.ofMillis(25), retryPolicy.backoff(10));
+    }
+
+    @Test
+    void testInlineRetryRecoversFromServerErrors() {
+        AtomicInteger calls = new AtomicInteger();
+        Mono<String> flaky = Mono.defer(() -> calls.incrementAndGet() < 3
+            ? Mono.error(responseException(503))
+            : Mono.just("ok"));
+
+        StepVerifier.create(flaky.retryWhen(new RetryPolicy(retryProps()).inline()))
+            .expectNext("ok")
+            .verifyComplete();
+
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void testInlineRetryPassesOnPermanentErrors() {
+        AtomicInteger calls = new AtomicInteger();
+        Mono<String> failing = Mono.defer(() -> {
+            calls.incrementAndGet();
+            return Mono.error(responseException(400));
+        });
+
+        StepVerifier.create(failing.retryWhen(new RetryPolicy(retryProps()).inline()))
+            .expectError(WebClientResponseException.BadRequest.class)
+            .verify();
+
+        assertEquals(1, calls.get());
+    }
+}